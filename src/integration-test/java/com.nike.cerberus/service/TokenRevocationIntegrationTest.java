@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nike.cerberus.service;
+
+import com.codahale.metrics.Counter;
+import com.fieldju.commons.EnvUtils;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.name.Names;
+import com.nike.cerberus.PrincipalType;
+import com.nike.cerberus.cache.AuthTokenCache;
+import com.nike.cerberus.dao.AuthTokenDao;
+import com.nike.cerberus.domain.CerberusAuthToken;
+import com.nike.cerberus.server.config.guice.CmsFlywayModule;
+import com.nike.cerberus.server.config.guice.CmsMyBatisModule;
+import com.nike.cerberus.util.AfterCommitExecutor;
+import com.nike.cerberus.util.AuthTokenGenerator;
+import com.nike.cerberus.util.DateTimeSupplier;
+import com.nike.cerberus.util.TokenHasher;
+import com.nike.cerberus.util.UuidSupplier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Properties;
+
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertNotNull;
+import static junit.framework.TestCase.assertNull;
+import static junit.framework.TestCase.assertTrue;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Measures how long it takes for a token revoked on one CMS instance to be evicted from the auth token cache of
+ * another instance, with both instances sharing a MySQL database.
+ * <p>
+ * Start the embedded MySQL with ./gradlew startEmbeddedMysql and point JDBC_URL, JDBC_USERNAME and JDBC_PASSWORD at it.
+ */
+public class TokenRevocationIntegrationTest {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private static final long POLL_INTERVAL_IN_MILLIS = 250;
+    private static final int COMMIT_GRACE_IN_SECONDS = 5;
+    private static final long REVOCATION_SLA_IN_MILLIS = 2000;
+
+    private AuthTokenDao authTokenDao;
+    private TokenHasher tokenHasher;
+
+    private Instance instanceA;
+    private Instance instanceB;
+
+    @Before
+    public void before() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("JDBC.driver", "com.mysql.jdbc.Driver");
+        properties.setProperty("JDBC.url", EnvUtils.getRequiredEnv("JDBC_URL", "The JDBC URL of the test database"));
+        properties.setProperty("JDBC.username", EnvUtils.getRequiredEnv("JDBC_USERNAME", "The test database user"));
+        properties.setProperty("JDBC.password", EnvUtils.getRequiredEnv("JDBC_PASSWORD", "The test database password"));
+        properties.setProperty("mybatis.environment.id", "integration-test");
+        properties.setProperty("mybatis.configuration.mapUnderscoreToCamelCase", "true");
+        properties.setProperty("flyway.schemas", "cms");
+        properties.setProperty("flyway.locations", "classpath:com/nike/cerberus/migration");
+
+        Injector injector = Guice.createInjector(
+                binder -> Names.bindProperties(binder, properties),
+                new CmsMyBatisModule(),
+                new CmsFlywayModule());
+        authTokenDao = injector.getInstance(AuthTokenDao.class);
+
+        byte[] salt = new byte[64];
+        new SecureRandom().nextBytes(salt);
+        tokenHasher = new TokenHasher(Base64.getEncoder().encodeToString(salt), "PBKDF2WithHmacSHA512", 256, 100,
+                TokenHasher.Scheme.PBKDF2.name());
+
+        instanceA = new Instance();
+        instanceB = new Instance();
+    }
+
+    @After
+    public void after() {
+        instanceA.tokenRevocationService.executeServerShutdownHook(null, null);
+        instanceB.tokenRevocationService.executeServerShutdownHook(null, null);
+    }
+
+    @Test
+    public void test_that_a_token_revoked_on_one_instance_is_evicted_from_the_cache_of_another() throws Exception {
+        CerberusAuthToken authToken = instanceA.authTokenService.generateToken("integration-test-user",
+                PrincipalType.USER, false, "", 60, 0);
+        String token = authToken.getToken();
+
+        // Both instances verify the token against the database and cache it
+        assertTrue(instanceA.authTokenService.getCerberusAuthToken(token).isPresent());
+        assertTrue(instanceB.authTokenService.getCerberusAuthToken(token).isPresent());
+        assertNotNull(instanceB.authTokenCache.getIfPresent(token));
+
+        long revokedAt = System.nanoTime();
+        instanceA.authTokenService.revokeToken(token);
+        assertNull(instanceA.authTokenCache.getIfPresent(token));
+
+        while (instanceB.authTokenCache.getIfPresent(token) != null) {
+            assertTrue("The revocation was not propagated within " + REVOCATION_SLA_IN_MILLIS + " ms",
+                    System.nanoTime() - revokedAt < REVOCATION_SLA_IN_MILLIS * 1000000);
+            Thread.sleep(10);
+        }
+
+        long propagationLatencyInMillis = (System.nanoTime() - revokedAt) / 1000000;
+        log.info("Revocation propagated in {} ms, poll interval: {} ms", propagationLatencyInMillis,
+                POLL_INTERVAL_IN_MILLIS);
+        assertFalse(instanceB.authTokenService.getCerberusAuthToken(token).isPresent());
+    }
+
+    /**
+     * The auth token state of a single CMS instance.
+     */
+    private class Instance {
+
+        private final AuthTokenCache authTokenCache;
+        private final AuthTokenService authTokenService;
+        private final TokenRevocationService tokenRevocationService;
+
+        private Instance() throws Exception {
+            MetricsService metricsService = mock(MetricsService.class);
+            when(metricsService.getOrCreateCounter(anyString(), anyMap())).thenReturn(new Counter());
+
+            authTokenCache = new AuthTokenCache(true, 100, 3600, metricsService);
+            authTokenService = new AuthTokenService(new UuidSupplier(), tokenHasher, new AuthTokenGenerator(64),
+                    authTokenDao, new DateTimeSupplier(), authTokenCache, new AfterCommitExecutor());
+            tokenRevocationService = new TokenRevocationService(authTokenDao, authTokenCache,
+                    POLL_INTERVAL_IN_MILLIS, COMMIT_GRACE_IN_SECONDS);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nike.cerberus.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of hashing auth tokens with each scheme, from many threads at once as in CMS.
+ * <p>
+ * Run with ./gradlew jmh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(8)
+public class TokenHasherBenchmark {
+
+    @Param({"PBKDF2", "HMAC_SHA512"})
+    private String scheme;
+
+    private TokenHasher tokenHasher;
+
+    private String token;
+
+    @Setup
+    public void setup() throws Exception {
+        byte[] salt = new byte[64];
+        new SecureRandom().nextBytes(salt);
+        tokenHasher = new TokenHasher(Base64.getEncoder().encodeToString(salt), "PBKDF2WithHmacSHA512", 256, 100, scheme);
+        token = new AuthTokenGenerator(64).generateSecureToken();
+    }
+
+    @Benchmark
+    public String hashToken() {
+        return tokenHasher.hashToken(token);
+    }
+}
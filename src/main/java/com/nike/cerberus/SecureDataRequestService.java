@@ -18,6 +18,7 @@
 package com.nike.cerberus;
 
 import com.nike.backstopper.exception.ApiException;
+import com.nike.cerberus.domain.SecureData;
 import com.nike.cerberus.domain.SecureDataRequestInfo;
 import com.nike.cerberus.error.DefaultApiError;
 import com.nike.cerberus.security.CerberusPrincipal;
@@ -25,6 +26,7 @@ import com.nike.cerberus.security.CmsRequestSecurityValidator;
 import com.nike.cerberus.service.EventProcessorService;
 import com.nike.cerberus.service.PermissionsService;
 import com.nike.cerberus.service.SafeDepositBoxService;
+import com.nike.cerberus.service.SecureDataService;
 import com.nike.riposte.server.http.RequestInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,17 +49,42 @@ public class SecureDataRequestService {
 
     private final EventProcessorService eventProcessorService;
 
+    private final SecureDataService secureDataService;
+
 
     @Inject
     public SecureDataRequestService(SafeDepositBoxService safeDepositBoxService,
                                     PermissionsService permissionsService,
-                                    EventProcessorService eventProcessorService) {
+                                    EventProcessorService eventProcessorService,
+                                    SecureDataService secureDataService) {
         this.safeDepositBoxService = safeDepositBoxService;
         this.permissionsService = permissionsService;
         this.eventProcessorService = eventProcessorService;
+        this.secureDataService = secureDataService;
     }
 
     public SecureDataRequestInfo parseAndValidateRequest(RequestInfo requestInfo) throws IllegalArgumentException {
+        SecureDataRequestInfo info = parseAndAuthenticateRequest(requestInfo);
+
+        CerberusPrincipal principal = info.getPrincipal();
+        String sdbBasePath = getSdbBasePath(info);
+        SecureDataAction secureDataAction = SecureDataAction.fromMethod(requestInfo.getMethod());
+
+        Optional<String> sdbId = safeDepositBoxService.getSafeDepositBoxIdByPath(sdbBasePath);
+        if (! sdbId.isPresent() || ! permissionsService.doesPrincipalHavePermission(principal, sdbId.get(), secureDataAction)) {
+            throw permissionNotGranted(requestInfo, info);
+        }
+
+        info.setSdbId(sdbId.get());
+
+        return info;
+    }
+
+    /**
+     * Parses a request and checks that it was made by an authenticated principal, but leaves resolving the SDB and
+     * checking the principal's permission on it to the caller.
+     */
+    public SecureDataRequestInfo parseAndAuthenticateRequest(RequestInfo requestInfo) throws IllegalArgumentException {
         final Optional<SecurityContext> securityContext =
                 CmsRequestSecurityValidator.getSecurityContextForRequest(requestInfo);
 
@@ -84,27 +111,55 @@ public class SecureDataRequestService {
                     .build();
         }
 
-        CerberusPrincipal principal = (CerberusPrincipal) securityContext.get().getUserPrincipal();
-        String sdbBasePath = String.format("%s/%s/", info.getCategory(), info.getSdbSlug());
-        SecureDataAction secureDataAction = SecureDataAction.fromMethod(requestInfo.getMethod());
+        info.setPrincipal((CerberusPrincipal) securityContext.get().getUserPrincipal());
 
-        Optional<String> sdbId = safeDepositBoxService.getSafeDepositBoxIdByPath(sdbBasePath);
-        if (! sdbId.isPresent() || ! permissionsService.doesPrincipalHavePermission(principal, sdbId.get(), secureDataAction)) {
+        return info;
+    }
 
-            eventProcessorService.ingestEvent(auditableEvent(info.getPrincipal(), requestInfo, getClass().getSimpleName())
-                    .withAction("SDB ID not found or permission was not granted for principal")
-                    .withSuccess(false)
-                    .build());
-            throw ApiException.newBuilder()
-                    .withApiErrors(DefaultApiError.GENERIC_BAD_REQUEST)
-                    .withExceptionMessage("SDB not found or permission was not granted for principal")
-                    .build();
+    /**
+     * Reads the secret at the path of a request parsed by {@link #parseAndAuthenticateRequest(RequestInfo)}, resolving
+     * the SDB ID and checking the principal's permission in the same query as the secret is read with.
+     *
+     * @return The secret, or empty if the principal has permission but there is no secret at the path
+     */
+    public Optional<SecureData> validateAndReadSecret(RequestInfo requestInfo, SecureDataRequestInfo info) {
+        CerberusPrincipal principal = info.getPrincipal();
+        SecureDataAction secureDataAction = SecureDataAction.fromMethod(requestInfo.getMethod());
+
+        Optional<SecureData> secureData;
+        try {
+            secureData = secureDataService.readSecretIfPermitted(
+                    getSdbBasePath(info),
+                    info.getPath(),
+                    principal.getPrincipalType() == PrincipalType.IAM,
+                    permissionsService.getPrincipalNamesForPermissionCheck(principal),
+                    permissionsService.isUserGroupsCaseSensitive(),
+                    secureDataAction.getAllowedRoles());
+        } catch (ApiException ae) {
+            if (ae.getApiErrors().contains(DefaultApiError.ACCESS_DENIED)) {
+                throw permissionNotGranted(requestInfo, info);
+            }
+            throw ae;
         }
 
-        info.setPrincipal(principal);
-        info.setSdbId(sdbId.get());
+        secureData.ifPresent(data -> info.setSdbId(data.getSdboxId()));
 
-        return info;
+        return secureData;
+    }
+
+    private String getSdbBasePath(SecureDataRequestInfo info) {
+        return String.format("%s/%s/", info.getCategory(), info.getSdbSlug());
+    }
+
+    private ApiException permissionNotGranted(RequestInfo requestInfo, SecureDataRequestInfo info) {
+        eventProcessorService.ingestEvent(auditableEvent(info.getPrincipal(), requestInfo, getClass().getSimpleName())
+                .withAction("SDB ID not found or permission was not granted for principal")
+                .withSuccess(false)
+                .build());
+        return ApiException.newBuilder()
+                .withApiErrors(DefaultApiError.GENERIC_BAD_REQUEST)
+                .withExceptionMessage("SDB not found or permission was not granted for principal")
+                .build();
     }
 
     public SecureDataRequestInfo parseRequestPathInfo(String requestPath) {
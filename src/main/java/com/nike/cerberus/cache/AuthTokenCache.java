@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nike.cerberus.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.nike.cerberus.domain.CerberusAuthToken;
+import com.nike.cerberus.service.MetricsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, TTL limited cache of auth tokens that have already been verified against the database, so that repeated
+ * requests with the same token do not each pay for the PBKDF2 token hash and the database lookup.
+ * <p>
+ * Entries are keyed by an HMAC-SHA256 digest of the token, using a random key generated when this process starts.
+ * The digest is cheap to compute, and the keys held in memory cannot be used to look up tokens anywhere else.
+ * An entry is never returned after the expiration of its token, even if the TTL has not elapsed yet.
+ * <p>
+ * Entries also hold the stored hash of their token, so that revocations made by other instances, which only know the
+ * hash, can be evicted.
+ */
+@Singleton
+public class AuthTokenCache {
+
+    private static final Logger log = LoggerFactory.getLogger(AuthTokenCache.class);
+
+    private static final String HIT = "cms.auth.token.cache.hit";
+    private static final String MISS = "cms.auth.token.cache.miss";
+    private static final String HIT_RATE = "cms.auth.token.cache.hit-rate";
+    private static final String SIZE = "cms.auth.token.cache.size";
+
+    private static final String DIGEST_ALGORITHM = "HmacSHA256";
+
+    private static final int DIGEST_KEY_LENGTH_IN_BYTES = 32;
+
+    private final boolean enabled;
+    private final MetricsService metricsService;
+    private final Cache<ByteBuffer, Entry> tokens;
+    private final ThreadLocal<Mac> digests;
+
+    private final AtomicLong hitsSinceLastReport = new AtomicLong();
+    private final AtomicLong missesSinceLastReport = new AtomicLong();
+
+    /**
+     * @param enabled        When false, nothing is cached
+     * @param maxSize        Maximum number of tokens held by the cache
+     * @param ttlInSeconds   Maximum amount of time a token is held by the cache
+     * @param metricsService Service used to report the cache metrics
+     */
+    @Inject
+    public AuthTokenCache(@Named("cms.auth.token.cache.enabled") boolean enabled,
+                          @Named("cms.auth.token.cache.maxSize") int maxSize,
+                          @Named("cms.auth.token.cache.ttlInSeconds") long ttlInSeconds,
+                          MetricsService metricsService) {
+
+        this.enabled = enabled;
+        this.metricsService = metricsService;
+        this.tokens = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlInSeconds, TimeUnit.SECONDS)
+                .build();
+
+        byte[] digestKey = new byte[DIGEST_KEY_LENGTH_IN_BYTES];
+        new SecureRandom().nextBytes(digestKey);
+        SecretKeySpec digestKeySpec = new SecretKeySpec(digestKey, DIGEST_ALGORITHM);
+        this.digests = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(DIGEST_ALGORITHM);
+                mac.init(digestKeySpec);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Failed to initialize the auth token cache digest", e);
+            }
+        });
+
+        if (enabled) {
+            log.info("Auth token caching enabled, maxSize: {}, ttlInSeconds: {}", maxSize, ttlInSeconds);
+        }
+    }
+
+    /**
+     * @param token the raw token sent by the client
+     * @return the verified token, or null if it is not cached or has expired
+     */
+    public CerberusAuthToken getIfPresent(String token) {
+        if (!enabled) {
+            return null;
+        }
+
+        ByteBuffer key = digest(token);
+        Entry entry = tokens.getIfPresent(key);
+        CerberusAuthToken authToken = entry == null ? null : entry.authToken;
+        if (authToken != null && authToken.getExpires().isBefore(OffsetDateTime.now())) {
+            tokens.invalidate(key);
+            authToken = null;
+        }
+
+        if (authToken == null) {
+            missesSinceLastReport.incrementAndGet();
+            metricsService.getOrCreateCounter(MISS, ImmutableMap.of()).inc();
+        } else {
+            hitsSinceLastReport.incrementAndGet();
+            metricsService.getOrCreateCounter(HIT, ImmutableMap.of()).inc();
+        }
+        return authToken;
+    }
+
+    /**
+     * @param token     the raw token sent by the client
+     * @param tokenHash the hash the token is stored under
+     * @param authToken the token as verified against the database
+     */
+    public void put(String token, String tokenHash, CerberusAuthToken authToken) {
+        if (enabled) {
+            tokens.put(digest(token), new Entry(tokenHash, authToken));
+        }
+    }
+
+    /**
+     * Remove the token from this cache, e.g. because it was revoked.
+     */
+    public void invalidate(String token) {
+        if (enabled) {
+            tokens.invalidate(digest(token));
+        }
+    }
+
+    /**
+     * Remove the tokens stored under the given hashes from this cache.
+     */
+    public void invalidateAllByHash(Collection<String> tokenHashes) {
+        if (enabled && !tokenHashes.isEmpty()) {
+            tokens.asMap().values().removeIf(entry -> tokenHashes.contains(entry.tokenHash));
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Report the hit rate since the last report and the current size of the cache.
+     */
+    public void reportMetrics() {
+        if (!enabled) {
+            return;
+        }
+
+        long hits = hitsSinceLastReport.getAndSet(0);
+        long misses = missesSinceLastReport.getAndSet(0);
+        double hitRate = hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+
+        Map<String, String> dimensions = ImmutableMap.of();
+        metricsService.setDoubleGaugeValue(HIT_RATE, hitRate, dimensions);
+        metricsService.setLongGaugeValue(SIZE, tokens.size(), dimensions);
+    }
+
+    private ByteBuffer digest(String token) {
+        return ByteBuffer.wrap(digests.get().doFinal(token.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static final class Entry {
+
+        private final String tokenHash;
+        private final CerberusAuthToken authToken;
+
+        private Entry(String tokenHash, CerberusAuthToken authToken) {
+            this.tokenHash = tokenHash;
+            this.authToken = authToken;
+        }
+    }
+}
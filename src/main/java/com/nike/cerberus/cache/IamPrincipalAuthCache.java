@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nike.cerberus.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+import com.nike.cerberus.record.AwsIamRoleKmsKeyRecord;
+import com.nike.cerberus.record.AwsIamRoleRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded, TTL limited cache of what IAM authentication looks up in the database for an IAM principal in a region:
+ * the IAM role record, the record of the KMS key the auth response is encrypted with, and the policies of the token.
+ * Accounts with many short lived workloads, e.g. Lambda functions, authenticate the same principals over and over.
+ * <p>
+ * Everything is invalidated when this instance changes the IAM principal permissions of any SDB, or cleans up KMS
+ * keys and IAM roles, as a single change can affect many principals, e.g. a permission granted to an account root ARN.
+ * Changes made on other instances are seen after at most the TTL.
+ */
+@Singleton
+public class IamPrincipalAuthCache {
+
+    private static final Logger log = LoggerFactory.getLogger(IamPrincipalAuthCache.class);
+
+    private final boolean enabled;
+    private final Cache<String, Entry> entries;
+
+    /**
+     * @param enabled      When false, nothing is cached
+     * @param maxSize      Maximum number of IAM principal and region pairs held
+     * @param ttlInSeconds Maximum amount of time the records and policies of a principal are cached
+     */
+    @Inject
+    public IamPrincipalAuthCache(@Named("cms.iam.auth.cache.enabled") boolean enabled,
+                                 @Named("cms.iam.auth.cache.maxSize") int maxSize,
+                                 @Named("cms.iam.auth.cache.ttlInSeconds") long ttlInSeconds) {
+
+        this.enabled = enabled;
+        this.entries = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlInSeconds, TimeUnit.SECONDS)
+                .build();
+
+        if (enabled) {
+            log.info("IAM principal auth caching enabled, maxSize: {}, ttlInSeconds: {}", maxSize, ttlInSeconds);
+        }
+    }
+
+    /**
+     * @return the cached records and policies of the IAM principal in the region, or null if not cached
+     */
+    public Entry getIfPresent(String iamPrincipalArn, String region) {
+        return enabled ? entries.getIfPresent(toKey(iamPrincipalArn, region)) : null;
+    }
+
+    public void put(String iamPrincipalArn, String region, Entry entry) {
+        if (enabled) {
+            entries.put(toKey(iamPrincipalArn, region), entry);
+        }
+    }
+
+    /**
+     * Forget the IAM principal in the region, e.g. because its KMS key was replaced.
+     */
+    public void invalidate(String iamPrincipalArn, String region) {
+        if (enabled) {
+            entries.invalidate(toKey(iamPrincipalArn, region));
+        }
+    }
+
+    /**
+     * Forget every IAM principal, e.g. because IAM principal permissions changed.
+     */
+    public void invalidateAll() {
+        if (enabled) {
+            entries.invalidateAll();
+        }
+    }
+
+    private static String toKey(String iamPrincipalArn, String region) {
+        return iamPrincipalArn + '|' + region;
+    }
+
+    public static final class Entry {
+
+        private final AwsIamRoleRecord iamRoleRecord;
+        private final AwsIamRoleKmsKeyRecord kmsKeyRecord;
+        private final Set<String> policies;
+
+        public Entry(AwsIamRoleRecord iamRoleRecord, AwsIamRoleKmsKeyRecord kmsKeyRecord, Set<String> policies) {
+            this.iamRoleRecord = iamRoleRecord;
+            this.kmsKeyRecord = kmsKeyRecord;
+            this.policies = ImmutableSet.copyOf(policies);
+        }
+
+        public AwsIamRoleRecord getIamRoleRecord() {
+            return iamRoleRecord;
+        }
+
+        public AwsIamRoleKmsKeyRecord getKmsKeyRecord() {
+            return kmsKeyRecord;
+        }
+
+        public Set<String> getPolicies() {
+            return policies;
+        }
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nike.cerberus.cache;
+
+import com.amazonaws.encryptionsdk.EncryptedDataKey;
+import com.amazonaws.encryptionsdk.caching.CryptoMaterialsCache;
+import com.amazonaws.encryptionsdk.model.DecryptionMaterials;
+import com.amazonaws.encryptionsdk.model.EncryptionMaterials;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.ImmutableMap;
+import com.nike.cerberus.service.MetricsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.SecretKey;
+import javax.security.auth.DestroyFailedException;
+import java.nio.ByteBuffer;
+import java.security.Key;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, TTL limited implementation of the AWS Encryption SDK CryptoMaterialsCache that reports
+ * hit, miss and eviction counts through the MetricsService.
+ * <p>
+ * The SDK supplied LocalCryptoMaterialsCache does not expose any statistics, so this cache is backed by a Guava cache
+ * instead.  The caching crypto materials manager is still responsible for enforcing the max age, message and byte
+ * limits of each entry, this cache only bounds the number (or estimated size) of entries held in memory.
+ */
+public class MeteredCryptoMaterialsCache implements CryptoMaterialsCache {
+
+    private static final Logger log = LoggerFactory.getLogger(MeteredCryptoMaterialsCache.class);
+
+    private static final String HIT = "cms.encryption.materials-cache.hit";
+    private static final String MISS = "cms.encryption.materials-cache.miss";
+    private static final String EVICTION = "cms.encryption.materials-cache.eviction";
+    private static final String HIT_RATE = "cms.encryption.materials-cache.hit-rate";
+    private static final String SIZE = "cms.encryption.materials-cache.size";
+
+    private static final String ENCRYPT = "encrypt";
+    private static final String DECRYPT = "decrypt";
+
+    /**
+     * Rough allowance for object headers, references and the cache entry itself when estimating the size of an entry
+     */
+    private static final int ENTRY_OVERHEAD_IN_BYTES = 256;
+
+    private final String name;
+    private final MetricsService metricsService;
+    private final Cache<ByteBuffer, EncryptEntry> encryptEntries;
+    private final Cache<ByteBuffer, DecryptEntry> decryptEntries;
+
+    private final Map<String, AtomicLong> hitsSinceLastReport =
+            ImmutableMap.of(ENCRYPT, new AtomicLong(), DECRYPT, new AtomicLong());
+    private final Map<String, AtomicLong> missesSinceLastReport =
+            ImmutableMap.of(ENCRYPT, new AtomicLong(), DECRYPT, new AtomicLong());
+
+    /**
+     * @param name           Name of the cache, added as a dimension to the reported metrics
+     * @param maxSize        Maximum number of encrypt entries and decrypt entries held by the cache
+     * @param maxAge         Maximum amount of time an entry is held by the cache
+     * @param maxAgeUnit     Time unit of the max age
+     * @param metricsService Service used to report the cache metrics
+     */
+    public MeteredCryptoMaterialsCache(String name,
+                                       int maxSize,
+                                       long maxAge,
+                                       TimeUnit maxAgeUnit,
+                                       MetricsService metricsService) {
+
+        this(name, maxSize, 0, maxAge, maxAgeUnit, metricsService);
+    }
+
+    /**
+     * @param name              Name of the cache, added as a dimension to the reported metrics
+     * @param maxSize           Maximum number of encrypt entries and decrypt entries held by the cache
+     * @param maxMemoryInBytes  When greater than zero, entries are bounded by their estimated size in bytes instead of
+     *                          by their number, separately for encrypt entries and decrypt entries
+     * @param maxAge            Maximum amount of time an entry is held by the cache
+     * @param maxAgeUnit        Time unit of the max age
+     * @param metricsService    Service used to report the cache metrics
+     */
+    public MeteredCryptoMaterialsCache(String name,
+                                       int maxSize,
+                                       long maxMemoryInBytes,
+                                       long maxAge,
+                                       TimeUnit maxAgeUnit,
+                                       MetricsService metricsService) {
+
+        this.name = name;
+        this.metricsService = metricsService;
+
+        CacheBuilder<ByteBuffer, EncryptEntry> encryptBuilder = CacheBuilder.newBuilder()
+                .expireAfterWrite(maxAge, maxAgeUnit)
+                .removalListener((RemovalNotification<ByteBuffer, EncryptEntry> notification) -> {
+                    if (notification.wasEvicted()) {
+                        incrementCounter(EVICTION, ENCRYPT);
+                    }
+                });
+        CacheBuilder<ByteBuffer, DecryptEntry> decryptBuilder = CacheBuilder.newBuilder()
+                .expireAfterWrite(maxAge, maxAgeUnit)
+                .removalListener((RemovalNotification<ByteBuffer, DecryptEntry> notification) -> {
+                    if (notification.wasEvicted()) {
+                        incrementCounter(EVICTION, DECRYPT);
+                    }
+                    notification.getValue().destroy();
+                });
+
+        if (maxMemoryInBytes > 0) {
+            encryptBuilder.maximumWeight(maxMemoryInBytes).weigher((key, entry) -> entry.estimatedSizeInBytes);
+            decryptBuilder.maximumWeight(maxMemoryInBytes).weigher((key, entry) -> entry.estimatedSizeInBytes);
+        } else {
+            encryptBuilder.maximumSize(maxSize);
+            decryptBuilder.maximumSize(maxSize);
+        }
+
+        this.encryptEntries = encryptBuilder.build();
+        this.decryptEntries = decryptBuilder.build();
+    }
+
+    @Override
+    public EncryptCacheEntry getEntryForEncrypt(byte[] cacheId, UsageStats usageIncrement) {
+        EncryptEntry entry = encryptEntries.getIfPresent(ByteBuffer.wrap(cacheId));
+        if (entry == null) {
+            recordMiss(ENCRYPT);
+            return null;
+        }
+
+        recordHit(ENCRYPT);
+        return entry.snapshot(entry.addUsage(usageIncrement));
+    }
+
+    @Override
+    public EncryptCacheEntry putEntryForEncrypt(byte[] cacheId,
+                                                EncryptionMaterials encryptionMaterials,
+                                                CacheHint hint,
+                                                UsageStats initialUsage) {
+
+        ByteBuffer key = ByteBuffer.wrap(cacheId.clone());
+        EncryptEntry entry = new EncryptEntry(key, encryptionMaterials, initialUsage);
+        encryptEntries.put(key, entry);
+        return entry.snapshot(initialUsage);
+    }
+
+    @Override
+    public DecryptCacheEntry getEntryForDecrypt(byte[] cacheId) {
+        DecryptEntry entry = decryptEntries.getIfPresent(ByteBuffer.wrap(cacheId));
+        if (entry == null) {
+            recordMiss(DECRYPT);
+            return null;
+        }
+
+        recordHit(DECRYPT);
+        return entry;
+    }
+
+    @Override
+    public void putEntryForDecrypt(byte[] cacheId, DecryptionMaterials decryptionMaterials, CacheHint hint) {
+        ByteBuffer key = ByteBuffer.wrap(cacheId.clone());
+        decryptEntries.put(key, new DecryptEntry(key, decryptionMaterials));
+    }
+
+    /**
+     * @return The approximate number of encrypt and decrypt entries currently held by the cache
+     */
+    public long size() {
+        return encryptEntries.size() + decryptEntries.size();
+    }
+
+    /**
+     * Report the hit rate of each operation since the last time this method was called, along with the current
+     * number of entries.  Meant to be called on a fixed schedule, e.g. once a minute.
+     */
+    public void reportMetrics() {
+        reportMetrics(ENCRYPT, encryptEntries.size());
+        reportMetrics(DECRYPT, decryptEntries.size());
+    }
+
+    private void reportMetrics(String operation, long size) {
+        long hits = hitsSinceLastReport.get(operation).getAndSet(0);
+        long misses = missesSinceLastReport.get(operation).getAndSet(0);
+        double hitRate = hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+
+        Map<String, String> dimensions = ImmutableMap.of("cache", name, "operation", operation);
+        metricsService.setDoubleGaugeValue(HIT_RATE, hitRate, dimensions);
+        metricsService.setLongGaugeValue(SIZE, size, dimensions);
+    }
+
+    private void recordHit(String operation) {
+        hitsSinceLastReport.get(operation).incrementAndGet();
+        incrementCounter(HIT, operation);
+    }
+
+    private void recordMiss(String operation) {
+        missesSinceLastReport.get(operation).incrementAndGet();
+        incrementCounter(MISS, operation);
+    }
+
+    private void incrementCounter(String metricName, String operation) {
+        metricsService.getOrCreateCounter(metricName, ImmutableMap.of("cache", name, "operation", operation)).inc();
+    }
+
+    private static int estimateSizeInBytes(Key key) {
+        if (key == null) {
+            return 0;
+        }
+        byte[] encoded = key.getEncoded();
+        return encoded == null ? 0 : encoded.length;
+    }
+
+    private static int estimateSizeInBytes(EncryptedDataKey encryptedDataKey) {
+        return encryptedDataKey.getEncryptedDataKey().length + encryptedDataKey.getProviderInformation().length;
+    }
+
+    /**
+     * An encrypt entry with usage stats that are shared by every caller that gets the entry from the cache.
+     */
+    private class EncryptEntry {
+        private final ByteBuffer key;
+        private final EncryptionMaterials result;
+        private final long entryCreationTime = System.currentTimeMillis();
+        private final int estimatedSizeInBytes;
+        private UsageStats usageStats;
+
+        EncryptEntry(ByteBuffer key, EncryptionMaterials result, UsageStats initialUsage) {
+            this.key = key;
+            this.result = result;
+            this.usageStats = initialUsage;
+
+            int size = ENTRY_OVERHEAD_IN_BYTES + key.capacity() + estimateSizeInBytes(result.getCleartextDataKey());
+            if (result.getEncryptedDataKeys() != null) {
+                for (EncryptedDataKey encryptedDataKey : result.getEncryptedDataKeys()) {
+                    size += estimateSizeInBytes(encryptedDataKey);
+                }
+            }
+            this.estimatedSizeInBytes = size;
+        }
+
+        synchronized UsageStats addUsage(UsageStats usageIncrement) {
+            usageStats = usageStats.add(usageIncrement);
+            return usageStats;
+        }
+
+        /**
+         * The caching materials manager checks the returned usage stats against its limits, so each caller gets an
+         * immutable view of the stats as they were after its own usage was added.
+         */
+        EncryptCacheEntry snapshot(UsageStats usageStatsAfterIncrement) {
+            return new EncryptCacheEntry() {
+                @Override
+                public UsageStats getUsageStats() {
+                    return usageStatsAfterIncrement;
+                }
+
+                @Override
+                public long getEntryCreationTime() {
+                    return entryCreationTime;
+                }
+
+                @Override
+                public EncryptionMaterials getResult() {
+                    return result;
+                }
+
+                @Override
+                public void invalidate() {
+                    encryptEntries.asMap().remove(key, EncryptEntry.this);
+                }
+            };
+        }
+    }
+
+    /**
+     * A decrypt entry holding the plaintext data key for a set of encrypted data keys.
+     */
+    private class DecryptEntry implements DecryptCacheEntry {
+        private final ByteBuffer key;
+        private final DecryptionMaterials result;
+        private final long entryCreationTime = System.currentTimeMillis();
+        private final int estimatedSizeInBytes;
+
+        DecryptEntry(ByteBuffer key, DecryptionMaterials result) {
+            this.key = key;
+            this.result = result;
+
+            int size = ENTRY_OVERHEAD_IN_BYTES + key.capacity() + estimateSizeInBytes(result.getTrailingSignatureKey());
+            if (result.getDataKey() != null) {
+                size += estimateSizeInBytes(result.getDataKey().getKey()) + estimateSizeInBytes(result.getDataKey());
+            }
+            this.estimatedSizeInBytes = size;
+        }
+
+        @Override
+        public DecryptionMaterials getResult() {
+            return result;
+        }
+
+        @Override
+        public void invalidate() {
+            decryptEntries.asMap().remove(key, this);
+        }
+
+        @Override
+        public long getEntryCreationTime() {
+            return entryCreationTime;
+        }
+
+        /**
+         * Best effort attempt to clear the plaintext data key once the entry has left the cache.  Key implementations
+         * that do not support being destroyed (e.g. SecretKeySpec) are left for the garbage collector.
+         */
+        void destroy() {
+            if (result.getDataKey() == null) {
+                return;
+            }
+            SecretKey dataKey = result.getDataKey().getKey();
+            if (dataKey == null || dataKey.isDestroyed()) {
+                return;
+            }
+            try {
+                dataKey.destroy();
+            } catch (DestroyFailedException e) {
+                log.trace("Data key implementation {} does not support being destroyed", dataKey.getClass().getName());
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nike.cerberus.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded, TTL limited cache of safe deposit box IDs by path, which almost never change, so that every secure data
+ * request does not need a database lookup to find the SDB it is for.
+ * <p>
+ * Paths that do not belong to any SDB are also cached, for a shorter time, so that requests for non-existent SDBs,
+ * e.g. from scanners, do not all reach the database. Paths are compared case-insensitively, as by the database.
+ * <p>
+ * Paths are invalidated when this instance creates, restores or deletes an SDB. Changes made on other instances are
+ * seen after at most the TTL, or the negative TTL for newly created SDBs.
+ */
+@Singleton
+public class SafeDepositBoxIdCache {
+
+    private static final Logger log = LoggerFactory.getLogger(SafeDepositBoxIdCache.class);
+
+    private final boolean enabled;
+    private final Cache<String, String> idsByPath;
+    private final Cache<String, Boolean> missingPaths;
+
+    /**
+     * @param enabled              When false, nothing is cached
+     * @param maxSize              Maximum number of paths held by each of the positive and negative caches
+     * @param ttlInSeconds         Maximum amount of time the ID of an SDB is cached
+     * @param negativeTtlInSeconds Maximum amount of time a path that does not belong to any SDB is cached
+     */
+    @Inject
+    public SafeDepositBoxIdCache(@Named("cms.sdb.idCache.enabled") boolean enabled,
+                                 @Named("cms.sdb.idCache.maxSize") int maxSize,
+                                 @Named("cms.sdb.idCache.ttlInSeconds") long ttlInSeconds,
+                                 @Named("cms.sdb.idCache.negativeTtlInSeconds") long negativeTtlInSeconds) {
+
+        this.enabled = enabled;
+        this.idsByPath = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlInSeconds, TimeUnit.SECONDS)
+                .build();
+        this.missingPaths = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(negativeTtlInSeconds, TimeUnit.SECONDS)
+                .build();
+
+        if (enabled) {
+            log.info("SDB ID caching enabled, maxSize: {}, ttlInSeconds: {}, negativeTtlInSeconds: {}",
+                    maxSize, ttlInSeconds, negativeTtlInSeconds);
+        }
+    }
+
+    /**
+     * @return the ID of the SDB with the given base path, or null if not cached
+     */
+    public String getIfPresent(String path) {
+        return enabled ? idsByPath.getIfPresent(toKey(path)) : null;
+    }
+
+    /**
+     * @return true if the path was recently found not to belong to any SDB
+     */
+    public boolean isKnownMissing(String path) {
+        return enabled && missingPaths.getIfPresent(toKey(path)) != null;
+    }
+
+    public void put(String path, String sdbId) {
+        if (enabled) {
+            idsByPath.put(toKey(path), sdbId);
+        }
+    }
+
+    public void putMissing(String path) {
+        if (enabled) {
+            missingPaths.put(toKey(path), Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Forget the path, e.g. because the SDB it belongs to was created or deleted.
+     */
+    public void invalidate(String path) {
+        if (enabled) {
+            idsByPath.invalidate(toKey(path));
+            missingPaths.invalidate(toKey(path));
+        }
+    }
+
+    private static String toKey(String path) {
+        return path.toLowerCase();
+    }
+}
@@ -0,0 +1,403 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nike.cerberus.cache;
+
+import com.nike.cerberus.dao.PermissionsDao;
+import com.nike.cerberus.dao.RoleDao;
+import com.nike.cerberus.record.RoleRecord;
+import com.nike.cerberus.record.SdbPermissionRecord;
+import com.nike.cerberus.record.SdbPermissionRevocationRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * An in-memory index of the roles that user groups and IAM principals have on each safe deposit box, so that
+ * permission checks can be answered with a few hash lookups instead of joining four tables.
+ * <p>
+ * The index is rebuilt from the USER_GROUP_PERMISSIONS and AWS_IAM_ROLE_PERMISSIONS tables on an interval, and is
+ * updated in place once this instance commits a grant, update or revocation. It is only ever used to allow access:
+ * when it does not know of a matching permission, or has not been built yet, callers fall back to the database. So
+ * permissions granted on other instances are honoured immediately. Revocations are also logged to the
+ * SDB_PERMISSION_REVOCATIONS table, which every instance polls to drop the affected SDBs from its index until the next
+ * rebuild, so permissions revoked on other instances are honoured within roughly one poll interval.
+ * <p>
+ * User group names and IAM principal ARNs are compared case-insensitively by the database, so they are keyed by their
+ * lower cased form, which lets case-insensitive checks, and updates made with a differently cased name, find them
+ * directly. Revocations are replayed on top of the next rebuild, as it may have read the revoked permission before the
+ * revoking transaction committed.
+ */
+@Singleton
+public class SdbPermissionIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(SdbPermissionIndex.class);
+
+    private static final int MAX_REVOCATIONS_PER_QUERY = 1000;
+
+    private final boolean enabled;
+    private final PermissionsDao permissionsDao;
+    private final RoleDao roleDao;
+    private final int commitGraceInSeconds;
+    private final int revocationRetentionInHours;
+
+    /**
+     * SDB ID to the permissions on that SDB, null until the first rebuild completes
+     */
+    private volatile Map<String, SdbPermissions> permissionsBySdbId;
+
+    private volatile Map<String, String> roleIdsByName = Collections.emptyMap();
+
+    private final Queue<Revocation> revocations = new ConcurrentLinkedQueue<>();
+
+    private long lastRebuildStartedAtNanos = System.nanoTime();
+
+    /**
+     * The sequence of the last logged revocation that has been processed, and after which no revocation can still be
+     * uncommitted. Null until the first successful poll.
+     */
+    private Long lastSettledRevocationSequence;
+
+    /**
+     * @param enabled                   When false, the index is never built and every check misses
+     * @param refreshIntervalInSeconds  How often the index is rebuilt from the database
+     * @param pollIntervalInMillis      How often the revocation log is polled for revocations made by any instance
+     * @param commitGraceInSeconds      How long a logged revocation may take to commit after its insert
+     * @param revocationRetentionInHours How long logged revocations are kept
+     */
+    @Inject
+    public SdbPermissionIndex(@Named("cms.permissions.index.enabled") boolean enabled,
+                              @Named("cms.permissions.index.refreshIntervalInSeconds") long refreshIntervalInSeconds,
+                              @Named("cms.permissions.index.revocation.pollIntervalInMillis") long pollIntervalInMillis,
+                              @Named("cms.permissions.index.revocation.commitGraceInSeconds") int commitGraceInSeconds,
+                              @Named("cms.permissions.index.revocation.retentionInHours") int revocationRetentionInHours,
+                              PermissionsDao permissionsDao,
+                              RoleDao roleDao) {
+
+        this.enabled = enabled;
+        this.permissionsDao = permissionsDao;
+        this.roleDao = roleDao;
+        this.commitGraceInSeconds = commitGraceInSeconds;
+        this.revocationRetentionInHours = revocationRetentionInHours;
+
+        if (enabled) {
+            log.info("SDB permission index enabled, refreshIntervalInSeconds: {}", refreshIntervalInSeconds);
+            ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "sdb-permission-index-rebuilder");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleWithFixedDelay(this::rebuildSafely, 0, refreshIntervalInSeconds, TimeUnit.SECONDS);
+            executor.scheduleWithFixedDelay(this::pollRevocationsSafely,
+                    pollIntervalInMillis, pollIntervalInMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void rebuildSafely() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            log.error("Failed to rebuild the SDB permission index", e);
+        }
+    }
+
+    private void pollRevocationsSafely() {
+        try {
+            pollRevocations();
+        } catch (Exception e) {
+            log.error("Failed to poll for revoked SDB permissions", e);
+        }
+    }
+
+    /**
+     * Replace the index with the current content of the permission tables.
+     */
+    protected synchronized void rebuild() {
+        long startedAtNanos = System.nanoTime();
+
+        if (lastSettledRevocationSequence == null) {
+            // Settled revocations were committed before this rebuild reads the tables, so they are already reflected
+            lastSettledRevocationSequence = permissionsDao
+                    .getLastSettledSdbPermissionRevocationSequence(commitGraceInSeconds).orElse(0L);
+        }
+
+        Map<String, String> newRoleIdsByName = roleDao.getAllRoles().stream()
+                .collect(Collectors.toMap(RoleRecord::getName, RoleRecord::getId));
+
+        Map<String, SdbPermissions> newPermissionsBySdbId = new ConcurrentHashMap<>();
+        for (SdbPermissionRecord record : permissionsDao.getAllUserGroupPermissions()) {
+            newPermissionsBySdbId.computeIfAbsent(record.getSdboxId(), id -> new SdbPermissions())
+                    .userGroupRoles.put(toKey(record.getPrincipalName()),
+                            new PrincipalRole(record.getPrincipalName(), record.getRoleId()));
+        }
+        for (SdbPermissionRecord record : permissionsDao.getAllIamPrincipalPermissions()) {
+            newPermissionsBySdbId.computeIfAbsent(record.getSdboxId(), id -> new SdbPermissions())
+                    .iamPrincipalRoles.put(toKey(record.getPrincipalName()),
+                            new PrincipalRole(record.getPrincipalName(), record.getRoleId()));
+        }
+
+        roleIdsByName = newRoleIdsByName;
+        permissionsBySdbId = newPermissionsBySdbId;
+
+        // Revocations from before the previous rebuild started were committed before this rebuild read the tables
+        Iterator<Revocation> iterator = revocations.iterator();
+        while (iterator.hasNext()) {
+            Revocation revocation = iterator.next();
+            if (revocation.revokedAtNanos - lastRebuildStartedAtNanos < 0) {
+                iterator.remove();
+            } else {
+                revocation.applyTo(newPermissionsBySdbId);
+            }
+        }
+        lastRebuildStartedAtNanos = startedAtNanos;
+
+        log.debug("Rebuilt the SDB permission index for {} SDBs in {} ms", newPermissionsBySdbId.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAtNanos));
+
+        permissionsDao.deleteSdbPermissionRevocationsOlderThan(revocationRetentionInHours);
+    }
+
+    /**
+     * Drop every SDB that had permissions revoked, by any instance, since the last poll, so that checks against it go
+     * to the database until the next rebuild.
+     * <p>
+     * Does nothing until the first rebuild has started. Revocations that are not settled yet are applied, but the
+     * cursor is not moved past them, so that a revocation with a lower sequence that commits late is still picked up
+     * by the next poll.
+     */
+    protected synchronized void pollRevocations() {
+        if (lastSettledRevocationSequence == null) {
+            return;
+        }
+
+        List<SdbPermissionRevocationRecord> loggedRevocations;
+        do {
+            loggedRevocations = permissionsDao.getSdbPermissionRevocationsAfter(lastSettledRevocationSequence,
+                    commitGraceInSeconds, MAX_REVOCATIONS_PER_QUERY);
+
+            for (SdbPermissionRevocationRecord loggedRevocation : loggedRevocations) {
+                revoke(new Revocation(loggedRevocation.getSdboxId(), SdbPermissions::clear));
+            }
+
+            for (SdbPermissionRevocationRecord loggedRevocation : loggedRevocations) {
+                if (!loggedRevocation.getSettled()) {
+                    return;
+                }
+                lastSettledRevocationSequence = loggedRevocation.getSequence();
+            }
+        } while (loggedRevocations.size() == MAX_REVOCATIONS_PER_QUERY);
+    }
+
+    /**
+     * @param sdbId         The SDB to check
+     * @param userGroups    The user groups of the principal
+     * @param roleNames     The roles, any of which allows the action
+     * @param caseSensitive Whether user group names must match exactly
+     * @return true if the index knows that one of the user groups has one of the roles on the SDB, false if the
+     * database must be checked
+     */
+    public boolean doesUserGroupHaveRole(String sdbId, Collection<String> userGroups, Set<String> roleNames,
+                                         boolean caseSensitive) {
+        SdbPermissions permissions = getSdbPermissions(sdbId);
+        if (permissions == null) {
+            return false;
+        }
+
+        Set<String> roleIds = getRoleIds(roleNames);
+        for (String userGroup : userGroups) {
+            PrincipalRole userGroupRole = permissions.userGroupRoles.get(toKey(userGroup));
+            if (userGroupRole != null
+                    && (!caseSensitive || userGroupRole.name.equals(userGroup))
+                    && roleIds.contains(userGroupRole.roleId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param sdbId            The SDB to check
+     * @param iamPrincipalArns The ARNs the principal is known by, e.g. its own ARN and the root ARN of its account
+     * @param roleNames        The roles, any of which allows the action
+     * @return true if the index knows that one of the ARNs has one of the roles on the SDB, false if the database must
+     * be checked
+     */
+    public boolean doesIamPrincipalHaveRole(String sdbId, Collection<String> iamPrincipalArns, Set<String> roleNames) {
+        SdbPermissions permissions = getSdbPermissions(sdbId);
+        if (permissions == null) {
+            return false;
+        }
+
+        Set<String> roleIds = getRoleIds(roleNames);
+        for (String iamPrincipalArn : iamPrincipalArns) {
+            PrincipalRole iamPrincipalRole = permissions.iamPrincipalRoles.get(toKey(iamPrincipalArn));
+            if (iamPrincipalRole != null
+                    && iamPrincipalRole.name.equals(iamPrincipalArn)
+                    && roleIds.contains(iamPrincipalRole.roleId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Record that the user group, named as stored in the database, was granted the role on the SDB or had its role
+     * on the SDB changed.
+     */
+    public void putUserGroupRole(String sdbId, String userGroup, String roleId) {
+        Map<String, SdbPermissions> current = permissionsBySdbId;
+        if (current != null) {
+            current.computeIfAbsent(sdbId, id -> new SdbPermissions())
+                    .userGroupRoles.put(toKey(userGroup), new PrincipalRole(userGroup, roleId));
+        }
+    }
+
+    /**
+     * Record that the IAM principal, with its ARN as stored in the database, was granted the role on the SDB or had
+     * its role on the SDB changed.
+     */
+    public void putIamPrincipalRole(String sdbId, String iamPrincipalArn, String roleId) {
+        Map<String, SdbPermissions> current = permissionsBySdbId;
+        if (current != null) {
+            current.computeIfAbsent(sdbId, id -> new SdbPermissions())
+                    .iamPrincipalRoles.put(toKey(iamPrincipalArn), new PrincipalRole(iamPrincipalArn, roleId));
+        }
+    }
+
+    public void removeUserGroup(String sdbId, String userGroup) {
+        revoke(new Revocation(sdbId, permissions -> permissions.userGroupRoles.remove(toKey(userGroup))));
+    }
+
+    public void removeIamPrincipal(String sdbId, String iamPrincipalArn) {
+        revoke(new Revocation(sdbId, permissions -> permissions.iamPrincipalRoles.remove(toKey(iamPrincipalArn))));
+    }
+
+    public void removeAllUserGroups(String sdbId) {
+        revoke(new Revocation(sdbId, permissions -> permissions.userGroupRoles.clear()));
+    }
+
+    public void removeAllIamPrincipals(String sdbId) {
+        revoke(new Revocation(sdbId, permissions -> permissions.iamPrincipalRoles.clear()));
+    }
+
+    /**
+     * Log that permissions on the SDB are being revoked, so that every instance drops it from its index once the
+     * revocation commits. Must be called in the transaction that revokes the permissions.
+     */
+    public void logRevocation(String sdbId) {
+        if (enabled) {
+            permissionsDao.createSdbPermissionRevocation(sdbId);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    private void revoke(Revocation revocation) {
+        if (!enabled && permissionsBySdbId == null) {
+            return;
+        }
+        // Queue it before reading the current index, so that a rebuild that swaps the index in between replays it
+        revocations.add(revocation);
+        Map<String, SdbPermissions> current = permissionsBySdbId;
+        if (current != null) {
+            revocation.applyTo(current);
+        }
+    }
+
+    private SdbPermissions getSdbPermissions(String sdbId) {
+        Map<String, SdbPermissions> current = permissionsBySdbId;
+        return current == null ? null : current.get(sdbId);
+    }
+
+    private Set<String> getRoleIds(Set<String> roleNames) {
+        Map<String, String> current = roleIdsByName;
+        return roleNames.stream()
+                .map(current::get)
+                .filter(roleId -> roleId != null)
+                .collect(Collectors.toSet());
+    }
+
+    private static String toKey(String principalName) {
+        return principalName.toLowerCase();
+    }
+
+    private static final class SdbPermissions {
+
+        /**
+         * Lower cased user group name to the role of that user group
+         */
+        private final Map<String, PrincipalRole> userGroupRoles = new ConcurrentHashMap<>();
+
+        /**
+         * Lower cased IAM principal ARN to the role of that IAM principal
+         */
+        private final Map<String, PrincipalRole> iamPrincipalRoles = new ConcurrentHashMap<>();
+
+        private void clear() {
+            userGroupRoles.clear();
+            iamPrincipalRoles.clear();
+        }
+    }
+
+    private static final class PrincipalRole {
+
+        private final String name;
+        private final String roleId;
+
+        private PrincipalRole(String name, String roleId) {
+            this.name = name;
+            this.roleId = roleId;
+        }
+    }
+
+    private static final class Revocation {
+
+        private final long revokedAtNanos = System.nanoTime();
+        private final String sdbId;
+        private final Consumer<SdbPermissions> removal;
+
+        private Revocation(String sdbId, Consumer<SdbPermissions> removal) {
+            this.sdbId = sdbId;
+            this.removal = removal;
+        }
+
+        private void applyTo(Map<String, SdbPermissions> permissionsBySdbId) {
+            SdbPermissions permissions = permissionsBySdbId.get(sdbId);
+            if (permissions != null) {
+                removal.accept(permissions);
+            }
+        }
+    }
+}
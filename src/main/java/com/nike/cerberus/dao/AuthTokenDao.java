@@ -18,10 +18,13 @@ package com.nike.cerberus.dao;
 
 import com.nike.cerberus.mapper.AuthTokenMapper;
 import com.nike.cerberus.record.AuthTokenRecord;
+import com.nike.cerberus.record.RevokedTokenRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import java.time.OffsetDateTime;
+import java.util.List;
 import java.util.Optional;
 
 public class AuthTokenDao {
@@ -43,8 +46,12 @@ public class AuthTokenDao {
         return Optional.ofNullable(authTokenMapper.getAuthTokenFromHash(hash));
     }
 
-    public void deleteAuthTokenFromHash(String hash) {
-        authTokenMapper.deleteAuthTokenFromHash(hash);
+    public Optional<OffsetDateTime> getLatestExpiryOfAuthTokensWithScheme(String hashScheme) {
+        return Optional.ofNullable(authTokenMapper.getLatestExpiryOfAuthTokensWithScheme(hashScheme));
+    }
+
+    public int deleteAuthTokenFromHash(String hash) {
+        return authTokenMapper.deleteAuthTokenFromHash(hash);
     }
 
     public int deleteExpiredTokens(int maxDelete, int batchSize, int batchPauseTimeInMillis) {
@@ -64,4 +71,20 @@ public class AuthTokenDao {
         } while (cur > 0 && numberOfDeletedTokens < maxDelete);
         return numberOfDeletedTokens;
     }
+
+    public int createRevokedToken(String hash) {
+        return authTokenMapper.createRevokedToken(hash);
+    }
+
+    public List<RevokedTokenRecord> getRevokedTokensAfter(long sequence, int commitGraceInSeconds, int limit) {
+        return authTokenMapper.getRevokedTokensAfter(sequence, commitGraceInSeconds, limit);
+    }
+
+    public Optional<Long> getLastSettledRevokedTokenSequence(int commitGraceInSeconds) {
+        return Optional.ofNullable(authTokenMapper.getLastSettledRevokedTokenSequence(commitGraceInSeconds));
+    }
+
+    public int deleteRevokedTokensOlderThan(int retentionInHours) {
+        return authTokenMapper.deleteRevokedTokensOlderThan(retentionInHours);
+    }
 }
@@ -82,6 +82,13 @@ public class AwsIamRoleDao {
         return awsIamRoleMapper.updateIamRoleKmsKey(record);
     }
 
+    /**
+     * Sets the last validated timestamp of many KMS key records, by record ID, with one statement.
+     */
+    public int updateIamRoleKmsKeysLastValidated(final List<AwsIamRoleKmsKeyRecord> records, final String lastUpdatedBy) {
+        return awsIamRoleMapper.updateIamRoleKmsKeysLastValidated(records, lastUpdatedBy);
+    }
+
     public List<AwsIamRoleKmsKeyRecord> getInactiveOrOrphanedKmsKeys(final OffsetDateTime keyInactiveDateTime) {
         return awsIamRoleMapper.getInactiveOrOrphanedKmsKeys(keyInactiveDateTime);
     }
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nike.cerberus.dao;
+
+import com.nike.cerberus.mapper.JobCheckpointMapper;
+import com.nike.cerberus.record.JobCheckpointRecord;
+
+import javax.inject.Inject;
+import java.time.OffsetDateTime;
+import java.util.Optional;
+
+public class JobCheckpointDao {
+
+    private final JobCheckpointMapper jobCheckpointMapper;
+
+    @Inject
+    public JobCheckpointDao(JobCheckpointMapper jobCheckpointMapper) {
+        this.jobCheckpointMapper = jobCheckpointMapper;
+    }
+
+    public Optional<JobCheckpointRecord> getCheckpoint(String name) {
+        return Optional.ofNullable(jobCheckpointMapper.getCheckpoint(name));
+    }
+
+    /**
+     * Saves the checkpoint, if the given lock is still held with the given fencing token, so that a job that lost
+     * its lease cannot overwrite the progress of the instance that took over.
+     *
+     * @return true if the checkpoint was saved, false if the lease of the lock was lost
+     */
+    public boolean saveCheckpoint(String name,
+                                  OffsetDateTime checkpointTs,
+                                  String checkpointId,
+                                  String lockName,
+                                  long fencingToken,
+                                  OffsetDateTime now) {
+
+        return jobCheckpointMapper.saveCheckpoint(new JobCheckpointRecord()
+                .setName(name)
+                .setCheckpointTs(checkpointTs)
+                .setCheckpointId(checkpointId)
+                .setLastUpdatedTs(now), lockName, fencingToken) > 0;
+    }
+
+    /**
+     * Deletes the checkpoint, if the given lock is still held with the given fencing token.
+     */
+    public void deleteCheckpoint(String name, String lockName, long fencingToken) {
+        jobCheckpointMapper.deleteCheckpoint(name, lockName, fencingToken);
+    }
+}
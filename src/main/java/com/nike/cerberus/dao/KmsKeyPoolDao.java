@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nike.cerberus.dao;
+
+import com.nike.cerberus.mapper.KmsKeyPoolMapper;
+import com.nike.cerberus.record.KmsKeyPoolRecord;
+
+import javax.inject.Inject;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public class KmsKeyPoolDao {
+
+    private final KmsKeyPoolMapper kmsKeyPoolMapper;
+
+    @Inject
+    public KmsKeyPoolDao(KmsKeyPoolMapper kmsKeyPoolMapper) {
+        this.kmsKeyPoolMapper = kmsKeyPoolMapper;
+    }
+
+    public int createKey(KmsKeyPoolRecord record) {
+        return kmsKeyPoolMapper.createKey(record);
+    }
+
+    /**
+     * Claims the oldest unclaimed key of the given region.
+     *
+     * @param awsRegion The region of the key
+     * @param claimedBy A unique ID of the claim, e.g. the ID of the record the key will be assigned to
+     * @param claimedTs The time of the claim
+     * @return The claimed key, empty when the pool of the region has no unclaimed keys
+     */
+    public Optional<KmsKeyPoolRecord> claimKey(String awsRegion, String claimedBy, OffsetDateTime claimedTs) {
+        if (kmsKeyPoolMapper.claimKey(awsRegion, claimedBy, claimedTs) == 0) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(kmsKeyPoolMapper.getKeyClaimedBy(claimedBy));
+    }
+
+    public int countUnclaimedKeys(String awsRegion) {
+        return kmsKeyPoolMapper.countUnclaimedKeys(awsRegion);
+    }
+
+    public List<KmsKeyPoolRecord> getKeysClaimedBefore(OffsetDateTime claimedTs) {
+        return kmsKeyPoolMapper.getKeysClaimedBefore(claimedTs);
+    }
+
+    public int deleteKey(String id) {
+        return kmsKeyPoolMapper.deleteKey(id);
+    }
+}
@@ -19,6 +19,7 @@ package com.nike.cerberus.dao;
 import com.nike.cerberus.mapper.LockMapper;
 
 import javax.inject.Inject;
+import java.util.Optional;
 
 public class LockDao {
 
@@ -29,11 +30,30 @@ public class LockDao {
         this.lockMapper = lockMapper;
     }
 
-    public Integer getLock(String name) {
-        return lockMapper.getLock(name);
+    /**
+     * Acquires the lease of the named lock, if no one holds it or the lease of its holder has expired.
+     *
+     * @return The fencing token of the new lease, or empty if someone else holds the lease
+     */
+    public Optional<Long> acquireLease(String name, String holder, int leaseDurationInSeconds) {
+        if (lockMapper.createLease(name, holder, leaseDurationInSeconds) == 0
+                && lockMapper.takeOverExpiredLease(name, holder, leaseDurationInSeconds) == 0) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(lockMapper.getFencingToken(name, holder));
     }
 
-    public Integer releaseLock(String jobName) {
-        return lockMapper.releaseLock(jobName);
+    /**
+     * @return true if the lease was extended, false if it expired or was taken over
+     */
+    public boolean renewLease(String name, String holder, long fencingToken, int leaseDurationInSeconds) {
+        return lockMapper.renewLease(name, holder, fencingToken, leaseDurationInSeconds) > 0;
+    }
+
+    /**
+     * @return true if the lease was released, false if it was no longer held
+     */
+    public boolean releaseLease(String name, String holder, long fencingToken) {
+        return lockMapper.expireLease(name, holder, fencingToken) > 0;
     }
 }
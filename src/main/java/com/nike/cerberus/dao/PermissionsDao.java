@@ -17,8 +17,12 @@
 package com.nike.cerberus.dao;
 
 import com.nike.cerberus.mapper.PermissionsMapper;
+import com.nike.cerberus.record.SdbPermissionRecord;
+import com.nike.cerberus.record.SdbPermissionRevocationRecord;
 
 import javax.inject.Inject;
+import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 
 public class PermissionsDao {
@@ -46,4 +50,30 @@ public class PermissionsDao {
     public Boolean doesUserHavePermsForRoleAndSdbCaseInsensitive(String sdbId, Set<String> rolesThatAllowPermission, Set<String> userGroupsThatPrincipalBelongsTo) {
         return permissionsMapper.doesUserHavePermsForRoleAndSdbCaseInsensitive(sdbId, rolesThatAllowPermission, userGroupsThatPrincipalBelongsTo);
     }
+
+    public List<SdbPermissionRecord> getAllUserGroupPermissions() {
+        return permissionsMapper.getAllUserGroupPermissions();
+    }
+
+    public List<SdbPermissionRecord> getAllIamPrincipalPermissions() {
+        return permissionsMapper.getAllIamPrincipalPermissions();
+    }
+
+    public int createSdbPermissionRevocation(String sdbId) {
+        return permissionsMapper.createSdbPermissionRevocation(sdbId);
+    }
+
+    public List<SdbPermissionRevocationRecord> getSdbPermissionRevocationsAfter(long sequence,
+                                                                                int commitGraceInSeconds,
+                                                                                int limit) {
+        return permissionsMapper.getSdbPermissionRevocationsAfter(sequence, commitGraceInSeconds, limit);
+    }
+
+    public Optional<Long> getLastSettledSdbPermissionRevocationSequence(int commitGraceInSeconds) {
+        return Optional.ofNullable(permissionsMapper.getLastSettledSdbPermissionRevocationSequence(commitGraceInSeconds));
+    }
+
+    public int deleteSdbPermissionRevocationsOlderThan(int retentionInHours) {
+        return permissionsMapper.deleteSdbPermissionRevocationsOlderThan(retentionInHours);
+    }
 }
@@ -19,13 +19,20 @@ package com.nike.cerberus.dao;
 import com.nike.cerberus.domain.SecureDataType;
 import com.nike.cerberus.mapper.SecureDataMapper;
 import com.nike.cerberus.record.DataKeyInfo;
+import com.nike.cerberus.record.ResolvedSecureDataRecord;
+import com.nike.cerberus.record.SecureDataPathNodeRecord;
 import com.nike.cerberus.record.SecureDataRecord;
 
 import javax.inject.Inject;
+import java.io.InputStream;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 public class SecureDataDao {
 
@@ -56,6 +63,7 @@ public class SecureDataDao {
                 .setLastUpdatedBy(lastUpdatedBy)
                 .setLastUpdatedTs(lastUpdatedTs)
                 .setLastRotatedTs(lastUpdatedTs) // This is intentional
+                .setKeyMaterialTs(lastUpdatedTs)
         );
     }
 
@@ -84,7 +92,66 @@ public class SecureDataDao {
                 .setLastUpdatedTs(lastUpdatedTs)
                 .setLastUpdatedBy(lastUpdatedBy)
                 .setLastRotatedTs(lastRotatedTs)
+                .setKeyMaterialTs(lastUpdatedTs)
+        );
+    }
 
+    /**
+     * Insert secure data whose encrypted payload is streamed to the database rather than held in memory.
+     */
+    public void writeSecureData(String sdbId, String path, InputStream encryptedPayload, int topLevelKVPairCount,
+                                SecureDataType type,
+                                int sizeInBytes,
+                                String createdBy,
+                                OffsetDateTime createdTs,
+                                String lastUpdatedBy,
+                                OffsetDateTime lastUpdatedTs) {
+        secureDataMapper.writeSecureDataFromStream(new SecureDataRecord()
+                .setId(path.hashCode())
+                .setPath(path)
+                .setSdboxId(sdbId)
+                .setTopLevelKVCount(topLevelKVPairCount)
+                .setSizeInBytes(sizeInBytes)
+                .setType(type)
+                .setCreatedBy(createdBy)
+                .setCreatedTs(createdTs)
+                .setLastUpdatedBy(lastUpdatedBy)
+                .setLastUpdatedTs(lastUpdatedTs)
+                .setLastRotatedTs(lastUpdatedTs) // This is intentional
+                .setKeyMaterialTs(lastUpdatedTs),
+                encryptedPayload
+        );
+    }
+
+    /**
+     * Update secure data whose encrypted payload is streamed to the database rather than held in memory.
+     */
+    public void updateSecureData(String sdbId,
+                                 String path,
+                                 InputStream encryptedPayload,
+                                 int topLevelKVPairCount,
+                                 SecureDataType type,
+                                 int sizeInBytes,
+                                 String createdBy,
+                                 OffsetDateTime createdTs,
+                                 String lastUpdatedBy,
+                                 OffsetDateTime lastUpdatedTs,
+                                 OffsetDateTime lastRotatedTs) {
+
+        secureDataMapper.updateSecureDataFromStream(new SecureDataRecord()
+                .setId(path.hashCode())
+                .setPath(path)
+                .setSdboxId(sdbId)
+                .setTopLevelKVCount(topLevelKVPairCount)
+                .setType(type)
+                .setSizeInBytes(sizeInBytes)
+                .setCreatedBy(createdBy)
+                .setCreatedTs(createdTs)
+                .setLastUpdatedTs(lastUpdatedTs)
+                .setLastUpdatedBy(lastUpdatedBy)
+                .setLastRotatedTs(lastRotatedTs)
+                .setKeyMaterialTs(lastUpdatedTs),
+                encryptedPayload
         );
     }
 
@@ -96,6 +163,10 @@ public class SecureDataDao {
         return Optional.ofNullable(secureDataMapper.readSecureDataByPath(sdbId, path));
     }
 
+    public List<SecureDataRecord> readSecureDataByPathsLocking(Collection<String> sdbIds, Collection<String> paths) {
+        return secureDataMapper.readSecureDataByPathsLocking(sdbIds, paths);
+    }
+
     public Optional<SecureDataRecord> readSecureDataByIdLocking(String id) {
         return Optional.ofNullable(secureDataMapper.readSecureDataByIdLocking(id));
     }
@@ -104,10 +175,29 @@ public class SecureDataDao {
         return Optional.ofNullable(secureDataMapper.readSecureDataByPathAndType(sdbId, path, type));
     }
 
+    public List<SecureDataRecord> readSecureDataByPathsAndType(Collection<String> sdbIds, Collection<String> paths, SecureDataType type) {
+        return secureDataMapper.readSecureDataByPathsAndType(sdbIds, paths, type);
+    }
+
+    public Optional<ResolvedSecureDataRecord> resolveSecureDataByPathAndType(String sdbPath,
+                                                                             String path,
+                                                                             SecureDataType type,
+                                                                             boolean iamPrincipal,
+                                                                             Collection<String> principalNames,
+                                                                             boolean userGroupsCaseSensitive,
+                                                                             Set<String> rolesThatAllowPermission) {
+        return Optional.ofNullable(secureDataMapper.resolveSecureDataByPathAndType(sdbPath, path, type, iamPrincipal,
+                principalNames, userGroupsCaseSensitive, rolesThatAllowPermission));
+    }
+
     public Optional<SecureDataRecord> readMetadataByPathAndType(String sdbId, String path, SecureDataType type) {
         return Optional.ofNullable(secureDataMapper.readMetadataByPathAndType(sdbId, path, type));
     }
 
+    public Optional<SecureDataRecord> readMetadataByPath(String sdbId, String path) {
+        return Optional.ofNullable(secureDataMapper.readMetadataByPath(sdbId, path));
+    }
+
     public String[] getPathsByPartialPath(String sdbId, String partialPath) {
         return secureDataMapper.getPathsByPartialPath(sdbId, partialPath);
     }
@@ -116,16 +206,41 @@ public class SecureDataDao {
         return secureDataMapper.getPathsByPartialPathAndType(sdbId, partialPath, type);
     }
 
+    public List<String> getChildKeysByParentPath(String sdbId, String parentPath) {
+        return secureDataMapper.getChildKeysByParentPath(sdbId, parentPath);
+    }
+
+    public void incrementPathNodes(String sdbId, List<SecureDataPathNodeRecord> nodes) {
+        secureDataMapper.incrementPathNodes(sdbId, nodes);
+    }
+
+    public void decrementPathNodes(List<SecureDataPathNodeRecord> nodes, int count) {
+        secureDataMapper.decrementPathNodes(nodes, count);
+    }
+
+    public void deleteEmptyPathNodes(List<SecureDataPathNodeRecord> nodes) {
+        secureDataMapper.deleteEmptyPathNodes(nodes);
+    }
+
+    public void deleteAllPathNodesThatStartWithGivenPartialPath(String sdbId, String partialPath) {
+        secureDataMapper.deleteAllPathNodesThatStartWithGivenPartialPath(sdbId, partialPath);
+    }
+
     public Set<String> getPathsBySdbId(String sdbId) {
         return secureDataMapper.getPathsBySdbId(sdbId);
     }
 
-    public List<SecureDataRecord> listSecureDataByPartialPathAndType(String sdbId, String partialPath, SecureDataType type, int limit, int offset) {
-        return secureDataMapper.listSecureDataByPartialPathAndType(sdbId, partialPath, type, limit, offset);
+    public List<SecureDataRecord> listMetadataByPartialPathAndType(String sdbId, String partialPath, SecureDataType type, int limit, int offset) {
+        return secureDataMapper.listMetadataByPartialPathAndType(sdbId, partialPath, type, limit, offset);
     }
 
-    public int countByPartialPathAndType(String partialPath, SecureDataType type) {
-        return secureDataMapper.countByPartialPathAndType(partialPath, type);
+    public List<SecureDataRecord> listMetadataByPartialPathAndTypeAfterCursor(String sdbId, String partialPath, SecureDataType type,
+                                                                              OffsetDateTime cursorTs, String cursorId, int limit) {
+        return secureDataMapper.listMetadataByPartialPathAndTypeAfterCursor(sdbId, partialPath, type, cursorTs, cursorId, limit);
+    }
+
+    public int countByPartialPathAndType(String sdbId, String partialPath, SecureDataType type) {
+        return secureDataMapper.countByPartialPathAndType(sdbId, partialPath, type);
     }
 
     public int countByType(SecureDataType type) {
@@ -149,7 +264,39 @@ public class SecureDataDao {
         return val == null ? 0 : val;
     }
 
-    public List<DataKeyInfo> getOldestDataKeyInfo(OffsetDateTime dateTime, int limit) {
-        return secureDataMapper.getOldestDataKeyInfo(dateTime, limit);
+    /**
+     * Lists the data keys generated before the given time, in KEY_MATERIAL_TS order, starting after the given data
+     * key of each table, or from the oldest data key of a table whose cursor is null.
+     * <p>
+     * Each table is read with an index range scan of at most the limit, in (KEY_MATERIAL_TS, ID) order. SECURE_DATA
+     * IDs are integers and SECURE_DATA_VERSION IDs are UUIDs, so the two tables can not share a cursor, and the pages
+     * are merged by timestamp only. The sort is stable, so the data keys returned from each table are always the
+     * start of that table's page, and the last of them is a safe cursor for that table.
+     */
+    public List<DataKeyInfo> getOldestDataKeyInfo(OffsetDateTime dateTime,
+                                                  DataKeyInfo secureDataCursor,
+                                                  DataKeyInfo secureDataVersionCursor,
+                                                  int limit) {
+        List<DataKeyInfo> dataKeyInfos = new ArrayList<>(secureDataMapper.getOldestSecureDataKeyInfo(dateTime,
+                cursorTs(secureDataCursor), cursorId(secureDataCursor), limit));
+        dataKeyInfos.addAll(secureDataMapper.getOldestSecureDataVersionKeyInfo(dateTime,
+                cursorTs(secureDataVersionCursor), cursorId(secureDataVersionCursor), limit));
+
+        return dataKeyInfos.stream()
+                .sorted(Comparator.comparing(DataKeyInfo::getLastRotatedTs))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    private OffsetDateTime cursorTs(DataKeyInfo cursor) {
+        return cursor == null ? null : cursor.getLastRotatedTs();
+    }
+
+    private String cursorId(DataKeyInfo cursor) {
+        return cursor == null ? null : cursor.getId();
+    }
+
+    public int countDataKeysRotatedBefore(OffsetDateTime dateTime) {
+        return secureDataMapper.countDataKeysRotatedBefore(dateTime);
     }
 }
@@ -17,6 +17,7 @@
 
 package com.nike.cerberus.dao;
 
+import com.google.common.collect.Lists;
 import com.nike.cerberus.domain.SecureDataType;
 import com.nike.cerberus.mapper.SecureDataVersionMapper;
 import com.nike.cerberus.record.SecureDataVersionRecord;
@@ -30,6 +31,8 @@ import java.util.Set;
 
 public class SecureDataVersionDao {
 
+    private static final int MAX_VERSIONS_PER_INSERT = 100;
+
     private final SecureDataVersionMapper secureDataVersionMapper;
 
     private final UuidSupplier uuidSupplier;
@@ -49,7 +52,8 @@ public class SecureDataVersionDao {
                                        String versionCreatedBy,
                                        OffsetDateTime versionCreatedTs,
                                        String actionPrincipal,
-                                       OffsetDateTime actionTs) {
+                                       OffsetDateTime actionTs,
+                                       OffsetDateTime keyMaterialTs) {
 
         secureDataVersionMapper.writeSecureDataVersion(new SecureDataVersionRecord()
                     .setId(uuidSupplier.get())
@@ -63,9 +67,19 @@ public class SecureDataVersionDao {
                     .setActionTs(actionTs)
                     .setVersionCreatedBy(versionCreatedBy)
                     .setVersionCreatedTs(versionCreatedTs)
+                    .setKeyMaterialTs(keyMaterialTs)
         );
     }
 
+    /**
+     * Archive many versions with multi-row inserts of at most {@value #MAX_VERSIONS_PER_INSERT} rows, so that the
+     * encrypted blobs of one statement stay well within the max packet size.
+     */
+    public void writeSecureDataVersions(List<SecureDataVersionRecord> records) {
+        records.forEach(record -> record.setId(uuidSupplier.get()));
+        Lists.partition(records, MAX_VERSIONS_PER_INSERT).forEach(secureDataVersionMapper::writeSecureDataVersions);
+    }
+
     public int updateSecureDataVersion(SecureDataVersionRecord secureDataVersionRecord) {
         return secureDataVersionMapper.updateSecureDataVersion(secureDataVersionRecord);
     }
@@ -74,8 +88,12 @@ public class SecureDataVersionDao {
         return secureDataVersionMapper.getTotalNumVersionsForPath(path);
     }
 
-    public List<SecureDataVersionRecord> listSecureDataVersionByPath(String path, int limit, int offset) {
-        return secureDataVersionMapper.listSecureDataVersionsByPath(path, limit, offset);
+    public List<SecureDataVersionRecord> listVersionMetadataByPath(String path, int limit, int offset) {
+        return secureDataVersionMapper.listVersionMetadataByPath(path, limit, offset);
+    }
+
+    public List<SecureDataVersionRecord> listVersionMetadataByPathAfterCursor(String path, OffsetDateTime cursorTs, String cursorId, int limit) {
+        return secureDataVersionMapper.listVersionMetadataByPathAfterCursor(path, cursorTs, cursorId, limit);
     }
 
     public Optional<SecureDataVersionRecord> readSecureDataVersionById(String id) {
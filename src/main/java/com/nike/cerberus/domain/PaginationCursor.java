@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nike.cerberus.domain;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Base64;
+
+/**
+ * The position of the last item of a page of results ordered by timestamp and then by ID, both descending, from
+ * which the next page continues. Clients only ever see the encoded form, which they should treat as opaque.
+ * <p>
+ * A cursor without a timestamp and ID continues from the beginning of the underlying table, e.g. when the first page
+ * of a version history only held the current version, which is not stored with the previous versions.
+ */
+public class PaginationCursor {
+
+    private static final String FORMAT_VERSION = "1";
+    private static final String SEPARATOR = ":";
+
+    private final OffsetDateTime timestamp;
+    private final String id;
+
+    public PaginationCursor(OffsetDateTime timestamp, String id) {
+        this.timestamp = timestamp;
+        this.id = id;
+    }
+
+    public static PaginationCursor fromStart() {
+        return new PaginationCursor(null, null);
+    }
+
+    public OffsetDateTime getTimestamp() {
+        return timestamp;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String encode() {
+        String value = timestamp == null ?
+                FORMAT_VERSION + SEPARATOR + SEPARATOR :
+                FORMAT_VERSION + SEPARATOR + timestamp.toInstant().toEpochMilli() + SEPARATOR + id;
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param encodedCursor A cursor previously returned by {@link #encode()}
+     * @return The decoded cursor
+     * @throws IllegalArgumentException if the given value is not a valid cursor
+     */
+    public static PaginationCursor decode(String encodedCursor) {
+        String value = new String(Base64.getUrlDecoder().decode(encodedCursor), StandardCharsets.UTF_8);
+        String[] parts = value.split(SEPARATOR, 3);
+        if (parts.length != 3 || ! FORMAT_VERSION.equals(parts[0])) {
+            throw new IllegalArgumentException("Unrecognized cursor format");
+        }
+
+        if (parts[1].isEmpty() && parts[2].isEmpty()) {
+            return fromStart();
+        }
+
+        if (! StringUtils.isNumeric(parts[1]) || parts[2].isEmpty()) {
+            throw new IllegalArgumentException("Unrecognized cursor format");
+        }
+
+        OffsetDateTime timestamp = Instant.ofEpochMilli(Long.parseLong(parts[1])).atOffset(ZoneOffset.UTC);
+        return new PaginationCursor(timestamp, parts[2]);
+    }
+}
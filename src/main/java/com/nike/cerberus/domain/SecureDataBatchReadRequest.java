@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nike.cerberus.domain;
+
+import org.hibernate.validator.constraints.NotEmpty;
+
+import javax.validation.constraints.Size;
+import java.util.List;
+
+/**
+ * The paths of the secrets to read in one batch, e.g. app/my-sdb/my-secret
+ */
+public class SecureDataBatchReadRequest {
+
+    public static final int MAX_PATHS = 100;
+
+    @NotEmpty(message = "SECRET_BATCH_READ_PATHS_EMPTY")
+    @Size(max = MAX_PATHS, message = "SECRET_BATCH_READ_TOO_MANY_PATHS")
+    private List<String> paths;
+
+    public List<String> getPaths() {
+        return paths;
+    }
+
+    public SecureDataBatchReadRequest setPaths(List<String> paths) {
+        this.paths = paths;
+        return this;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nike.cerberus.domain;
+
+import java.util.List;
+
+public class SecureDataBatchReadResponse {
+
+    private String requestId;
+    private List<SecureDataBatchReadResult> results;
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public SecureDataBatchReadResponse setRequestId(String requestId) {
+        this.requestId = requestId;
+        return this;
+    }
+
+    public List<SecureDataBatchReadResult> getResults() {
+        return results;
+    }
+
+    public SecureDataBatchReadResponse setResults(List<SecureDataBatchReadResult> results) {
+        this.results = results;
+        return this;
+    }
+}
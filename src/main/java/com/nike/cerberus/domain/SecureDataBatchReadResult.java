@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nike.cerberus.domain;
+
+import java.util.Map;
+
+/**
+ * The outcome of reading one of the secrets of a batch, with the HTTP status that reading it on its own would have had.
+ */
+public class SecureDataBatchReadResult {
+
+    private String path;
+    private int status;
+    private String error;
+    private Object data;
+    private Map<String, String> metadata;
+
+    public String getPath() {
+        return path;
+    }
+
+    public SecureDataBatchReadResult setPath(String path) {
+        this.path = path;
+        return this;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public SecureDataBatchReadResult setStatus(int status) {
+        this.status = status;
+        return this;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public SecureDataBatchReadResult setError(String error) {
+        this.error = error;
+        return this;
+    }
+
+    public Object getData() {
+        return data;
+    }
+
+    public SecureDataBatchReadResult setData(Object data) {
+        this.data = data;
+        return this;
+    }
+
+    public Map<String, String> getMetadata() {
+        return metadata;
+    }
+
+    public SecureDataBatchReadResult setMetadata(Map<String, String> metadata) {
+        this.metadata = metadata;
+        return this;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nike.cerberus.domain;
+
+import java.util.Map;
+
+/**
+ * A secret to write as part of a batch, e.g. the key/value pairs to store at app/my-sdb/my-secret
+ */
+public class SecureDataBatchWriteEntry {
+
+    private String path;
+    private Map<String, Object> data;
+
+    public String getPath() {
+        return path;
+    }
+
+    public SecureDataBatchWriteEntry setPath(String path) {
+        this.path = path;
+        return this;
+    }
+
+    public Map<String, Object> getData() {
+        return data;
+    }
+
+    public SecureDataBatchWriteEntry setData(Map<String, Object> data) {
+        this.data = data;
+        return this;
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nike.cerberus.domain;
+
+import org.hibernate.validator.constraints.NotEmpty;
+
+import javax.validation.constraints.Size;
+import java.util.List;
+
+/**
+ * The secrets to write in one transaction, either all of them are written or none is.
+ */
+public class SecureDataBatchWriteRequest {
+
+    public static final int MAX_SECRETS = 1000;
+
+    @NotEmpty(message = "SECRET_BATCH_WRITE_SECRETS_EMPTY")
+    @Size(max = MAX_SECRETS, message = "SECRET_BATCH_WRITE_TOO_MANY_SECRETS")
+    private List<SecureDataBatchWriteEntry> secrets;
+
+    public List<SecureDataBatchWriteEntry> getSecrets() {
+        return secrets;
+    }
+
+    public SecureDataBatchWriteRequest setSecrets(List<SecureDataBatchWriteEntry> secrets) {
+        this.secrets = secrets;
+        return this;
+    }
+}
@@ -23,10 +23,11 @@ public class SecureDataVersionsResult {
 
     private boolean hasNext = false;
     private Integer nextOffset = null;
+    private String nextCursor = null;
     private int limit = 0;
     private int offset = 0;
     private int versionCountInResult;
-    private int totalVersionCount;
+    private Integer totalVersionCount;
     private List<SecureDataVersionSummary> secureDataVersionSummaries;
 
     public boolean isHasNext() {
@@ -47,6 +48,15 @@ public class SecureDataVersionsResult {
         return this;
     }
 
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public SecureDataVersionsResult setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+        return this;
+    }
+
     public int getLimit() {
         return limit;
     }
@@ -74,11 +84,11 @@ public class SecureDataVersionsResult {
         return this;
     }
 
-    public int getTotalVersionCount() {
+    public Integer getTotalVersionCount() {
         return totalVersionCount;
     }
 
-    public SecureDataVersionsResult setTotalVersionCount(int totalVersionCount) {
+    public SecureDataVersionsResult setTotalVersionCount(Integer totalVersionCount) {
         this.totalVersionCount = totalVersionCount;
         return this;
     }
@@ -23,10 +23,11 @@ public class SecureFileSummaryResult {
 
     private boolean hasNext = false;
     private Integer nextOffset = null;
+    private String nextCursor = null;
     private int limit = 0;
     private int offset = 0;
     private int fileCountInResult;
-    private int totalFileCount;
+    private Integer totalFileCount;
     private List<SecureFileSummary> secureFileSummaries;
 
     public boolean isHasNext() {
@@ -47,6 +48,15 @@ public class SecureFileSummaryResult {
         return this;
     }
 
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public SecureFileSummaryResult setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+        return this;
+    }
+
     public int getLimit() {
         return limit;
     }
@@ -74,11 +84,11 @@ public class SecureFileSummaryResult {
         return this;
     }
 
-    public int getTotalFileCount() {
+    public Integer getTotalFileCount() {
         return totalFileCount;
     }
 
-    public SecureFileSummaryResult setTotalFileCount(int totalFileCount) {
+    public SecureFileSummaryResult setTotalFileCount(Integer totalFileCount) {
         this.totalFileCount = totalFileCount;
         return this;
     }
@@ -34,7 +34,9 @@ import io.netty.handler.codec.http.HttpMethod;
 
 import javax.inject.Inject;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Executor;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static com.nike.cerberus.endpoints.AuditableEventEndpoint.auditableEvent;
@@ -61,29 +63,36 @@ public class AuthenticateIamPrincipal extends StandardEndpoint<IamPrincipalCrede
     public CompletableFuture<ResponseInfo<IamRoleAuthResponse>> execute(final RequestInfo<IamPrincipalCredentials> request,
                                                                         final Executor longRunningTaskExecutor,
                                                                         final ChannelHandlerContext ctx) {
+        // the long running task thread is released while KMS encrypts the auth response
         return CompletableFuture.supplyAsync(
-                AsyncNettyHelper.supplierWithTracingAndMdc(() -> authenticate(request), ctx),
+                AsyncNettyHelper.supplierWithTracingAndMdc(() ->
+                        authenticationService.authenticateAsync(request.getContent(), longRunningTaskExecutor), ctx),
                 longRunningTaskExecutor
-        );
+        ).thenCompose(Function.identity()).handle(AsyncNettyHelper.biFunctionWithTracingAndMdc(
+                (authResponse, throwable) -> toResponse(request, authResponse, throwable), ctx));
     }
 
-    private ResponseInfo<IamRoleAuthResponse> authenticate(RequestInfo<IamPrincipalCredentials> request) {
+    private ResponseInfo<IamRoleAuthResponse> toResponse(RequestInfo<IamPrincipalCredentials> request,
+                                                         IamRoleAuthResponse authResponse,
+                                                         Throwable throwable) {
         final IamPrincipalCredentials credentials = request.getContent();
 
-        IamRoleAuthResponse authResponse = null;
-        try {
-            authResponse = authenticationService.authenticate(request.getContent());
-        } catch (ApiException e) {
+        final Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+        if (cause instanceof ApiException) {
             eventProcessorService.ingestEvent(auditableEvent(
                     credentials.getIamPrincipalArn(), request, getClass().getSimpleName())
                     .withAction(String.format("Failed to authenticate in region %s, for reason: %s",
                             credentials.getRegion(),
-                            String.join(",", e.getApiErrors().stream()
+                            String.join(",", ((ApiException) cause).getApiErrors().stream()
                                     .map(ApiError::getMessage).collect(Collectors.toList()))))
                     .withSuccess(false)
                     .build()
             );
-            throw e;
+            throw (ApiException) cause;
+        } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else if (cause != null) {
+            throw new CompletionException(cause);
         }
 
         eventProcessorService.ingestEvent(auditableEvent(
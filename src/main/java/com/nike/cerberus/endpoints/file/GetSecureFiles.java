@@ -70,7 +70,9 @@ public class GetSecureFiles extends AuditableEventEndpoint<Void, SecureFileSumma
             info.getSdbId(),
             info.getPath(),
             paginationService.getLimit(request),
-            paginationService.getOffset(request));
+            paginationService.getOffset(request),
+            paginationService.getCursor(request),
+            paginationService.isTotalCountRequested(request));
 
         final ResponseInfo response = ResponseInfo.newBuilder()
                 .withContentForFullResponse(fileSummaryResult)
@@ -30,6 +30,7 @@ import com.nike.riposte.server.http.RequestInfo;
 import com.nike.riposte.server.http.ResponseInfo;
 import com.nike.riposte.util.AsyncNettyHelper;
 import com.nike.riposte.util.Matcher;
+import io.netty.buffer.ByteBufInputStream;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.HttpResponseStatus;
@@ -38,7 +39,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
@@ -83,10 +86,9 @@ public class WriteSecureFile extends AuditableEventEndpoint<Void, Void> {
         validateFormParts(formParts);
 
         HttpData secureFile = formParts.get(SECURE_FILE_CONTENT_MULTIPART);
-        try {
-            byte[] fileContents = secureFile.get();
+        try (InputStream fileContents = openContentStream(secureFile)) {
             secureDataService.writeSecureFile(requestInfo.getSdbId(), requestInfo.getPath(), fileContents,
-                    fileContents.length,
+                    Math.toIntExact(secureFile.length()),
                     requestInfo.getPrincipal().getName());
 
             return ResponseInfo.<Void>newBuilder().
@@ -101,6 +103,17 @@ public class WriteSecureFile extends AuditableEventEndpoint<Void, Void> {
         }
     }
 
+    /**
+     * Read the decoded form part in place, rather than copying it into a new array with {@link HttpData#get()}.
+     */
+    private InputStream openContentStream(HttpData secureFile) throws IOException {
+        if (secureFile.isInMemory()) {
+            // Duplicate so that reading does not move the reader index of the form part's buffer
+            return new ByteBufInputStream(secureFile.getByteBuf().duplicate());
+        }
+        return new FileInputStream(secureFile.getFile());
+    }
+
     private Map<String, HttpData> parseFormParts(RequestInfo<Void> request) {
         if (request.getMultipartParts() == null) {
             throw ApiException.newBuilder()
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nike.cerberus.endpoints.secret;
+
+import com.nike.backstopper.exception.ApiException;
+import com.nike.cerberus.domain.SecureDataBatchReadRequest;
+import com.nike.cerberus.domain.SecureDataBatchReadResponse;
+import com.nike.cerberus.endpoints.AuditableEventEndpoint;
+import com.nike.cerberus.endpoints.RiposteEndpoint;
+import com.nike.cerberus.error.DefaultApiError;
+import com.nike.cerberus.security.CerberusPrincipal;
+import com.nike.cerberus.security.CmsRequestSecurityValidator;
+import com.nike.cerberus.service.SecureDataBatchReadService;
+import com.nike.riposte.server.http.RequestInfo;
+import com.nike.riposte.server.http.ResponseInfo;
+import com.nike.riposte.util.AsyncNettyHelper;
+import com.nike.riposte.util.Matcher;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+
+import javax.inject.Inject;
+import javax.ws.rs.core.SecurityContext;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Reads many secrets with one request, e.g. all the secrets a service needs when it starts. Each secret is reported
+ * with its own status, so that secrets that cannot be read do not fail the others.
+ */
+@RiposteEndpoint
+public class BatchReadSecureData extends AuditableEventEndpoint<SecureDataBatchReadRequest, SecureDataBatchReadResponse> {
+
+    public static final String BASE_PATH = "/v1/secret-batch-read";
+
+    private final SecureDataBatchReadService secureDataBatchReadService;
+
+    @Inject
+    public BatchReadSecureData(SecureDataBatchReadService secureDataBatchReadService) {
+        this.secureDataBatchReadService = secureDataBatchReadService;
+    }
+
+    @Override
+    public CompletableFuture<ResponseInfo<SecureDataBatchReadResponse>> doExecute(RequestInfo<SecureDataBatchReadRequest> request,
+                                                                                 Executor longRunningTaskExecutor,
+                                                                                 ChannelHandlerContext ctx) {
+        return CompletableFuture.supplyAsync(
+                AsyncNettyHelper.supplierWithTracingAndMdc(() -> readSecrets(request), ctx),
+                longRunningTaskExecutor
+        );
+    }
+
+    private ResponseInfo<SecureDataBatchReadResponse> readSecrets(RequestInfo<SecureDataBatchReadRequest> request) {
+        final Optional<SecurityContext> securityContext =
+                CmsRequestSecurityValidator.getSecurityContextForRequest(request);
+
+        if (! securityContext.isPresent() || ! (securityContext.get().getUserPrincipal() instanceof CerberusPrincipal)) {
+            throw ApiException.newBuilder().withApiErrors(DefaultApiError.AUTH_TOKEN_INVALID).build();
+        }
+
+        CerberusPrincipal principal = (CerberusPrincipal) securityContext.get().getUserPrincipal();
+        SecureDataBatchReadResponse response = new SecureDataBatchReadResponse()
+                .setRequestId(UUID.randomUUID().toString())
+                .setResults(secureDataBatchReadService.readSecrets(principal, request.getContent().getPaths()));
+
+        return ResponseInfo.newBuilder(response)
+                .withHttpStatusCode(HttpResponseStatus.OK.code())
+                .build();
+    }
+
+    @Override
+    public Matcher requestMatcher() {
+        return Matcher.match(BASE_PATH, HttpMethod.POST);
+    }
+
+    @Override
+    protected String describeActionForAuditEvent(RequestInfo<SecureDataBatchReadRequest> request) {
+        return String.format("Batch read secrets at paths: %s", request.getContent().getPaths());
+    }
+}
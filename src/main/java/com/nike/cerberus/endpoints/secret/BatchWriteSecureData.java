@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nike.cerberus.endpoints.secret;
+
+import com.nike.backstopper.exception.ApiException;
+import com.nike.cerberus.domain.SecureDataBatchWriteEntry;
+import com.nike.cerberus.domain.SecureDataBatchWriteRequest;
+import com.nike.cerberus.endpoints.AuditableEventEndpoint;
+import com.nike.cerberus.endpoints.RiposteEndpoint;
+import com.nike.cerberus.error.DefaultApiError;
+import com.nike.cerberus.security.CerberusPrincipal;
+import com.nike.cerberus.security.CmsRequestSecurityValidator;
+import com.nike.cerberus.service.SecureDataBatchWriteService;
+import com.nike.riposte.server.http.RequestInfo;
+import com.nike.riposte.server.http.ResponseInfo;
+import com.nike.riposte.util.AsyncNettyHelper;
+import com.nike.riposte.util.Matcher;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+
+import javax.inject.Inject;
+import javax.ws.rs.core.SecurityContext;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+
+/**
+ * Writes many secrets with one request and in one transaction, e.g. all the configuration of a service when it is
+ * deployed. Either every secret is written or, if any one cannot be, none is.
+ */
+@RiposteEndpoint
+public class BatchWriteSecureData extends AuditableEventEndpoint<SecureDataBatchWriteRequest, Void> {
+
+    public static final String BASE_PATH = "/v1/secret-batch-write";
+
+    private final SecureDataBatchWriteService secureDataBatchWriteService;
+
+    @Inject
+    public BatchWriteSecureData(SecureDataBatchWriteService secureDataBatchWriteService) {
+        this.secureDataBatchWriteService = secureDataBatchWriteService;
+    }
+
+    @Override
+    public CompletableFuture<ResponseInfo<Void>> doExecute(RequestInfo<SecureDataBatchWriteRequest> request,
+                                                           Executor longRunningTaskExecutor,
+                                                           ChannelHandlerContext ctx) {
+        return CompletableFuture.supplyAsync(
+                AsyncNettyHelper.supplierWithTracingAndMdc(() -> writeSecrets(request), ctx),
+                longRunningTaskExecutor
+        );
+    }
+
+    private ResponseInfo<Void> writeSecrets(RequestInfo<SecureDataBatchWriteRequest> request) {
+        final Optional<SecurityContext> securityContext =
+                CmsRequestSecurityValidator.getSecurityContextForRequest(request);
+
+        if (! securityContext.isPresent() || ! (securityContext.get().getUserPrincipal() instanceof CerberusPrincipal)) {
+            throw ApiException.newBuilder().withApiErrors(DefaultApiError.AUTH_TOKEN_INVALID).build();
+        }
+
+        CerberusPrincipal principal = (CerberusPrincipal) securityContext.get().getUserPrincipal();
+        secureDataBatchWriteService.writeSecrets(principal, request.getContent().getSecrets());
+
+        return ResponseInfo.<Void>newBuilder()
+                .withHttpStatusCode(HttpResponseStatus.NO_CONTENT.code())
+                .build();
+    }
+
+    @Override
+    public Matcher requestMatcher() {
+        return Matcher.match(BASE_PATH, HttpMethod.POST);
+    }
+
+    @Override
+    protected String describeActionForAuditEvent(RequestInfo<SecureDataBatchWriteRequest> request) {
+        return String.format("Batch write secrets at paths: %s", request.getContent().getSecrets().stream()
+                .map(SecureDataBatchWriteEntry::getPath)
+                .collect(Collectors.toList()));
+    }
+}
@@ -17,6 +17,7 @@
 package com.nike.cerberus.endpoints.secret;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nike.backstopper.exception.ApiException;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Sets;
 import com.nike.cerberus.SecureDataRequestService;
@@ -72,6 +73,18 @@ public class ReadSecureData extends SecureDataEndpointV1<Void, Object> {
                 .build();
     }
 
+    /**
+     * Secrets are read along with the SDB ID and the principal's permission, in a single query, so plain reads only
+     * need the request to be authenticated here.
+     */
+    @Override
+    protected SecureDataRequestInfo parseAndValidateRequest(RequestInfo<Void> request) {
+        if (isSecretRead(request)) {
+            return secureDataRequestService.parseAndAuthenticateRequest(request);
+        }
+        return super.parseAndValidateRequest(request);
+    }
+
     @Override
     public CompletableFuture<ResponseInfo<Object>> executeSecureDataCall(SecureDataRequestInfo requestInfo,
                                                                          RequestInfo<Void> request,
@@ -85,7 +98,18 @@ public class ReadSecureData extends SecureDataEndpointV1<Void, Object> {
             String versionId = request.getQueryParamSingle("versionId");
             response = readSecureDataVersion(requestInfo, versionId);
         } else {
-            Optional<SecureData> secureDataOpt = secureDataService.readSecret(requestInfo.getSdbId(), requestInfo.getPath());
+            Optional<SecureData> secureDataOpt;
+            try {
+                secureDataOpt = secureDataRequestService.validateAndReadSecret(request, requestInfo);
+            } catch (ApiException ae) {
+                return generateVaultStyleResponse(longRunningTaskExecutor,
+                        ctx,
+                        VaultStyleErrorResponse.Builder.create()
+                                .withError("permission denied")
+                                .build(),
+                        HttpResponseStatus.FORBIDDEN.code()
+                );
+            }
 
             if (! secureDataOpt.isPresent()) {
                 response = generateVaultStyleResponse(
@@ -103,6 +127,11 @@ public class ReadSecureData extends SecureDataEndpointV1<Void, Object> {
                 longRunningTaskExecutor);
     }
 
+    private boolean isSecretRead(RequestInfo<Void> request) {
+        return ! StringUtils.equalsIgnoreCase(request.getQueryParamSingle("list"), "true") &&
+                StringUtils.isBlank(request.getQueryParamSingle("versionId"));
+    }
+
     private ResponseInfo<Object> listKeys(SecureDataRequestInfo info) {
         Set<String> keys = secureDataService.listKeys(info.getSdbId(), info.getPath());
 
@@ -69,7 +69,7 @@ public abstract class SecureDataEndpointV1<I, O> extends AuditableEventEndpoint<
 
         SecureDataRequestInfo requestInfo;
         try {
-            requestInfo = secureDataRequestService.parseAndValidateRequest(request);
+            requestInfo = parseAndValidateRequest(request);
         } catch (ApiException ae) {
             return generateVaultStyleResponse(longRunningTaskExecutor,
                     ctx,
@@ -83,6 +83,14 @@ public abstract class SecureDataEndpointV1<I, O> extends AuditableEventEndpoint<
         return executeSecureDataCall(requestInfo, request, longRunningTaskExecutor, ctx);
     }
 
+    /**
+     * Parses the request and checks that the principal has permission on the SDB it is for. Endpoints that check the
+     * permission along with the data they read may override this to only authenticate the request.
+     */
+    protected SecureDataRequestInfo parseAndValidateRequest(RequestInfo<I> request) {
+        return secureDataRequestService.parseAndValidateRequest(request);
+    }
+
     protected CompletableFuture<ResponseInfo<O>> generateVaultStyleResponse(Executor longRunningTaskExecutor,
                                                          ChannelHandlerContext ctx,
                                                          VaultStyleErrorResponse response,
@@ -84,7 +84,9 @@ public class GetSecureDataVersions extends AuditableEventEndpoint<Void, SecureDa
                 pathToSecret,
                 requestInfo.getCategory(),
                 paginationService.getLimit(request),
-                paginationService.getOffset(request));
+                paginationService.getOffset(request),
+                paginationService.getCursor(request),
+                paginationService.isTotalCountRequested(request));
         if (result.getSecureDataVersionSummaries().isEmpty()) {
             AuditableEvent auditableEvent = auditableEvent(requestInfo.getPrincipal(), request, getClass().getSimpleName())
                     .withSuccess(false)
@@ -298,6 +298,41 @@ public enum DefaultApiError implements ApiError {
 //     */
 //    TRIGGER_CHALLENGE_NOT_IMPLEMENTED(99244, "Call to trigger sms or call challenge for OneLogin is not implemented.", SC_NOT_IMPLEMENTED),
 
+    /**
+     * A batch secret read request did not contain any paths.
+     */
+    SECRET_BATCH_READ_PATHS_EMPTY(99245, "At least one secret path must be given.", SC_BAD_REQUEST),
+
+    /**
+     * A batch secret read request contained more paths than can be read at once.
+     */
+    SECRET_BATCH_READ_TOO_MANY_PATHS(99246, "Too many secret paths given, at most 100 secrets can be read at once.", SC_BAD_REQUEST),
+
+    /**
+     * A batch secret write request did not contain any secrets.
+     */
+    SECRET_BATCH_WRITE_SECRETS_EMPTY(99247, "At least one secret must be given.", SC_BAD_REQUEST),
+
+    /**
+     * A batch secret write request contained more secrets than can be written at once.
+     */
+    SECRET_BATCH_WRITE_TOO_MANY_SECRETS(99248, "Too many secrets given, at most 1000 secrets can be written at once.", SC_BAD_REQUEST),
+
+    /**
+     * A secret of a batch secret write request had no data or a path that is not of the form category/sdb-slug/path.
+     */
+    SECRET_BATCH_WRITE_INVALID_SECRET(99249, "Every secret must have data and a path of the form category/sdb-slug/path/to/secret.", SC_BAD_REQUEST),
+
+    /**
+     * A batch secret write request contained the same path more than once.
+     */
+    SECRET_BATCH_WRITE_DUPLICATE_PATHS(99250, "Every secret of a batch write must have a different path.", SC_BAD_REQUEST),
+
+    /**
+     * A secret of a batch secret write request exists with a path that differs from the given one only in case.
+     */
+    SECRET_BATCH_WRITE_PATH_CASE_MISMATCH(99251, "The path of an existing secret must be given with the same case as it was written with.", SC_BAD_REQUEST),
+
     /**
      * Generic not found error.
      */
@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nike.cerberus.error;
+
+/**
+ * KMS denied access to the authentication KMS key, e.g. because its policy was changed outside of Cerberus.
+ */
+public class KeyPolicyInvalidForAuthException extends RuntimeException {
+    private static final long serialVersionUID = -4817246915326390158L;
+
+    public KeyPolicyInvalidForAuthException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nike.cerberus.jobs;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.nike.cerberus.cache.AuthTokenCache;
+import com.nike.cerberus.service.EncryptionService;
+import org.knowm.sundial.Job;
+import org.knowm.sundial.exceptions.JobInterruptException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Periodically report the hit rate and size gauges of the in-memory caches.
+ * <p>
+ * Hit rates are computed over the time since the previous run, so this job should run on a fixed interval.
+ */
+@Singleton
+public class CacheMetricsProcessingJob extends Job {
+
+    private static final Logger log = LoggerFactory.getLogger(CacheMetricsProcessingJob.class);
+
+    private final EncryptionService encryptionService;
+    private final AuthTokenCache authTokenCache;
+
+    @Inject
+    public CacheMetricsProcessingJob(EncryptionService encryptionService,
+                                     AuthTokenCache authTokenCache) {
+        this.encryptionService = encryptionService;
+        this.authTokenCache = authTokenCache;
+    }
+
+    @Override
+    public void doRun() throws JobInterruptException {
+        log.debug("Running cache metrics processing job");
+        try {
+            encryptionService.reportCacheMetrics();
+            authTokenCache.reportMetrics();
+        } catch (JobInterruptException e) {
+            throw e;
+        } catch (Exception e) {
+            log.warn("Error processing cache metrics", e);
+        }
+    }
+}
@@ -17,36 +17,32 @@
 package com.nike.cerberus.jobs;
 
 
-import com.nike.cerberus.service.SecureDataService;
+import com.nike.cerberus.service.DataKeyRotationService;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 
 public class DataKeyRotationJob extends LockingJob {
 
-    private final SecureDataService secureDataService;
+    private final DataKeyRotationService dataKeyRotationService;
     private final int numberOfDataKeyToRotatePerJobRun;
-    private final int dataKeyRotationPauseTimeInMillis;
     private final int dataKeyRotationIntervalInDays;
 
     @Inject
-    public DataKeyRotationJob(SecureDataService secureDataService,
+    public DataKeyRotationJob(DataKeyRotationService dataKeyRotationService,
                               @Named("cms.jobs.DataKeyRotationJob.numberOfDataKeyToRotatePerJobRun")
                                       int numberOfDataKeyToRotatePerJobRun,
-                              @Named("cms.jobs.DataKeyRotationJob.dataKeyRotationPauseTimeInMillis")
-                                          int dataKeyRotationPauseTimeInMillis,
                               @Named("cms.jobs.DataKeyRotationJob.dataKeyRotationIntervalInDays")
                                       int dataKeyRotationIntervalInDays) {
 
-        this.secureDataService = secureDataService;
+        this.dataKeyRotationService = dataKeyRotationService;
         this.numberOfDataKeyToRotatePerJobRun = numberOfDataKeyToRotatePerJobRun;
-        this.dataKeyRotationPauseTimeInMillis = dataKeyRotationPauseTimeInMillis;
         this.dataKeyRotationIntervalInDays = dataKeyRotationIntervalInDays;
     }
 
 
     @Override
     protected void executeLockableCode() {
-        secureDataService.rotateDataKeys(numberOfDataKeyToRotatePerJobRun, dataKeyRotationPauseTimeInMillis, dataKeyRotationIntervalInDays);
+        dataKeyRotationService.rotateDataKeys(numberOfDataKeyToRotatePerJobRun, dataKeyRotationIntervalInDays);
     }
 }
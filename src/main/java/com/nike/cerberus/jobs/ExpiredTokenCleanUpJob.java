@@ -27,6 +27,7 @@ public class ExpiredTokenCleanUpJob extends LockingJob {
     private final int maxNumberOfTokensToDeletePerJobRun;
     private final int numberOfTokensToDeletePerBatch;
     private final int batchPauseTimeInMillis;
+    private final int revokedTokenRetentionInHours;
 
     @Inject
     public ExpiredTokenCleanUpJob(AuthTokenService authTokenService,
@@ -35,12 +36,15 @@ public class ExpiredTokenCleanUpJob extends LockingJob {
                                   @Named("cms.jobs.ExpiredTokenCleanUpJob.numberOfTokensToDeletePerBatch")
                                           int numberOfTokensToDeletePerBatch,
                                   @Named("cms.jobs.ExpiredTokenCleanUpJob.batchPauseTimeInMillis")
-                                          int batchPauseTimeInMillis) {
+                                          int batchPauseTimeInMillis,
+                                  @Named("cms.jobs.ExpiredTokenCleanUpJob.revokedTokenRetentionInHours")
+                                          int revokedTokenRetentionInHours) {
 
         this.authTokenService = authTokenService;
         this.maxNumberOfTokensToDeletePerJobRun = maxNumberOfTokensToDeletePerJobRun;
         this.numberOfTokensToDeletePerBatch = numberOfTokensToDeletePerBatch;
         this.batchPauseTimeInMillis = batchPauseTimeInMillis;
+        this.revokedTokenRetentionInHours = revokedTokenRetentionInHours;
     }
 
     @Override
@@ -48,5 +52,8 @@ public class ExpiredTokenCleanUpJob extends LockingJob {
         int numberOfDeletedTokens = authTokenService.deleteExpiredTokens(maxNumberOfTokensToDeletePerJobRun,
                 numberOfTokensToDeletePerBatch, batchPauseTimeInMillis);
         log.info("Deleted {} tokens", numberOfDeletedTokens);
+
+        int numberOfDeletedRevocations = authTokenService.deleteRevokedTokensOlderThan(revokedTokenRetentionInHours);
+        log.info("Deleted {} revoked token records", numberOfDeletedRevocations);
     }
 }
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nike.cerberus.jobs;
+
+import com.nike.cerberus.service.KmsKeyPoolService;
+
+import javax.inject.Inject;
+
+/**
+ * Tops up the KMS key pools that are running low, so that IAM principals authenticating for the first time do not have
+ * to wait for a KMS key to be created.
+ */
+public class KmsKeyPoolRefillJob extends LockingJob {
+
+    private final KmsKeyPoolService kmsKeyPoolService;
+
+    @Inject
+    public KmsKeyPoolRefillJob(KmsKeyPoolService kmsKeyPoolService) {
+        this.kmsKeyPoolService = kmsKeyPoolService;
+    }
+
+    @Override
+    protected void executeLockableCode() {
+        kmsKeyPoolService.refillKeyPools();
+    }
+}
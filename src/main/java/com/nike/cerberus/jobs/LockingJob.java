@@ -23,7 +23,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
-import java.util.concurrent.TimeUnit;
 
 public abstract class LockingJob extends Job {
 
@@ -31,6 +30,10 @@ public abstract class LockingJob extends Job {
 
     private DistributedLockService jobCoordinatorService;
 
+    private String lockName;
+
+    private long fencingToken;
+
     @Inject
     public void setJobCoordinatorService(DistributedLockService jobCoordinatorService) {
         this.jobCoordinatorService = jobCoordinatorService;
@@ -46,29 +49,44 @@ public abstract class LockingJob extends Job {
 
         log.info("Lock acquired for Job: {}, executing lockable code", jobName);
         try {
+            lockName = jobName;
+            fencingToken = jobCoordinatorService.getFencingToken(jobName)
+                    .orElseThrow(() -> new IllegalStateException("Lost the lease of the lock for Job: " + jobName));
             executeLockableCode();
         } catch (Throwable t) {
             log.error("Failed to execute lockable job, releasing lock", t);
         } finally {
             log.info("Attempting to release lock for Job: {}", jobName);
-            boolean released = false;
-            do {
-                try {
-                    released = jobCoordinatorService.releaseLock(jobName);
-                    if (!released) { // Sometimes it takes multiple calls to release, why?
-                        log.warn("Failed to release lock, will retry after pause");
-                        Thread.sleep(TimeUnit.SECONDS.toMillis(1));
-                    }
-                } catch (InterruptedException e) {
-                    log.error("Pause interrupted while trying to release lock", e);
-                    Thread.currentThread().interrupt();
-                } catch (Throwable t) {
-                    log.error("Something went wrong trying to release lock retrying", t);
-                }
-            } while (! released);
-            log.info("Lock released for Job: {}", jobName);
+            if (jobCoordinatorService.releaseLock(jobName)) {
+                log.info("Lock released for Job: {}", jobName);
+            } else {
+                // the lease is no longer renewed, so the lock is released when it expires
+                log.warn("Failed to release lock for Job: {}, it will be released when its lease expires", jobName);
+            }
+            // don't leave the interrupt of a lost lease to the next job that runs on this thread
+            if (Thread.interrupted()) {
+                log.warn("Job: {} was interrupted, e.g. because the lease of its lock was lost", jobName);
+            }
         }
     }
 
+    /**
+     * Runs while this instance holds the lock. If the lease of the lock is lost, the thread is interrupted.
+     */
     protected abstract void executeLockableCode();
+
+    /**
+     * The name of the lock held while the lockable code runs, i.e. the job name
+     */
+    protected String getLockName() {
+        return lockName;
+    }
+
+    /**
+     * The fencing token of the lock held while the lockable code runs. Progress that is shared with the other
+     * instances, e.g. a job checkpoint, should be written with it, so that it is rejected once the lease was lost.
+     */
+    protected long getFencingToken() {
+        return fencingToken;
+    }
 }
@@ -1,14 +1,26 @@
 package com.nike.cerberus.jobs;
 
 import com.amazonaws.regions.Regions;
+import com.amazonaws.services.kms.model.InvalidMarkerException;
+import com.amazonaws.services.kms.model.KeyListEntry;
+import com.amazonaws.services.kms.model.ListKeysResult;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.RateLimiter;
+import com.nike.cerberus.dao.JobCheckpointDao;
 import com.nike.cerberus.domain.AuthKmsKeyMetadata;
+import com.nike.cerberus.record.JobCheckpointRecord;
 import com.nike.cerberus.service.KmsService;
+import com.nike.cerberus.util.DateTimeSupplier;
 import org.apache.commons.lang.StringUtils;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static com.nike.cerberus.service.KmsService.SOONEST_A_KMS_KEY_CAN_BE_DELETED;
@@ -20,22 +32,45 @@ import static com.nike.cerberus.service.KmsService.SOONEST_A_KMS_KEY_CAN_BE_DELE
  * If it is orphaned (Created by CMS for the current env, but not in the database), it schedules it for deletion.
  *
  * Orphaned keys can be created due to a race condition from lazily creating KMS CMKs for auth.
+ *
+ * Regions are processed in parallel, and within a region the policies of each page of keys are downloaded
+ * concurrently at a bounded rate. The job checkpoints each region after every page, so that a run that was
+ * interrupted resumes from the page it stopped at.
  */
 public class OrphanedKmsKeyCleanUpJob extends LockingJob {
 
+    private static final String CHECKPOINT_NAME_PREFIX = "OrphanedKmsKeyCleanUpJob-";
+
     private final KmsService kmsService;
+    private final JobCheckpointDao jobCheckpointDao;
+    private final DateTimeSupplier dateTimeSupplier;
     private final boolean isDeleteOrphanKeysInDryMode;
     private final String environmentName;
+    private final int regionThreads;
+    private final int getKeyPolicyThreadsPerRegion;
+    private final double getKeyPolicyCallsPerSecondPerRegion;
 
     @Inject
     public OrphanedKmsKeyCleanUpJob(KmsService kmsService,
+                                    JobCheckpointDao jobCheckpointDao,
+                                    DateTimeSupplier dateTimeSupplier,
                                     @Named("cms.kms.delete_orphaned_keys_job.dry_mode")
                                             boolean isDeleteOrphanKeysInDryMode,
-                                    @Named("cms.env.name") String environmentName) {
+                                    @Named("cms.env.name") String environmentName,
+                                    @Named("cms.kms.delete_orphaned_keys_job.regionThreads") int regionThreads,
+                                    @Named("cms.kms.delete_orphaned_keys_job.getKeyPolicyThreadsPerRegion")
+                                            int getKeyPolicyThreadsPerRegion,
+                                    @Named("cms.kms.delete_orphaned_keys_job.getKeyPolicyCallsPerSecondPerRegion")
+                                            double getKeyPolicyCallsPerSecondPerRegion) {
 
         this.kmsService = kmsService;
+        this.jobCheckpointDao = jobCheckpointDao;
+        this.dateTimeSupplier = dateTimeSupplier;
         this.isDeleteOrphanKeysInDryMode = isDeleteOrphanKeysInDryMode;
         this.environmentName = environmentName;
+        this.regionThreads = regionThreads;
+        this.getKeyPolicyThreadsPerRegion = getKeyPolicyThreadsPerRegion;
+        this.getKeyPolicyCallsPerSecondPerRegion = getKeyPolicyCallsPerSecondPerRegion;
     }
 
     @Override
@@ -44,27 +79,48 @@ public class OrphanedKmsKeyCleanUpJob extends LockingJob {
         log.info("Fetching the the keys that are in the database");
         List<AuthKmsKeyMetadata> authKmsKeyMetadataList = kmsService.getAuthenticationKmsMetadata();
 
-        Map<String, Set<String>> orphanedKeysByRegion = new HashMap<>();
-
-        // For each region that has KMS
-        Arrays.stream(Regions.values()).forEach(region -> {
-            String regionName = region.getName();
-
-            // skip china
-            if (regionName.startsWith("cn")) {
-                log.debug("KMS isn't in china, skipping...");
-                return;
-            }
-            // skip us gov
-            if (regionName.startsWith("us-gov")) {
-                log.debug("Cerberus isn't in us-gov, as z requires special credentials, skipping...");
-                return;
+        Map<String, CompletableFuture<Set<String>>> regionsInProgress = new LinkedHashMap<>();
+        ExecutorService regionExecutor = newDaemonThreadPool(regionThreads, "orphaned-kms-key-clean-up");
+        try {
+            // For each region that has KMS
+            Arrays.stream(Regions.values()).forEach(region -> {
+                String regionName = region.getName();
+
+                // skip china
+                if (regionName.startsWith("cn")) {
+                    log.debug("KMS isn't in china, skipping...");
+                    return;
+                }
+                // skip us gov
+                if (regionName.startsWith("us-gov")) {
+                    log.debug("Cerberus isn't in us-gov, as z requires special credentials, skipping...");
+                    return;
+                }
+
+                regionsInProgress.put(regionName, CompletableFuture.supplyAsync(
+                        () -> processRegion(authKmsKeyMetadataList, regionName), regionExecutor));
+            });
+
+            Map<String, Set<String>> orphanedKeysByRegion = new LinkedHashMap<>();
+            for (Map.Entry<String, CompletableFuture<Set<String>>> regionInProgress : regionsInProgress.entrySet()) {
+                String regionName = regionInProgress.getKey();
+                try {
+                    orphanedKeysByRegion.put(regionName, regionInProgress.getValue().get());
+                } catch (InterruptedException e) {
+                    // e.g. the lease of the lock was lost, shutting down the executor interrupts the regions too
+                    log.error("Interrupted, the next run resumes the regions from their last checkpoints");
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (ExecutionException e) {
+                    log.error("Failed to process region: {}, the next run resumes from its last checkpoint",
+                            regionName, e.getCause());
+                }
             }
 
-            orphanedKeysByRegion.put(regionName, processRegion(authKmsKeyMetadataList, regionName));
-        });
-
-        logCompleteSummary(orphanedKeysByRegion);
+            logCompleteSummary(orphanedKeysByRegion);
+        } finally {
+            regionExecutor.shutdownNow();
+        }
     }
 
     /**
@@ -86,29 +142,82 @@ public class OrphanedKmsKeyCleanUpJob extends LockingJob {
                 })
                 .collect(Collectors.toSet());
 
-        log.info("Fetching all KMS CMK ids keys for the region: {}", regionName);
-        Set<String> allKmsCmkIdsForRegion = kmsService.getKmsKeyIdsForRegion(regionName);
-        log.info("Found {} keys to process for region: {}", allKmsCmkIdsForRegion.size(), regionName);
-
-        log.info("Filtering out the keys that were not created by this environment");
-        Set<String> kmsCmksCreatedByKmsService = kmsService.filterKeysCreatedByKmsService(allKmsCmkIdsForRegion, regionName);
-        log.info("Found {} keys to created by this environment process for region: {}", kmsCmksCreatedByKmsService.size(), regionName);
+        String checkpointName = CHECKPOINT_NAME_PREFIX + regionName;
+        Optional<JobCheckpointRecord> checkpoint = jobCheckpointDao.getCheckpoint(checkpointName);
+        String marker = checkpoint.map(JobCheckpointRecord::getCheckpointId).orElse(null);
+        if (marker != null) {
+            log.info("Resuming the processing of region: {} from its last checkpoint", regionName);
+        }
 
-        log.info("Calculating difference between the set of keys created by this env to the set of keys in the db");
-        Set<String> orphanedKmsKeysForRegion = Sets.difference(kmsCmksCreatedByKmsService, currentKmsCmkIdsForRegion);
-        log.info("Found {} keys that were orphaned for region: {}", orphanedKmsKeysForRegion.size(), regionName);
+        Set<String> kmsCmksCreatedByKmsService = new HashSet<>();
+        Set<String> orphanedKmsKeysForRegion = new HashSet<>();
+        ExecutorService getKeyPolicyExecutor =
+                newDaemonThreadPool(getKeyPolicyThreadsPerRegion, "orphaned-kms-key-policy-" + regionName);
+        RateLimiter getKeyPolicyRateLimiter = RateLimiter.create(getKeyPolicyCallsPerSecondPerRegion);
+        try {
+            while (! Thread.currentThread().isInterrupted()) {
+                log.info("Fetching a page of KMS CMK ids for the region: {}", regionName);
+                ListKeysResult page;
+                try {
+                    page = kmsService.listKmsKeys(regionName, marker);
+                } catch (InvalidMarkerException e) {
+                    log.warn("The checkpoint of region: {} is no longer valid, starting over", regionName);
+                    marker = null;
+                    continue;
+                }
+                Set<String> kmsCmkIds = page.getKeys().stream()
+                        .map(KeyListEntry::getKeyId)
+                        .collect(Collectors.toSet());
+                log.info("Found {} keys to process for region: {}", kmsCmkIds.size(), regionName);
+
+                log.info("Filtering out the keys that were not created by this environment");
+                Set<String> createdByKmsService = kmsService.filterKeysCreatedByKmsService(kmsCmkIds, regionName,
+                        getKeyPolicyExecutor, getKeyPolicyRateLimiter);
+                log.info("Found {} keys to created by this environment process for region: {}", createdByKmsService.size(), regionName);
+
+                log.info("Calculating difference between the set of keys created by this env to the set of keys in the db");
+                Set<String> orphanedKmsKeys = Sets.difference(createdByKmsService, currentKmsCmkIdsForRegion);
+                log.info("Found {} keys that were orphaned for region: {}", orphanedKmsKeys.size(), regionName);
+
+                // Delete the orphaned keys
+                if (! isDeleteOrphanKeysInDryMode) {
+                    orphanedKmsKeys.forEach(kmsCmkId -> kmsService
+                            .scheduleKmsKeyDeletion(kmsCmkId, regionName, SOONEST_A_KMS_KEY_CAN_BE_DELETED));
+                }
+                kmsCmksCreatedByKmsService.addAll(createdByKmsService);
+                orphanedKmsKeysForRegion.addAll(orphanedKmsKeys);
+
+                // Only checkpoint once every key of the page has been handled
+                marker = page.getNextMarker();
+                if (marker == null) {
+                    jobCheckpointDao.deleteCheckpoint(checkpointName, getLockName(), getFencingToken());
+                    break;
+                }
+                if (! jobCheckpointDao.saveCheckpoint(checkpointName, null, marker, getLockName(),
+                        getFencingToken(), dateTimeSupplier.get())) {
+                    log.error("Lost the lease of lock: {}, stopping the processing of region: {}", getLockName(),
+                            regionName);
+                    break;
+                }
+            }
+        } finally {
+            getKeyPolicyExecutor.shutdownNow();
+        }
 
         logRegionSummary(regionName, kmsCmksCreatedByKmsService, currentKmsCmkIdsForRegion, orphanedKmsKeysForRegion);
 
-        // Delete the orphaned keys
-        if (! isDeleteOrphanKeysInDryMode) {
-            orphanedKmsKeysForRegion.forEach(kmsCmkId -> kmsService
-                    .scheduleKmsKeyDeletion(kmsCmkId, regionName, SOONEST_A_KMS_KEY_CAN_BE_DELETED));
-        }
-
         return orphanedKmsKeysForRegion;
     }
 
+    private ExecutorService newDaemonThreadPool(int threads, String threadNamePrefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, threadNamePrefix + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
     /**
      * Logs the summary of actions taken for a given region
      */
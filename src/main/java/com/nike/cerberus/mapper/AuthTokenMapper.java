@@ -17,15 +17,31 @@
 package com.nike.cerberus.mapper;
 
 import com.nike.cerberus.record.AuthTokenRecord;
+import com.nike.cerberus.record.RevokedTokenRecord;
 import org.apache.ibatis.annotations.Param;
 
+import java.time.OffsetDateTime;
+import java.util.List;
+
 public interface AuthTokenMapper {
 
     int createAuthToken(@Param("record") AuthTokenRecord record);
 
     AuthTokenRecord getAuthTokenFromHash(@Param("hash") String hash);
 
-    void deleteAuthTokenFromHash(@Param("hash") String hash);
+    OffsetDateTime getLatestExpiryOfAuthTokensWithScheme(@Param("hashScheme") String hashScheme);
+
+    int deleteAuthTokenFromHash(@Param("hash") String hash);
 
     int deleteExpiredTokens(@Param("limit") int limit);
+
+    int createRevokedToken(@Param("hash") String hash);
+
+    List<RevokedTokenRecord> getRevokedTokensAfter(@Param("sequence") long sequence,
+                                                   @Param("commitGraceInSeconds") int commitGraceInSeconds,
+                                                   @Param("limit") int limit);
+
+    Long getLastSettledRevokedTokenSequence(@Param("commitGraceInSeconds") int commitGraceInSeconds);
+
+    int deleteRevokedTokensOlderThan(@Param("retentionInHours") int retentionInHours);
 }
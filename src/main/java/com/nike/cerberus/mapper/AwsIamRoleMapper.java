@@ -53,6 +53,9 @@ public interface AwsIamRoleMapper {
 
     int updateIamRoleKmsKey(@Param("record") AwsIamRoleKmsKeyRecord record);
 
+    int updateIamRoleKmsKeysLastValidated(@Param("records") List<AwsIamRoleKmsKeyRecord> records,
+                                          @Param("lastUpdatedBy") String lastUpdatedBy);
+
     List<AwsIamRoleKmsKeyRecord> getInactiveOrOrphanedKmsKeys(@Param("keyInactiveDateTime") OffsetDateTime keyInactiveDateTime);
 
     List<AwsIamRoleRecord> getOrphanedIamRoles();
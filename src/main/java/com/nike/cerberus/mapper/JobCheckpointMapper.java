@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nike.cerberus.mapper;
+
+import com.nike.cerberus.record.JobCheckpointRecord;
+import org.apache.ibatis.annotations.Param;
+
+public interface JobCheckpointMapper {
+
+    JobCheckpointRecord getCheckpoint(@Param("name") String name);
+
+    int saveCheckpoint(@Param("record") JobCheckpointRecord record,
+                       @Param("lockName") String lockName,
+                       @Param("fencingToken") long fencingToken);
+
+    int deleteCheckpoint(@Param("name") String name,
+                         @Param("lockName") String lockName,
+                         @Param("fencingToken") long fencingToken);
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nike.cerberus.mapper;
+
+import com.nike.cerberus.record.KmsKeyPoolRecord;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+public interface KmsKeyPoolMapper {
+
+    int createKey(@Param("record") KmsKeyPoolRecord record);
+
+    int claimKey(@Param("awsRegion") String awsRegion,
+                 @Param("claimedBy") String claimedBy,
+                 @Param("claimedTs") OffsetDateTime claimedTs);
+
+    KmsKeyPoolRecord getKeyClaimedBy(@Param("claimedBy") String claimedBy);
+
+    int countUnclaimedKeys(@Param("awsRegion") String awsRegion);
+
+    List<KmsKeyPoolRecord> getKeysClaimedBefore(@Param("claimedTs") OffsetDateTime claimedTs);
+
+    int deleteKey(@Param("id") String id);
+}
@@ -19,7 +19,22 @@ package com.nike.cerberus.mapper;
 import org.apache.ibatis.annotations.Param;
 
 public interface LockMapper {
-    Integer getLock(@Param("name") String name);
+    int createLease(@Param("name") String name,
+                    @Param("holder") String holder,
+                    @Param("leaseDurationInSeconds") int leaseDurationInSeconds);
 
-    Integer releaseLock(@Param("name") String jobName);
+    int takeOverExpiredLease(@Param("name") String name,
+                             @Param("holder") String holder,
+                             @Param("leaseDurationInSeconds") int leaseDurationInSeconds);
+
+    Long getFencingToken(@Param("name") String name, @Param("holder") String holder);
+
+    int renewLease(@Param("name") String name,
+                   @Param("holder") String holder,
+                   @Param("fencingToken") long fencingToken,
+                   @Param("leaseDurationInSeconds") int leaseDurationInSeconds);
+
+    int expireLease(@Param("name") String name,
+                    @Param("holder") String holder,
+                    @Param("fencingToken") long fencingToken);
 }
@@ -16,8 +16,11 @@
 
 package com.nike.cerberus.mapper;
 
+import com.nike.cerberus.record.SdbPermissionRecord;
+import com.nike.cerberus.record.SdbPermissionRevocationRecord;
 import org.apache.ibatis.annotations.Param;
 
+import java.util.List;
 import java.util.Set;
 
 public interface PermissionsMapper {
@@ -40,4 +43,18 @@ public interface PermissionsMapper {
     Boolean doesUserHavePermsForRoleAndSdbCaseInsensitive(@Param("sdbId") String sdbId,
                                                           @Param("rolesThatAllowPermission") Set<String> rolesThatAllowPermission,
                                                           @Param("userGroupsThatPrincipalBelongsTo") Set<String> userGroupsThatPrincipalBelongsTo);
+
+    List<SdbPermissionRecord> getAllUserGroupPermissions();
+
+    List<SdbPermissionRecord> getAllIamPrincipalPermissions();
+
+    int createSdbPermissionRevocation(@Param("sdbId") String sdbId);
+
+    List<SdbPermissionRevocationRecord> getSdbPermissionRevocationsAfter(@Param("sequence") long sequence,
+                                                                         @Param("commitGraceInSeconds") int commitGraceInSeconds,
+                                                                         @Param("limit") int limit);
+
+    Long getLastSettledSdbPermissionRevocationSequence(@Param("commitGraceInSeconds") int commitGraceInSeconds);
+
+    int deleteSdbPermissionRevocationsOlderThan(@Param("retentionInHours") int retentionInHours);
 }
@@ -18,10 +18,14 @@ package com.nike.cerberus.mapper;
 
 import com.nike.cerberus.domain.SecureDataType;
 import com.nike.cerberus.record.DataKeyInfo;
+import com.nike.cerberus.record.ResolvedSecureDataRecord;
+import com.nike.cerberus.record.SecureDataPathNodeRecord;
 import com.nike.cerberus.record.SecureDataRecord;
 import org.apache.ibatis.annotations.Param;
 
+import java.io.InputStream;
 import java.time.OffsetDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
@@ -31,29 +35,71 @@ public interface SecureDataMapper {
 
     int updateSecureData(@Param("record") SecureDataRecord record);
 
+    int writeSecureDataFromStream(@Param("record") SecureDataRecord record,
+                                  @Param("encryptedPayload") InputStream encryptedPayload);
+
+    int updateSecureDataFromStream(@Param("record") SecureDataRecord record,
+                                   @Param("encryptedPayload") InputStream encryptedPayload);
+
     SecureDataRecord readSecureDataByPath(@Param("sdbId") String sdbId, @Param("path") String path);
 
     SecureDataRecord readSecureDataByIdLocking(@Param("id") String id);
 
+    List<SecureDataRecord> readSecureDataByPathsLocking(@Param("sdbIds") Collection<String> sdbIds,
+                                                        @Param("paths") Collection<String> paths);
+
     SecureDataRecord readSecureDataByPathAndType(@Param("sdbId") String sdbId, @Param("path") String path, @Param("type") SecureDataType type);
 
+    List<SecureDataRecord> readSecureDataByPathsAndType(@Param("sdbIds") Collection<String> sdbIds,
+                                                        @Param("paths") Collection<String> paths,
+                                                        @Param("type") SecureDataType type);
+
+    ResolvedSecureDataRecord resolveSecureDataByPathAndType(@Param("sdbPath") String sdbPath,
+                                                            @Param("path") String path,
+                                                            @Param("type") SecureDataType type,
+                                                            @Param("iamPrincipal") boolean iamPrincipal,
+                                                            @Param("principalNames") Collection<String> principalNames,
+                                                            @Param("userGroupsCaseSensitive") boolean userGroupsCaseSensitive,
+                                                            @Param("rolesThatAllowPermission") Set<String> rolesThatAllowPermission);
+
     SecureDataRecord readMetadataByPathAndType(@Param("sdbId") String sdbId, @Param("path") String path, @Param("type") SecureDataType type);
 
+    SecureDataRecord readMetadataByPath(@Param("sdbId") String sdbId, @Param("path") String path);
+
     String[] getPathsByPartialPath(@Param("sdbId") String sdbId, @Param("partialPath") String partialPath);
 
     String[] getPathsByPartialPathAndType(@Param("sdbId") String sdbId, @Param("partialPath") String partialPath, @Param("type") SecureDataType type);
 
-    List<SecureDataRecord> listSecureDataByPartialPathAndType(
+    List<SecureDataRecord> listMetadataByPartialPathAndType(
         @Param("sdbId") String sdbId,
         @Param("partialPath") String partialPath,
         @Param("type") SecureDataType type,
         @Param("limit") int limit,
         @Param("offset") int offset);
 
-    int countByPartialPathAndType(@Param("partialPath") String partialPath, @Param("type") SecureDataType type);
+    List<SecureDataRecord> listMetadataByPartialPathAndTypeAfterCursor(
+        @Param("sdbId") String sdbId,
+        @Param("partialPath") String partialPath,
+        @Param("type") SecureDataType type,
+        @Param("cursorTs") OffsetDateTime cursorTs,
+        @Param("cursorId") String cursorId,
+        @Param("limit") int limit);
+
+    int countByPartialPathAndType(@Param("sdbId") String sdbId, @Param("partialPath") String partialPath, @Param("type") SecureDataType type);
 
     int countByType(@Param("type") SecureDataType type);
 
+    List<String> getChildKeysByParentPath(@Param("sdbId") String sdbId, @Param("parentPath") String parentPath);
+
+    int incrementPathNodes(@Param("sdbId") String sdbId, @Param("nodes") List<SecureDataPathNodeRecord> nodes);
+
+    int decrementPathNodes(@Param("nodes") List<SecureDataPathNodeRecord> nodes, @Param("count") int count);
+
+    int deleteEmptyPathNodes(@Param("nodes") List<SecureDataPathNodeRecord> nodes);
+
+    int deleteAllPathNodesThatStartWithGivenPartialPath(@Param("sdbId") String sdbId,
+                                                        @Param("partialPath") String partialPath);
+
     Set<String> getPathsBySdbId(@Param("sdbId") String sdbId);
 
     int getTotalNumberOfDataNodes();
@@ -65,6 +111,15 @@ public interface SecureDataMapper {
 
     Integer getSumTopLevelKeyValuePairs();
 
-    List<DataKeyInfo> getOldestDataKeyInfo(@Param("datetime") OffsetDateTime dateTime,
-                                           @Param("limit") int limit);
+    List<DataKeyInfo> getOldestSecureDataKeyInfo(@Param("datetime") OffsetDateTime dateTime,
+                                                 @Param("cursorTs") OffsetDateTime cursorTs,
+                                                 @Param("cursorId") String cursorId,
+                                                 @Param("limit") int limit);
+
+    List<DataKeyInfo> getOldestSecureDataVersionKeyInfo(@Param("datetime") OffsetDateTime dateTime,
+                                                        @Param("cursorTs") OffsetDateTime cursorTs,
+                                                        @Param("cursorId") String cursorId,
+                                                        @Param("limit") int limit);
+
+    int countDataKeysRotatedBefore(@Param("datetime") OffsetDateTime dateTime);
 }
@@ -28,13 +28,20 @@ public interface SecureDataVersionMapper {
 
     int writeSecureDataVersion(@Param("record") SecureDataVersionRecord record);
 
+    int writeSecureDataVersions(@Param("records") List<SecureDataVersionRecord> records);
+
     int updateSecureDataVersion(@Param("record") SecureDataVersionRecord record);
 
     Integer getTotalNumVersionsForPath(String path);
 
-    List<SecureDataVersionRecord> listSecureDataVersionsByPath(@Param("path") String path,
-                                                               @Param("limit") int limit,
-                                                               @Param("offset") int offset);
+    List<SecureDataVersionRecord> listVersionMetadataByPath(@Param("path") String path,
+                                                            @Param("limit") int limit,
+                                                            @Param("offset") int offset);
+
+    List<SecureDataVersionRecord> listVersionMetadataByPathAfterCursor(@Param("path") String path,
+                                                                       @Param("cursorTs") OffsetDateTime cursorTs,
+                                                                       @Param("cursorId") String cursorId,
+                                                                       @Param("limit") int limit);
 
     SecureDataVersionRecord readSecureDataVersionById(@Param("id") String id);
 
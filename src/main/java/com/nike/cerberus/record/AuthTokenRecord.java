@@ -24,6 +24,8 @@ public class AuthTokenRecord {
     
     private String tokenHash;
 
+    private String hashScheme;
+
     private OffsetDateTime createdTs;
 
     private OffsetDateTime expiresTs;
@@ -56,6 +58,15 @@ public class AuthTokenRecord {
         return this;
     }
 
+    public String getHashScheme() {
+        return hashScheme;
+    }
+
+    public AuthTokenRecord setHashScheme(String hashScheme) {
+        this.hashScheme = hashScheme;
+        return this;
+    }
+
     public OffsetDateTime getCreatedTs() {
         return createdTs;
     }
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nike.cerberus.record;
+
+import java.time.OffsetDateTime;
+
+/**
+ * How far a long running job got, e.g. the timestamp and ID of the last record that it processed.
+ */
+public class JobCheckpointRecord {
+
+    private String name;
+
+    private OffsetDateTime checkpointTs;
+
+    private String checkpointId;
+
+    private OffsetDateTime lastUpdatedTs;
+
+    public String getName() {
+        return name;
+    }
+
+    public JobCheckpointRecord setName(String name) {
+        this.name = name;
+        return this;
+    }
+
+    public OffsetDateTime getCheckpointTs() {
+        return checkpointTs;
+    }
+
+    public JobCheckpointRecord setCheckpointTs(OffsetDateTime checkpointTs) {
+        this.checkpointTs = checkpointTs;
+        return this;
+    }
+
+    public String getCheckpointId() {
+        return checkpointId;
+    }
+
+    public JobCheckpointRecord setCheckpointId(String checkpointId) {
+        this.checkpointId = checkpointId;
+        return this;
+    }
+
+    public OffsetDateTime getLastUpdatedTs() {
+        return lastUpdatedTs;
+    }
+
+    public JobCheckpointRecord setLastUpdatedTs(OffsetDateTime lastUpdatedTs) {
+        this.lastUpdatedTs = lastUpdatedTs;
+        return this;
+    }
+}
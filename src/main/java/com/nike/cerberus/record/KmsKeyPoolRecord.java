@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nike.cerberus.record;
+
+import java.time.OffsetDateTime;
+
+/**
+ * A KMS key that was created ahead of time and is not yet assigned to an IAM principal, or that is being assigned to
+ * one by the authentication that claimed it.
+ */
+public class KmsKeyPoolRecord {
+
+    private String id;
+
+    private String awsRegion;
+
+    private String awsKmsKeyId;
+
+    /**
+     * The ID of the AWS_IAM_ROLE_KMS_KEY record the key is being assigned to, null while the key is unclaimed
+     */
+    private String claimedBy;
+
+    private OffsetDateTime claimedTs;
+
+    private String createdBy;
+
+    private OffsetDateTime createdTs;
+
+    public String getId() {
+        return id;
+    }
+
+    public KmsKeyPoolRecord setId(String id) {
+        this.id = id;
+        return this;
+    }
+
+    public String getAwsRegion() {
+        return awsRegion;
+    }
+
+    public KmsKeyPoolRecord setAwsRegion(String awsRegion) {
+        this.awsRegion = awsRegion;
+        return this;
+    }
+
+    public String getAwsKmsKeyId() {
+        return awsKmsKeyId;
+    }
+
+    public KmsKeyPoolRecord setAwsKmsKeyId(String awsKmsKeyId) {
+        this.awsKmsKeyId = awsKmsKeyId;
+        return this;
+    }
+
+    public String getClaimedBy() {
+        return claimedBy;
+    }
+
+    public KmsKeyPoolRecord setClaimedBy(String claimedBy) {
+        this.claimedBy = claimedBy;
+        return this;
+    }
+
+    public OffsetDateTime getClaimedTs() {
+        return claimedTs;
+    }
+
+    public KmsKeyPoolRecord setClaimedTs(OffsetDateTime claimedTs) {
+        this.claimedTs = claimedTs;
+        return this;
+    }
+
+    public String getCreatedBy() {
+        return createdBy;
+    }
+
+    public KmsKeyPoolRecord setCreatedBy(String createdBy) {
+        this.createdBy = createdBy;
+        return this;
+    }
+
+    public OffsetDateTime getCreatedTs() {
+        return createdTs;
+    }
+
+    public KmsKeyPoolRecord setCreatedTs(OffsetDateTime createdTs) {
+        this.createdTs = createdTs;
+        return this;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nike.cerberus.record;
+
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+
+/**
+ * POJO for representing the safe deposit box a secure data path resolves to, whether a principal has permission on it
+ * and, if so, the secret stored at the path. The secret fields are null when there is no secret at the path or the
+ * principal lacks permission.
+ */
+public class ResolvedSecureDataRecord {
+
+    private String sdboxId;
+    private Boolean permitted;
+    private Integer secureDataId;
+    private String path;
+    private byte[] encryptedBlob;
+    private OffsetDateTime createdTs;
+    private String createdBy;
+    private OffsetDateTime lastUpdatedTs;
+    private String lastUpdatedBy;
+
+    public String getSdboxId() {
+        return sdboxId;
+    }
+
+    public ResolvedSecureDataRecord setSdboxId(String sdboxId) {
+        this.sdboxId = sdboxId;
+        return this;
+    }
+
+    public Boolean getPermitted() {
+        return permitted;
+    }
+
+    public ResolvedSecureDataRecord setPermitted(Boolean permitted) {
+        this.permitted = permitted;
+        return this;
+    }
+
+    public Integer getSecureDataId() {
+        return secureDataId;
+    }
+
+    public ResolvedSecureDataRecord setSecureDataId(Integer secureDataId) {
+        this.secureDataId = secureDataId;
+        return this;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public ResolvedSecureDataRecord setPath(String path) {
+        this.path = path;
+        return this;
+    }
+
+    public byte[] getEncryptedBlob() {
+        return encryptedBlob != null ?
+                Arrays.copyOf(encryptedBlob, encryptedBlob.length) :
+                null;
+    }
+
+    public ResolvedSecureDataRecord setEncryptedBlob(byte[] encryptedBlob) {
+        this.encryptedBlob = encryptedBlob != null ?
+                Arrays.copyOf(encryptedBlob, encryptedBlob.length) :
+                null;
+        return this;
+    }
+
+    public OffsetDateTime getCreatedTs() {
+        return createdTs;
+    }
+
+    public ResolvedSecureDataRecord setCreatedTs(OffsetDateTime createdTs) {
+        this.createdTs = createdTs;
+        return this;
+    }
+
+    public String getCreatedBy() {
+        return createdBy;
+    }
+
+    public ResolvedSecureDataRecord setCreatedBy(String createdBy) {
+        this.createdBy = createdBy;
+        return this;
+    }
+
+    public OffsetDateTime getLastUpdatedTs() {
+        return lastUpdatedTs;
+    }
+
+    public ResolvedSecureDataRecord setLastUpdatedTs(OffsetDateTime lastUpdatedTs) {
+        this.lastUpdatedTs = lastUpdatedTs;
+        return this;
+    }
+
+    public String getLastUpdatedBy() {
+        return lastUpdatedBy;
+    }
+
+    public ResolvedSecureDataRecord setLastUpdatedBy(String lastUpdatedBy) {
+        this.lastUpdatedBy = lastUpdatedBy;
+        return this;
+    }
+}
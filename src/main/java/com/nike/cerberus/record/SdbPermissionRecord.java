@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nike.cerberus.record;
+
+/**
+ * POJO for representing the role a user group or IAM principal, identified by its name or ARN, has on a safe deposit box.
+ */
+public class SdbPermissionRecord {
+
+    private String sdboxId;
+
+    private String principalName;
+
+    private String roleId;
+
+    public String getSdboxId() {
+        return sdboxId;
+    }
+
+    public SdbPermissionRecord setSdboxId(String sdboxId) {
+        this.sdboxId = sdboxId;
+        return this;
+    }
+
+    public String getPrincipalName() {
+        return principalName;
+    }
+
+    public SdbPermissionRecord setPrincipalName(String principalName) {
+        this.principalName = principalName;
+        return this;
+    }
+
+    public String getRoleId() {
+        return roleId;
+    }
+
+    public SdbPermissionRecord setRoleId(String roleId) {
+        this.roleId = roleId;
+        return this;
+    }
+}
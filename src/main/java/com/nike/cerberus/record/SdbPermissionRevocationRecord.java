@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nike.cerberus.record;
+
+/**
+ * An entry in the change log of SDBs that had permissions revoked.
+ */
+public class SdbPermissionRevocationRecord {
+
+    private Long sequence;
+
+    private String sdboxId;
+
+    /**
+     * True if the revocation is old enough that any revocation with a lower sequence must have been committed already
+     */
+    private Boolean settled;
+
+    public Long getSequence() {
+        return sequence;
+    }
+
+    public SdbPermissionRevocationRecord setSequence(Long sequence) {
+        this.sequence = sequence;
+        return this;
+    }
+
+    public String getSdboxId() {
+        return sdboxId;
+    }
+
+    public SdbPermissionRevocationRecord setSdboxId(String sdboxId) {
+        this.sdboxId = sdboxId;
+        return this;
+    }
+
+    public Boolean getSettled() {
+        return settled;
+    }
+
+    public SdbPermissionRevocationRecord setSettled(Boolean settled) {
+        this.settled = settled;
+        return this;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nike.cerberus.record;
+
+/**
+ * POJO for representing a direct child, i.e. a key or a folder, of a folder that contains secure data.
+ * e.g. the secret at app/foo/bar has the nodes app/foo/ (child foo/ of app/) and app/foo/bar (child bar of app/foo/)
+ */
+public class SecureDataPathNodeRecord {
+
+    private String path;
+
+    private String parentPath;
+
+    private String childKey;
+
+    public String getPath() {
+        return path;
+    }
+
+    public SecureDataPathNodeRecord setPath(String path) {
+        this.path = path;
+        return this;
+    }
+
+    public String getParentPath() {
+        return parentPath;
+    }
+
+    public SecureDataPathNodeRecord setParentPath(String parentPath) {
+        this.parentPath = parentPath;
+        return this;
+    }
+
+    public String getChildKey() {
+        return childKey;
+    }
+
+    public SecureDataPathNodeRecord setChildKey(String childKey) {
+        this.childKey = childKey;
+        return this;
+    }
+}
@@ -36,6 +36,11 @@ public class SecureDataRecord {
     private String lastUpdatedBy;
     private OffsetDateTime lastRotatedTs;
 
+    /**
+     * When the data key that encrypts the blob was generated, by a write or by a key rotation
+     */
+    private OffsetDateTime keyMaterialTs;
+
     public Integer getId() {
         return id;
     }
@@ -147,4 +152,13 @@ public class SecureDataRecord {
         this.lastRotatedTs = lastRotatedTs;
         return this;
     }
+
+    public OffsetDateTime getKeyMaterialTs() {
+        return keyMaterialTs;
+    }
+
+    public SecureDataRecord setKeyMaterialTs(OffsetDateTime keyMaterialTs) {
+        this.keyMaterialTs = keyMaterialTs;
+        return this;
+    }
 }
@@ -37,6 +37,11 @@ public class SecureDataVersionRecord {
     private OffsetDateTime actionTs;
     private OffsetDateTime lastRotatedTs;
 
+    /**
+     * When the data key that encrypts the blob was generated, by a write or by a key rotation
+     */
+    private OffsetDateTime keyMaterialTs;
+
     public String getId() {
         return id;
     }
@@ -154,4 +159,13 @@ public class SecureDataVersionRecord {
         this.lastRotatedTs = lastRotatedTs;
         return this;
     }
+
+    public OffsetDateTime getKeyMaterialTs() {
+        return keyMaterialTs;
+    }
+
+    public SecureDataVersionRecord setKeyMaterialTs(OffsetDateTime keyMaterialTs) {
+        this.keyMaterialTs = keyMaterialTs;
+        return this;
+    }
 }
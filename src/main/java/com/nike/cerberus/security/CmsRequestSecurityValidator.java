@@ -16,6 +16,8 @@
 
 package com.nike.cerberus.security;
 
+import com.codahale.metrics.Timer;
+import com.google.common.collect.ImmutableMap;
 import com.nike.backstopper.exception.ApiException;
 import com.nike.cerberus.domain.CerberusAuthToken;
 import com.nike.cerberus.endpoints.AuditableEventEndpoint;
@@ -23,6 +25,7 @@ import com.nike.cerberus.endpoints.secret.SecureDataEndpointV1;
 import com.nike.cerberus.error.DefaultApiError;
 import com.nike.cerberus.service.AuthTokenService;
 import com.nike.cerberus.service.EventProcessorService;
+import com.nike.cerberus.service.MetricsService;
 import com.nike.riposte.server.error.validation.RequestSecurityValidator;
 import com.nike.riposte.server.http.RequestInfo;
 import com.nike.riposte.server.http.Endpoint;
@@ -39,6 +42,11 @@ import java.util.Optional;
 /**
  * Request validator responsible for validating that the X-Vault-Token or X-Cerberus-Token header is present and valid.
  * The client token entity will also be placed in the request context to be referenced downstream.
+ * <p>
+ * Validation happens in two phases, each with its own timer: the token is first looked up in the auth token cache,
+ * which is a pure memory lookup, and only on a miss is it hashed and verified against the database. Riposte decides
+ * once per validator, not per request, whether to validate on the Netty worker thread, so validation always runs on
+ * the async security validation executor, where a cache miss cannot block the event loop.
  */
 public class CmsRequestSecurityValidator implements RequestSecurityValidator {
 
@@ -46,25 +54,31 @@ public class CmsRequestSecurityValidator implements RequestSecurityValidator {
     public static final String LEGACY_AUTH_TOKN_HEADER = "X-Vault-Token";
     public static final String SECURITY_CONTEXT_ATTR_KEY = "cerberusSecurityContext";
 
+    private static final String CACHED_VALIDATION_TIMER = "cms.auth.token.validation.cached";
+    private static final String VERIFIED_VALIDATION_TIMER = "cms.auth.token.validation.verified";
+
     private final Logger log = LoggerFactory.getLogger(getClass());
 
     private final Collection<Endpoint<?>> endpointsToValidate;
     private final AuthTokenService authTokenService;
+    private final MetricsService metricsService;
 
     public CmsRequestSecurityValidator(Collection<Endpoint<?>> endpointsToValidate,
-                                       AuthTokenService authTokenService) {
+                                       AuthTokenService authTokenService,
+                                       MetricsService metricsService) {
 
         this.endpointsToValidate = endpointsToValidate;
         this.endpointsToValidate.forEach(endpoint -> log.info("auth protected: {}", endpoint.getClass().getName()));
 
         this.authTokenService = authTokenService;
+        this.metricsService = metricsService;
     }
 
     @Override
     public void validateSecureRequestForEndpoint(RequestInfo<?> requestInfo, Endpoint<?> endpoint) {
         String token = parseRequiredAuthHeaderFromRequest(requestInfo.getHeaders());
 
-        Optional<CerberusAuthToken> authToken = authTokenService.getCerberusAuthToken(token);
+        Optional<CerberusAuthToken> authToken = getAuthToken(token);
 
         CerberusPrincipal principal = null;
         if (! authToken.isPresent()) {
@@ -81,6 +95,20 @@ public class CmsRequestSecurityValidator implements RequestSecurityValidator {
         }
     }
 
+    private Optional<CerberusAuthToken> getAuthToken(String token) {
+        CerberusAuthToken cachedAuthToken;
+        try (Timer.Context ignored = metricsService.getOrCreateTimer(CACHED_VALIDATION_TIMER, ImmutableMap.of()).time()) {
+            cachedAuthToken = authTokenService.getCachedCerberusAuthToken(token);
+        }
+        if (cachedAuthToken != null) {
+            return Optional.of(cachedAuthToken);
+        }
+
+        try (Timer.Context ignored = metricsService.getOrCreateTimer(VERIFIED_VALIDATION_TIMER, ImmutableMap.of()).time()) {
+            return authTokenService.verifyCerberusAuthToken(token);
+        }
+    }
+
     private String parseRequiredAuthHeaderFromRequest(HttpHeaders headers) {
         final String legacyToken = headers.get(LEGACY_AUTH_TOKN_HEADER);
         final String cerberusToken = headers.get(HEADER_X_CERBERUS_TOKEN);
@@ -101,6 +101,8 @@ public class CmsGuiceModule extends AbstractModule {
         }
 
         configureAuditLogging();
+
+        bind(TokenRevocationService.class).asEagerSingleton();
     }
 
     private void configureAuditLogging() {
@@ -123,6 +125,13 @@ public class CmsGuiceModule extends AbstractModule {
             shutdownHooks.add(injector.getInstance(S3LogUploaderService.class));
         }
         shutdownHooks.add(injector.getInstance(DistributedLockService.class));
+        shutdownHooks.add(injector.getInstance(TokenRevocationService.class));
+        shutdownHooks.add(injector.getInstance(SecureDataBatchReadService.class));
+        shutdownHooks.add(injector.getInstance(SecureDataBatchWriteService.class));
+        shutdownHooks.add(injector.getInstance(DataKeyRotationService.class));
+        shutdownHooks.add(injector.getInstance(KmsKeyPolicyValidationService.class));
+        shutdownHooks.add(injector.getInstance(KmsKeyValidationRecorder.class));
+        shutdownHooks.add(injector.getInstance(AsyncKmsEncryptService.class));
 
         return shutdownHooks;
     }
@@ -226,9 +235,10 @@ public class CmsGuiceModule extends AbstractModule {
     @Singleton
     public CmsRequestSecurityValidator authRequestSecurityValidator(
             @Named("authProtectedEndpoints") List<Endpoint<?>> authProtectedEndpoints,
-            AuthTokenService authTokenService) {
+            AuthTokenService authTokenService,
+            MetricsService metricsService) {
 
-        return new CmsRequestSecurityValidator(authProtectedEndpoints, authTokenService);
+        return new CmsRequestSecurityValidator(authProtectedEndpoints, authTokenService, metricsService);
     }
 
     @Provides
@@ -16,15 +16,23 @@
 
 package com.nike.cerberus.server.config.guice;
 
+import com.nike.cerberus.util.AfterCommitExecutor;
 import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
 import org.mybatis.guice.MyBatisModule;
 import org.mybatis.guice.datasource.c3p0.C3p0DataSourceProvider;
+import org.mybatis.guice.transactional.Transactional;
+
+import static com.google.inject.matcher.Matchers.annotatedWith;
+import static com.google.inject.matcher.Matchers.any;
+import static com.google.inject.matcher.Matchers.not;
 
 /**
  * Guice module for configuring the JDBC data source and MyBatis.
  */
 public class CmsMyBatisModule extends MyBatisModule {
 
+    private final AfterCommitExecutor afterCommitExecutor = new AfterCommitExecutor();
+
     @Override
     protected void initialize() {
         bindDataSourceProviderType(C3p0DataSourceProvider.class);
@@ -34,5 +42,22 @@ public class CmsMyBatisModule extends MyBatisModule {
         addMapperClasses("com.nike.cerberus.mapper");
         useCacheEnabled(false);
         failFast(true);
+
+        bind(AfterCommitExecutor.class).toInstance(afterCommitExecutor);
+    }
+
+    /**
+     * Binds the after commit executor on the same methods as the transaction interceptor, before it, so that it runs
+     * outside of it and only sees transactions once they have committed or rolled back.
+     */
+    @Override
+    protected void bindTransactionInterceptors() {
+        bindInterceptor(any(), not(SYNTHETIC).and(not(DECLARED_BY_OBJECT)).and(annotatedWith(Transactional.class)),
+                afterCommitExecutor);
+        bindInterceptor(annotatedWith(Transactional.class),
+                not(SYNTHETIC).and(not(DECLARED_BY_OBJECT)).and(not(annotatedWith(Transactional.class))),
+                afterCommitExecutor);
+
+        super.bindTransactionInterceptors();
     }
 }
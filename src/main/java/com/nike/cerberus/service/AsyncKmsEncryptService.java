@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nike.cerberus.service;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.regions.Region;
+import com.amazonaws.services.kms.AWSKMSAsync;
+import com.amazonaws.services.kms.AWSKMSAsyncClientBuilder;
+import com.amazonaws.services.kms.model.EncryptRequest;
+import com.amazonaws.services.kms.model.EncryptResult;
+import com.google.common.collect.Maps;
+import com.nike.backstopper.exception.ApiException;
+import com.nike.cerberus.error.DefaultApiError;
+import com.nike.riposte.server.config.ServerConfig;
+import com.nike.riposte.server.hooks.ServerShutdownHook;
+import io.netty.channel.Channel;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Calls KMS Encrypt without holding the calling thread until KMS responds. The calls are made on a small pool of
+ * threads shared by all regions, and the number of calls in flight to each region is bounded, with the calls over the
+ * bound waiting in a queue of that region rather than on a thread.
+ */
+@Singleton
+public class AsyncKmsEncryptService implements ServerShutdownHook {
+
+    private final int maxInFlightPerRegion;
+    private final int maxQueuedPerRegion;
+    private final int timeoutInMillis;
+    private final ExecutorService executor;
+
+    private final Map<Region, RegionQueue> regionQueues = Maps.newConcurrentMap();
+
+    @Inject
+    public AsyncKmsEncryptService(@Named("cms.kms.encrypt.async.threads") int threads,
+                                  @Named("cms.kms.encrypt.async.maxInFlightPerRegion") int maxInFlightPerRegion,
+                                  @Named("cms.kms.encrypt.async.maxQueuedPerRegion") int maxQueuedPerRegion,
+                                  @Named("cms.kms.encrypt.async.timeoutInMillis") int timeoutInMillis) {
+
+        this.maxInFlightPerRegion = maxInFlightPerRegion;
+        this.maxQueuedPerRegion = maxQueuedPerRegion;
+        this.timeoutInMillis = timeoutInMillis;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "kms-encrypt-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Encrypts the given request with KMS in the given region.
+     *
+     * @param region The region of the KMS key
+     * @param request The encrypt request
+     * @return A future completed with the result, or exceptionally with the error of the KMS client
+     */
+    public CompletableFuture<EncryptResult> encrypt(Region region, EncryptRequest request) {
+        RegionQueue regionQueue = regionQueues.computeIfAbsent(region, r -> new RegionQueue(createClient(r)));
+        CompletableFuture<EncryptResult> result = new CompletableFuture<>();
+
+        regionQueue.submit(() -> {
+            try {
+                regionQueue.client.encryptAsync(request, new AsyncHandler<EncryptRequest, EncryptResult>() {
+                    @Override
+                    public void onError(Exception exception) {
+                        regionQueue.release();
+                        result.completeExceptionally(exception);
+                    }
+
+                    @Override
+                    public void onSuccess(EncryptRequest encryptRequest, EncryptResult encryptResult) {
+                        regionQueue.release();
+                        result.complete(encryptResult);
+                    }
+                });
+            } catch (RuntimeException e) {
+                // e.g. the executor was shut down
+                regionQueue.release();
+                result.completeExceptionally(e);
+            }
+        }, result, region);
+
+        return result;
+    }
+
+    protected AWSKMSAsync createClient(Region region) {
+        return AWSKMSAsyncClientBuilder.standard()
+                .withRegion(region.getName())
+                .withClientConfiguration(new ClientConfiguration().withClientExecutionTimeout(timeoutInMillis))
+                .withExecutorFactory(() -> executor)
+                .build();
+    }
+
+    @Override
+    public void executeServerShutdownHook(ServerConfig serverConfig, Channel channel) {
+        executor.shutdownNow();
+    }
+
+    /**
+     * The KMS client of a region and the calls waiting for one of the calls in flight to that region to complete.
+     */
+    private class RegionQueue {
+
+        private final AWSKMSAsync client;
+        private final Deque<Runnable> waitingCalls = new ArrayDeque<>();
+        private int inFlight = 0;
+
+        private RegionQueue(AWSKMSAsync client) {
+            this.client = client;
+        }
+
+        private void submit(Runnable call, CompletableFuture<?> result, Region region) {
+            synchronized (this) {
+                if (inFlight >= maxInFlightPerRegion) {
+                    if (waitingCalls.size() < maxQueuedPerRegion) {
+                        waitingCalls.add(call);
+                    } else {
+                        result.completeExceptionally(ApiException.newBuilder()
+                                .withApiErrors(DefaultApiError.SERVICE_UNAVAILABLE)
+                                .withExceptionMessage(String.format("Too many KMS encrypt calls waiting for region %s.",
+                                        region.getName()))
+                                .build());
+                    }
+                    return;
+                }
+                inFlight++;
+            }
+            call.run();
+        }
+
+        /**
+         * Hands the slot of a completed call to the longest waiting call, if any.
+         */
+        private void release() {
+            Runnable next;
+            synchronized (this) {
+                next = waitingCalls.poll();
+                if (next == null) {
+                    inFlight--;
+                }
+            }
+            if (next != null) {
+                next.run();
+            }
+        }
+    }
+}
@@ -16,10 +16,14 @@
 
 package com.nike.cerberus.service;
 
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.nike.cerberus.PrincipalType;
+import com.nike.cerberus.cache.AuthTokenCache;
 import com.nike.cerberus.dao.AuthTokenDao;
 import com.nike.cerberus.domain.CerberusAuthToken;
 import com.nike.cerberus.record.AuthTokenRecord;
+import com.nike.cerberus.util.AfterCommitExecutor;
 import com.nike.cerberus.util.AuthTokenGenerator;
 import com.nike.cerberus.util.DateTimeSupplier;
 import com.nike.cerberus.util.TokenHasher;
@@ -33,36 +37,57 @@ import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.time.OffsetDateTime;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static org.mybatis.guice.transactional.Isolation.READ_UNCOMMITTED;
 
 /**
  * Service for handling authentication tokens.
+ * <p>
+ * Tokens are looked up by the hash of the configured scheme. After switching away from PBKDF2, an unknown token is
+ * also looked up by its PBKDF2 hash, but only until the last token stored with that scheme has expired, so that junk
+ * and expired tokens do not pay for the expensive legacy hash once the migration is over.
  */
 @Singleton
 public class AuthTokenService {
 
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
+    /**
+     * How long the latest expiry of the legacy tokens is cached, an instance that still runs with the legacy scheme
+     * may create a legacy token after it was looked up
+     */
+    private static final long LEGACY_TOKENS_EXPIRY_CACHE_TTL_IN_SECONDS = 60;
+
     private final UuidSupplier uuidSupplier;
     private final TokenHasher tokenHasher;
     private final AuthTokenGenerator authTokenGenerator;
     private final AuthTokenDao authTokenDao;
     private final DateTimeSupplier dateTimeSupplier;
+    private final AuthTokenCache authTokenCache;
+    private final AfterCommitExecutor afterCommitExecutor;
+    private final Supplier<Optional<OffsetDateTime>> legacyTokensExpiresTs;
 
     @Inject
     public AuthTokenService(UuidSupplier uuidSupplier,
                             TokenHasher tokenHasher,
                             AuthTokenGenerator authTokenGenerator,
                             AuthTokenDao authTokenDao,
-                            DateTimeSupplier dateTimeSupplier) {
+                            DateTimeSupplier dateTimeSupplier,
+                            AuthTokenCache authTokenCache,
+                            AfterCommitExecutor afterCommitExecutor) {
 
         this.uuidSupplier = uuidSupplier;
         this.tokenHasher = tokenHasher;
         this.authTokenGenerator = authTokenGenerator;
         this.authTokenDao = authTokenDao;
         this.dateTimeSupplier = dateTimeSupplier;
+        this.authTokenCache = authTokenCache;
+        this.afterCommitExecutor = afterCommitExecutor;
+        this.legacyTokensExpiresTs = Suppliers.memoizeWithExpiration(
+                () -> authTokenDao.getLatestExpiryOfAuthTokensWithScheme(TokenHasher.Scheme.PBKDF2.name()),
+                LEGACY_TOKENS_EXPIRY_CACHE_TTL_IN_SECONDS, TimeUnit.SECONDS);
     }
 
     @Transactional
@@ -82,6 +107,7 @@ public class AuthTokenService {
         AuthTokenRecord tokenRecord = new AuthTokenRecord()
                 .setId(id)
                 .setTokenHash(tokenHasher.hashToken(token))
+                .setHashScheme(tokenHasher.getScheme().name())
                 .setCreatedTs(now)
                 .setExpiresTs(now.plusMinutes(ttlInMinutes))
                 .setPrincipal(principal)
@@ -109,7 +135,35 @@ public class AuthTokenService {
     }
 
     public Optional<CerberusAuthToken> getCerberusAuthToken(String token) {
-        Optional<AuthTokenRecord> tokenRecord = authTokenDao.getAuthTokenFromHash(tokenHasher.hashToken(token));
+        // Tokens are reused for many requests, so skip the expensive hash and database lookup if already verified
+        CerberusAuthToken cachedAuthToken = getCachedCerberusAuthToken(token);
+        if (cachedAuthToken != null) {
+            return Optional.of(cachedAuthToken);
+        }
+
+        return verifyCerberusAuthToken(token);
+    }
+
+    /**
+     * @return the token if it was recently verified and is still cached, null otherwise. Never blocks.
+     */
+    public CerberusAuthToken getCachedCerberusAuthToken(String token) {
+        return authTokenCache.getIfPresent(token);
+    }
+
+    /**
+     * Verify the token against the database, without looking in the auth token cache first, and cache it if valid.
+     */
+    public Optional<CerberusAuthToken> verifyCerberusAuthToken(String token) {
+        String hash = tokenHasher.hashToken(token);
+        Optional<AuthTokenRecord> tokenRecord = authTokenDao.getAuthTokenFromHash(hash);
+        if (!tokenRecord.isPresent() && mayHaveLegacyTokens()) {
+            // The token may have been created before the hash scheme was changed
+            String legacyHash = tokenHasher.hashTokenWithLegacyScheme(token);
+            tokenRecord = authTokenDao.getAuthTokenFromHash(legacyHash);
+            hash = legacyHash;
+        }
+        String matchedHash = hash;
 
         OffsetDateTime now = OffsetDateTime.now();
         if (tokenRecord.isPresent() && tokenRecord.get().getExpiresTs().isBefore(now)) {
@@ -117,13 +171,46 @@ public class AuthTokenService {
             return Optional.empty();
         }
 
-        return tokenRecord.map(authTokenRecord -> getCerberusAuthTokenFromRecord(token, authTokenRecord));
+        Optional<CerberusAuthToken> authToken =
+                tokenRecord.map(authTokenRecord -> getCerberusAuthTokenFromRecord(token, authTokenRecord));
+        authToken.ifPresent(verifiedAuthToken -> authTokenCache.put(token, matchedHash, verifiedAuthToken));
+        return authToken;
     }
 
+    /**
+     * Delete the token, and record the revocation so that other instances evict it from their auth token caches.
+     */
     @Transactional
     public void revokeToken(String token) {
+        // Evicting before the commit would let a concurrent request cache the token again until the TTL
+        afterCommitExecutor.execute(() -> authTokenCache.invalidate(token));
         String hash = tokenHasher.hashToken(token);
-        authTokenDao.deleteAuthTokenFromHash(hash);
+        if (authTokenDao.deleteAuthTokenFromHash(hash) > 0) {
+            authTokenDao.createRevokedToken(hash);
+            return;
+        }
+
+        // The token may have been created before the hash scheme was changed
+        if (mayHaveLegacyTokens()) {
+            String legacyHash = tokenHasher.hashTokenWithLegacyScheme(token);
+            if (authTokenDao.deleteAuthTokenFromHash(legacyHash) > 0) {
+                authTokenDao.createRevokedToken(legacyHash);
+            }
+        }
+    }
+
+    /**
+     * @return true if the configured hash scheme is not PBKDF2 and tokens hashed with PBKDF2 have not all expired yet
+     */
+    private boolean mayHaveLegacyTokens() {
+        return tokenHasher.getScheme() != TokenHasher.Scheme.PBKDF2 && legacyTokensExpiresTs.get()
+                .map(expiresTs -> expiresTs.isAfter(OffsetDateTime.now()))
+                .orElse(false);
+    }
+
+    @Transactional
+    public int deleteRevokedTokensOlderThan(int retentionInHours) {
+        return authTokenDao.deleteRevokedTokensOlderThan(retentionInHours);
     }
 
     @Transactional(
@@ -42,6 +42,7 @@ import com.nike.cerberus.auth.connector.AuthData;
 import com.nike.cerberus.auth.connector.AuthResponse;
 import com.nike.cerberus.auth.connector.AuthStatus;
 import com.nike.cerberus.aws.KmsClientFactory;
+import com.nike.cerberus.cache.IamPrincipalAuthCache;
 import com.nike.cerberus.dao.AwsIamRoleDao;
 import com.nike.cerberus.dao.SafeDepositBoxDao;
 import com.nike.cerberus.domain.AuthTokenResponse;
@@ -53,6 +54,7 @@ import com.nike.cerberus.domain.MfaCheckRequest;
 import com.nike.cerberus.domain.UserCredentials;
 import com.nike.cerberus.error.DefaultApiError;
 import com.nike.cerberus.error.KeyInvalidForAuthException;
+import com.nike.cerberus.error.KeyPolicyInvalidForAuthException;
 import com.nike.cerberus.record.AwsIamRoleKmsKeyRecord;
 import com.nike.cerberus.record.AwsIamRoleRecord;
 import com.nike.cerberus.record.SafeDepositBoxRoleRecord;
@@ -78,6 +80,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 
 import static com.nike.cerberus.security.CerberusPrincipal.METADATA_KEY_GROUPS;
 import static com.nike.cerberus.security.CerberusPrincipal.METADATA_KEY_IS_ADMIN;
@@ -115,6 +121,9 @@ public class AuthenticationService {
     private final String userTokenTTL;
     private final String iamTokenTTL;
     private final AwsIamRoleService awsIamRoleService;
+    private final IamPrincipalAuthCache iamPrincipalAuthCache;
+    private final AsyncKmsEncryptService asyncKmsEncryptService;
+    private final KmsKeyPolicyValidationService kmsKeyPolicyValidationService;
     private final int maxTokenRefreshCount;
 
     @Inject(optional=true)
@@ -138,7 +147,10 @@ public class AuthenticationService {
                                  AuthTokenService authTokenService,
                                  @Named(USER_TOKEN_TTL) String userTokenTTL,
                                  @Named(IAM_TOKEN_TTL) String iamTokenTTL,
-                                 AwsIamRoleService awsIamRoleService) {
+                                 AwsIamRoleService awsIamRoleService,
+                                 IamPrincipalAuthCache iamPrincipalAuthCache,
+                                 AsyncKmsEncryptService asyncKmsEncryptService,
+                                 KmsKeyPolicyValidationService kmsKeyPolicyValidationService) {
 
         this.safeDepositBoxDao = safeDepositBoxDao;
         this.awsIamRoleDao = awsIamRoleDao;
@@ -155,6 +167,9 @@ public class AuthenticationService {
         this.userTokenTTL = userTokenTTL;
         this.iamTokenTTL = iamTokenTTL;
         this.awsIamRoleService = awsIamRoleService;
+        this.iamPrincipalAuthCache = iamPrincipalAuthCache;
+        this.asyncKmsEncryptService = asyncKmsEncryptService;
+        this.kmsKeyPolicyValidationService = kmsKeyPolicyValidationService;
     }
 
     /**
@@ -232,12 +247,26 @@ public class AuthenticationService {
     }
 
     public IamRoleAuthResponse authenticate(IamPrincipalCredentials credentials) {
+        return authenticate(credentials, generateIamPrincipalAuthMetadata(credentials));
+    }
 
-        final String iamPrincipalArn = credentials.getIamPrincipalArn();
-        final Map<String, String> authPrincipalMetadata = generateCommonIamPrincipalAuthMetadata(iamPrincipalArn, credentials.getRegion());
-        authPrincipalMetadata.put(CerberusPrincipal.METADATA_KEY_AWS_IAM_PRINCIPAL_ARN, iamPrincipalArn);
+    /**
+     * Same as {@link #authenticate(IamPrincipalCredentials)}, except that the calling thread does not wait for KMS to
+     * encrypt the auth response.
+     *
+     * @param credentials IAM principal credentials
+     * @param executor Executor to replace an invalid KMS key on, should KMS reject the key of the principal
+     * @return Future of the encrypted auth response
+     */
+    public CompletableFuture<IamRoleAuthResponse> authenticateAsync(IamPrincipalCredentials credentials,
+                                                                    Executor executor) {
+
+        final IamPrincipalAuthPayload payload =
+                createAuthPayload(credentials, generateIamPrincipalAuthMetadata(credentials));
 
-        return authenticate(credentials, authPrincipalMetadata);
+        return safeEncryptWithRetryAsync(payload.kmsKeyRecord, credentials.getIamPrincipalArn(),
+                credentials.getRegion(), payload.authResponseJson, executor)
+                .thenApply(this::toIamRoleAuthResponse);
     }
 
     /**
@@ -257,26 +286,63 @@ public class AuthenticationService {
         return authResponse;
     }
 
+    private Map<String, String> generateIamPrincipalAuthMetadata(IamPrincipalCredentials credentials) {
+        final String iamPrincipalArn = credentials.getIamPrincipalArn();
+        final Map<String, String> authPrincipalMetadata = generateCommonIamPrincipalAuthMetadata(iamPrincipalArn, credentials.getRegion());
+        authPrincipalMetadata.put(CerberusPrincipal.METADATA_KEY_AWS_IAM_PRINCIPAL_ARN, iamPrincipalArn);
+        return authPrincipalMetadata;
+    }
+
     private IamRoleAuthResponse authenticate(IamPrincipalCredentials credentials, Map<String, String> authPrincipalMetadata) {
+        final IamPrincipalAuthPayload payload = createAuthPayload(credentials, authPrincipalMetadata);
+
+        final byte[] encryptedAuthResponse = safeEncryptWithRetry(payload.kmsKeyRecord,
+                credentials.getIamPrincipalArn(), credentials.getRegion(), payload.authResponseJson);
+
+        return toIamRoleAuthResponse(encryptedAuthResponse);
+    }
+
+    /**
+     * Looks up the KMS key and policies of the IAM principal and creates the auth token, which are everything the
+     * authentication needs except for the encryption of the auth response.
+     */
+    private IamPrincipalAuthPayload createAuthPayload(IamPrincipalCredentials credentials,
+                                                      Map<String, String> authPrincipalMetadata) {
         final AwsIamRoleKmsKeyRecord kmsKeyRecord;
         final AwsIamRoleRecord iamRoleRecord;
-        try {
-            iamRoleRecord = getIamPrincipalRecord(credentials.getIamPrincipalArn());
-            kmsKeyRecord = getKmsKeyRecordForIamPrincipal(iamRoleRecord, credentials.getRegion());
-        } catch (AmazonServiceException e) {
-            if ("InvalidArnException".equals(e.getErrorCode())) {
-                throw ApiException.newBuilder()
-                        .withApiErrors(DefaultApiError.AUTH_IAM_ROLE_REJECTED)
-                        .withExceptionCause(e)
-                        .withExceptionMessage(String.format("Failed to lazily provision KMS key for %s in region: %s",
-                                credentials.getIamPrincipalArn(),
-                                credentials.getRegion()))
-                        .build();
+        final Set<String> policies;
+
+        final IamPrincipalAuthCache.Entry cached =
+                iamPrincipalAuthCache.getIfPresent(credentials.getIamPrincipalArn(), credentials.getRegion());
+        if (cached != null) {
+            iamRoleRecord = cached.getIamRoleRecord();
+            kmsKeyRecord = cached.getKmsKeyRecord();
+            policies = cached.getPolicies();
+
+            // queues the key policy for validation once its validation interval has passed
+            kmsKeyPolicyValidationService.requestValidation(kmsKeyRecord, iamRoleRecord.getAwsIamRoleArn());
+        } else {
+            try {
+                iamRoleRecord = getIamPrincipalRecord(credentials.getIamPrincipalArn());
+                kmsKeyRecord = getKmsKeyRecordForIamPrincipal(iamRoleRecord, credentials.getRegion());
+            } catch (AmazonServiceException e) {
+                if ("InvalidArnException".equals(e.getErrorCode())) {
+                    throw ApiException.newBuilder()
+                            .withApiErrors(DefaultApiError.AUTH_IAM_ROLE_REJECTED)
+                            .withExceptionCause(e)
+                            .withExceptionMessage(String.format("Failed to lazily provision KMS key for %s in region: %s",
+                                    credentials.getIamPrincipalArn(),
+                                    credentials.getRegion()))
+                            .build();
+                }
+                throw e;
             }
-            throw e;
+
+            policies = buildCompleteSetOfPolicies(credentials.getIamPrincipalArn());
+            iamPrincipalAuthCache.put(credentials.getIamPrincipalArn(), credentials.getRegion(),
+                    new IamPrincipalAuthCache.Entry(iamRoleRecord, kmsKeyRecord, policies));
         }
 
-        final Set<String> policies = buildCompleteSetOfPolicies(credentials.getIamPrincipalArn());
         AuthTokenResponse authResponse = createToken(iamRoleRecord.getAwsIamRoleArn(), PrincipalType.IAM, policies, authPrincipalMetadata, iamTokenTTL);
 
         byte[] authResponseJson;
@@ -293,10 +359,10 @@ public class AuthenticationService {
         authResponseJson = validateAuthPayloadSizeAndTruncateIfLargerThanMaxKmsSupportedSize(authResponseJson,
                 authResponse, credentials.getIamPrincipalArn());
 
-        final byte[] encryptedAuthResponse = safeEncryptWithRetry(kmsKeyRecord.getAwsIamRoleId(),
-                credentials.getIamPrincipalArn(), kmsKeyRecord.getId(), kmsKeyRecord.getAwsKmsKeyId(),
-                credentials.getRegion(), authResponseJson);
+        return new IamPrincipalAuthPayload(kmsKeyRecord, authResponseJson);
+    }
 
+    private IamRoleAuthResponse toIamRoleAuthResponse(byte[] encryptedAuthResponse) {
         IamRoleAuthResponse iamRoleAuthResponse = new IamRoleAuthResponse();
         iamRoleAuthResponse.setAuthData(Base64.encodeBase64String(encryptedAuthResponse));
         return iamRoleAuthResponse;
@@ -541,8 +607,8 @@ public class AuthenticationService {
         } else {
             kmsKeyRecord = kmsKey.get();
 
-            // regenerate the KMS key policy, if it is invalid
-            kmsService.validateKeyAndPolicy(kmsKeyRecord, iamRoleRecord.getAwsIamRoleArn());
+            // regenerate the KMS key policy in the background, if it is invalid
+            kmsKeyPolicyValidationService.requestValidation(kmsKeyRecord, iamRoleRecord.getAwsIamRoleArn());
         }
 
         return kmsKeyRecord;
@@ -550,32 +616,84 @@ public class AuthenticationService {
 
     /**
      * Encrypt the given payload with KMS. If the given KMS key is invalid, create a new key and encrypt using the new key.
+     * If KMS denies access to the key, validate its policy right away and encrypt again.
+     * @param kmsKeyRecord     The record of the KMS key
      * @param iamPrincipalArn  The IAM principal ARN associated with the key
-     * @param kmsKeyRecordId   The ID of the KMS key record
-     * @param keyId            The AWS ARN of the KMS key
      * @param awsRegion        The region in which the KMS key exists
      * @param data             The data which to encrypt with KMS
      * @return  The encrypted payload
      */
-    private byte[] safeEncryptWithRetry(final String iamRoleRecordId, final String iamPrincipalArn, final String kmsKeyRecordId,
-                                        final String keyId, final String awsRegion, final byte[] data) {
+    private byte[] safeEncryptWithRetry(final AwsIamRoleKmsKeyRecord kmsKeyRecord, final String iamPrincipalArn,
+                                        final String awsRegion, final byte[] data) {
+        final String keyId = kmsKeyRecord.getAwsKmsKeyId();
         try {
             return encrypt(awsRegion, keyId, data);
         } catch (KeyInvalidForAuthException invalidKeyException) {
-            logger.error(
-                    "The KMS key with id: {} for principal: {} is disabled or scheduled for deletion. " +
-                            "The record for this KMS key will be deleted and a new KMS key will be created.",
-                    keyId,
-                    iamPrincipalArn);
-
-            kmsService.deleteKmsKeyById(kmsKeyRecordId);
-            AwsIamRoleKmsKeyRecord newKeyRecord = kmsService.provisionKmsKey(iamRoleRecordId, iamPrincipalArn, awsRegion,
-                    SYSTEM_USER, dateTimeSupplier.get());
+            AwsIamRoleKmsKeyRecord newKeyRecord = replaceInvalidKmsKey(kmsKeyRecord.getAwsIamRoleId(), iamPrincipalArn,
+                    kmsKeyRecord.getId(), keyId, awsRegion);
 
             return encrypt(awsRegion, newKeyRecord.getAwsKmsKeyId(), data);
+        } catch (KeyPolicyInvalidForAuthException invalidPolicyException) {
+            kmsService.forceValidateKeyAndPolicy(kmsKeyRecord, iamPrincipalArn);
+
+            return encrypt(awsRegion, keyId, data);
         }
     }
 
+    /**
+     * Same as {@link #safeEncryptWithRetry}, except that the calling thread does not wait for KMS.
+     * @param executor The executor on which to replace the KMS key, if it is invalid
+     * @return Future of the encrypted payload
+     */
+    private CompletableFuture<byte[]> safeEncryptWithRetryAsync(final AwsIamRoleKmsKeyRecord kmsKeyRecord,
+                                                                final String iamPrincipalArn, final String awsRegion,
+                                                                final byte[] data, final Executor executor) {
+        final String keyId = kmsKeyRecord.getAwsKmsKeyId();
+
+        return encryptAsync(awsRegion, keyId, data).handle((encrypted, throwable) -> {
+            if (throwable == null) {
+                return CompletableFuture.completedFuture(encrypted);
+            }
+
+            // provisioning a key or validating its policy blocks on the database and KMS, so do it off the KMS
+            // encrypt threads
+            Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+            if (cause instanceof KeyInvalidForAuthException) {
+                return CompletableFuture
+                        .supplyAsync(() -> replaceInvalidKmsKey(kmsKeyRecord.getAwsIamRoleId(), iamPrincipalArn,
+                                kmsKeyRecord.getId(), keyId, awsRegion), executor)
+                        .thenCompose(newKeyRecord -> encryptAsync(awsRegion, newKeyRecord.getAwsKmsKeyId(), data));
+            } else if (cause instanceof KeyPolicyInvalidForAuthException) {
+                return CompletableFuture
+                        .runAsync(() -> kmsService.forceValidateKeyAndPolicy(kmsKeyRecord, iamPrincipalArn), executor)
+                        .thenCompose(validated -> encryptAsync(awsRegion, keyId, data));
+            }
+
+            CompletableFuture<byte[]> failed = new CompletableFuture<>();
+            failed.completeExceptionally(cause);
+            return failed;
+        }).thenCompose(Function.identity());
+    }
+
+    /**
+     * Deletes the record of a KMS key that KMS no longer accepts and provisions a new key for the IAM principal.
+     * @return The record of the new KMS key
+     */
+    private AwsIamRoleKmsKeyRecord replaceInvalidKmsKey(final String iamRoleRecordId, final String iamPrincipalArn,
+                                                        final String kmsKeyRecordId, final String keyId,
+                                                        final String awsRegion) {
+        logger.error(
+                "The KMS key with id: {} for principal: {} is disabled or scheduled for deletion. " +
+                        "The record for this KMS key will be deleted and a new KMS key will be created.",
+                keyId,
+                iamPrincipalArn);
+
+        kmsService.deleteKmsKeyById(kmsKeyRecordId);
+        iamPrincipalAuthCache.invalidate(iamPrincipalArn, awsRegion);
+        return kmsService.provisionKmsKey(iamRoleRecordId, iamPrincipalArn, awsRegion, SYSTEM_USER,
+                dateTimeSupplier.get());
+    }
+
     /**
      * Encrypts the data provided using KMS based on the provided region and key id.
      *
@@ -585,36 +703,69 @@ public class AuthenticationService {
      * @return encrypted data
      */
     private byte[] encrypt(final String regionName, final String keyId, final byte[] data) {
-        Region region;
-        try {
-            region = Region.getRegion(Regions.fromName(regionName));
-        } catch (IllegalArgumentException iae) {
-            throw ApiException.newBuilder()
-                    .withApiErrors(DefaultApiError.AUTH_IAM_ROLE_AWS_REGION_INVALID)
-                    .withExceptionCause(iae)
-                    .build();
-        }
-
-        final AWSKMSClient kmsClient = kmsClientFactory.getClient(region);
+        final AWSKMSClient kmsClient = kmsClientFactory.getClient(getRegion(regionName));
 
         try {
             final EncryptResult encryptResult =
                     kmsClient.encrypt(new EncryptRequest().withKeyId(keyId).withPlaintext(ByteBuffer.wrap(data)));
 
             return encryptResult.getCiphertextBlob().array();
-        } catch (NotFoundException | KMSInvalidStateException keyNotUsableException) {
-            throw new KeyInvalidForAuthException(
-                    String.format("Failed to encrypt token using KMS key with id: %s", keyId),
-                    keyNotUsableException);
         } catch (AmazonClientException ace) {
+            throw translateEncryptException(ace, regionName, keyId);
+        }
+    }
+
+    /**
+     * Same as {@link #encrypt}, except that the calling thread does not wait for KMS.
+     *
+     * @return Future of the encrypted data
+     */
+    private CompletableFuture<byte[]> encryptAsync(final String regionName, final String keyId, final byte[] data) {
+        final EncryptRequest request = new EncryptRequest().withKeyId(keyId).withPlaintext(ByteBuffer.wrap(data));
+
+        return asyncKmsEncryptService.encrypt(getRegion(regionName), request).handle((encryptResult, throwable) -> {
+            if (throwable instanceof AmazonClientException) {
+                throw translateEncryptException((AmazonClientException) throwable, regionName, keyId);
+            } else if (throwable instanceof RuntimeException) {
+                throw (RuntimeException) throwable;
+            } else if (throwable != null) {
+                throw new CompletionException(throwable);
+            }
+            return encryptResult.getCiphertextBlob().array();
+        });
+    }
+
+    private Region getRegion(final String regionName) {
+        try {
+            return Region.getRegion(Regions.fromName(regionName));
+        } catch (IllegalArgumentException iae) {
             throw ApiException.newBuilder()
-                    .withApiErrors(DefaultApiError.INTERNAL_SERVER_ERROR)
-                    .withExceptionCause(ace)
-                    .withExceptionMessage(String.format("Unexpected error communicating with AWS KMS for region %s.", regionName))
+                    .withApiErrors(DefaultApiError.AUTH_IAM_ROLE_AWS_REGION_INVALID)
+                    .withExceptionCause(iae)
                     .build();
         }
     }
 
+    private RuntimeException translateEncryptException(final AmazonClientException ace, final String regionName,
+                                                       final String keyId) {
+        if (ace instanceof NotFoundException || ace instanceof KMSInvalidStateException) {
+            return new KeyInvalidForAuthException(
+                    String.format("Failed to encrypt token using KMS key with id: %s", keyId),
+                    ace);
+        }
+        if (ace instanceof AmazonServiceException
+                && "AccessDeniedException".equals(((AmazonServiceException) ace).getErrorCode())) {
+            return new KeyPolicyInvalidForAuthException(
+                    String.format("Access denied to encrypt token using KMS key with id: %s", keyId),
+                    ace);
+        }
+        return ApiException.newBuilder()
+                .withApiErrors(DefaultApiError.INTERNAL_SERVER_ERROR)
+                .withExceptionCause(ace)
+                .withExceptionMessage(String.format("Unexpected error communicating with AWS KMS for region %s.", regionName))
+                .build();
+    }
+
     private Set<String> getAdminRoleArnSet() {
         if (adminRoleArnSet == null) {
             adminRoleArnSet = new HashSet<>();
@@ -717,4 +868,18 @@ public class AuthenticationService {
 
         return slugger.toSlug(sdbName) + '-' + StringUtils.lowerCase(roleName);
     }
+
+    /**
+     * The KMS key of an authenticating IAM principal and the auth response to encrypt with it.
+     */
+    private static final class IamPrincipalAuthPayload {
+
+        private final AwsIamRoleKmsKeyRecord kmsKeyRecord;
+        private final byte[] authResponseJson;
+
+        private IamPrincipalAuthPayload(AwsIamRoleKmsKeyRecord kmsKeyRecord, byte[] authResponseJson) {
+            this.kmsKeyRecord = kmsKeyRecord;
+            this.authResponseJson = authResponseJson;
+        }
+    }
 }
@@ -19,9 +19,11 @@ package com.nike.cerberus.service;
 
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.nike.cerberus.cache.IamPrincipalAuthCache;
 import com.nike.cerberus.dao.AwsIamRoleDao;
 import com.nike.cerberus.record.AwsIamRoleKmsKeyRecord;
 import com.nike.cerberus.record.AwsIamRoleRecord;
+import com.nike.cerberus.util.AfterCommitExecutor;
 import com.nike.cerberus.util.DateTimeSupplier;
 import org.mybatis.guice.transactional.Transactional;
 import org.slf4j.Logger;
@@ -47,14 +49,22 @@ public class CleanUpService {
 
     private final DateTimeSupplier dateTimeSupplier;
 
+    private final IamPrincipalAuthCache iamPrincipalAuthCache;
+
+    private final AfterCommitExecutor afterCommitExecutor;
+
     @Inject
     public CleanUpService(KmsService kmsService,
                           AwsIamRoleDao awsIamRoleDao,
-                          DateTimeSupplier dateTimeSupplier) {
+                          DateTimeSupplier dateTimeSupplier,
+                          IamPrincipalAuthCache iamPrincipalAuthCache,
+                          AfterCommitExecutor afterCommitExecutor) {
 
         this.kmsService = kmsService;
         this.awsIamRoleDao = awsIamRoleDao;
         this.dateTimeSupplier = dateTimeSupplier;
+        this.iamPrincipalAuthCache = iamPrincipalAuthCache;
+        this.afterCommitExecutor = afterCommitExecutor;
     }
 
     /**
@@ -96,6 +106,7 @@ public class CleanUpService {
                             e);
                 }
             });
+            iamPrincipalAuthCache.invalidateAll();
         }
 
         return inactiveAndOrphanedKmsKeys.size();
@@ -123,6 +134,10 @@ public class CleanUpService {
                     e);
             }
         });
+
+        if (! orphanedIamRoleIds.isEmpty()) {
+            afterCommitExecutor.execute(iamPrincipalAuthCache::invalidateAll);
+        }
     }
 }
 
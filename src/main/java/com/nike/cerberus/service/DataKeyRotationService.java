@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nike.cerberus.service;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.nike.cerberus.dao.SecureDataDao;
+import com.nike.cerberus.domain.Source;
+import com.nike.cerberus.record.DataKeyInfo;
+import com.nike.cerberus.util.DateTimeSupplier;
+import com.nike.riposte.server.config.ServerConfig;
+import com.nike.riposte.server.hooks.ServerShutdownHook;
+import io.netty.channel.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.time.OffsetDateTime;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Re-encrypts the secrets and secret versions whose data keys are older than the rotation interval, on a pool of
+ * worker threads and at a rate that keeps the KMS calls within the account's request quota.
+ * <p>
+ * The backlog of each table is worked through in (KEY_MATERIAL_TS, ID) order. A re-encrypted data key leaves the
+ * backlog, as its KEY_MATERIAL_TS becomes the current time, so the cursors only serve to move past the data keys that
+ * failed to rotate. Each run starts from the oldest data key, which retries the failures of the last run first.
+ */
+@Singleton
+public class DataKeyRotationService implements ServerShutdownHook {
+
+    /**
+     * Re-encrypting a data key decrypts it with KMS and then encrypts it with a new data key from KMS
+     */
+    private static final int KMS_CALLS_PER_ROTATION = 2;
+
+    private static final String BACKLOG_GAUGE = "cms.dataKeyRotation.backlog";
+    private static final String ROTATED_GAUGE = "cms.dataKeyRotation.rotated";
+    private static final String FAILED_GAUGE = "cms.dataKeyRotation.failed";
+    private static final String ROTATIONS_PER_MINUTE_GAUGE = "cms.dataKeyRotation.rotationsPerMinute";
+    private static final String ETA_GAUGE = "cms.dataKeyRotation.etaInMinutes";
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final SecureDataService secureDataService;
+    private final SecureDataDao secureDataDao;
+    private final MetricsService metricsService;
+    private final DateTimeSupplier dateTimeSupplier;
+    private final int batchSize;
+    private final RateLimiter kmsRateLimiter;
+    private final ExecutorService executor;
+
+    @Inject
+    public DataKeyRotationService(SecureDataService secureDataService,
+                                  SecureDataDao secureDataDao,
+                                  MetricsService metricsService,
+                                  DateTimeSupplier dateTimeSupplier,
+                                  @Named("cms.jobs.DataKeyRotationJob.threads") int threads,
+                                  @Named("cms.jobs.DataKeyRotationJob.batchSize") int batchSize,
+                                  @Named("cms.jobs.DataKeyRotationJob.kmsCallsPerSecond") double kmsCallsPerSecond) {
+
+        this.secureDataService = secureDataService;
+        this.secureDataDao = secureDataDao;
+        this.metricsService = metricsService;
+        this.dateTimeSupplier = dateTimeSupplier;
+        this.batchSize = batchSize;
+        this.kmsRateLimiter = RateLimiter.create(kmsCallsPerSecond);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "data-key-rotation-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Re-encrypt up to the given number of the data keys that were generated before the rotation interval.
+     *
+     * @param numberOfKeys Max number of data keys to be rotated
+     * @param rotationIntervalInDays Data keys generated older than X days will be considered for key rotation
+     */
+    public void rotateDataKeys(int numberOfKeys, int rotationIntervalInDays) {
+        OffsetDateTime expiredTs = dateTimeSupplier.get().minusDays(rotationIntervalInDays);
+        int backlog = secureDataDao.countDataKeysRotatedBefore(expiredTs);
+        metricsService.setGaugeValue(BACKLOG_GAUGE, backlog);
+
+        log.info("Rotating up to {} of {} data keys generated before {}", numberOfKeys, backlog, expiredTs);
+
+        Map<Source, DataKeyInfo> cursors = new EnumMap<>(Source.class);
+
+        long startTime = System.nanoTime();
+        int processed = 0;
+        int rotated = 0;
+        int failed = 0;
+        while (processed < numberOfKeys && ! Thread.currentThread().isInterrupted()) {
+            List<DataKeyInfo> dataKeyInfos = secureDataDao.getOldestDataKeyInfo(expiredTs,
+                    cursors.get(Source.SECURE_DATA), cursors.get(Source.SECURE_DATA_VERSION),
+                    Math.min(batchSize, numberOfKeys - processed));
+
+            if (dataKeyInfos.isEmpty()) {
+                log.info("Reached the end of the data key rotation backlog");
+                break;
+            }
+
+            List<CompletableFuture<Boolean>> rotations = dataKeyInfos.stream()
+                    .map(dataKeyInfo -> CompletableFuture.supplyAsync(() -> rotateDataKey(dataKeyInfo), executor))
+                    .collect(Collectors.toList());
+            for (int i = 0; i < dataKeyInfos.size(); i++) {
+                DataKeyInfo dataKeyInfo = dataKeyInfos.get(i);
+                cursors.put(dataKeyInfo.getSource(), dataKeyInfo);
+                if (rotations.get(i).join()) {
+                    rotated++;
+                } else {
+                    failed++;
+                }
+            }
+            processed += dataKeyInfos.size();
+
+            reportProgress(backlog, rotated, failed, System.nanoTime() - startTime);
+        }
+
+        log.info("Re-encrypted {} data keys, failed to re-encrypt {} data keys.", rotated, failed);
+    }
+
+    private boolean rotateDataKey(DataKeyInfo dataKeyInfo) {
+        kmsRateLimiter.acquire(KMS_CALLS_PER_ROTATION);
+        String id = dataKeyInfo.getId();
+        try {
+            if (dataKeyInfo.getSource() == Source.SECURE_DATA) {
+                secureDataService.reencryptData(id);
+            } else {
+                secureDataService.reencryptDataVersion(id);
+            }
+            return true;
+        } catch (Exception e) {
+            log.error("Failed to re-encrypt {} id: {}", dataKeyInfo.getSource(), id, e);
+            return false;
+        }
+    }
+
+    private void reportProgress(int backlog, int rotated, int failed, long elapsedNanos) {
+        long rotationsPerMinute = rotated * 60_000_000_000L / Math.max(elapsedNanos, 1);
+        metricsService.setGaugeValue(ROTATED_GAUGE, rotated);
+        metricsService.setGaugeValue(FAILED_GAUGE, failed);
+        metricsService.setGaugeValue(ROTATIONS_PER_MINUTE_GAUGE, rotationsPerMinute);
+        if (rotationsPerMinute > 0) {
+            metricsService.setGaugeValue(ETA_GAUGE, Math.max(backlog - rotated, 0) / rotationsPerMinute);
+        }
+    }
+
+    @Override
+    public void executeServerShutdownHook(ServerConfig serverConfig, Channel channel) {
+        executor.shutdownNow();
+    }
+}
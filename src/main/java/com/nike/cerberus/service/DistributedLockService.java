@@ -17,212 +17,230 @@
 package com.nike.cerberus.service;
 
 import com.google.common.collect.ImmutableMap;
-import com.nike.cerberus.mapper.LockMapper;
+import com.nike.cerberus.dao.LockDao;
+import com.nike.cerberus.util.UuidSupplier;
 import com.nike.riposte.server.config.ServerConfig;
 import com.nike.riposte.server.hooks.ServerShutdownHook;
 import io.netty.channel.Channel;
-import org.apache.ibatis.session.SqlSession;
-import org.apache.ibatis.session.SqlSessionFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
-import java.util.HashMap;
+import javax.inject.Named;
+import javax.inject.Singleton;
 import java.util.Map;
-import java.util.concurrent.Semaphore;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * This service provides the needed functionality to acquire and release a named lock from the data store in an independent transaction.
- * If you can lock and do work in a single transaction then using the LockDao directly is more efficient.
+ * <p>
+ * A lock is held as a lease in the database that expires unless its holder renews it. The leases held by this instance
+ * are renewed by heartbeats on a single shared thread, so holding a lock costs neither a thread nor a database
+ * connection. If an instance dies, its locks become available once their leases expire.
+ * <p>
+ * Every new holder of a lock gets a larger fencing token than the one before, and the lease can only be renewed or
+ * released with the token it was acquired with, so a holder whose lease expired cannot interfere with the next one.
+ * If a lease is lost, the thread that acquired the lock is interrupted, so that it stops before the next holder starts.
  */
+@Singleton
 public class DistributedLockService implements ServerShutdownHook {
 
     private final Logger log = LoggerFactory.getLogger(this.getClass());
 
     private static final String LOCK_ACQUIRED = "cms.lock-acquired";
     private static final String LOCK_ACQUIRE_FAILURE = "cms.lock-acquire-failure";
+    private static final String LOCK_CONTENDED = "cms.lock-contended";
     private static final String LOCK_RELEASED = "cms.lock-released";
     private static final String LOCK_RELEASE_FAILURE = "cms.lock-release-failure";
+    private static final String LOCK_LEASE_LOST = "cms.lock-lease-lost";
+    private static final String LOCK_HOLD_TIME = "cms.lock-hold-time";
 
-    private final SqlSessionFactory sqlSessionFactory;
+    private final LockDao lockDao;
+    private final UuidSupplier uuidSupplier;
     private final MetricsService metricsService;
+    private final int leaseDurationInSeconds;
 
-    private Map<String, Lock> locks = new HashMap<>();
+    private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService heartbeatExecutor;
 
     @Inject
-    public DistributedLockService(SqlSessionFactory sqlSessionFactory,
-                                  MetricsService metricsService) {
+    public DistributedLockService(LockDao lockDao,
+                                  UuidSupplier uuidSupplier,
+                                  MetricsService metricsService,
+                                  @Named("cms.lock.leaseDurationInSeconds") int leaseDurationInSeconds) {
 
-        this.sqlSessionFactory = sqlSessionFactory;
+        this.lockDao = lockDao;
+        this.uuidSupplier = uuidSupplier;
         this.metricsService = metricsService;
+        this.leaseDurationInSeconds = leaseDurationInSeconds;
+
+        heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "distributed-lock-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     /**
-     * This method acquires a distributed named lock.
+     * This method acquires a distributed named lock. If the lease of the lock is lost before it is released, the
+     * calling thread is interrupted.
      *
      * @param lockName The named lock that should try to be acquired.
      * @return true if the lock was successfully acquired.
      */
     public boolean acquireLock(String lockName) {
         log.debug("Attempting to acquire lock for {}", lockName);
+        Map<String, String> dimensions = ImmutableMap.of("lock-name", lockName);
 
-        // Create a lock thread and start it.
-        Lock lock = new Lock(lockName);
-        Thread thread = new Thread(lock);
-        thread.start();
-        locks.put(lockName, lock);
-        lock.lockThread = thread;
-
-        // wait for the lock to signal that it finished attempting to acquire the lock
-        lock.semaphore.acquireUninterruptibly();
-        lock.semaphore.release();
-
-        // check to see if the lock was acquired
-        boolean didAcquireLock = lock.isLocked;
-
-        if (didAcquireLock) {
-            metricsService.getOrCreateCounter(LOCK_ACQUIRED, ImmutableMap.of("lock-name", lockName)).inc();
-        } else {
-            // if the lock wasn't acquired clear the thread and lock so it can be garbage collected
-            locks.remove(lockName);
-            log.error("Failed to acquire lock, returning false.");
-            metricsService.getOrCreateCounter(LOCK_ACQUIRE_FAILURE, ImmutableMap.of("lock-name", lockName)).inc();
+        if (leases.containsKey(lockName)) {
+            log.info("Lock: {} is already held by this instance", lockName);
+            metricsService.getOrCreateCounter(LOCK_CONTENDED, dimensions).inc();
+            metricsService.getOrCreateCounter(LOCK_ACQUIRE_FAILURE, dimensions).inc();
+            return false;
         }
 
-        // return the result
-        return didAcquireLock;
+        String holder = uuidSupplier.get();
+        Optional<Long> fencingToken;
+        try {
+            fencingToken = lockDao.acquireLease(lockName, holder, leaseDurationInSeconds);
+        } catch (RuntimeException e) {
+            log.error("Failed to acquire lock: {}", lockName, e);
+            metricsService.getOrCreateCounter(LOCK_ACQUIRE_FAILURE, dimensions).inc();
+            return false;
+        }
+
+        if (! fencingToken.isPresent()) {
+            log.debug("Lock: {} is held by another instance", lockName);
+            metricsService.getOrCreateCounter(LOCK_CONTENDED, dimensions).inc();
+            metricsService.getOrCreateCounter(LOCK_ACQUIRE_FAILURE, dimensions).inc();
+            return false;
+        }
+
+        Lease lease = new Lease(lockName, holder, fencingToken.get());
+        long heartbeatIntervalInMillis = TimeUnit.SECONDS.toMillis(leaseDurationInSeconds) / 3;
+        lease.heartbeat = heartbeatExecutor.scheduleWithFixedDelay(() -> renewLease(lockName),
+                heartbeatIntervalInMillis, heartbeatIntervalInMillis, TimeUnit.MILLISECONDS);
+        leases.put(lockName, lease);
+
+        log.debug("Acquired lock: {} with fencing token: {}", lockName, lease.fencingToken);
+        metricsService.getOrCreateCounter(LOCK_ACQUIRED, dimensions).inc();
+        return true;
     }
 
     /**
      * Releases a named lock, it is not required to have the lock to call this method.
      *
+     * If the lease cannot be released, e.g. because the database is unavailable, it is no longer renewed and expires
+     * on its own, so there is no need to retry.
+     *
      * @param lockName The lock name that was acquired.
      * @return true if the lock was released or this instance didn't have the lock to release.
      */
     public boolean releaseLock(String lockName) {
         // If this service doesn't have the requested named lock then return true.
-        if (!locks.containsKey(lockName)) {
+        Lease lease = leases.remove(lockName);
+        if (lease == null) {
             return true;
         }
 
-        // Get the lock and tell it to release
-        Lock lock = locks.get(lockName);
-        lock.release();
+        lease.heartbeat.cancel(false);
+        synchronized (lease) {
+            // a heartbeat that is still running must not interrupt the thread once it moved on
+            lease.holderThread = null;
+        }
+        Map<String, String> dimensions = ImmutableMap.of("lock-name", lockName);
+        metricsService.getOrCreateTimer(LOCK_HOLD_TIME, dimensions)
+                .update(System.nanoTime() - lease.acquiredNanos, TimeUnit.NANOSECONDS);
+
+        try {
+            if (! lockDao.releaseLease(lease.name, lease.holder, lease.fencingToken)) {
+                log.warn("The lease of lock: {} expired before it was released", lockName);
+            }
+            metricsService.getOrCreateCounter(LOCK_RELEASED, dimensions).inc();
+            return true;
+        } catch (RuntimeException e) {
+            log.error("Failed to release lock: {}, it will be released when its lease expires", lockName, e);
+            metricsService.getOrCreateCounter(LOCK_RELEASE_FAILURE, dimensions).inc();
+            return false;
+        }
+    }
 
-        // wait for the lock to signal that it has finished releasing.
-        lock.semaphore.acquireUninterruptibly();
-        lock.semaphore.release();
+    /**
+     * The fencing token of a lock held by this instance. Writes that must only be made by the holder of the lock can
+     * be guarded with it, since a later holder always has a larger token.
+     *
+     * @param lockName The lock name that was acquired.
+     * @return The fencing token, or empty if this instance does not hold the lock or lost its lease.
+     */
+    public OptionalLong getFencingToken(String lockName) {
+        Lease lease = leases.get(lockName);
+        return lease == null || lease.lost ? OptionalLong.empty() : OptionalLong.of(lease.fencingToken);
+    }
 
-        // if the lock was released clean up the objects for garbage collection
-        if (lock.didRelease) {
-            metricsService.getOrCreateCounter(LOCK_RELEASED, ImmutableMap.of("lock-name", lockName)).inc();
-            locks.remove(lockName);
+    /**
+     * Extend the lease of a held lock. A lease that could not be extended in time is lost for good, since another
+     * instance may have acquired the lock since.
+     */
+    protected void renewLease(String lockName) {
+        Lease lease = leases.get(lockName);
+        if (lease == null || lease.lost) {
+            return;
         }
 
-        // return the status
-        return lock.didRelease;
+        try {
+            if (lockDao.renewLease(lease.name, lease.holder, lease.fencingToken, leaseDurationInSeconds)) {
+                return;
+            }
+            log.error("Lost the lease of lock: {} with fencing token: {}", lease.name, lease.fencingToken);
+            lease.heartbeat.cancel(false);
+            synchronized (lease) {
+                lease.lost = true;
+                if (lease.holderThread != null) {
+                    lease.holderThread.interrupt();
+                }
+            }
+            metricsService.getOrCreateCounter(LOCK_LEASE_LOST, ImmutableMap.of("lock-name", lease.name)).inc();
+        } catch (RuntimeException e) {
+            // retried on the next heartbeat, the lease only needs one renewal to get through before it expires
+            log.warn("Failed to renew the lease of lock: {}", lease.name, e);
+        }
     }
 
     /**
-     * Shutdown hook to release locks and kill running threads.
-     * Explicitly releasing the locks is not required, as the mysql will release the lock when the connection is closed.
-     * However this will kill the threads which might try to keep the Java process alive during a graceful shutdown.
+     * Shutdown hook to release the locks held by this instance, so that other instances do not have to wait for the
+     * leases to expire.
      */
     @Override
     public void executeServerShutdownHook(ServerConfig serverConfig, Channel channel) {
         log.info("Received shutdown hook, attempting to shutdown gracefully");
-        locks.forEach((name, lock) -> {
-            try {
-                lock.release();
-                boolean didAcquireLock = lock.semaphore.tryAcquire(3, TimeUnit.SECONDS);
-                if (!didAcquireLock) {
-                    throw new RuntimeException("Failed to acquire semaphore");
-                }
-                locks.remove(name);
-            } catch (Exception e) {
-                log.error("Failed to gracefully release lock: {}, interrupting thread", name, e);
-                lock.interrupt();
-            }
-        });
+        heartbeatExecutor.shutdownNow();
+        leases.keySet().forEach(this::releaseLock);
         log.info("Shutdown hook finished");
     }
 
     /**
-     * A simple class that can acquire, keep and release a lock in a single thread / mysql transaction.
+     * A lease on a named lock held by this instance.
      */
-    class Lock implements Runnable {
-        private Thread lockThread;
-        private Semaphore semaphore = new Semaphore(1);
-        private AtomicBoolean shouldKeepLock = new AtomicBoolean(false);
-        private boolean isLocked = false;
-        private boolean didRelease = false;
+    private static class Lease {
         private final String name;
-
-        Lock(String name) {
-            semaphore.acquireUninterruptibly();
+        private final String holder;
+        private final long fencingToken;
+        private final long acquiredNanos = System.nanoTime();
+        private volatile ScheduledFuture<?> heartbeat;
+        private volatile boolean lost = false;
+        private Thread holderThread = Thread.currentThread();
+
+        private Lease(String name, String holder, long fencingToken) {
             this.name = name;
-        }
-
-        public void release() {
-            semaphore.acquireUninterruptibly();
-            shouldKeepLock.set(false);
-        }
-
-        public void interrupt() {
-            if (lockThread != null && lockThread.isAlive()) {
-                lockThread.interrupt();
-            }
-        }
-
-        @Override
-        public void run() {
-            log.debug("Attempting to get lock");
-
-            try (SqlSession session = sqlSessionFactory.openSession(false)) {
-
-                LockMapper lockMapper = session.getMapper(LockMapper.class);
-
-                Integer lockStatus = lockMapper.getLock(name);
-                isLocked = lockStatus > 0;
-                log.debug("Lock acquire for name: {} res: {}", name, lockStatus);
-                if (isLocked) {
-                    shouldKeepLock.set(true);
-                }
-                semaphore.release();
-
-                while (shouldKeepLock.get()) {
-                    try {
-                        Thread.sleep(1000);
-                    } catch (InterruptedException e) {
-                        log.error("Failed to sleep", e);
-                        shouldKeepLock.set(false);
-                        semaphore.release();
-                    }
-                }
-                if (isLocked) {
-                    do {
-                        log.debug("Attempting to release lock");
-                        Integer releaseStatus = lockMapper.releaseLock(name);
-                        didRelease = releaseStatus > 0;
-                        if (!didRelease) {
-                            try {
-                                metricsService.getOrCreateCounter(LOCK_RELEASE_FAILURE, ImmutableMap.of("lock-name", name)).inc();
-                                log.warn("Failed to release lock for {}, retrying, status: {}", name, releaseStatus);
-                                Thread.sleep(1000);
-                            } catch (InterruptedException e) {
-                                log.error("Failed to sleep", e);
-                                break;
-                            }
-                        }
-                    } while (!didRelease);
-                    log.debug("Lock released");
-                }
-                session.commit();
-            } finally {
-                semaphore.release();
-            }
+            this.holder = holder;
+            this.fencingToken = fencingToken;
         }
     }
 }
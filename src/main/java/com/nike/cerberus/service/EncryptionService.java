@@ -1,14 +1,23 @@
 package com.nike.cerberus.service;
 
 import com.amazonaws.encryptionsdk.AwsCrypto;
+import com.amazonaws.encryptionsdk.CryptoInputStream;
+import com.amazonaws.encryptionsdk.CryptoMaterialsManager;
 import com.amazonaws.encryptionsdk.MasterKeyProvider;
 import com.amazonaws.encryptionsdk.ParsedCiphertext;
+import com.amazonaws.encryptionsdk.caching.CachingCryptoMaterialsManager;
 import com.amazonaws.encryptionsdk.kms.KmsMasterKey;
 import com.amazonaws.encryptionsdk.kms.KmsMasterKeyProvider;
 import com.amazonaws.encryptionsdk.multi.MultipleProviderFactory;
 import com.amazonaws.regions.Region;
 import com.amazonaws.regions.Regions;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import com.nike.cerberus.cache.MeteredCryptoMaterialsCache;
 import com.nike.cerberus.util.CiphertextUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.DateFormatUtils;
@@ -18,11 +27,18 @@ import org.slf4j.LoggerFactory;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -36,6 +52,10 @@ public class EncryptionService {
      */
     public static final String SDB_PATH_PROPERTY_NAME = "sdb_path";
 
+    private static final String ENCRYPT_MATERIALS_CACHE_NAME = "data-key";
+
+    private static final String DECRYPT_MATERIALS_CACHE_NAME = "decrypted-data-key";
+
     private final Logger log = LoggerFactory.getLogger(getClass());
 
     private final AwsCrypto awsCrypto;
@@ -43,16 +63,88 @@ public class EncryptionService {
     private final String cmsVersion;
     private final Region currentRegion;
 
+    /**
+     * Caching crypto materials managers by SDB path, null when data key caching is disabled
+     */
+    private final LoadingCache<String, CryptoMaterialsManager> encryptMaterialsManagers;
+    private final MeteredCryptoMaterialsCache encryptMaterialsCache;
+
+    /**
+     * Multi-KMS-MasterKeyProviders for decrypt operations by the sorted list of CMK ARNs from the ciphertext
+     */
+    private final LoadingCache<List<String>, MasterKeyProvider<KmsMasterKey>> decryptProviders;
+
+    /**
+     * Caching crypto materials managers by the sorted list of CMK ARNs, null when decrypted data key caching is disabled
+     */
+    private final LoadingCache<List<String>, CryptoMaterialsManager> decryptMaterialsManagers;
+    private final MeteredCryptoMaterialsCache decryptMaterialsCache;
+
     @Inject
     public EncryptionService(AwsCrypto awsCrypto,
                              @Named("cms.encryption.cmk.arns") String cmkArns,
-                             @Named("service.version") String cmsVersion) {
+                             @Named("service.version") String cmsVersion,
+                             @Named("cms.encryption.cache.enabled") boolean dataKeyCachingEnabled,
+                             @Named("cms.encryption.cache.maxSize") int dataKeyCacheMaxSize,
+                             @Named("cms.encryption.cache.maxAgeInSeconds") long dataKeyMaxAgeInSeconds,
+                             @Named("cms.encryption.cache.messageUseLimit") long dataKeyMessageUseLimit,
+                             @Named("cms.encryption.cache.byteUseLimit") long dataKeyByteUseLimit,
+                             @Named("cms.encryption.decryptProviderCache.maxSize") int decryptProviderCacheMaxSize,
+                             @Named("cms.encryption.decryptCache.enabled") boolean decryptedDataKeyCachingEnabled,
+                             @Named("cms.encryption.decryptCache.maxAgeInSeconds") long decryptedDataKeyMaxAgeInSeconds,
+                             @Named("cms.encryption.decryptCache.maxMemoryInBytes") long decryptedDataKeyCacheMaxMemoryInBytes,
+                             MetricsService metricsService) {
 
         Region region = Regions.getCurrentRegion();
         currentRegion = region == null ? Region.getRegion(Regions.DEFAULT_REGION ) : region;
         this.awsCrypto = awsCrypto;
-        this.encryptProvider = initializeKeyProvider(splitArns(cmkArns), currentRegion);
+        List<String> configuredCmkArns = splitArns(cmkArns);
+        this.encryptProvider = initializeKeyProvider(configuredCmkArns, currentRegion);
         this.cmsVersion = cmsVersion;
+
+        this.decryptProviders = CacheBuilder.newBuilder()
+                .maximumSize(decryptProviderCacheMaxSize)
+                .build(CacheLoader.from(sortedCmkArns -> initializeKeyProvider(sortedCmkArns, currentRegion)));
+        // Most ciphertext is encrypted with the currently configured CMKs, so warm the cache with the encrypt provider
+        decryptProviders.put(toDecryptProviderCacheKey(configuredCmkArns), encryptProvider);
+
+        if (dataKeyCachingEnabled) {
+            log.info("Data key caching enabled, maxSize: {}, maxAgeInSeconds: {}, messageUseLimit: {}, byteUseLimit: {}",
+                    dataKeyCacheMaxSize, dataKeyMaxAgeInSeconds, dataKeyMessageUseLimit, dataKeyByteUseLimit);
+            this.encryptMaterialsCache = new MeteredCryptoMaterialsCache(ENCRYPT_MATERIALS_CACHE_NAME,
+                    dataKeyCacheMaxSize, dataKeyMaxAgeInSeconds, TimeUnit.SECONDS, metricsService);
+            this.encryptMaterialsManagers = CacheBuilder.newBuilder()
+                    .maximumSize(dataKeyCacheMaxSize)
+                    .build(CacheLoader.from(sdbPath -> CachingCryptoMaterialsManager.newBuilder()
+                            .withMasterKeyProvider(encryptProvider)
+                            .withCache(encryptMaterialsCache)
+                            .withPartitionId(sdbPath)
+                            .withMaxAge(dataKeyMaxAgeInSeconds, TimeUnit.SECONDS)
+                            .withMessageUseLimit(dataKeyMessageUseLimit)
+                            .withByteUseLimit(dataKeyByteUseLimit)
+                            .build()));
+        } else {
+            this.encryptMaterialsCache = null;
+            this.encryptMaterialsManagers = null;
+        }
+
+        if (decryptedDataKeyCachingEnabled) {
+            log.info("Decrypted data key caching enabled, maxAgeInSeconds: {}, maxMemoryInBytes: {}",
+                    decryptedDataKeyMaxAgeInSeconds, decryptedDataKeyCacheMaxMemoryInBytes);
+            this.decryptMaterialsCache = new MeteredCryptoMaterialsCache(DECRYPT_MATERIALS_CACHE_NAME, 0,
+                    decryptedDataKeyCacheMaxMemoryInBytes, decryptedDataKeyMaxAgeInSeconds, TimeUnit.SECONDS, metricsService);
+            this.decryptMaterialsManagers = CacheBuilder.newBuilder()
+                    .maximumSize(decryptProviderCacheMaxSize)
+                    .build(CacheLoader.from(sortedCmkArns -> CachingCryptoMaterialsManager.newBuilder()
+                            .withMasterKeyProvider(decryptProviders.getUnchecked(sortedCmkArns))
+                            .withCache(decryptMaterialsCache)
+                            .withPartitionId(StringUtils.join(sortedCmkArns, ","))
+                            .withMaxAge(decryptedDataKeyMaxAgeInSeconds, TimeUnit.SECONDS)
+                            .build()));
+        } else {
+            this.decryptMaterialsCache = null;
+            this.decryptMaterialsManagers = null;
+        }
     }
 
     /**
@@ -66,13 +158,50 @@ public class EncryptionService {
      * @param sdbPath          the SDB path where these secrets are being stored (added to EncryptionContext)
      */
     public String encrypt(String plainTextPayload, String sdbPath) {
+        if (encryptMaterialsManagers != null) {
+            return awsCrypto.encryptString(encryptMaterialsManagers.getUnchecked(sdbPath),
+                    plainTextPayload, buildEncryptionContext(sdbPath)).getResult();
+        }
         return awsCrypto.encryptString(encryptProvider, plainTextPayload, buildEncryptionContext(sdbPath)).getResult();
     }
 
     public byte[] encrypt(byte[] bytes, String sdbPath) {
+        if (encryptMaterialsManagers != null) {
+            return awsCrypto.encryptData(encryptMaterialsManagers.getUnchecked(sdbPath),
+                    bytes, buildEncryptionContext(sdbPath)).getResult();
+        }
         return awsCrypto.encryptData(encryptProvider, bytes, buildEncryptionContext(sdbPath)).getResult();
     }
 
+    /**
+     * Create a stream that encrypts the plaintext as it is read, so that neither the whole plaintext nor the whole
+     * ciphertext has to be held in memory.  The message is framed, so only one frame is buffered at a time.
+     *
+     * @param plaintext       the contents to encrypt
+     * @param plaintextLength the number of bytes that will be read from the plaintext stream
+     * @param sdbPath         the SDB path where these contents are being stored (added to EncryptionContext)
+     * @return a stream of the ciphertext in the 'AWS Encryption SDK Message Format', whose data key has already been
+     * generated
+     */
+    public InputStream encrypt(InputStream plaintext, long plaintextLength, String sdbPath) {
+        CryptoInputStream<?> ciphertext;
+        if (encryptMaterialsManagers != null) {
+            ciphertext = awsCrypto.createEncryptingStream(encryptMaterialsManagers.getUnchecked(sdbPath),
+                    plaintext, buildEncryptionContext(sdbPath));
+        } else {
+            ciphertext = awsCrypto.createEncryptingStream(encryptProvider, plaintext, buildEncryptionContext(sdbPath));
+        }
+        // Lets the data key cache account for the bytes up front, and fails the stream if more bytes are read
+        ciphertext.setMaxInputLength(plaintextLength);
+        try {
+            // Generates the data key and the message header now, so that reading the stream makes no KMS calls
+            ciphertext.getCryptoResult();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to generate the data key to encrypt the stream with", e);
+        }
+        return ciphertext;
+    }
+
     /**
      * Decrypt the encryptedPayload.
      * <p>
@@ -107,6 +236,33 @@ public class EncryptionService {
         }
     }
 
+    /**
+     * Decrypt the encryptedPayload straight into a buffer of the expected plaintext size.
+     * <p>
+     * Unlike {@link #decrypt(byte[], String)}, which decrypts into an over-sized buffer and then copies the result,
+     * this only allocates the plaintext once when the expected size is correct.  If it is not, the plaintext is
+     * still returned in full.
+     *
+     * @param encryptedPayload     the ciphertext in the 'AWS Encryption SDK Message Format'
+     * @param sdbPath              the current SDB path
+     * @param plaintextSizeInBytes the expected size of the plaintext
+     */
+    public byte[] decrypt(byte[] encryptedPayload, String sdbPath, int plaintextSizeInBytes) {
+        ParsedCiphertext parsedCiphertext = CiphertextUtils.parse(encryptedPayload);
+        try {
+            validateEncryptionContext(parsedCiphertext, sdbPath);
+            List<String> cmkArns = CiphertextUtils.getCustomerMasterKeyArns(parsedCiphertext);
+            try (InputStream plaintext = createDecryptingStream(cmkArns, new ByteArrayInputStream(encryptedPayload))) {
+                return readFully(plaintext, plaintextSizeInBytes);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        } catch (RuntimeException e) {
+            log.error("Decrypt operation failed " + CiphertextUtils.toJson(parsedCiphertext), e);
+            throw e;
+        }
+    }
+
     /**
      * Decrypt the encryptedPayload.
      *
@@ -118,8 +274,7 @@ public class EncryptionService {
         // Parses the ARNs out of the encryptedPayload so that you can manually rotate the CMKs, if desired
         // Whatever CMKs were used in the encrypt operation will be used to decrypt
         List<String> cmkArns = CiphertextUtils.getCustomerMasterKeyArns(parsedCiphertext);
-        MasterKeyProvider<KmsMasterKey> decryptProvider = initializeKeyProvider(cmkArns, currentRegion);
-        return new String(awsCrypto.decryptData(decryptProvider, parsedCiphertext).getResult(), StandardCharsets.UTF_8);
+        return new String(decryptData(cmkArns, parsedCiphertext), StandardCharsets.UTF_8);
     }
 
     /**
@@ -155,8 +310,7 @@ public class EncryptionService {
         // Parses the ARNs out of the encryptedPayload so that you can manually rotate the CMKs, if desired
         // Whatever CMKs were used in the encrypt operation will be used to decrypt
         List<String> cmkArns = CiphertextUtils.getCustomerMasterKeyArns(parsedCiphertext);
-        MasterKeyProvider<KmsMasterKey> decryptProvider = initializeKeyProvider(cmkArns, currentRegion);
-        return awsCrypto.decryptData(decryptProvider, parsedCiphertext).getResult();
+        return decryptData(cmkArns, parsedCiphertext);
     }
 
     /**
@@ -203,6 +357,73 @@ public class EncryptionService {
         return keyArns;
     }
 
+    /**
+     * Decrypt the parsedCiphertext with a Multi-KMS-MasterKeyProvider for the given set of CMKs, building one only if
+     * none is cached.  When decrypted data key caching is enabled, KMS is only called if the data key is not cached.
+     */
+    private byte[] decryptData(List<String> cmkArns, ParsedCiphertext parsedCiphertext) {
+        List<String> cacheKey = toDecryptProviderCacheKey(cmkArns);
+        if (decryptMaterialsManagers != null) {
+            return awsCrypto.decryptData(decryptMaterialsManagers.getUnchecked(cacheKey), parsedCiphertext).getResult();
+        }
+        return awsCrypto.decryptData(decryptProviders.getUnchecked(cacheKey), parsedCiphertext).getResult();
+    }
+
+    /**
+     * Create a stream that decrypts the ciphertext with a Multi-KMS-MasterKeyProvider for the given set of CMKs as it
+     * is read.
+     */
+    private InputStream createDecryptingStream(List<String> cmkArns, InputStream ciphertext) {
+        List<String> cacheKey = toDecryptProviderCacheKey(cmkArns);
+        if (decryptMaterialsManagers != null) {
+            return awsCrypto.createDecryptingStream(decryptMaterialsManagers.getUnchecked(cacheKey), ciphertext);
+        }
+        return awsCrypto.createDecryptingStream(decryptProviders.getUnchecked(cacheKey), ciphertext);
+    }
+
+    /**
+     * Read the stream to the end, into a buffer of the expected size when that turns out to be right.
+     * Reading to the end is what makes the decrypting stream verify the message.
+     */
+    protected static byte[] readFully(InputStream in, int expectedSizeInBytes) throws IOException {
+        byte[] buffer = new byte[expectedSizeInBytes];
+        int read = ByteStreams.read(in, buffer, 0, buffer.length);
+        if (read < buffer.length) {
+            return Arrays.copyOf(buffer, read);
+        }
+
+        int next = in.read();
+        if (next == -1) {
+            return buffer;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(buffer.length * 2);
+        out.write(buffer);
+        out.write(next);
+        ByteStreams.copy(in, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Report the hit rate and size gauges of the enabled crypto materials caches.
+     */
+    public void reportCacheMetrics() {
+        if (encryptMaterialsCache != null) {
+            encryptMaterialsCache.reportMetrics();
+        }
+        if (decryptMaterialsCache != null) {
+            decryptMaterialsCache.reportMetrics();
+        }
+    }
+
+    /**
+     * The order of the CMK ARNs in the ciphertext is not significant, so the decrypt provider cache is keyed by the
+     * sorted list of ARNs.  The provider itself still orders the ARNs by the current region.
+     */
+    protected static List<String> toDecryptProviderCacheKey(List<String> cmkArns) {
+        return ImmutableList.copyOf(cmkArns.stream().sorted().collect(Collectors.toList()));
+    }
+
     /**
      * Initialize a Multi-KMS-MasterKeyProvider.
      * <p>
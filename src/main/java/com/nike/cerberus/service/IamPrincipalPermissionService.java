@@ -18,12 +18,15 @@ package com.nike.cerberus.service;
 
 import com.google.common.collect.Sets;
 import com.nike.backstopper.exception.ApiException;
+import com.nike.cerberus.cache.IamPrincipalAuthCache;
+import com.nike.cerberus.cache.SdbPermissionIndex;
 import com.nike.cerberus.dao.AwsIamRoleDao;
 import com.nike.cerberus.domain.IamPrincipalPermission;
 import com.nike.cerberus.domain.Role;
 import com.nike.cerberus.error.DefaultApiError;
 import com.nike.cerberus.record.AwsIamRolePermissionRecord;
 import com.nike.cerberus.record.AwsIamRoleRecord;
+import com.nike.cerberus.util.AfterCommitExecutor;
 import com.nike.cerberus.util.UuidSupplier;
 import org.mybatis.guice.transactional.Transactional;
 
@@ -46,13 +49,25 @@ public class IamPrincipalPermissionService {
 
     private final AwsIamRoleDao awsIamRoleDao;
 
+    private final SdbPermissionIndex sdbPermissionIndex;
+
+    private final AfterCommitExecutor afterCommitExecutor;
+
+    private final IamPrincipalAuthCache iamPrincipalAuthCache;
+
     @Inject
     public IamPrincipalPermissionService(final UuidSupplier uuidSupplier,
                                          final RoleService roleService,
-                                         final AwsIamRoleDao awsIamRoleDao) {
+                                         final AwsIamRoleDao awsIamRoleDao,
+                                         final SdbPermissionIndex sdbPermissionIndex,
+                                         final AfterCommitExecutor afterCommitExecutor,
+                                         final IamPrincipalAuthCache iamPrincipalAuthCache) {
         this.uuidSupplier = uuidSupplier;
         this.roleService = roleService;
         this.awsIamRoleDao = awsIamRoleDao;
+        this.sdbPermissionIndex = sdbPermissionIndex;
+        this.afterCommitExecutor = afterCommitExecutor;
+        this.iamPrincipalAuthCache = iamPrincipalAuthCache;
     }
 
     /**
@@ -98,6 +113,8 @@ public class IamPrincipalPermissionService {
         }
 
         String iamRoleId;
+        final String iamPrincipalArn = possibleIamRoleRecord.map(AwsIamRoleRecord::getAwsIamRoleArn)
+                .orElse(iamPrincipalPermission.getIamPrincipalArn());
         if (possibleIamRoleRecord.isPresent()) {
             iamRoleId = possibleIamRoleRecord.get().getId();
         } else {
@@ -122,6 +139,9 @@ public class IamPrincipalPermissionService {
         permissionRecord.setCreatedTs(dateTime);
         permissionRecord.setLastUpdatedTs(dateTime);
         awsIamRoleDao.createIamRolePermission(permissionRecord);
+        afterCommitExecutor.execute(() -> sdbPermissionIndex.putIamPrincipalRole(safeDepositBoxId, iamPrincipalArn,
+                iamPrincipalPermission.getRoleId()));
+        afterCommitExecutor.execute(iamPrincipalAuthCache::invalidateAll);
     }
 
     /**
@@ -172,6 +192,15 @@ public class IamPrincipalPermissionService {
         record.setLastUpdatedBy(user);
         record.setLastUpdatedTs(dateTime);
         awsIamRoleDao.updateIamRolePermission(record);
+
+        // Revoke the previous role first, as the new one may grant less
+        sdbPermissionIndex.logRevocation(safeDepositBoxId);
+        afterCommitExecutor.execute(() -> {
+            sdbPermissionIndex.removeIamPrincipal(safeDepositBoxId, iamRole.get().getAwsIamRoleArn());
+            sdbPermissionIndex.putIamPrincipalRole(safeDepositBoxId, iamRole.get().getAwsIamRoleArn(),
+                    iamPrincipalPermission.getRoleId());
+        });
+        afterCommitExecutor.execute(iamPrincipalAuthCache::invalidateAll);
     }
 
     /**
@@ -206,6 +235,10 @@ public class IamPrincipalPermissionService {
         }
 
         awsIamRoleDao.deleteIamRolePermission(safeDepositBoxId, iamRole.get().getId());
+        sdbPermissionIndex.logRevocation(safeDepositBoxId);
+        afterCommitExecutor.execute(() ->
+                sdbPermissionIndex.removeIamPrincipal(safeDepositBoxId, iamRole.get().getAwsIamRoleArn()));
+        afterCommitExecutor.execute(iamPrincipalAuthCache::invalidateAll);
     }
 
     public Set<IamPrincipalPermission> getIamPrincipalPermissions(final String safeDepositBoxId) {
@@ -234,5 +267,8 @@ public class IamPrincipalPermissionService {
     @Transactional
     public void deleteIamPrincipalPermissions(final String safeDepositBoxId) {
         awsIamRoleDao.deleteIamRolePermissions(safeDepositBoxId);
+        sdbPermissionIndex.logRevocation(safeDepositBoxId);
+        afterCommitExecutor.execute(() -> sdbPermissionIndex.removeAllIamPrincipals(safeDepositBoxId));
+        afterCommitExecutor.execute(iamPrincipalAuthCache::invalidateAll);
     }
 }
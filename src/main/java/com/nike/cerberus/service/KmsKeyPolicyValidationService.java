@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nike.cerberus.service;
+
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.RateLimiter;
+import com.nike.cerberus.record.AwsIamRoleKmsKeyRecord;
+import com.nike.riposte.server.config.ServerConfig;
+import com.nike.riposte.server.hooks.ServerShutdownHook;
+import io.netty.channel.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validates the policies of authentication KMS keys in the background, so that a login never waits for KMS to check
+ * the policy of the key it uses and is served with the key as it was last known to be good.
+ * <p>
+ * Logins queue the keys whose validation interval has passed, and a single thread validates the queued keys in
+ * sweeps, rate limited per region. Keys a sweep does not get to stay queued for the next one.
+ */
+@Singleton
+public class KmsKeyPolicyValidationService implements ServerShutdownHook {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final KmsService kmsService;
+    private final int maxKeysPerSweep;
+    private final double maxValidationsPerSecondPerRegion;
+
+    /**
+     * KMS key record ID to the key waiting to be validated
+     */
+    private final Map<String, PendingValidation> pendingValidations = new ConcurrentHashMap<>();
+
+    private final Map<String, RateLimiter> regionRateLimiters = Maps.newConcurrentMap();
+
+    private final ScheduledExecutorService executor;
+
+    @Inject
+    public KmsKeyPolicyValidationService(KmsService kmsService,
+                                         @Named("cms.kms.policy.validation.sweepIntervalInMillis") long sweepIntervalInMillis,
+                                         @Named("cms.kms.policy.validation.maxKeysPerSweep") int maxKeysPerSweep,
+                                         @Named("cms.kms.policy.validation.maxValidationsPerSecondPerRegion") double maxValidationsPerSecondPerRegion) {
+
+        this.kmsService = kmsService;
+        this.maxKeysPerSweep = maxKeysPerSweep;
+        this.maxValidationsPerSecondPerRegion = maxValidationsPerSecondPerRegion;
+
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "kms-key-policy-validation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::sweepSafely, sweepIntervalInMillis, sweepIntervalInMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queue the policy of the given KMS key for validation, if its validation interval has passed. Returns without
+     * calling KMS.
+     *
+     * @param kmsKeyRecord - The CMK record to validate policy on
+     * @param iamPrincipalArn - The principal ARN that should have decrypt permission
+     */
+    public void requestValidation(AwsIamRoleKmsKeyRecord kmsKeyRecord, String iamPrincipalArn) {
+        if (kmsService.kmsPolicyNeedsValidation(kmsKeyRecord, iamPrincipalArn)) {
+            pendingValidations.putIfAbsent(kmsKeyRecord.getId(), new PendingValidation(kmsKeyRecord, iamPrincipalArn));
+        }
+    }
+
+    private void sweepSafely() {
+        try {
+            sweep();
+        } catch (Exception e) {
+            log.error("Failed to validate the queued KMS key policies", e);
+        }
+    }
+
+    /**
+     * Validate the queued keys of the regions that are within their rate limit.
+     *
+     * @return The number of keys validated
+     */
+    protected int sweep() {
+        int validated = 0;
+        Iterator<PendingValidation> pending = pendingValidations.values().iterator();
+        while (pending.hasNext() && validated < maxKeysPerSweep) {
+            PendingValidation validation = pending.next();
+            RateLimiter rateLimiter = regionRateLimiters.computeIfAbsent(validation.kmsKeyRecord.getAwsRegion(),
+                    region -> RateLimiter.create(maxValidationsPerSecondPerRegion));
+            if (! rateLimiter.tryAcquire()) {
+                continue;
+            }
+
+            pending.remove();
+            // checks the interval again, the key may have been validated by another login in the meantime
+            kmsService.validateKeyAndPolicy(validation.kmsKeyRecord, validation.iamPrincipalArn);
+            validated++;
+        }
+
+        if (validated > 0) {
+            log.debug("Validated {} KMS key policies, {} still queued", validated, pendingValidations.size());
+        }
+        return validated;
+    }
+
+    @Override
+    public void executeServerShutdownHook(ServerConfig serverConfig, Channel channel) {
+        executor.shutdownNow();
+    }
+
+    private static class PendingValidation {
+
+        private final AwsIamRoleKmsKeyRecord kmsKeyRecord;
+        private final String iamPrincipalArn;
+
+        private PendingValidation(AwsIamRoleKmsKeyRecord kmsKeyRecord, String iamPrincipalArn) {
+            this.kmsKeyRecord = kmsKeyRecord;
+            this.iamPrincipalArn = iamPrincipalArn;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nike.cerberus.service;
+
+import com.google.common.base.Splitter;
+import com.nike.cerberus.dao.KmsKeyPoolDao;
+import com.nike.cerberus.record.KmsKeyPoolRecord;
+import com.nike.cerberus.util.DateTimeSupplier;
+import com.nike.cerberus.util.UuidSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.time.OffsetDateTime;
+import java.util.List;
+
+import static com.nike.cerberus.service.AuthenticationService.SYSTEM_USER;
+import static com.nike.cerberus.service.KmsService.SOONEST_A_KMS_KEY_CAN_BE_DELETED;
+
+/**
+ * Keeps a pool of KMS keys in each configured region, created ahead of time so that the first authentication of an
+ * IAM principal only has to claim a key and update its policy. See {@link KmsService#provisionKmsKey}.
+ */
+@Singleton
+public class KmsKeyPoolService {
+
+    /**
+     * Claims are completed in the request that made them, so older ones were abandoned, e.g. by a failed policy update
+     */
+    protected static final int ABANDONED_CLAIM_AGE_IN_MINUTES = 10;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final KmsService kmsService;
+    private final KmsKeyPoolDao kmsKeyPoolDao;
+    private final UuidSupplier uuidSupplier;
+    private final DateTimeSupplier dateTimeSupplier;
+    private final List<String> regions;
+    private final int minSize;
+    private final int targetSize;
+
+    @Inject
+    public KmsKeyPoolService(KmsService kmsService,
+                             KmsKeyPoolDao kmsKeyPoolDao,
+                             UuidSupplier uuidSupplier,
+                             DateTimeSupplier dateTimeSupplier,
+                             @Named("cms.kms.keyPool.regions") String regions,
+                             @Named("cms.kms.keyPool.minSize") int minSize,
+                             @Named("cms.kms.keyPool.targetSize") int targetSize) {
+
+        this.kmsService = kmsService;
+        this.kmsKeyPoolDao = kmsKeyPoolDao;
+        this.uuidSupplier = uuidSupplier;
+        this.dateTimeSupplier = dateTimeSupplier;
+        this.regions = Splitter.on(',').trimResults().omitEmptyStrings().splitToList(regions);
+        this.minSize = minSize;
+        this.targetSize = targetSize;
+    }
+
+    /**
+     * Deletes the keys of abandoned claims, then tops up the pool of each region that has fewer than the minimum
+     * number of unclaimed keys left to the target size.
+     */
+    public void refillKeyPools() {
+        deleteAbandonedClaims();
+
+        regions.forEach(region -> {
+            try {
+                refillKeyPool(region);
+            } catch (RuntimeException e) {
+                log.error("Failed to refill the KMS key pool of region: {}", region, e);
+            }
+        });
+    }
+
+    /**
+     * @return The number of keys created
+     */
+    protected int refillKeyPool(String awsRegion) {
+        int unclaimedKeys = kmsKeyPoolDao.countUnclaimedKeys(awsRegion);
+        if (unclaimedKeys >= minSize) {
+            log.debug("The KMS key pool of region: {} has {} keys, not refilling", awsRegion, unclaimedKeys);
+            return 0;
+        }
+
+        log.info("The KMS key pool of region: {} has {} keys, creating {} keys", awsRegion, unclaimedKeys,
+                targetSize - unclaimedKeys);
+        int createdKeys = 0;
+        while (unclaimedKeys + createdKeys < targetSize) {
+            String awsKmsKeyArn = kmsService.createPooledKmsKey(awsRegion);
+            kmsKeyPoolDao.createKey(new KmsKeyPoolRecord()
+                    .setId(uuidSupplier.get())
+                    .setAwsRegion(awsRegion)
+                    .setAwsKmsKeyId(awsKmsKeyArn)
+                    .setCreatedBy(SYSTEM_USER)
+                    .setCreatedTs(dateTimeSupplier.get()));
+            createdKeys++;
+        }
+        return createdKeys;
+    }
+
+    private void deleteAbandonedClaims() {
+        OffsetDateTime claimedBefore = dateTimeSupplier.get().minusMinutes(ABANDONED_CLAIM_AGE_IN_MINUTES);
+
+        kmsKeyPoolDao.getKeysClaimedBefore(claimedBefore).forEach(key -> {
+            try {
+                // the policy of the key may already allow the IAM principal that claimed it, so it cannot be reused
+                kmsService.scheduleKmsKeyDeletion(key.getAwsKmsKeyId(), key.getAwsRegion(),
+                        SOONEST_A_KMS_KEY_CAN_BE_DELETED);
+                kmsKeyPoolDao.deleteKey(key.getId());
+            } catch (RuntimeException e) {
+                log.error("Failed to delete the abandoned pooled KMS key: {} in region: {}", key.getAwsKmsKeyId(),
+                        key.getAwsRegion(), e);
+            }
+        });
+    }
+}
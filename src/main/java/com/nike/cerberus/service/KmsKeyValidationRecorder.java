@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nike.cerberus.service;
+
+import com.google.common.collect.Lists;
+import com.nike.cerberus.dao.AwsIamRoleDao;
+import com.nike.cerberus.record.AwsIamRoleKmsKeyRecord;
+import com.nike.riposte.server.config.ServerConfig;
+import com.nike.riposte.server.hooks.ServerShutdownHook;
+import io.netty.channel.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.nike.cerberus.service.AuthenticationService.SYSTEM_USER;
+
+/**
+ * Collects the times at which the policies of authentication KMS keys were validated, and writes them to the database
+ * in batches on an interval, instead of with a read and an update in a transaction for every validation.
+ * <p>
+ * Only the latest validation of each key is kept until the next flush. A validation recorded on this instance is seen
+ * by other instances after at most one flush interval, which at worst makes them validate the key once more.
+ */
+@Singleton
+public class KmsKeyValidationRecorder implements ServerShutdownHook {
+
+    private static final int MAX_KEYS_PER_UPDATE = 500;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final AwsIamRoleDao awsIamRoleDao;
+
+    /**
+     * KMS key record ID to the latest time its policy was validated
+     */
+    private final Map<String, OffsetDateTime> pendingValidations = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService executor;
+
+    @Inject
+    public KmsKeyValidationRecorder(AwsIamRoleDao awsIamRoleDao,
+                                    @Named("cms.kms.policy.validation.flushIntervalInSeconds") long flushIntervalInSeconds) {
+
+        this.awsIamRoleDao = awsIamRoleDao;
+
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "kms-key-validation-recorder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::flushSafely, flushIntervalInSeconds, flushIntervalInSeconds,
+                TimeUnit.SECONDS);
+    }
+
+    /**
+     * Record that the policy of the KMS key with the given record ID was validated at the given time.
+     */
+    public void recordValidation(String kmsKeyRecordId, OffsetDateTime validatedTs) {
+        pendingValidations.merge(kmsKeyRecordId, validatedTs,
+                (current, validated) -> validated.isAfter(current) ? validated : current);
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("Failed to write the last validated timestamps of KMS keys", e);
+        }
+    }
+
+    /**
+     * Write the validations recorded since the last flush.
+     */
+    protected void flush() {
+        List<AwsIamRoleKmsKeyRecord> validatedKeys = Lists.newArrayList();
+        for (String kmsKeyRecordId : pendingValidations.keySet()) {
+            OffsetDateTime validatedTs = pendingValidations.remove(kmsKeyRecordId);
+            if (validatedTs != null) {
+                validatedKeys.add(new AwsIamRoleKmsKeyRecord().setId(kmsKeyRecordId).setLastValidatedTs(validatedTs));
+            }
+        }
+
+        List<List<AwsIamRoleKmsKeyRecord>> batches = Lists.partition(validatedKeys, MAX_KEYS_PER_UPDATE);
+        for (int i = 0; i < batches.size(); i++) {
+            try {
+                awsIamRoleDao.updateIamRoleKmsKeysLastValidated(batches.get(i), SYSTEM_USER);
+            } catch (RuntimeException e) {
+                // Keep the unwritten ones for the next flush, unless the key was validated again in the meantime
+                batches.subList(i, batches.size()).forEach(batch ->
+                        batch.forEach(key -> recordValidation(key.getId(), key.getLastValidatedTs())));
+                throw e;
+            }
+        }
+
+        if (! validatedKeys.isEmpty()) {
+            log.debug("Wrote the last validated timestamps of {} KMS keys", validatedKeys.size());
+        }
+    }
+
+    @Override
+    public void executeServerShutdownHook(ServerConfig serverConfig, Channel channel) {
+        executor.shutdownNow();
+        flushSafely();
+    }
+}
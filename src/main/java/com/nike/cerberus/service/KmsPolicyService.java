@@ -231,17 +231,9 @@ public class KmsPolicyService {
     public String generateStandardKmsPolicy(String iamRoleArn) {
         Policy kmsPolicy = new Policy();
 
-        Statement rootUserStatement = new Statement(Statement.Effect.Allow);
-        rootUserStatement.withId("Root User Has All Actions");
-        rootUserStatement.withPrincipals(new Principal(AWS_PROVIDER, rootUserArn, false));
-        rootUserStatement.withActions(KMSActions.AllKMSActions);
-        rootUserStatement.withResources(new Resource("*"));
+        Statement rootUserStatement = generateRootUserPolicyStatement();
 
-        Statement keyAdministratorStatement = new Statement(Statement.Effect.Allow);
-        keyAdministratorStatement.withId("Admin Role Has All Actions");
-        keyAdministratorStatement.withPrincipals(new Principal(AWS_PROVIDER, adminRoleArn, false));
-        keyAdministratorStatement.withActions(KMSActions.AllKMSActions);
-        keyAdministratorStatement.withResources(new Resource("*"));
+        Statement keyAdministratorStatement = generateKeyAdministratorPolicyStatement();
 
         Statement instanceUsageStatement = generateStandardCMSPolicyStatement();
 
@@ -260,6 +252,38 @@ public class KmsPolicyService {
         return kmsPolicy.toJson();
     }
 
+    /**
+     * Generates the policy of a pooled KMS key that is not yet assigned to an IAM principal, which is the standard
+     * policy without the statement for the IAM principal. The orphaned KMS key clean up job only considers keys with
+     * the standard policy, so it leaves pooled keys alone.
+     */
+    public String generatePooledKmsPolicy() {
+        Policy kmsPolicy = new Policy();
+
+        kmsPolicy.withStatements(generateRootUserPolicyStatement(),
+                generateKeyAdministratorPolicyStatement(),
+                generateStandardCMSPolicyStatement());
+
+        return kmsPolicy.toJson();
+    }
+
+    private Statement generateRootUserPolicyStatement() {
+        Statement rootUserStatement = new Statement(Statement.Effect.Allow);
+        rootUserStatement.withId("Root User Has All Actions");
+        rootUserStatement.withPrincipals(new Principal(AWS_PROVIDER, rootUserArn, false));
+        rootUserStatement.withActions(KMSActions.AllKMSActions);
+        rootUserStatement.withResources(new Resource("*"));
+        return rootUserStatement;
+    }
+
+    private Statement generateKeyAdministratorPolicyStatement() {
+        Statement keyAdministratorStatement = new Statement(Statement.Effect.Allow);
+        keyAdministratorStatement.withId("Admin Role Has All Actions");
+        keyAdministratorStatement.withPrincipals(new Principal(AWS_PROVIDER, adminRoleArn, false));
+        keyAdministratorStatement.withActions(KMSActions.AllKMSActions);
+        keyAdministratorStatement.withResources(new Resource("*"));
+        return keyAdministratorStatement;
+    }
 
     public Policy getPolicyFromPolicyString(String jsonString) {
         return policyReader.createPolicyFromJsonString(jsonString);
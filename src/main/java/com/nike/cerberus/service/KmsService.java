@@ -23,14 +23,17 @@ import com.amazonaws.services.kms.AWSKMS;
 import com.amazonaws.services.kms.AWSKMSClient;
 import com.amazonaws.services.kms.model.*;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.RateLimiter;
 import com.google.inject.name.Named;
 import com.netflix.hystrix.exception.HystrixRuntimeException;
 import com.nike.backstopper.exception.ApiException;
 import com.nike.cerberus.aws.KmsClientFactory;
 import com.nike.cerberus.dao.AwsIamRoleDao;
+import com.nike.cerberus.dao.KmsKeyPoolDao;
 import com.nike.cerberus.domain.AuthKmsKeyMetadata;
 import com.nike.cerberus.error.DefaultApiError;
 import com.nike.cerberus.record.AwsIamRoleKmsKeyRecord;
+import com.nike.cerberus.record.KmsKeyPoolRecord;
 import com.nike.cerberus.util.AwsIamRoleArnParser;
 import com.nike.cerberus.util.DateTimeSupplier;
 import com.nike.cerberus.util.Slugger;
@@ -45,10 +48,12 @@ import javax.inject.Singleton;
 import java.time.OffsetDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
-import static com.nike.cerberus.service.AuthenticationService.SYSTEM_USER;
 import static com.nike.cerberus.service.KmsPolicyService.CERBERUS_MANAGEMENT_SERVICE_SID;
 
 /**
@@ -68,6 +73,8 @@ public class KmsService {
 
     public static final Integer SOONEST_A_KMS_KEY_CAN_BE_DELETED = 7;  // in days
 
+    private static final int MAX_KEYS_PER_LIST_KEYS_PAGE = 1000;
+
     private final AwsIamRoleDao awsIamRoleDao;
     private final UuidSupplier uuidSupplier;
     private final KmsClientFactory kmsClientFactory;
@@ -75,6 +82,8 @@ public class KmsService {
     private final DateTimeSupplier dateTimeSupplier;
     private final AwsIamRoleArnParser awsIamRoleArnParser;
     private final Slugger slugger;
+    private final KmsKeyValidationRecorder kmsKeyValidationRecorder;
+    private final KmsKeyPoolDao kmsKeyPoolDao;
 
     private final String cmsVersion;
     private final String environmentName;
@@ -92,7 +101,9 @@ public class KmsService {
                       AwsIamRoleArnParser awsIamRoleArnParser,
                       @Named("service.version") String cmsVersion,
                       @Named("cms.env.name") String environmentName,
-                      final Slugger slugger) {
+                      final Slugger slugger,
+                      final KmsKeyValidationRecorder kmsKeyValidationRecorder,
+                      final KmsKeyPoolDao kmsKeyPoolDao) {
         this.awsIamRoleDao = awsIamRoleDao;
         this.uuidSupplier = uuidSupplier;
         this.kmsClientFactory = kmsClientFactory;
@@ -102,10 +113,13 @@ public class KmsService {
         this.cmsVersion = cmsVersion;
         this.environmentName = environmentName;
         this.slugger = slugger;
+        this.kmsKeyValidationRecorder = kmsKeyValidationRecorder;
+        this.kmsKeyPoolDao = kmsKeyPoolDao;
     }
 
     /**
-     * Provisions a new KMS CMK in the specified region to be used by the specified role.
+     * Provisions a new KMS CMK in the specified region to be used by the specified role. A key is taken from the KMS
+     * key pool of the region if it has one, otherwise a key is created.
      *
      * @param iamRoleRecordId        The IAM role that this CMK will be associated with
      * @param iamPrincipalArn  The AWS IAM principal ARN
@@ -121,6 +135,20 @@ public class KmsService {
                                                   final OffsetDateTime dateTime) {
         final String kmsKeyRecordId = uuidSupplier.get();
 
+        final Optional<KmsKeyPoolRecord> pooledKmsKey = kmsKeyPoolDao.claimKey(awsRegion, kmsKeyRecordId, dateTime);
+        if (pooledKmsKey.isPresent()) {
+            final String pooledKmsKeyArn = pooledKmsKey.get().getAwsKmsKeyId();
+
+            // should this fail the claim is left behind, and the key is deleted by the KMS key pool refill job
+            updateKmsKeyPolicy(kmsPolicyService.generateStandardKmsPolicy(iamPrincipalArn), pooledKmsKeyArn, awsRegion);
+
+            logger.info("Assigned pooled KMS Key with id: {} to ARN: {}, REGION: {}", pooledKmsKeyArn, iamPrincipalArn,
+                    awsRegion);
+
+            return createKmsKeyRecordFromPool(pooledKmsKey.get().getId(), iamRoleRecordId, kmsKeyRecordId,
+                    pooledKmsKeyArn, awsRegion, user, dateTime);
+        }
+
         final String awsKmsKeyArn = createKmsKeyInAws(iamPrincipalArn, kmsKeyRecordId, awsRegion);
 
         logger.info("Created KMS Key with id: {} for ARN: {}, REGION: {}", awsKmsKeyArn, iamPrincipalArn, awsRegion);
@@ -155,6 +183,46 @@ public class KmsService {
         return awsIamRoleKmsKeyRecord;
     }
 
+    /**
+     * Removes a claimed key from the KMS key pool and records it as the key of the IAM role, in one transaction.
+     */
+    @Transactional
+    protected AwsIamRoleKmsKeyRecord createKmsKeyRecordFromPool(final String kmsKeyPoolRecordId,
+                                                                final String iamRoleRecordId,
+                                                                final String kmsKeyRecordId,
+                                                                final String awsKmsKeyArn,
+                                                                final String awsRegion,
+                                                                final String user,
+                                                                final OffsetDateTime dateTime) {
+        kmsKeyPoolDao.deleteKey(kmsKeyPoolRecordId);
+
+        return createKmsKeyRecord(iamRoleRecordId, kmsKeyRecordId, awsKmsKeyArn, awsRegion, user, dateTime);
+    }
+
+    /**
+     * Creates a KMS CMK in the specified region for the KMS key pool. The key policy does not allow any IAM principal
+     * to use the key until it is provisioned for one.
+     *
+     * @param awsRegion The region to create the key in
+     * @return The AWS Key ID ARN
+     */
+    public String createPooledKmsKey(final String awsRegion) {
+        final AWSKMSClient kmsClient = kmsClientFactory.getClient(awsRegion);
+
+        final CreateKeyRequest request = new CreateKeyRequest()
+                .withKeyUsage(KeyUsageType.ENCRYPT_DECRYPT)
+                .withDescription("Key used by Cerberus " + environmentName + " for IAM role authentication. " +
+                        "Created for the key pool, before it was assigned to an IAM principal.")
+                .withPolicy(kmsPolicyService.generatePooledKmsPolicy())
+                .withTags(
+                    createTag("created_by", "cms" + cmsVersion),
+                    createTag("created_for", "cerberus_auth"),
+                    createTag("cerberus_env", environmentName)
+                );
+
+        return kmsClient.createKey(request).getKeyMetadata().getArn();
+    }
+
     private String createKmsKeyInAws(String iamPrincipalArn, String kmsKeyRecordId, String awsRegion) {
         final AWSKMSClient kmsClient = kmsClientFactory.getClient(awsRegion);
 
@@ -312,6 +380,14 @@ public class KmsService {
             return;
         }
 
+        forceValidateKeyAndPolicy(kmsKeyRecord, iamPrincipalArn);
+    }
+
+    /**
+     * Same as {@link #validateKeyAndPolicy}, except that the policy is validated even if it was validated within the
+     * validation interval, e.g. because KMS just rejected a call with the key.
+     */
+    public void forceValidateKeyAndPolicy(AwsIamRoleKmsKeyRecord kmsKeyRecord, String iamPrincipalArn) {
         String kmsCMKRegion = kmsKeyRecord.getAwsRegion();
         String awsKmsKeyArn = kmsKeyRecord.getAwsKmsKeyId();
         try {
@@ -326,9 +402,10 @@ public class KmsService {
                 updateKmsKeyPolicy(updatedPolicy, awsKmsKeyArn, kmsCMKRegion);
             }
 
-            // update last validated timestamp
+            // update last validated timestamp, on the record too as it may be cached by the caller
             OffsetDateTime now = dateTimeSupplier.get();
-            updateKmsKey(kmsKeyRecord.getAwsIamRoleId(), kmsCMKRegion, SYSTEM_USER, now, now);
+            kmsKeyRecord.setLastValidatedTs(now);
+            kmsKeyValidationRecorder.recordValidation(kmsKeyRecord.getId(), now);
         } catch(NotFoundException nfe) {
             logger.warn("Failed to validate KMS policy because the KMS key did not exist, but the key record did." +
                             "Deleting the key record to prevent this from failing again: keyId: {} for IAM principal: {} in region: {}",
@@ -500,54 +577,47 @@ public class KmsService {
     }
 
     /**
-     * Gets all the KMS CMK ids for a given region
-     * @param regionName The region in which you want all the KMS CMK ids
-     * @return A list of of the KMS CMK ids for the requested region.
+     * Gets one page of the KMS CMKs in a given region
+     * @param regionName The region in which you want the KMS CMKs
+     * @param marker The next marker of the previous page, or null for the first page
+     * @return The page, with a next marker if there are more keys
      */
-    public Set<String> getKmsKeyIdsForRegion(String regionName) {
+    public ListKeysResult listKmsKeys(String regionName, String marker) {
         AWSKMS kms = kmsClientFactory.getClient(regionName);
 
-        Set<String> kmsKeyIdsForRegion = new HashSet<>();
-
-        String marker = null;
-        do {
-            logger.debug("Fetching keys for region: {} and marker: {}", regionName, marker);
-            ListKeysRequest listKeysRequest = new ListKeysRequest();
-            if (marker != null) {
-                listKeysRequest.withMarker(marker);
-            }
-            ListKeysResult listKeysResult = kms.listKeys(listKeysRequest);
-            listKeysResult.getKeys().forEach(keyListEntry -> kmsKeyIdsForRegion.add(keyListEntry.getKeyId()));
-            marker = listKeysResult.getNextMarker();
-        } while (marker != null);
-
-        return kmsKeyIdsForRegion;
+        logger.debug("Fetching keys for region: {} and marker: {}", regionName, marker);
+        ListKeysRequest listKeysRequest = new ListKeysRequest().withLimit(MAX_KEYS_PER_LIST_KEYS_PAGE);
+        if (marker != null) {
+            listKeysRequest.withMarker(marker);
+        }
+        return kms.listKeys(listKeysRequest);
     }
 
     /**
-     * Downloads the KMS CMK policies to determine if the key was created by this.
+     * Downloads the KMS CMK policies to determine which of the keys were created by this. The policies are downloaded
+     * concurrently on the given executor, at the rate the given rate limiter allows.
      *
-     * @param allKmsCmkIdsForRegion The list of all the KMS Key.
+     * @param kmsCmkIds The KMS CMK ids to filter.
      * @param regionName The region.
-     * @return The list of KMS Keys that were created by this.
+     * @param executor The executor to download the policies on, which bounds how many downloads are in flight.
+     * @param getKeyPolicyRateLimiter The rate limiter of the GetKeyPolicy calls to the region.
+     * @return The KMS CMK ids that were created by this.
      */
-    public Set<String> filterKeysCreatedByKmsService(Set<String> allKmsCmkIdsForRegion, String regionName) {
-        Set<String> keysCreatedByThis = new HashSet<>();
-        int numberOfKeys = allKmsCmkIdsForRegion.size();
-        String[] kmsCmkIds = allKmsCmkIdsForRegion.toArray(new String[numberOfKeys]);
-
-        logger.info("Preparing to download and analyze {} key policies in region: {} to " +
-                "determine what keys where created by this env", numberOfKeys, regionName);
-
-        for (int i = 0; i < numberOfKeys; i++) {
-            logger.debug("Processed {}% of keys for region: {}", Math.ceil((double) i / numberOfKeys * 100), regionName);
-            String kmsCmkId = kmsCmkIds[i];
-            if (wasKeyCreatedByKmsService(kmsCmkId,regionName)) {
-                keysCreatedByThis.add(kmsCmkId);
-            }
-        }
-
-        return keysCreatedByThis;
+    public Set<String> filterKeysCreatedByKmsService(Set<String> kmsCmkIds,
+                                                     String regionName,
+                                                     Executor executor,
+                                                     RateLimiter getKeyPolicyRateLimiter) {
+
+        Map<String, CompletableFuture<Boolean>> createdByThis = new HashMap<>();
+        kmsCmkIds.forEach(kmsCmkId -> createdByThis.put(kmsCmkId, CompletableFuture.supplyAsync(() -> {
+            getKeyPolicyRateLimiter.acquire();
+            return wasKeyCreatedByKmsService(kmsCmkId, regionName);
+        }, executor)));
+
+        return createdByThis.entrySet().stream()
+                .filter(entry -> entry.getValue().join())
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toSet());
     }
 
     /**
@@ -19,6 +19,7 @@ package com.nike.cerberus.service;
 
 import com.codahale.metrics.Counter;
 import com.codahale.metrics.Metric;
+import com.codahale.metrics.Timer;
 import com.nike.riposte.metrics.codahale.CodahaleMetricsCollector;
 import com.nike.riposte.metrics.codahale.contrib.SignalFxReporterFactory;
 import com.signalfx.codahale.metrics.MetricBuilder;
@@ -97,6 +98,10 @@ public class MetricsService {
         return getOrCreate(MetricBuilder.COUNTERS, name, dimensions);
     }
 
+    public Timer getOrCreateTimer(String name, Map<String, String> dimensions) {
+        return getOrCreate(MetricBuilder.TIMERS, name, dimensions);
+    }
+
     private <M extends Metric> M getOrCreate(MetricBuilder<M> builder, String metricName, Map<String, String> dimensions) {
 
         if (metricMetadata == null) {
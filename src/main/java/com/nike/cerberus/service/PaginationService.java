@@ -19,6 +19,7 @@ package com.nike.cerberus.service;
 
 import com.nike.backstopper.apierror.ApiErrorBase;
 import com.nike.backstopper.exception.ApiException;
+import com.nike.cerberus.domain.PaginationCursor;
 import com.nike.cerberus.error.DefaultApiError;
 import com.nike.riposte.server.http.RequestInfo;
 import org.apache.commons.lang3.StringUtils;
@@ -27,6 +28,8 @@ public class PaginationService {
 
     protected static final String OFFSET_QUERY_KEY = "offset";
     protected static final String LIMIT_QUERY_KEY = "limit";
+    protected static final String CURSOR_QUERY_KEY = "cursor";
+    protected static final String COUNT_QUERY_KEY = "count";
     protected static final int DEFAULT_OFFSET = 0;
     protected static final int DEFAULT_LIMIT = 100;
 
@@ -99,4 +102,57 @@ public class PaginationService {
                     )).build();
         }
     }
+
+    /**
+     * Parses and validates the cursor query param
+     *
+     * @param request The request
+     * @return The cursor to continue from, or null when paginating by offset
+     */
+    public PaginationCursor getCursor(RequestInfo<Void> request) {
+        String cursorQueryValue = request.getQueryParamSingle(CURSOR_QUERY_KEY);
+        if (cursorQueryValue == null) {
+            return null;
+        }
+
+        try {
+            return PaginationCursor.decode(cursorQueryValue);
+        } catch (IllegalArgumentException e) {
+            throw ApiException.newBuilder()
+                    .withApiErrors(new ApiErrorBase(
+                            DefaultApiError.INVALID_QUERY_PARAMS.getName(),
+                            DefaultApiError.INVALID_QUERY_PARAMS.getErrorCode(),
+                            String.format("cursor query param must be a cursor returned by a previous page, '%s' given", cursorQueryValue),
+                            DefaultApiError.INVALID_QUERY_PARAMS.getHttpStatusCode()
+                    ))
+                    .withExceptionCause(e)
+                    .build();
+        }
+    }
+
+    /**
+     * Parses and validates the count query param, which controls whether the total number of items is counted.
+     * Counting is skipped by default when continuing from a cursor, as it gets slower the more items there are.
+     *
+     * @param request The request
+     * @return default or parsed value
+     */
+    public boolean isTotalCountRequested(RequestInfo<Void> request) {
+        String countQueryValue = request.getQueryParamSingle(COUNT_QUERY_KEY);
+        if (countQueryValue == null) {
+            return request.getQueryParamSingle(CURSOR_QUERY_KEY) == null;
+        }
+
+        if (! StringUtils.equals(countQueryValue, "true") && ! StringUtils.equals(countQueryValue, "false")) {
+            throw ApiException.newBuilder()
+                    .withApiErrors(new ApiErrorBase(
+                            DefaultApiError.INVALID_QUERY_PARAMS.getName(),
+                            DefaultApiError.INVALID_QUERY_PARAMS.getErrorCode(),
+                            String.format("count query param must be true or false, '%s' given", countQueryValue),
+                            DefaultApiError.INVALID_QUERY_PARAMS.getHttpStatusCode()
+                    )).build();
+        }
+
+        return Boolean.parseBoolean(countQueryValue);
+    }
 }
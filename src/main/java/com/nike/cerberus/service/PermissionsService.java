@@ -20,6 +20,7 @@ import com.google.common.collect.Sets;
 import com.google.inject.name.Named;
 import com.nike.backstopper.exception.ApiException;
 import com.nike.cerberus.SecureDataAction;
+import com.nike.cerberus.cache.SdbPermissionIndex;
 import com.nike.cerberus.dao.PermissionsDao;
 import com.nike.cerberus.domain.SafeDepositBoxV2;
 import com.nike.cerberus.domain.UserGroupPermission;
@@ -31,7 +32,11 @@ import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -52,6 +57,7 @@ public class PermissionsService {
     private final PermissionsDao permissionsDao;
     private final boolean userGroupsCaseSensitive;
     private final AwsIamRoleArnParser awsIamRoleArnParser;
+    private final SdbPermissionIndex sdbPermissionIndex;
 
     @Inject
     public PermissionsService(RoleService roleService,
@@ -59,7 +65,8 @@ public class PermissionsService {
                               IamPrincipalPermissionService iamPrincipalPermissionService,
                               PermissionsDao permissionsDao,
                               @Named(USER_GROUPS_CASE_SENSITIVE) boolean userGroupsCaseSensitive,
-                              AwsIamRoleArnParser awsIamRoleArnParser) {
+                              AwsIamRoleArnParser awsIamRoleArnParser,
+                              SdbPermissionIndex sdbPermissionIndex) {
 
         this.roleService = roleService;
         this.userGroupPermissionService = userGroupPermissionService;
@@ -67,6 +74,7 @@ public class PermissionsService {
         this.permissionsDao = permissionsDao;
         this.userGroupsCaseSensitive = userGroupsCaseSensitive;
         this.awsIamRoleArnParser = awsIamRoleArnParser;
+        this.sdbPermissionIndex = sdbPermissionIndex;
     }
 
     /**
@@ -144,9 +152,11 @@ public class PermissionsService {
                 hasPermission = doesIamPrincipalHavePermission(principal, sdbId, action.getAllowedRoles());
                 break;
             case USER:
-                hasPermission = userGroupsCaseSensitive ?
+                // The index only knows of permissions that allow access, so the database has the final say otherwise
+                hasPermission = sdbPermissionIndex.doesUserGroupHaveRole(sdbId, principal.getUserGroups(),
+                        action.getAllowedRoles(), userGroupsCaseSensitive) || (userGroupsCaseSensitive ?
                         permissionsDao.doesUserPrincipalHaveRoleForSdb(sdbId, action.getAllowedRoles(), principal.getUserGroups()) :
-                        permissionsDao.doesUserHavePermsForRoleAndSdbCaseInsensitive(sdbId, action.getAllowedRoles(), principal.getUserGroups());
+                        permissionsDao.doesUserHavePermsForRoleAndSdbCaseInsensitive(sdbId, action.getAllowedRoles(), principal.getUserGroups()));
                 break;
             default:
                 log.error("Unknown Principal Type: {}, returning hasPermission: false", principal.getPrincipalType().getName());
@@ -168,9 +178,44 @@ public class PermissionsService {
         String iamRootArn = awsIamRoleArnParser.convertPrincipalArnToRootArn(iamPrincipalArn);
         if (awsIamRoleArnParser.isAssumedRoleArn(iamPrincipalArn)) {
             String iamRoleArn = awsIamRoleArnParser.convertPrincipalArnToRoleArn(iamPrincipalArn);
-            return permissionsDao.doesAssumedRoleHaveRoleForSdb(sdbId, iamPrincipalArn, iamRoleArn, iamRootArn, roles);
+            return sdbPermissionIndex.doesIamPrincipalHaveRole(sdbId, getIamPrincipalArns(iamPrincipalArn), roles) ||
+                    permissionsDao.doesAssumedRoleHaveRoleForSdb(sdbId, iamPrincipalArn, iamRoleArn, iamRootArn, roles);
         } else {
-            return permissionsDao.doesIamPrincipalHaveRoleForSdb(sdbId, iamPrincipalArn, iamRootArn, roles);
+            return sdbPermissionIndex.doesIamPrincipalHaveRole(sdbId, getIamPrincipalArns(iamPrincipalArn), roles) ||
+                    permissionsDao.doesIamPrincipalHaveRoleForSdb(sdbId, iamPrincipalArn, iamRootArn, roles);
+        }
+    }
+
+    /**
+     * Gets the names that a permission of the given principal may be granted under, i.e. the user groups of a user,
+     * or the ARN of an IAM principal along with the role and account root ARNs that it belongs to.
+     *
+     * @param principal The authenticated principal
+     * @return The names to check the permissions of
+     */
+    public List<String> getPrincipalNamesForPermissionCheck(CerberusPrincipal principal) {
+        switch (principal.getPrincipalType()) {
+            case IAM:
+                return getIamPrincipalArns(principal.getName());
+            case USER:
+                return new ArrayList<>(principal.getUserGroups());
+            default:
+                log.error("Unknown Principal Type: {}, returning no names", principal.getPrincipalType().getName());
+                return Collections.emptyList();
+        }
+    }
+
+    public boolean isUserGroupsCaseSensitive() {
+        return userGroupsCaseSensitive;
+    }
+
+    private List<String> getIamPrincipalArns(String iamPrincipalArn) {
+        String iamRootArn = awsIamRoleArnParser.convertPrincipalArnToRootArn(iamPrincipalArn);
+        if (awsIamRoleArnParser.isAssumedRoleArn(iamPrincipalArn)) {
+            String iamRoleArn = awsIamRoleArnParser.convertPrincipalArnToRoleArn(iamPrincipalArn);
+            return Arrays.asList(iamPrincipalArn, iamRoleArn, iamRootArn);
+        } else {
+            return Arrays.asList(iamPrincipalArn, iamRootArn);
         }
     }
 
@@ -19,6 +19,7 @@ package com.nike.cerberus.service;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.nike.backstopper.exception.ApiException;
+import com.nike.cerberus.cache.SafeDepositBoxIdCache;
 import com.nike.cerberus.dao.SafeDepositBoxDao;
 import com.nike.cerberus.dao.SecureDataVersionDao;
 import com.nike.cerberus.dao.UserGroupDao;
@@ -35,6 +36,7 @@ import com.nike.cerberus.record.RoleRecord;
 import com.nike.cerberus.record.SafeDepositBoxRecord;
 import com.nike.cerberus.record.UserGroupRecord;
 import com.nike.cerberus.security.CerberusPrincipal;
+import com.nike.cerberus.util.AfterCommitExecutor;
 import com.nike.cerberus.util.AwsIamRoleArnParser;
 import com.nike.cerberus.util.DateTimeSupplier;
 import com.nike.cerberus.util.Slugger;
@@ -92,6 +94,10 @@ public class SafeDepositBoxService {
 
     private final Boolean userGroupsCaseSensitive;
 
+    private final SafeDepositBoxIdCache safeDepositBoxIdCache;
+
+    private final AfterCommitExecutor afterCommitExecutor;
+
     @Inject
     public SafeDepositBoxService(SafeDepositBoxDao safeDepositBoxDao,
                                  UserGroupDao userGroupDao,
@@ -106,7 +112,9 @@ public class SafeDepositBoxService {
                                  AwsIamRoleArnParser awsIamRoleArnParser,
                                  SecureDataService secureDataService,
                                  SecureDataVersionDao secureDataVersionDao,
-                                 @Named(USER_GROUPS_CASE_SENSITIVE) Boolean userGroupsCaseSensitive){
+                                 @Named(USER_GROUPS_CASE_SENSITIVE) Boolean userGroupsCaseSensitive,
+                                 SafeDepositBoxIdCache safeDepositBoxIdCache,
+                                 AfterCommitExecutor afterCommitExecutor){
 
         this.safeDepositBoxDao = safeDepositBoxDao;
         this.userGroupDao = userGroupDao;
@@ -122,6 +130,8 @@ public class SafeDepositBoxService {
         this.secureDataService = secureDataService;
         this.secureDataVersionDao = secureDataVersionDao;
         this.userGroupsCaseSensitive = userGroupsCaseSensitive;
+        this.safeDepositBoxIdCache = safeDepositBoxIdCache;
+        this.afterCommitExecutor = afterCommitExecutor;
     }
 
     /**
@@ -285,6 +295,7 @@ public class SafeDepositBoxService {
         }
 
         safeDepositBoxDao.createSafeDepositBox(boxRecordToStore);
+        afterCommitExecutor.execute(() -> safeDepositBoxIdCache.invalidate(boxRecordToStore.getPath()));
 
         userGroupPermissionService.grantUserGroupPermissions(
                 boxRecordToStore.getId(),
@@ -373,6 +384,7 @@ public class SafeDepositBoxService {
 
         // 3. Remove metadata
         safeDepositBoxDao.deleteSafeDepositBox(id);
+        afterCommitExecutor.execute(() -> safeDepositBoxIdCache.invalidate(box.getPath()));
     }
 
     private Optional<String> extractOwner(Set<UserGroupPermission> userGroupPermissions) {
@@ -681,7 +693,20 @@ public class SafeDepositBoxService {
      * @return The SDB's Id
      */
     public Optional<String> getSafeDepositBoxIdByPath(String path) {
-        return Optional.ofNullable(safeDepositBoxDao.getSafeDepositBoxIdByPath(path));
+        String cachedId = safeDepositBoxIdCache.getIfPresent(path);
+        if (cachedId != null) {
+            return Optional.of(cachedId);
+        } else if (safeDepositBoxIdCache.isKnownMissing(path)) {
+            return Optional.empty();
+        }
+
+        String id = safeDepositBoxDao.getSafeDepositBoxIdByPath(path);
+        if (id == null) {
+            safeDepositBoxIdCache.putMissing(path);
+        } else {
+            safeDepositBoxIdCache.put(path, id);
+        }
+        return Optional.ofNullable(id);
     }
 
     /**
@@ -714,8 +739,10 @@ public class SafeDepositBoxService {
 
         OffsetDateTime now = dateTimeSupplier.get();
         Optional<SafeDepositBoxRecord> existingBoxRecord = safeDepositBoxDao.getSafeDepositBox(safeDepositBox.getId());
+        afterCommitExecutor.execute(() -> safeDepositBoxIdCache.invalidate(safeDepositBox.getPath()));
         if (existingBoxRecord.isPresent()) {
             safeDepositBoxDao.fullUpdateSafeDepositBox(boxToStore);
+            afterCommitExecutor.execute(() -> safeDepositBoxIdCache.invalidate(existingBoxRecord.get().getPath()));
             SafeDepositBoxV2 existingBox = getSDBFromRecordV2(existingBoxRecord.get());
             updateOwner(safeDepositBox.getId(), safeDepositBox.getOwner(), adminUser, now);
             modifyUserGroupPermissions(existingBox, safeDepositBox.getUserGroupPermissions(), adminUser, now);
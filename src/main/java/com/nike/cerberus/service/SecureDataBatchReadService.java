@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nike.cerberus.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.nike.cerberus.SecureDataAction;
+import com.nike.cerberus.domain.SecureData;
+import com.nike.cerberus.domain.SecureDataBatchReadResult;
+import com.nike.cerberus.security.CerberusPrincipal;
+import com.nike.riposte.server.config.ServerConfig;
+import com.nike.riposte.server.hooks.ServerShutdownHook;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads many secrets, possibly of different SDBs, at once. The principal's permission is checked once per SDB, the
+ * secrets of all permitted SDBs are read with one query and then decrypted in parallel on a bounded pool of threads.
+ */
+@Singleton
+public class SecureDataBatchReadService implements ServerShutdownHook {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final SafeDepositBoxService safeDepositBoxService;
+    private final PermissionsService permissionsService;
+    private final SecureDataService secureDataService;
+    private final ObjectMapper objectMapper;
+    private final ThreadPoolExecutor decryptExecutor;
+
+    @Inject
+    public SecureDataBatchReadService(SafeDepositBoxService safeDepositBoxService,
+                                      PermissionsService permissionsService,
+                                      SecureDataService secureDataService,
+                                      ObjectMapper objectMapper,
+                                      @Named("cms.secret.batchRead.decryptThreads") int decryptThreads,
+                                      @Named("cms.secret.batchRead.decryptQueueSize") int decryptQueueSize) {
+
+        this.safeDepositBoxService = safeDepositBoxService;
+        this.permissionsService = permissionsService;
+        this.secureDataService = secureDataService;
+        this.objectMapper = objectMapper;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        // when the queue is full the reading thread decrypts the secret itself, which slows down the biggest batches
+        decryptExecutor = new ThreadPoolExecutor(decryptThreads, decryptThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(decryptQueueSize),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "secret-batch-decrypt-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Reads the secrets at the given paths that the principal has permission to read.
+     *
+     * @param principal The principal reading the secrets
+     * @param paths The paths of the secrets including the SDB category, e.g. app/my-sdb/my-secret
+     * @return The outcome of reading each distinct path, in the order they were given
+     */
+    public List<SecureDataBatchReadResult> readSecrets(CerberusPrincipal principal, Collection<String> paths) {
+        Map<String, SecureDataBatchReadResult> resultsByPath = new LinkedHashMap<>();
+        Map<String, String> secretPathsByPath = Maps.newHashMap();
+        Map<String, List<String>> pathsBySdbBasePath = Maps.newHashMap();
+
+        for (String path : new LinkedHashSet<>(paths)) {
+            // category/sdb-slug/path/to/secret
+            String[] parts = StringUtils.split(StringUtils.defaultString(path), "/", 3);
+            if (parts.length < 3) {
+                resultsByPath.put(path, failure(path, HttpResponseStatus.BAD_REQUEST, "invalid path"));
+                continue;
+            }
+
+            resultsByPath.put(path, null);
+            secretPathsByPath.put(path, parts[1] + "/" + parts[2]);
+            pathsBySdbBasePath.computeIfAbsent(parts[0] + "/" + parts[1] + "/", sdbBasePath -> Lists.newArrayList())
+                    .add(path);
+        }
+
+        Set<String> permittedSdbIds = Sets.newHashSet();
+        Set<String> permittedSecretPaths = Sets.newHashSet();
+        pathsBySdbBasePath.forEach((sdbBasePath, sdbPaths) -> {
+            Optional<String> sdbId = safeDepositBoxService.getSafeDepositBoxIdByPath(sdbBasePath);
+            if (sdbId.isPresent() &&
+                    permissionsService.doesPrincipalHavePermission(principal, sdbId.get(), SecureDataAction.READ)) {
+                permittedSdbIds.add(sdbId.get());
+                sdbPaths.forEach(path -> permittedSecretPaths.add(secretPathsByPath.get(path)));
+            } else {
+                sdbPaths.forEach(path ->
+                        resultsByPath.put(path, failure(path, HttpResponseStatus.FORBIDDEN, "permission denied")));
+            }
+        });
+
+        Map<String, CompletableFuture<SecureData>> secrets =
+                secureDataService.readSecrets(permittedSdbIds, permittedSecretPaths, decryptExecutor);
+
+        resultsByPath.replaceAll((path, result) -> {
+            if (result != null) {
+                return result;
+            }
+
+            CompletableFuture<SecureData> secret = secrets.get(secretPathsByPath.get(path));
+            if (secret == null) {
+                return failure(path, HttpResponseStatus.NOT_FOUND, "not found");
+            }
+
+            try {
+                return success(path, secret.join());
+            } catch (CompletionException e) {
+                log.error("Failed to decrypt secret at path: {}", path, e.getCause());
+                return failure(path, HttpResponseStatus.INTERNAL_SERVER_ERROR, "failed to decrypt");
+            }
+        });
+
+        return Lists.newArrayList(resultsByPath.values());
+    }
+
+    private SecureDataBatchReadResult success(String path, SecureData secureData) {
+        SecureDataBatchReadResult result = new SecureDataBatchReadResult()
+                .setPath(path)
+                .setStatus(HttpResponseStatus.OK.code())
+                .setMetadata(secureDataService.parseSecretMetadata(secureData));
+
+        try {
+            result.setData(objectMapper.readTree(secureData.getData()));
+        } catch (IOException e) {
+            log.error("Failed to deserialize stored data", e);
+        }
+
+        return result;
+    }
+
+    private SecureDataBatchReadResult failure(String path, HttpResponseStatus status, String error) {
+        return new SecureDataBatchReadResult()
+                .setPath(path)
+                .setStatus(status.code())
+                .setError(error);
+    }
+
+    @Override
+    public void executeServerShutdownHook(ServerConfig serverConfig, Channel channel) {
+        decryptExecutor.shutdownNow();
+    }
+}
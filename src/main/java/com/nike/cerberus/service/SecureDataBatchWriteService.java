@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nike.cerberus.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import com.nike.backstopper.exception.ApiException;
+import com.nike.cerberus.SecureDataAction;
+import com.nike.cerberus.domain.SecureDataBatchWriteEntry;
+import com.nike.cerberus.error.DefaultApiError;
+import com.nike.cerberus.record.SecureDataRecord;
+import com.nike.cerberus.security.CerberusPrincipal;
+import com.nike.riposte.server.config.ServerConfig;
+import com.nike.riposte.server.hooks.ServerShutdownHook;
+import io.netty.channel.Channel;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes many secrets, possibly of different SDBs, in one transaction. The principal's permission is checked once per
+ * SDB and the secrets are encrypted in parallel on a bounded pool of threads before the transaction is opened, so that
+ * the rows are only locked for as long as it takes to write them.
+ */
+@Singleton
+public class SecureDataBatchWriteService implements ServerShutdownHook {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final SafeDepositBoxService safeDepositBoxService;
+    private final PermissionsService permissionsService;
+    private final SecureDataService secureDataService;
+    private final ObjectMapper objectMapper;
+    private final ThreadPoolExecutor encryptExecutor;
+
+    @Inject
+    public SecureDataBatchWriteService(SafeDepositBoxService safeDepositBoxService,
+                                       PermissionsService permissionsService,
+                                       SecureDataService secureDataService,
+                                       ObjectMapper objectMapper,
+                                       @Named("cms.secret.batchWrite.encryptThreads") int encryptThreads,
+                                       @Named("cms.secret.batchWrite.encryptQueueSize") int encryptQueueSize) {
+
+        this.safeDepositBoxService = safeDepositBoxService;
+        this.permissionsService = permissionsService;
+        this.secureDataService = secureDataService;
+        this.objectMapper = objectMapper;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        // when the queue is full the writing thread encrypts the secret itself, which slows down the biggest batches
+        encryptExecutor = new ThreadPoolExecutor(encryptThreads, encryptThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(encryptQueueSize),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "secret-batch-encrypt-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Writes all of the secrets, or none of them if any one cannot be written.
+     *
+     * @param principal The principal writing the secrets, who must have write permission on every SDB of the batch
+     * @param secrets The secrets with paths including the SDB category, e.g. app/my-sdb/my-secret
+     */
+    public void writeSecrets(CerberusPrincipal principal, List<SecureDataBatchWriteEntry> secrets) {
+        // the secrets by their path without the category, e.g. my-sdb/my-secret, by the base path of their SDB
+        Map<String, Map<String, SecureDataBatchWriteEntry>> secretsBySdbBasePath = new LinkedHashMap<>();
+        // paths are compared case insensitively, like the PATH column is
+        Set<String> paths = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+        for (SecureDataBatchWriteEntry secret : secrets) {
+            // category/sdb-slug/path/to/secret
+            String[] parts = StringUtils.split(StringUtils.defaultString(secret.getPath()), "/", 3);
+            if (parts.length < 3 || secret.getData() == null) {
+                throw ApiException.newBuilder()
+                        .withApiErrors(DefaultApiError.SECRET_BATCH_WRITE_INVALID_SECRET)
+                        .withExceptionMessage("Invalid secret at path: " + secret.getPath())
+                        .build();
+            }
+
+            String path = parts[1] + "/" + parts[2];
+            if (! paths.add(path)) {
+                throw ApiException.newBuilder()
+                        .withApiErrors(DefaultApiError.SECRET_BATCH_WRITE_DUPLICATE_PATHS)
+                        .withExceptionMessage("Duplicate path: " + secret.getPath())
+                        .build();
+            }
+
+            secretsBySdbBasePath.computeIfAbsent(parts[0] + "/" + parts[1] + "/", sdbBasePath -> new LinkedHashMap<>())
+                    .put(path, secret);
+        }
+
+        Map<String, String> sdbIdsBySdbBasePath = new LinkedHashMap<>();
+        for (String sdbBasePath : secretsBySdbBasePath.keySet()) {
+            Optional<String> sdbId = safeDepositBoxService.getSafeDepositBoxIdByPath(sdbBasePath);
+            if (! sdbId.isPresent() ||
+                    ! permissionsService.doesPrincipalHavePermission(principal, sdbId.get(), SecureDataAction.WRITE)) {
+                throw ApiException.newBuilder()
+                        .withApiErrors(DefaultApiError.ACCESS_DENIED)
+                        .withExceptionMessage("Permission denied for principal: " + principal.getName()
+                                + " to write secrets of SDB: " + sdbBasePath)
+                        .build();
+            }
+            sdbIdsBySdbBasePath.put(sdbBasePath, sdbId.get());
+        }
+
+        List<CompletableFuture<SecureDataRecord>> encryptedSecrets = Lists.newArrayListWithCapacity(secrets.size());
+        secretsBySdbBasePath.forEach((sdbBasePath, sdbSecrets) -> sdbSecrets.forEach((path, secret) ->
+                encryptedSecrets.add(secureDataService.encryptSecret(sdbIdsBySdbBasePath.get(sdbBasePath), path,
+                        toJson(secret), secret.getData().size(), encryptExecutor))));
+
+        List<SecureDataRecord> secureDataRecords = Lists.newArrayListWithCapacity(encryptedSecrets.size());
+        try {
+            encryptedSecrets.forEach(encryptedSecret -> secureDataRecords.add(encryptedSecret.join()));
+        } catch (CompletionException e) {
+            log.error("Failed to encrypt a secret of a batch of {} secrets", secrets.size(), e.getCause());
+            throw ApiException.newBuilder()
+                    .withApiErrors(DefaultApiError.INTERNAL_SERVER_ERROR)
+                    .withExceptionCause(e.getCause())
+                    .withExceptionMessage("Failed to encrypt secrets")
+                    .build();
+        }
+
+        secureDataService.writeSecrets(secureDataRecords, principal.getName());
+    }
+
+    private String toJson(SecureDataBatchWriteEntry secret) {
+        try {
+            return objectMapper.writeValueAsString(secret.getData());
+        } catch (JsonProcessingException e) {
+            throw ApiException.newBuilder()
+                    .withApiErrors(DefaultApiError.INTERNAL_SERVER_ERROR)
+                    .withExceptionCause(e)
+                    .withExceptionMessage("Failed to write secret data as JSON for path: " + secret.getPath())
+                    .build();
+        }
+    }
+
+    @Override
+    public void executeServerShutdownHook(ServerConfig serverConfig, Channel channel) {
+        encryptExecutor.shutdownNow();
+    }
+}
@@ -17,47 +17,64 @@
 package com.nike.cerberus.service;
 
 
+import com.codahale.metrics.Timer;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.nike.backstopper.exception.ApiException;
 import com.nike.cerberus.dao.SecureDataDao;
 import com.nike.cerberus.dao.SecureDataVersionDao;
+import com.nike.cerberus.domain.PaginationCursor;
 import com.nike.cerberus.domain.SecureData;
 import com.nike.cerberus.domain.SecureDataType;
 import com.nike.cerberus.domain.SecureFile;
 import com.nike.cerberus.domain.SecureFileSummary;
 import com.nike.cerberus.domain.SecureFileSummaryResult;
-import com.nike.cerberus.domain.Source;
 import com.nike.cerberus.error.DefaultApiError;
-import com.nike.cerberus.record.DataKeyInfo;
+import com.nike.cerberus.record.ResolvedSecureDataRecord;
+import com.nike.cerberus.record.SecureDataPathNodeRecord;
 import com.nike.cerberus.record.SecureDataRecord;
 import com.nike.cerberus.record.SecureDataVersionRecord;
 import com.nike.cerberus.util.DateTimeSupplier;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.ibatis.session.ExecutorType;
 import org.mybatis.guice.transactional.Transactional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.time.OffsetDateTime;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 public class SecureDataService {
 
+    private static final String WRITE_ENCRYPT_TIMER = "cms.secret.write.encrypt";
+    private static final String WRITE_TRANSACTION_TIMER = "cms.secret.write.transaction";
+    private static final String WRITE_LOCK_TIMER = "cms.secret.write.lock";
+    private static final String WRITE_ARCHIVE_TIMER = "cms.secret.write.archive";
+    private static final String WRITE_UPDATE_TIMER = "cms.secret.write.update";
+
     private final SecureDataDao secureDataDao;
     private final EncryptionService encryptionService;
     private final ObjectMapper objectMapper;
     private final DateTimeSupplier dateTimeSupplier;
     private final SecureDataVersionDao secureDataVersionDao;
+    private final MetricsService metricsService;
 
     protected final Logger log = LoggerFactory.getLogger(getClass());
 
@@ -66,15 +83,20 @@ public class SecureDataService {
                              EncryptionService encryptionService,
                              ObjectMapper objectMapper,
                              DateTimeSupplier dateTimeSupplier,
-                             SecureDataVersionDao secureDataVersionDao) {
+                             SecureDataVersionDao secureDataVersionDao,
+                             MetricsService metricsService) {
         this.secureDataDao = secureDataDao;
         this.encryptionService = encryptionService;
         this.objectMapper = objectMapper;
         this.dateTimeSupplier = dateTimeSupplier;
         this.secureDataVersionDao = secureDataVersionDao;
+        this.metricsService = metricsService;
     }
 
-    @Transactional
+    /**
+     * Write a secret. The payload is encrypted before the transaction is started, so that a database connection is
+     * only held for the lock, archive and update steps rather than for the KMS round trips as well.
+     */
     public void writeSecret(String sdbId, String path, String plainTextPayload, String principal) {
         log.debug("Writing secure data: SDB ID: {}, Path: {}", sdbId, path);
 
@@ -83,12 +105,32 @@ public class SecureDataService {
         int sizeInBytes = plaintextBytes.length;
 
         // Make sure to encrypt payload as a String, then convert to bytes to mimic the previous encryption flow
-        String ciphertext = encryptionService.encrypt(plainTextPayload, path);
-        byte[] ciphertextBytes = ciphertext.getBytes(StandardCharsets.UTF_8);
+        byte[] ciphertextBytes;
+        try (Timer.Context ignored = startTimer(WRITE_ENCRYPT_TIMER, SecureDataType.OBJECT)) {
+            ciphertextBytes = encryptionService.encrypt(plainTextPayload, path).getBytes(StandardCharsets.UTF_8);
+        }
+
+        try (Timer.Context ignored = startTimer(WRITE_TRANSACTION_TIMER, SecureDataType.OBJECT)) {
+            writeEncryptedSecret(sdbId, path, ciphertextBytes, topLevelKVPairCount, sizeInBytes, principal);
+        }
+    }
+
+    @Transactional
+    protected void writeEncryptedSecret(String sdbId,
+                                        String path,
+                                        byte[] ciphertextBytes,
+                                        int topLevelKVPairCount,
+                                        int sizeInBytes,
+                                        String principal) {
+
         OffsetDateTime now = dateTimeSupplier.get();
 
         // Fetch the current version if there is one, so that on update it can be moved to the versions table
-        Optional<SecureDataRecord> secureDataRecordOpt = secureDataDao.readSecureDataByPath(sdbId, path);
+        Optional<SecureDataRecord> secureDataRecordOpt;
+        try (Timer.Context ignored = startTimer(WRITE_LOCK_TIMER, SecureDataType.OBJECT)) {
+            secureDataRecordOpt = secureDataDao.readSecureDataByPath(sdbId, path);
+        }
+
         if (secureDataRecordOpt.isPresent()) {
             SecureDataRecord secureData = secureDataRecordOpt.get();
             if (secureData.getType() != SecureDataType.OBJECT) {
@@ -97,45 +139,218 @@ public class SecureDataService {
                         .build();
             }
 
-            secureDataVersionDao.writeSecureDataVersion(sdbId, path, secureData.getEncryptedBlob(),
-                    SecureDataVersionRecord.SecretsAction.UPDATE,
-                    SecureDataType.OBJECT,
-                    sizeInBytes,
-                    secureData.getLastUpdatedBy(),
-                    secureData.getLastUpdatedTs(),
-                    principal,
-                    now
-            );
+            try (Timer.Context ignored = startTimer(WRITE_ARCHIVE_TIMER, SecureDataType.OBJECT)) {
+                secureDataVersionDao.writeSecureDataVersion(sdbId, path, secureData.getEncryptedBlob(),
+                        SecureDataVersionRecord.SecretsAction.UPDATE,
+                        SecureDataType.OBJECT,
+                        sizeInBytes,
+                        secureData.getLastUpdatedBy(),
+                        secureData.getLastUpdatedTs(),
+                        principal,
+                        now,
+                        secureData.getKeyMaterialTs()
+                );
+            }
+
+            try (Timer.Context ignored = startTimer(WRITE_UPDATE_TIMER, SecureDataType.OBJECT)) {
+                secureDataDao.updateSecureData(sdbId, path, ciphertextBytes, topLevelKVPairCount,
+                        SecureDataType.OBJECT,
+                        sizeInBytes,
+                        secureData.getCreatedBy(),
+                        secureData.getCreatedTs(),
+                        principal,
+                        now,
+                        secureData.getLastRotatedTs());
+            }
 
-            secureDataDao.updateSecureData(sdbId, path, ciphertextBytes, topLevelKVPairCount,
+        } else {
+            try (Timer.Context ignored = startTimer(WRITE_UPDATE_TIMER, SecureDataType.OBJECT)) {
+                secureDataDao.writeSecureData(sdbId, path, ciphertextBytes, topLevelKVPairCount, SecureDataType.OBJECT,
+                        sizeInBytes,
+                        principal,
+                        now,
+                        principal,
+                        now);
+
+                List<SecureDataPathNodeRecord> pathNodes = getPathNodes(path);
+                if (! pathNodes.isEmpty()) {
+                    secureDataDao.incrementPathNodes(sdbId, pathNodes);
+                }
+            }
+        }
+    }
+
+    /**
+     * Encrypts a secret to write with {@link #writeSecrets(List, String)} on the given executor, so that the secrets
+     * of a batch are encrypted in parallel and before the transaction that writes them is opened.
+     *
+     * @param path The path of the secret, e.g. my-sdb/my-secret
+     * @return The secret to write, which completes exceptionally if it cannot be encrypted
+     */
+    public CompletableFuture<SecureDataRecord> encryptSecret(String sdbId,
+                                                             String path,
+                                                             String plainTextPayload,
+                                                             int topLevelKVPairCount,
+                                                             Executor encryptExecutor) {
+
+        return CompletableFuture.supplyAsync(() -> new SecureDataRecord()
+                .setSdboxId(sdbId)
+                .setPath(path)
+                .setType(SecureDataType.OBJECT)
+                .setTopLevelKVCount(topLevelKVPairCount)
+                .setSizeInBytes(plainTextPayload.getBytes(StandardCharsets.UTF_8).length)
+                .setEncryptedBlob(encryptionService.encrypt(plainTextPayload, path).getBytes(StandardCharsets.UTF_8)),
+                encryptExecutor);
+    }
+
+    /**
+     * Writes many secrets encrypted with {@link #encryptSecret(String, String, String, int, Executor)} in one
+     * transaction. The existing secrets are locked with one query, their current versions are archived with multi-row
+     * inserts, and the new blobs are sent to the database as JDBC batches, which keeps the row locks short.
+     *
+     * @param secrets The secrets to write, which must all have different paths
+     * @param principal The name of the principal writing the secrets
+     */
+    @Transactional(executorType = ExecutorType.BATCH)
+    public void writeSecrets(List<SecureDataRecord> secrets, String principal) {
+        log.debug("Writing {} secrets", secrets.size());
+
+        OffsetDateTime now = dateTimeSupplier.get();
+        Set<String> sdbIds = new HashSet<>();
+        List<String> paths = Lists.newArrayList();
+        secrets.forEach(secret -> {
+            sdbIds.add(secret.getSdboxId());
+            paths.add(secret.getPath());
+        });
+
+        // paths are matched case insensitively, like the PATH column is, so that a difference in case can be rejected
+        Map<String, SecureDataRecord> currentSecretsByPath = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        secureDataDao.readSecureDataByPathsLocking(sdbIds, paths)
+                .forEach(secureData -> currentSecretsByPath.put(secureData.getPath(), secureData));
+
+        List<SecureDataVersionRecord> previousVersions = Lists.newArrayList();
+        List<SecureDataRecord> updatedSecrets = Lists.newArrayList();
+        List<SecureDataRecord> newSecrets = Lists.newArrayList();
+        for (SecureDataRecord secret : secrets) {
+            SecureDataRecord secureData = currentSecretsByPath.get(secret.getPath());
+            if (secureData == null) {
+                newSecrets.add(secret);
+                continue;
+            }
+
+            if (secureData.getType() != SecureDataType.OBJECT) {
+                throw ApiException.newBuilder()
+                        .withApiErrors(DefaultApiError.INVALID_SECURE_DATA_TYPE)
+                        .withExceptionMessage("The secret at path: " + secret.getPath() + " is not an object")
+                        .build();
+            }
+
+            // The path is the encryption context of the blob, which would no longer decrypt under the stored path
+            if (! secureData.getPath().equals(secret.getPath())) {
+                throw ApiException.newBuilder()
+                        .withApiErrors(DefaultApiError.SECRET_BATCH_WRITE_PATH_CASE_MISMATCH)
+                        .withExceptionMessage("The secret at path: " + secret.getPath()
+                                + " exists with the path: " + secureData.getPath())
+                        .build();
+            }
+
+            previousVersions.add(new SecureDataVersionRecord()
+                    .setSdboxId(secureData.getSdboxId())
+                    .setPath(secureData.getPath())
+                    .setEncryptedBlob(secureData.getEncryptedBlob())
+                    .setAction(SecureDataVersionRecord.SecretsAction.UPDATE.name())
+                    .setType(SecureDataType.OBJECT)
+                    .setSizeInBytes(secureData.getSizeInBytes())
+                    .setVersionCreatedBy(secureData.getLastUpdatedBy())
+                    .setVersionCreatedTs(secureData.getLastUpdatedTs())
+                    .setActionPrincipal(principal)
+                    .setActionTs(now)
+                    .setKeyMaterialTs(secureData.getKeyMaterialTs()));
+            updatedSecrets.add(secret);
+        }
+
+        if (! previousVersions.isEmpty()) {
+            secureDataVersionDao.writeSecureDataVersions(previousVersions);
+        }
+
+        // Consecutive executions of the same statement are sent to the database as one JDBC batch
+        for (SecureDataRecord secret : updatedSecrets) {
+            SecureDataRecord secureData = currentSecretsByPath.get(secret.getPath());
+            secureDataDao.updateSecureData(secret.getSdboxId(), secret.getPath(), secret.getEncryptedBlob(),
+                    secret.getTopLevelKVCount(),
                     SecureDataType.OBJECT,
-                    sizeInBytes,
+                    secret.getSizeInBytes(),
                     secureData.getCreatedBy(),
                     secureData.getCreatedTs(),
                     principal,
                     now,
                     secureData.getLastRotatedTs());
+        }
 
-        } else {
-            secureDataDao.writeSecureData(sdbId, path, ciphertextBytes, topLevelKVPairCount, SecureDataType.OBJECT,
-                    sizeInBytes,
+        Map<String, List<SecureDataPathNodeRecord>> pathNodesBySdbId = Maps.newHashMap();
+        for (SecureDataRecord secret : newSecrets) {
+            secureDataDao.writeSecureData(secret.getSdboxId(), secret.getPath(), secret.getEncryptedBlob(),
+                    secret.getTopLevelKVCount(),
+                    SecureDataType.OBJECT,
+                    secret.getSizeInBytes(),
                     principal,
                     now,
                     principal,
                     now);
+
+            pathNodesBySdbId.computeIfAbsent(secret.getSdboxId(), sdbId -> Lists.newArrayList())
+                    .addAll(getPathNodes(secret.getPath()));
         }
+
+        // A node shared by many of the new secrets is repeated, and each repeat of it increments its count once more
+        pathNodesBySdbId.forEach((sdbId, pathNodes) -> {
+            if (! pathNodes.isEmpty()) {
+                secureDataDao.incrementPathNodes(sdbId, pathNodes);
+            }
+        });
     }
 
-    @Transactional
     public void writeSecureFile(String sdbId, String path, byte[] bytes, int sizeInBytes, String principal) {
+        writeSecureFile(sdbId, path, new ByteArrayInputStream(bytes), sizeInBytes, principal);
+    }
+
+    /**
+     * Write a secure file, encrypting the contents as they are streamed to the database so that neither the whole
+     * plaintext nor the whole ciphertext needs to be copied onto the heap. The data key is generated before the
+     * transaction is started, so only the local encryption of the contents happens while the row is locked.
+     *
+     * @param content     the plaintext file contents, read exactly once
+     * @param sizeInBytes the number of bytes in content
+     */
+    public void writeSecureFile(String sdbId, String path, InputStream content, int sizeInBytes, String principal) {
         log.debug("Writing secure file: SDB ID: {}, Path: {}", sdbId, path);
 
-        byte[] ciphertextBytes = encryptionService.encrypt(bytes, path);
+        InputStream ciphertext;
+        try (Timer.Context ignored = startTimer(WRITE_ENCRYPT_TIMER, SecureDataType.FILE)) {
+            ciphertext = encryptionService.encrypt(content, sizeInBytes, path);
+        }
+
+        try (Timer.Context ignored = startTimer(WRITE_TRANSACTION_TIMER, SecureDataType.FILE)) {
+            writeEncryptedSecureFile(sdbId, path, ciphertext, sizeInBytes, principal);
+        }
+    }
+
+    @Transactional
+    protected void writeEncryptedSecureFile(String sdbId,
+                                            String path,
+                                            InputStream ciphertext,
+                                            int sizeInBytes,
+                                            String principal) {
+
         int topLevelKVPairCount = 0;
         OffsetDateTime now = dateTimeSupplier.get();
 
         // Fetch the current version if there is one, so that on update it can be moved to the versions table
-        Optional<SecureDataRecord> secureDataRecordOpt = secureDataDao.readSecureDataByPath(sdbId, path);
+        Optional<SecureDataRecord> secureDataRecordOpt;
+        try (Timer.Context ignored = startTimer(WRITE_LOCK_TIMER, SecureDataType.FILE)) {
+            secureDataRecordOpt = secureDataDao.readSecureDataByPath(sdbId, path);
+        }
+
         if (secureDataRecordOpt.isPresent()) {
             SecureDataRecord secureData = secureDataRecordOpt.get();
             if (secureData.getType() != SecureDataType.FILE) {
@@ -144,35 +359,46 @@ public class SecureDataService {
                         .build();
             }
 
-            secureDataVersionDao.writeSecureDataVersion(sdbId, path, secureData.getEncryptedBlob(),
-                    SecureDataVersionRecord.SecretsAction.UPDATE,
-                    SecureDataType.FILE,
-                    sizeInBytes,
-                    secureData.getLastUpdatedBy(),
-                    secureData.getLastUpdatedTs(),
-                    principal,
-                    now
-            );
+            try (Timer.Context ignored = startTimer(WRITE_ARCHIVE_TIMER, SecureDataType.FILE)) {
+                secureDataVersionDao.writeSecureDataVersion(sdbId, path, secureData.getEncryptedBlob(),
+                        SecureDataVersionRecord.SecretsAction.UPDATE,
+                        SecureDataType.FILE,
+                        secureData.getSizeInBytes(),
+                        secureData.getLastUpdatedBy(),
+                        secureData.getLastUpdatedTs(),
+                        principal,
+                        now,
+                        secureData.getKeyMaterialTs()
+                );
+            }
 
-            secureDataDao.updateSecureData(sdbId, path, ciphertextBytes, topLevelKVPairCount,
-                    SecureDataType.FILE,
-                    sizeInBytes,
-                    secureData.getCreatedBy(),
-                    secureData.getCreatedTs(),
-                    principal,
-                    now,
-                    secureData.getLastRotatedTs());
+            try (Timer.Context ignored = startTimer(WRITE_UPDATE_TIMER, SecureDataType.FILE)) {
+                secureDataDao.updateSecureData(sdbId, path, ciphertext, topLevelKVPairCount,
+                        SecureDataType.FILE,
+                        sizeInBytes,
+                        secureData.getCreatedBy(),
+                        secureData.getCreatedTs(),
+                        principal,
+                        now,
+                        secureData.getLastRotatedTs());
+            }
 
         } else {
-            secureDataDao.writeSecureData(sdbId, path, ciphertextBytes, topLevelKVPairCount, SecureDataType.FILE,
-                    sizeInBytes,
-                    principal,
-                    now,
-                    principal,
-                    now);
+            try (Timer.Context ignored = startTimer(WRITE_UPDATE_TIMER, SecureDataType.FILE)) {
+                secureDataDao.writeSecureData(sdbId, path, ciphertext, topLevelKVPairCount, SecureDataType.FILE,
+                        sizeInBytes,
+                        principal,
+                        now,
+                        principal,
+                        now);
+            }
         }
     }
 
+    private Timer.Context startTimer(String name, SecureDataType type) {
+        return metricsService.getOrCreateTimer(name, ImmutableMap.of("type", type.name())).time();
+    }
+
     /**
      * Attempts to deserialize the plain text payload and determine how many key value pairs it contains, in order to
      * capture this metadata metric for KPI reporting.
@@ -199,13 +425,49 @@ public class SecureDataService {
         }
 
         SecureDataRecord secureDataRecord = secureDataRecordOpt.get();
-        byte[] ciphertextBytes = secureDataRecordOpt.get().getEncryptedBlob();
+        String plaintext = decryptSecret(secureDataRecord.getEncryptedBlob(), path);
 
-        // Make sure to convert ciphertext to a String first, then decrypt, because Amazon throws an
-        // error if the ciphertext was encrypted as a String, but is not decrypted as a String.
-        String ciphertext = new String(ciphertextBytes, StandardCharsets.UTF_8);
-        String plaintext = encryptionService.decrypt(ciphertext, path);
-        SecureData secureData = new SecureData()
+        return Optional.of(toSecureData(secureDataRecord, plaintext));
+    }
+
+    /**
+     * Reads the secrets at the given paths with a single query, and decrypts them in parallel on the given executor.
+     *
+     * @param sdbIds The IDs of the SDBs that the secrets may belong to, secrets of other SDBs are not read
+     * @param paths The paths of the secrets, e.g. my-sdb/my-secret
+     * @param decryptExecutor The executor to decrypt the secrets on
+     * @return The secrets by the given path, for the paths that have a secret. Each one completes exceptionally if the
+     * secret cannot be decrypted.
+     */
+    public Map<String, CompletableFuture<SecureData>> readSecrets(Collection<String> sdbIds,
+                                                                   Collection<String> paths,
+                                                                   Executor decryptExecutor) {
+
+        Map<String, CompletableFuture<SecureData>> secrets = Maps.newHashMap();
+        if (sdbIds.isEmpty() || paths.isEmpty()) {
+            return secrets;
+        }
+
+        log.debug("Reading secure data: Paths: {}", paths);
+        // paths are matched case insensitively, like the PATH column is
+        Map<String, SecureDataRecord> secureDataRecordsByPath = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        secureDataDao.readSecureDataByPathsAndType(sdbIds, paths, SecureDataType.OBJECT)
+                .forEach(secureDataRecord -> secureDataRecordsByPath.put(secureDataRecord.getPath(), secureDataRecord));
+
+        for (String path : paths) {
+            SecureDataRecord secureDataRecord = secureDataRecordsByPath.get(path);
+            if (secureDataRecord != null) {
+                secrets.put(path, CompletableFuture.supplyAsync(() ->
+                        toSecureData(secureDataRecord, decryptSecret(secureDataRecord.getEncryptedBlob(), path)),
+                        decryptExecutor));
+            }
+        }
+
+        return secrets;
+    }
+
+    private SecureData toSecureData(SecureDataRecord secureDataRecord, String plaintext) {
+        return new SecureData()
                 .setCreatedBy(secureDataRecord.getCreatedBy())
                 .setCreatedTs(secureDataRecord.getCreatedTs())
                 .setData(plaintext)
@@ -213,10 +475,65 @@ public class SecureDataService {
                 .setLastUpdatedTs(secureDataRecord.getLastUpdatedTs())
                 .setPath(secureDataRecord.getPath())
                 .setSdboxId(secureDataRecord.getSdboxId());
+    }
+
+    /**
+     * Reads a secret if the principal has permission on the SDB that it belongs to. The SDB ID, the permission check
+     * and the encrypted secret are resolved with a single query.
+     *
+     * @param sdbPath The path of the SDB, e.g. app/my-sdb/
+     * @param path The path of the secret, e.g. my-sdb/my-secret
+     * @param iamPrincipal True if the principal names are IAM principal ARNs, false if they are user groups
+     * @param principalNames The names that the principal's permissions may be granted under
+     * @param userGroupsCaseSensitive Whether user groups are matched case sensitively
+     * @param rolesThatAllowPermission The roles that allow the principal to read the secret
+     * @return The secret, or empty if there is no secret at the path
+     * @throws ApiException with ACCESS_DENIED if the SDB does not exist or the principal has no permission on it
+     */
+    public Optional<SecureData> readSecretIfPermitted(String sdbPath,
+                                                      String path,
+                                                      boolean iamPrincipal,
+                                                      Collection<String> principalNames,
+                                                      boolean userGroupsCaseSensitive,
+                                                      Set<String> rolesThatAllowPermission) {
+
+        log.debug("Resolving and reading secure data: SDB Path: {}, Path: {}", sdbPath, path);
+        Optional<ResolvedSecureDataRecord> resolvedRecordOpt = secureDataDao.resolveSecureDataByPathAndType(sdbPath,
+                path, SecureDataType.OBJECT, iamPrincipal, principalNames, userGroupsCaseSensitive,
+                rolesThatAllowPermission);
+
+        if (! resolvedRecordOpt.isPresent() || ! Boolean.TRUE.equals(resolvedRecordOpt.get().getPermitted())) {
+            throw ApiException.newBuilder()
+                    .withApiErrors(DefaultApiError.ACCESS_DENIED)
+                    .withExceptionMessage("SDB not found or permission was not granted for principal")
+                    .build();
+        }
+
+        ResolvedSecureDataRecord resolvedRecord = resolvedRecordOpt.get();
+        if (resolvedRecord.getSecureDataId() == null) {
+            return Optional.empty();
+        }
+
+        String plaintext = decryptSecret(resolvedRecord.getEncryptedBlob(), path);
+        SecureData secureData = new SecureData()
+                .setCreatedBy(resolvedRecord.getCreatedBy())
+                .setCreatedTs(resolvedRecord.getCreatedTs())
+                .setData(plaintext)
+                .setLastUpdatedBy(resolvedRecord.getLastUpdatedBy())
+                .setLastUpdatedTs(resolvedRecord.getLastUpdatedTs())
+                .setPath(resolvedRecord.getPath())
+                .setSdboxId(resolvedRecord.getSdboxId());
 
         return Optional.of(secureData);
     }
 
+    private String decryptSecret(byte[] ciphertextBytes, String path) {
+        // Make sure to convert ciphertext to a String first, then decrypt, because Amazon throws an
+        // error if the ciphertext was encrypted as a String, but is not decrypted as a String.
+        String ciphertext = new String(ciphertextBytes, StandardCharsets.UTF_8);
+        return encryptionService.decrypt(ciphertext, path);
+    }
+
     public Optional<SecureFile> readFile(String sdbId, String path) {
         log.debug("Reading secure file: Path: {}", path);
         Optional<SecureDataRecord> secureDataRecordOpt = secureDataDao.readSecureDataByPathAndType(sdbId, path, SecureDataType.FILE);
@@ -225,7 +542,8 @@ public class SecureDataService {
         }
 
         SecureDataRecord secureDataRecord = secureDataRecordOpt.get();
-        byte[] plaintextBytes = encryptionService.decrypt(secureDataRecord.getEncryptedBlob(), secureDataRecord.getPath());
+        byte[] plaintextBytes = encryptionService.decrypt(secureDataRecord.getEncryptedBlob(), secureDataRecord.getPath(),
+                secureDataRecord.getSizeInBytes());
 
         SecureFile secureFile = new SecureFile()
                 .setCreatedBy(secureDataRecord.getCreatedBy())
@@ -294,20 +612,37 @@ public class SecureDataService {
             partialPath = partialPath + "/";
         }
 
-        Set<String> keys = new HashSet<>();
-        String[] pArray = secureDataDao.getPathsByPartialPathAndType(sdbId, partialPath, SecureDataType.OBJECT);
-        if (pArray == null || pArray.length < 1) {
-            return keys;
+        List<String> keys = secureDataDao.getChildKeysByParentPath(sdbId, partialPath);
+        if (keys == null) {
+            return new HashSet<>();
         }
+        return new HashSet<>(keys);
+    }
 
-        for (int i = 0; i < pArray.length; i++) {
-            String fullPath = pArray[i];
-            keys.add(StringUtils
-                    .removeStart(fullPath, partialPath)
-                    .replaceAll("\\/.*$", "/")
-            );
+    /**
+     * Gets the nodes of the virtual tree structure that lead to the given path, which are kept in the
+     * SECURE_DATA_PATH_NODE table for each secret, so that listKeys only needs to read the children of a node.
+     *
+     * ex: the nodes of app/foo/bar are app/foo/ (the key foo/ under app/) and app/foo/bar (the key bar under app/foo/),
+     * and the nodes of the folder app/foo/ are just app/foo/
+     *
+     * @param path The path of a secret, or of a folder if it ends with "/"
+     * @return The nodes of the path, from the root down
+     */
+    protected static List<SecureDataPathNodeRecord> getPathNodes(String path) {
+        List<SecureDataPathNodeRecord> nodes = Lists.newArrayList();
+
+        int parentEnd = path.indexOf('/');
+        while (parentEnd >= 0 && parentEnd < path.length() - 1) {
+            int childEnd = path.indexOf('/', parentEnd + 1);
+            String nodePath = childEnd < 0 ? path : path.substring(0, childEnd + 1);
+            nodes.add(new SecureDataPathNodeRecord()
+                    .setPath(nodePath)
+                    .setParentPath(path.substring(0, parentEnd + 1))
+                    .setChildKey(nodePath.substring(parentEnd + 1)));
+            parentEnd = childEnd;
         }
-        return keys;
+        return nodes;
     }
 
     /**
@@ -326,13 +661,40 @@ public class SecureDataService {
      * @return Array of keys if the key is a data node it will not end with "/"
      */
     public SecureFileSummaryResult listSecureFilesSummaries(String sdbId, String partialPath, int limit, int offset) {
+        return listSecureFilesSummaries(sdbId, partialPath, limit, offset, null, true);
+    }
+
+    /**
+     * Lists the files under a partial path, newest first, either by offset or by continuing from the cursor returned
+     * with the previous page.
+     *
+     * @param cursor The cursor to continue from, in which case the offset is ignored, or null to paginate by offset
+     * @param countTotal Whether to count every file under the path, which is slower the more files there are
+     */
+    public SecureFileSummaryResult listSecureFilesSummaries(String sdbId,
+                                                            String partialPath,
+                                                            int limit,
+                                                            int offset,
+                                                            PaginationCursor cursor,
+                                                            boolean countTotal) {
         if (!partialPath.endsWith("/")) {
             partialPath = partialPath + "/";
         }
 
-        int totalNumFiles = secureDataDao.countByPartialPathAndType(partialPath, SecureDataType.FILE);
+        Integer totalNumFiles = countTotal ?
+                secureDataDao.countByPartialPathAndType(sdbId, partialPath, SecureDataType.FILE) : null;
+
+        // fetch one more record than requested to know whether there is a next page without counting
+        List<SecureDataRecord> secureDataRecords = cursor == null ?
+                secureDataDao.listMetadataByPartialPathAndType(sdbId, partialPath, SecureDataType.FILE, limit + 1, offset) :
+                secureDataDao.listMetadataByPartialPathAndTypeAfterCursor(sdbId, partialPath, SecureDataType.FILE,
+                        cursor.getTimestamp(), cursor.getId(), limit + 1);
+        boolean hasNext = secureDataRecords.size() > limit;
+        if (hasNext) {
+            secureDataRecords = secureDataRecords.subList(0, limit);
+        }
+
         List<SecureFileSummary> fileSummaries = Lists.newArrayList();
-        List<SecureDataRecord> secureDataRecords = secureDataDao.listSecureDataByPartialPathAndType(sdbId, partialPath, SecureDataType.FILE, limit, offset);
         secureDataRecords.forEach(secureDataRecord -> {
             fileSummaries.add(new SecureFileSummary()
                     .setCreatedBy(secureDataRecord.getCreatedBy())
@@ -351,9 +713,13 @@ public class SecureDataService {
         result.setSecureFileSummaries(fileSummaries);
         result.setFileCountInResult(fileSummaries.size());
         result.setTotalFileCount(totalNumFiles);
-        result.setHasNext(result.getTotalFileCount() > (offset + limit));
-        if (result.isHasNext()) {
-            result.setNextOffset(offset + limit);
+        result.setHasNext(hasNext);
+        if (hasNext) {
+            SecureDataRecord lastRecord = secureDataRecords.get(secureDataRecords.size() - 1);
+            result.setNextCursor(new PaginationCursor(lastRecord.getCreatedTs(), String.valueOf(lastRecord.getId())).encode());
+            if (cursor == null) {
+                result.setNextOffset(offset + limit);
+            }
         }
 
         return result;
@@ -385,6 +751,18 @@ public class SecureDataService {
     @Transactional
     public void deleteAllSecretsThatStartWithGivenPartialPath(String sdbId, String subPath) {
         log.warn("Deleting all secrets under path: {} for sdbId: {}", subPath, sdbId);
+
+        // The nodes above the sub path stay, but no longer count the deleted secrets
+        List<SecureDataPathNodeRecord> parentPathNodes = getPathNodes(subPath.substring(0, subPath.lastIndexOf('/') + 1));
+        if (! parentPathNodes.isEmpty()) {
+            int count = secureDataDao.countByPartialPathAndType(sdbId, subPath, SecureDataType.OBJECT);
+            if (count > 0) {
+                secureDataDao.decrementPathNodes(parentPathNodes, count);
+                secureDataDao.deleteEmptyPathNodes(parentPathNodes);
+            }
+        }
+        secureDataDao.deleteAllPathNodesThatStartWithGivenPartialPath(sdbId, subPath);
+
         secureDataDao.deleteAllSecretsThatStartWithGivenPartialPath(sdbId, subPath);
     }
 
@@ -393,6 +771,7 @@ public class SecureDataService {
      *
      * @param path The sub path to delete all secrets that have paths that start with
      */
+    @Transactional
     public void deleteSecret(String sdbId, String path, SecureDataType type, String principal) {
         OffsetDateTime now = dateTimeSupplier.get();
         SecureDataRecord secureDataRecord = secureDataDao.readSecureDataByPathAndType(sdbId, path, type)
@@ -410,10 +789,18 @@ public class SecureDataService {
                 secureDataRecord.getLastUpdatedBy(),
                 secureDataRecord.getLastUpdatedTs(),
                 principal,
-                now
+                now,
+                secureDataRecord.getKeyMaterialTs()
         );
 
         secureDataDao.deleteSecret(sdbId, path);
+
+        // The path nodes are case sensitive, so build them from the stored path rather than the requested one
+        List<SecureDataPathNodeRecord> pathNodes = getPathNodes(secureDataRecord.getPath());
+        if (type == SecureDataType.OBJECT && ! pathNodes.isEmpty()) {
+            secureDataDao.decrementPathNodes(pathNodes, 1);
+            secureDataDao.deleteEmptyPathNodes(pathNodes);
+        }
     }
 
     public int getTotalNumberOfKeyValuePairs() {
@@ -434,6 +821,13 @@ public class SecureDataService {
         return secureDataDao.readSecureDataByPath(sdbId, path);
     }
 
+    /**
+     * @return The record for the path without its encrypted blob, for when the data does not need to be decrypted
+     */
+    public Optional<SecureDataRecord> getSecureDataMetadataForPath(String sdbId, String path) {
+        return secureDataDao.readMetadataByPath(sdbId, path);
+    }
+
     public Map<String, String> parseSecretMetadata(SecureData secureData) {
         Map<String, String> secretMetadata = Maps.newHashMap();
 
@@ -449,49 +843,6 @@ public class SecureDataService {
         return secureDataDao.countByType(SecureDataType.FILE);
     }
 
-    /**
-     * Rotate data keys by re-encrypting data. The oldest data keys in both secure data and secure data version that are
-     * expired (based on rotation interval) will be considered for key rotation.
-     * @param numberOfKeys Max number of data keys to be rotated
-     * @param pauseTimeInMillis Number of millisecond to pause between re-encryption operations
-     * @param rotationIntervalInDays Data keys generated older than X days will be considered for key rotation
-     */
-    public void rotateDataKeys(int numberOfKeys, int pauseTimeInMillis, int rotationIntervalInDays) {
-        int[] counter = new int[2];
-        OffsetDateTime now = dateTimeSupplier.get();
-        OffsetDateTime expiredTs = now.minusDays(rotationIntervalInDays);
-        List<DataKeyInfo> oldestDataKeyInfos = secureDataDao.getOldestDataKeyInfo(expiredTs, numberOfKeys);
-
-        for (DataKeyInfo dataKeyInfo: oldestDataKeyInfos) {
-            Source source = dataKeyInfo.getSource();
-            if (source == Source.SECURE_DATA) {
-                String id = dataKeyInfo.getId();
-                try {
-                    reencryptData(id);
-                    counter[0]++;
-                } catch (Exception e) {
-                    log.error("Failed to re-encrypt secure data id: {}", id);
-                }
-            } else if (source == Source.SECURE_DATA_VERSION) {
-                String versionId = dataKeyInfo.getId();
-                try {
-                    reencryptDataVersion(versionId);
-                    counter[1]++;
-                } catch (Exception e) {
-                    log.error("Failed to re-encrypt secure data version id: {}", versionId);
-                }
-            }
-
-            try {
-                Thread.sleep(pauseTimeInMillis);
-            } catch (InterruptedException e) {
-                log.error("Failed to sleep between re-encryption", e);
-            }
-        }
-        log.info("Re-encrypted {} secure data and {} secure data version entries.", counter[0], counter[1]);
-
-    }
-
     @Transactional
     protected void reencryptData(String id) {
         log.debug("Re-encrypting secure data/file id: {}", id);
@@ -506,6 +857,7 @@ public class SecureDataService {
         OffsetDateTime now = dateTimeSupplier.get();
 
         secureDataRecord.setLastRotatedTs(now);
+        secureDataRecord.setKeyMaterialTs(now);
         secureDataRecord.setEncryptedBlob(reencryptedBytes);
         secureDataDao.updateSecureData(secureDataRecord);
     }
@@ -527,6 +879,7 @@ public class SecureDataService {
         OffsetDateTime now = dateTimeSupplier.get();
 
         secureDataVersion.setLastRotatedTs(now);
+        secureDataVersion.setKeyMaterialTs(now);
         secureDataVersion.setEncryptedBlob(reencryptedBytes);
         secureDataVersionDao.updateSecureDataVersion(secureDataVersion);
     }
@@ -21,6 +21,7 @@ package com.nike.cerberus.service;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.nike.cerberus.dao.SecureDataVersionDao;
+import com.nike.cerberus.domain.PaginationCursor;
 import com.nike.cerberus.domain.SecureDataType;
 import com.nike.cerberus.domain.SecureDataVersion;
 import com.nike.cerberus.domain.SecureDataVersionSummary;
@@ -104,7 +105,8 @@ public class SecureDataVersionService {
 
         SecureDataVersionRecord secureDataVersion = secureDataVersionRecord.get();
         byte[] encryptedBlob = secureDataVersion.getEncryptedBlob();
-        byte[] unencryptedBlob = encryptionService.decrypt(encryptedBlob, secureDataVersion.getPath());
+        byte[] unencryptedBlob = encryptionService.decrypt(encryptedBlob, secureDataVersion.getPath(),
+                secureDataVersion.getSizeInBytes());
 
         return Optional.of(new SecureFileVersion()
                 .setAction(secureDataVersion.getAction())
@@ -127,27 +129,55 @@ public class SecureDataVersionService {
                                                                         int limit,
                                                                         int offset) {
 
+        return getSecureDataVersionSummariesByPath(sdbId, pathToSecureData, sdbCategory, limit, offset, null, true);
+    }
+
+    /**
+     * Lists the versions of a secret, newest first, either by offset or by continuing from the cursor returned with
+     * the previous page.
+     *
+     * @param cursor The cursor to continue from, in which case the offset is ignored, or null to paginate by offset
+     * @param countTotal Whether to count every version of the secret, which is slower the more versions there are
+     */
+    public SecureDataVersionsResult getSecureDataVersionSummariesByPath(String sdbId,
+                                                                        String pathToSecureData,
+                                                                        String sdbCategory,
+                                                                        int limit,
+                                                                        int offset,
+                                                                        PaginationCursor cursor,
+                                                                        boolean countTotal) {
+
         List<SecureDataVersionSummary> secureDataVersionSummaries = Lists.newArrayList();
         List<SecureDataVersionRecord> secureDataVersions = Lists.newArrayList();
         int actualLimit = limit;
         int actualOffset = offset;
-        int totalNumVersionsForPath = secureDataVersionDao.getTotalNumVersionsForPath(pathToSecureData);
+        Integer totalNumVersionsForPath = countTotal ? secureDataVersionDao.getTotalNumVersionsForPath(pathToSecureData) : null;
 
-        // retrieve current secrets versions from secure data table
-        Optional<SecureDataVersionRecord> currentSecureDataVersionOpt = getCurrentSecureDataVersion(sdbId, pathToSecureData);
+        // retrieve current secrets versions from secure data table, which is always the first version of the first page
+        Optional<SecureDataVersionRecord> currentSecureDataVersionOpt = cursor == null || countTotal ?
+                toCurrentSecureDataVersion(secureDataService.getSecureDataMetadataForPath(sdbId, pathToSecureData)) :
+                Optional.empty();
         if (currentSecureDataVersionOpt.isPresent()) {
-            if (offset == 0) {
+            if (cursor == null && offset == 0) {
                 SecureDataVersionRecord currentSecureDataVersion = currentSecureDataVersionOpt.get();
                 secureDataVersions.add(currentSecureDataVersion);
                 actualLimit--;
-            } else {
+            } else if (cursor == null) {
                 actualOffset--;
             }
-            totalNumVersionsForPath++;
+            if (totalNumVersionsForPath != null) {
+                totalNumVersionsForPath++;
+            }
         }  // else, the secret has been deleted and the last version should already be in the list
 
-        // retrieve previous secrets versions from the secure data versions table
-        secureDataVersions.addAll(secureDataVersionDao.listSecureDataVersionByPath(pathToSecureData, actualLimit, actualOffset));
+        // retrieve previous secrets versions from the secure data versions table, plus one more version to know
+        // whether there is a next page without counting
+        List<SecureDataVersionRecord> previousSecureDataVersions = cursor == null ?
+                secureDataVersionDao.listVersionMetadataByPath(pathToSecureData, actualLimit + 1, actualOffset) :
+                secureDataVersionDao.listVersionMetadataByPathAfterCursor(pathToSecureData,
+                        cursor.getTimestamp(), cursor.getId(), actualLimit + 1);
+        boolean hasNext = previousSecureDataVersions.size() > actualLimit;
+        secureDataVersions.addAll(hasNext ? previousSecureDataVersions.subList(0, actualLimit) : previousSecureDataVersions);
 
         secureDataVersions.forEach(versionRecord ->
             secureDataVersionSummaries.add(new SecureDataVersionSummary()
@@ -164,34 +194,42 @@ public class SecureDataVersionService {
             )
         );
 
-        return generateSecureDataVersionsResult(secureDataVersionSummaries, totalNumVersionsForPath, limit, offset);
+        SecureDataVersionsResult result = generateSecureDataVersionsResult(secureDataVersionSummaries,
+                totalNumVersionsForPath, hasNext, limit, offset);
+        if (hasNext) {
+            SecureDataVersionRecord lastVersion = secureDataVersions.get(secureDataVersions.size() - 1);
+            PaginationCursor nextCursor = StringUtils.equals(lastVersion.getId(), DEFAULT_ID_FOR_CURRENT_VERSIONS) ?
+                    PaginationCursor.fromStart() :
+                    new PaginationCursor(lastVersion.getActionTs(), lastVersion.getId());
+            result.setNextCursor(nextCursor.encode());
+            if (cursor == null) {
+                result.setNextOffset(offset + limit);
+            }
+        }
+
+        return result;
     }
 
     public SecureDataVersionsResult generateSecureDataVersionsResult(List<SecureDataVersionSummary> summaries,
-                                                                     int totalNumVersionsForPath,
+                                                                     Integer totalNumVersionsForPath,
+                                                                     boolean hasNext,
                                                                      int limit,
                                                                      int offset) {
 
-        int nextOffset = limit + offset;
-        boolean hasNext = totalNumVersionsForPath > nextOffset;
-
-        SecureDataVersionsResult result = new SecureDataVersionsResult()
+        return new SecureDataVersionsResult()
                 .setLimit(limit)
                 .setOffset(offset)
                 .setTotalVersionCount(totalNumVersionsForPath)
                 .setVersionCountInResult(summaries.size())
                 .setHasNext(hasNext)
                 .setSecureDataVersionSummaries(summaries);
-
-        if (hasNext) {
-            result.setNextOffset(nextOffset);
-        }
-
-        return result;
     }
 
     private Optional<SecureDataVersionRecord> getCurrentSecureDataVersion(String sdbId, String pathToSecureData) {
-        Optional<SecureDataRecord> currentSecureDataRecordOpt = secureDataService.getSecureDataRecordForPath(sdbId, pathToSecureData);
+        return toCurrentSecureDataVersion(secureDataService.getSecureDataRecordForPath(sdbId, pathToSecureData));
+    }
+
+    private Optional<SecureDataVersionRecord> toCurrentSecureDataVersion(Optional<SecureDataRecord> currentSecureDataRecordOpt) {
         SecureDataVersionRecord newSecureDataVersionRecord = null;
 
         if (currentSecureDataRecordOpt.isPresent()) {
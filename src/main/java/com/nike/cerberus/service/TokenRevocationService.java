@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nike.cerberus.service;
+
+import com.nike.cerberus.cache.AuthTokenCache;
+import com.nike.cerberus.dao.AuthTokenDao;
+import com.nike.cerberus.record.RevokedTokenRecord;
+import com.nike.riposte.server.config.ServerConfig;
+import com.nike.riposte.server.hooks.ServerShutdownHook;
+import io.netty.channel.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Tails the REVOKED_TOKENS change log and evicts the revoked tokens from the local auth token cache, so that a token
+ * revoked on any instance stops being accepted by this instance within roughly one poll interval.
+ * <p>
+ * Polling only happens when the auth token cache is enabled, as otherwise every request is verified against the
+ * AUTH_TOKENS table, from which revoked tokens are deleted.
+ */
+@Singleton
+public class TokenRevocationService implements ServerShutdownHook {
+
+    private static final int MAX_REVOCATIONS_PER_QUERY = 1000;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final AuthTokenDao authTokenDao;
+    private final AuthTokenCache authTokenCache;
+    private final int commitGraceInSeconds;
+    private final ScheduledExecutorService executor;
+
+    /**
+     * The sequence of the last revocation that has been processed, and after which no revocation can still be
+     * uncommitted. Null until the first successful poll.
+     */
+    private Long lastSettledSequence;
+
+    @Inject
+    public TokenRevocationService(AuthTokenDao authTokenDao,
+                                  AuthTokenCache authTokenCache,
+                                  @Named("cms.auth.token.revocation.pollIntervalInMillis") long pollIntervalInMillis,
+                                  @Named("cms.auth.token.revocation.commitGraceInSeconds") int commitGraceInSeconds) {
+
+        this.authTokenDao = authTokenDao;
+        this.authTokenCache = authTokenCache;
+        this.commitGraceInSeconds = commitGraceInSeconds;
+
+        if (authTokenCache.isEnabled()) {
+            log.info("Polling for revoked tokens every {} ms", pollIntervalInMillis);
+            executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "token-revocation-poller");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleWithFixedDelay(this::pollRevokedTokensSafely,
+                    pollIntervalInMillis, pollIntervalInMillis, TimeUnit.MILLISECONDS);
+        } else {
+            executor = null;
+        }
+    }
+
+    private void pollRevokedTokensSafely() {
+        try {
+            pollRevokedTokens();
+        } catch (Exception e) {
+            log.error("Failed to poll for revoked tokens", e);
+        }
+    }
+
+    /**
+     * Evict every token revoked since the last poll from the auth token cache.
+     * <p>
+     * Revocations that are not settled yet are evicted, but the cursor is not moved past them, so that a revocation
+     * with a lower sequence that commits late is still picked up by the next poll.
+     */
+    protected synchronized void pollRevokedTokens() {
+        if (lastSettledSequence == null) {
+            // Tokens revoked before this instance started cannot be in its cache
+            lastSettledSequence = authTokenDao.getLastSettledRevokedTokenSequence(commitGraceInSeconds).orElse(0L);
+        }
+
+        List<RevokedTokenRecord> revokedTokens;
+        do {
+            revokedTokens = authTokenDao.getRevokedTokensAfter(lastSettledSequence, commitGraceInSeconds,
+                    MAX_REVOCATIONS_PER_QUERY);
+
+            Set<String> revokedTokenHashes = revokedTokens.stream()
+                    .map(RevokedTokenRecord::getTokenHash)
+                    .collect(Collectors.toSet());
+            authTokenCache.invalidateAllByHash(revokedTokenHashes);
+
+            for (RevokedTokenRecord revokedToken : revokedTokens) {
+                if (!revokedToken.getSettled()) {
+                    return;
+                }
+                lastSettledSequence = revokedToken.getSequence();
+            }
+        } while (revokedTokens.size() == MAX_REVOCATIONS_PER_QUERY);
+    }
+
+    @Override
+    public void executeServerShutdownHook(ServerConfig serverConfig, Channel channel) {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
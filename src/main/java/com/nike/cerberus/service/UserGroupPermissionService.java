@@ -18,12 +18,14 @@ package com.nike.cerberus.service;
 
 import com.google.common.collect.Sets;
 import com.nike.backstopper.exception.ApiException;
+import com.nike.cerberus.cache.SdbPermissionIndex;
 import com.nike.cerberus.dao.UserGroupDao;
 import com.nike.cerberus.domain.Role;
 import com.nike.cerberus.domain.UserGroupPermission;
 import com.nike.cerberus.error.DefaultApiError;
 import com.nike.cerberus.record.UserGroupPermissionRecord;
 import com.nike.cerberus.record.UserGroupRecord;
+import com.nike.cerberus.util.AfterCommitExecutor;
 import com.nike.cerberus.util.UuidSupplier;
 import org.mybatis.guice.transactional.Transactional;
 
@@ -48,14 +50,22 @@ public class UserGroupPermissionService {
 
     private final UserGroupDao userGroupDao;
 
+    private final SdbPermissionIndex sdbPermissionIndex;
+
+    private final AfterCommitExecutor afterCommitExecutor;
+
     @Inject
     public UserGroupPermissionService(final UuidSupplier uuidSupplier,
                                       final RoleService roleService,
-                                      final UserGroupDao userGroupDao) {
+                                      final UserGroupDao userGroupDao,
+                                      final SdbPermissionIndex sdbPermissionIndex,
+                                      final AfterCommitExecutor afterCommitExecutor) {
 
         this.uuidSupplier = uuidSupplier;
         this.roleService = roleService;
         this.userGroupDao = userGroupDao;
+        this.sdbPermissionIndex = sdbPermissionIndex;
+        this.afterCommitExecutor = afterCommitExecutor;
     }
 
     /**
@@ -101,6 +111,8 @@ public class UserGroupPermissionService {
         }
 
         String userGroupId;
+        final String userGroupName = possibleUserGroupRecord.map(UserGroupRecord::getName)
+                .orElse(userGroupPermission.getName());
         if (possibleUserGroupRecord.isPresent()) {
             userGroupId = possibleUserGroupRecord.get().getId();
         } else {
@@ -125,6 +137,8 @@ public class UserGroupPermissionService {
         permissionsRecord.setCreatedTs(dateTime);
         permissionsRecord.setLastUpdatedTs(dateTime);
         userGroupDao.createUserGroupPermission(permissionsRecord);
+        afterCommitExecutor.execute(() -> sdbPermissionIndex.putUserGroupRole(safeDepositBoxId, userGroupName,
+                userGroupPermission.getRoleId()));
     }
 
     /**
@@ -176,6 +190,14 @@ public class UserGroupPermissionService {
         record.setLastUpdatedBy(user);
         record.setLastUpdatedTs(dateTime);
         userGroupDao.updateUserGroupPermission(record);
+
+        // Revoke the previous role first, as the new one may grant less
+        sdbPermissionIndex.logRevocation(safeDepositBoxId);
+        afterCommitExecutor.execute(() -> {
+            sdbPermissionIndex.removeUserGroup(safeDepositBoxId, possibleUserGroupRecord.get().getName());
+            sdbPermissionIndex.putUserGroupRole(safeDepositBoxId, possibleUserGroupRecord.get().getName(),
+                    userGroupPermission.getRoleId());
+        });
     }
 
     /**
@@ -210,6 +232,9 @@ public class UserGroupPermissionService {
         }
 
         userGroupDao.deleteUserGroupPermission(safeDepositBoxId, userGroupRecord.get().getId());
+        sdbPermissionIndex.logRevocation(safeDepositBoxId);
+        afterCommitExecutor.execute(() ->
+                sdbPermissionIndex.removeUserGroup(safeDepositBoxId, userGroupRecord.get().getName()));
     }
 
     public Set<UserGroupPermission> getUserGroupPermissions(final String safeDepositBoxId) {
@@ -254,5 +279,7 @@ public class UserGroupPermissionService {
     @Transactional
     public void deleteUserGroupPermissions(final String safeDepositBoxId) {
         userGroupDao.deleteUserGroupPermissions(safeDepositBoxId);
+        sdbPermissionIndex.logRevocation(safeDepositBoxId);
+        afterCommitExecutor.execute(() -> sdbPermissionIndex.removeAllUserGroups(safeDepositBoxId));
     }
 }
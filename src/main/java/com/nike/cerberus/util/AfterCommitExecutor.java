@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nike.cerberus.util;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Defers changes to in-memory state that mirrors the database, such as caches and indexes, until the transaction that
+ * made the matching database change has committed, so that a rolled back transaction leaves no trace in them and
+ * concurrent readers cannot reload the state from before the commit.
+ * <p>
+ * It is bound in {@link com.nike.cerberus.server.config.guice.CmsMyBatisModule} around every
+ * {@link org.mybatis.guice.transactional.Transactional} method, outside of the interceptor that commits, and only the
+ * outermost transactional method runs the deferred actions. Actions submitted outside of a transaction run right away.
+ */
+public class AfterCommitExecutor implements Executor, MethodInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(AfterCommitExecutor.class);
+
+    private final ThreadLocal<List<Runnable>> pendingActions = new ThreadLocal<>();
+
+    @Override
+    public void execute(Runnable action) {
+        List<Runnable> actions = pendingActions.get();
+        if (actions == null) {
+            action.run();
+        } else {
+            actions.add(action);
+        }
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        if (pendingActions.get() != null) {
+            return invocation.proceed();
+        }
+
+        List<Runnable> actions = new ArrayList<>();
+        pendingActions.set(actions);
+        Object result;
+        try {
+            result = invocation.proceed();
+        } finally {
+            pendingActions.remove();
+        }
+
+        for (Runnable action : actions) {
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                log.error("Failed to run an action after the transaction committed", e);
+            }
+        }
+        return result;
+    }
+}
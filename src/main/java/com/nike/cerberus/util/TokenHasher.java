@@ -3,10 +3,14 @@ package com.nike.cerberus.util;
 import com.google.inject.name.Named;
 import org.apache.commons.codec.binary.Hex;
 
+import javax.crypto.Mac;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
 import javax.inject.Inject;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.util.Base64;
 
 /**
@@ -18,19 +22,39 @@ import java.util.Base64;
  * <p>
  * https://www.owasp.org/index.php/Hashing_Java
  * https://stackoverflow.com/questions/29431884/java-security-pbekeyspec-how-many-iterations-are-enough
+ * <p>
+ * Since tokens are long random values rather than passwords, a key stretching function is not strictly needed, and
+ * the much cheaper HMAC-SHA512 (keyed with the salt) can be selected instead of PBKDF2 with the hash scheme config.
+ * The scheme of each token is stored with it, and tokens hashed with PBKDF2 keep working after switching to HMAC.
  */
 public class TokenHasher {
 
+    /**
+     * The supported ways of hashing a token, stored with each token
+     */
+    public enum Scheme {
+        PBKDF2,
+        HMAC_SHA512
+    }
+
     // configuration parameter names
     public static final String HASH_SALT_CONFIG_PARAM = "cms.auth.token.hash.salt";
     public static final String HASH_ALGORITHM_CONFIG_PARAM = "cms.auth.token.hash.algorithm";
     public static final String HASH_KEY_LENGTH_CONFIG_PARAM = "cms.auth.token.hash.keyLength";
     public static final String HASH_ITERATIONS_CONFIG_PARAM = "cms.auth.token.hash.iterations";
+    public static final String HASH_SCHEME_CONFIG_PARAM = "cms.auth.token.hash.scheme";
+
+    private static final String HMAC_ALGORITHM = "HmacSHA512";
 
     private final byte[] salt;
     private final String algorithm;
     private final int keyLength;
     private final int iterations;
+    private final Scheme scheme;
+
+    // Looking up JCA implementations is synchronized, so reuse them per thread instead of per hash
+    private final ThreadLocal<SecretKeyFactory> secretKeyFactories;
+    private final ThreadLocal<Mac> macs;
 
     /**
      * Hash auth tokens
@@ -38,16 +62,36 @@ public class TokenHasher {
      * @param algorithm the algorithm to use
      * @param keyLength the key length
      * @param iterations the number of iterations
+     * @param scheme the scheme used to hash new tokens, one of {@link Scheme}
      */
     @Inject
     public TokenHasher(@Named(HASH_SALT_CONFIG_PARAM) final String hashSalt,
                        @Named(HASH_ALGORITHM_CONFIG_PARAM) final String algorithm,
                        @Named(HASH_KEY_LENGTH_CONFIG_PARAM) final int keyLength,
-                       @Named(HASH_ITERATIONS_CONFIG_PARAM) final int iterations) {
+                       @Named(HASH_ITERATIONS_CONFIG_PARAM) final int iterations,
+                       @Named(HASH_SCHEME_CONFIG_PARAM) final String scheme) {
         this.salt = Base64.getDecoder().decode(hashSalt);
         this.algorithm = algorithm;
         this.keyLength = keyLength;
         this.iterations = iterations;
+        this.scheme = Scheme.valueOf(scheme);
+        this.secretKeyFactories = ThreadLocal.withInitial(() -> {
+            try {
+                return SecretKeyFactory.getInstance(algorithm);
+            } catch (GeneralSecurityException e) {
+                throw new RuntimeException("There was a problem creating the token hash key factory", e);
+            }
+        });
+        SecretKeySpec macKey = new SecretKeySpec(salt, HMAC_ALGORITHM);
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+                mac.init(macKey);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new RuntimeException("There was a problem creating the token hash MAC", e);
+            }
+        });
 
         if (salt.length < 64) {
             throw new IllegalArgumentException(HASH_SALT_CONFIG_PARAM + " must be at least 64 bytes but was " + salt.length);
@@ -61,19 +105,47 @@ public class TokenHasher {
     }
 
     /**
-     * Perform one way hash
+     * Perform one way hash, using the configured scheme
      *
      * @param token The token to hash
      * @return The hashed token
      */
     public String hashToken(final String token) {
+        return hashToken(token, scheme);
+    }
+
+    /**
+     * Hash the token with PBKDF2 if the configured scheme is something else, so that tokens created before the scheme
+     * was changed can still be found.
+     *
+     * @param token The token to hash
+     * @return The hashed token, or null if the configured scheme is PBKDF2
+     */
+    public String hashTokenWithLegacyScheme(final String token) {
+        return scheme == Scheme.PBKDF2 ? null : hashToken(token, Scheme.PBKDF2);
+    }
+
+    /**
+     * Perform one way hash
+     *
+     * @param token The token to hash
+     * @param scheme The scheme to hash the token with
+     * @return The hashed token
+     */
+    public String hashToken(final String token, final Scheme scheme) {
         try {
-            final SecretKeyFactory skf = SecretKeyFactory.getInstance(algorithm);
+            if (scheme == Scheme.HMAC_SHA512) {
+                return Hex.encodeHexString(macs.get().doFinal(token.getBytes(StandardCharsets.UTF_8)));
+            }
             final PBEKeySpec spec = new PBEKeySpec(token.toCharArray(), salt, iterations, keyLength);
-            final SecretKey key = skf.generateSecret(spec);
+            final SecretKey key = secretKeyFactories.get().generateSecret(spec);
             return Hex.encodeHexString(key.getEncoded());
         } catch (Exception e) {
             throw new RuntimeException("There was a problem hashing the token", e);
         }
     }
+
+    public Scheme getScheme() {
+        return scheme;
+    }
 }
@@ -0,0 +1,14 @@
+###
+#
+# Indexes matching the order that secure files and secret versions are paged through, so that continuing from a
+# cursor seeks straight to the next page rather than reading every row before it. InnoDB appends the primary key (ID)
+# to secondary indexes, which covers the tie-break on ID.
+#
+###
+
+ALTER TABLE SECURE_DATA
+  ADD INDEX `IX_SECURE_DATA_SDBOX_ID_CREATED_TS` (SDBOX_ID, CREATED_TS);
+
+# PATH is a prefix so that the index stays within the 767 byte key limit
+ALTER TABLE SECURE_DATA_VERSION
+  ADD INDEX `IX_SECURE_DATA_VERSION_PATH_ACTION_TS` (PATH(250), ACTION_TS);
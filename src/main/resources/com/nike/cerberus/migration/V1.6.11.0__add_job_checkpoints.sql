@@ -0,0 +1,14 @@
+###
+#
+# Progress of long running jobs, so that a job resumes where it stopped after a restart or on another instance
+#
+###
+
+CREATE TABLE JOB_CHECKPOINT(
+  NAME VARCHAR(255) NOT NULL,
+  CHECKPOINT_TS DATETIME(3) NULL,
+  CHECKPOINT_ID VARCHAR(1024) NULL,
+  LAST_UPDATED_TS DATETIME(3) NOT NULL,
+  PRIMARY KEY (NAME)
+)
+  ENGINE = InnoDB DEFAULT CHARSET = utf8;
@@ -0,0 +1,38 @@
+###
+#
+# When the data key of each secret and secret version was generated, so that the data key rotation job can find the
+# oldest data keys with an index range scan, instead of computing the age of every row of both tables each run
+#
+###
+
+ALTER TABLE SECURE_DATA
+  ADD COLUMN KEY_MATERIAL_TS DATETIME(3) NULL;
+
+ALTER TABLE SECURE_DATA_VERSION
+  ADD COLUMN KEY_MATERIAL_TS DATETIME(3) NULL;
+
+# Backfill with the same age that the rotation job computed before
+UPDATE SECURE_DATA SET KEY_MATERIAL_TS = GREATEST(LAST_UPDATED_TS, LAST_ROTATED_TS);
+
+UPDATE SECURE_DATA_VERSION SET KEY_MATERIAL_TS = GREATEST(VERSION_CREATED_TS, LAST_ROTATED_TS);
+
+ALTER TABLE SECURE_DATA
+  MODIFY COLUMN KEY_MATERIAL_TS DATETIME(3) NOT NULL;
+
+ALTER TABLE SECURE_DATA_VERSION
+  MODIFY COLUMN KEY_MATERIAL_TS DATETIME(3) NOT NULL;
+
+ALTER TABLE SECURE_DATA
+  ADD INDEX `IX_SECURE_DATA_KEY_MATERIAL_TS_ID` (KEY_MATERIAL_TS, ID);
+
+ALTER TABLE SECURE_DATA_VERSION
+  ADD INDEX `IX_SECURE_DATA_VERSION_KEY_MATERIAL_TS_ID` (KEY_MATERIAL_TS, ID);
+
+# Only the rotation job read these, and no query uses them now
+ALTER TABLE SECURE_DATA
+  DROP INDEX `IX_SECURE_DATA_LAST_ROTATED_TS`,
+  DROP INDEX `IX_SECURE_DATA_LAST_UPDATED_TS`;
+
+ALTER TABLE SECURE_DATA_VERSION
+  DROP INDEX `IX_SECURE_DATA_VERSION_LAST_ROTATED_TS`,
+  DROP INDEX `IX_SECURE_DATA_VERSION_VERSION_CREATED_TS`;
@@ -0,0 +1,29 @@
+###
+#
+# KMS keys created ahead of time for IAM principals that have not authenticated yet, so that the first authentication
+# of a principal only has to claim a key and update its policy, instead of creating a key
+#
+###
+
+CREATE TABLE KMS_KEY_POOL(
+  ID CHAR(36) NOT NULL,
+  AWS_REGION VARCHAR(32) NOT NULL,
+  AWS_KMS_KEY_ID VARCHAR(255) NOT NULL,
+  CLAIMED_BY CHAR(36) NULL,
+  CLAIMED_TS DATETIME(3) NULL,
+  CREATED_BY VARCHAR(255) NOT NULL,
+  CREATED_TS DATETIME(3) NOT NULL,
+  PRIMARY KEY (ID)
+)
+  ENGINE = InnoDB DEFAULT CHARSET = utf8;
+
+ALTER TABLE KMS_KEY_POOL
+  ADD UNIQUE INDEX `IX_KMS_KEY_POOL_CLAIMED_BY` (CLAIMED_BY);
+
+# Finds the oldest unclaimed key of a region
+ALTER TABLE KMS_KEY_POOL
+  ADD INDEX `IX_KMS_KEY_POOL_REGION_CLAIMED_BY_CREATED_TS` (AWS_REGION, CLAIMED_BY, CREATED_TS);
+
+# Finds claims that were never completed
+ALTER TABLE KMS_KEY_POOL
+  ADD INDEX `IX_KMS_KEY_POOL_CLAIMED_TS` (CLAIMED_TS);
@@ -0,0 +1,16 @@
+###
+#
+# Leases of distributed locks. A lease is held until its expiry and extended by heartbeats of the holder, and the
+# fencing token grows with every new holder, so a holder that lost its lease can no longer renew or release it
+#
+###
+
+CREATE TABLE LOCK_LEASE(
+  NAME VARCHAR(255) NOT NULL,
+  HOLDER CHAR(36) NOT NULL,
+  FENCING_TOKEN BIGINT NOT NULL,
+  ACQUIRED_TS DATETIME(3) NOT NULL,
+  EXPIRES_TS DATETIME(3) NOT NULL,
+  PRIMARY KEY (NAME)
+)
+  ENGINE = InnoDB DEFAULT CHARSET = utf8;
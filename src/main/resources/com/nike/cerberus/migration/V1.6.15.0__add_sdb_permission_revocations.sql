@@ -0,0 +1,17 @@
+###
+#
+# Change log of SDBs that had permissions revoked, tailed by each CMS instance to drop those SDBs from its in-memory
+# SDB permission index
+#
+###
+
+CREATE TABLE SDB_PERMISSION_REVOCATIONS(
+  SEQUENCE BIGINT NOT NULL AUTO_INCREMENT,
+  SDBOX_ID CHAR(36) NOT NULL,
+  REVOKED_TS DATETIME(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+  PRIMARY KEY (SEQUENCE)
+)
+  ENGINE = InnoDB DEFAULT CHARSET = utf8;
+
+ALTER TABLE SDB_PERMISSION_REVOCATIONS
+  ADD INDEX `IX_SDB_PERMISSION_REVOCATIONS_REVOKED_TS` (REVOKED_TS);
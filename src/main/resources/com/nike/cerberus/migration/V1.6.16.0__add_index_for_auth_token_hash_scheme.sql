@@ -0,0 +1,8 @@
+###
+#
+# Lets CMS find out cheaply until when tokens hashed with a legacy scheme may still be presented, so that it only tries
+# the legacy hash of an unknown token while such tokens exist
+#
+###
+
+ALTER TABLE AUTH_TOKENS ADD INDEX `IX_AUTH_TOKENS_HASH_SCHEME_EXPIRES_TS` (HASH_SCHEME, EXPIRES_TS);
@@ -0,0 +1,8 @@
+###
+#
+# Paths are case sensitive, so listing the keys under "a/b/" must not also return the children of "a/B/"
+#
+###
+
+ALTER TABLE SECURE_DATA_PATH_NODE
+  MODIFY PARENT_PATH VARCHAR(255) CHARACTER SET utf8 COLLATE utf8_bin NOT NULL;
@@ -0,0 +1,13 @@
+###
+#
+# Instances that are still running the code from before KEY_MATERIAL_TS existed insert secrets and versions without
+# it during a rolling deploy. Default to the epoch, as LAST_ROTATED_TS does, so that the rotation job picks those rows
+# up first instead of the inserts failing
+#
+###
+
+ALTER TABLE SECURE_DATA
+  MODIFY COLUMN KEY_MATERIAL_TS DATETIME(3) NOT NULL DEFAULT '1970-01-01';
+
+ALTER TABLE SECURE_DATA_VERSION
+  MODIFY COLUMN KEY_MATERIAL_TS DATETIME(3) NOT NULL DEFAULT '1970-01-01';
@@ -0,0 +1,7 @@
+###
+#
+# The data key rotation job no longer checkpoints its progress, each run starts from the oldest data key
+#
+###
+
+DELETE FROM JOB_CHECKPOINT WHERE NAME LIKE 'DataKeyRotationJob.%';
@@ -0,0 +1,16 @@
+###
+#
+# Change log of revoked auth tokens, tailed by each CMS instance to evict revoked tokens from its auth token cache
+#
+###
+
+CREATE TABLE REVOKED_TOKENS(
+  SEQUENCE BIGINT NOT NULL AUTO_INCREMENT,
+  TOKEN_HASH VARCHAR(255) NOT NULL,
+  REVOKED_TS DATETIME(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+  PRIMARY KEY (SEQUENCE)
+)
+  ENGINE = InnoDB DEFAULT CHARSET = utf8;
+
+ALTER TABLE REVOKED_TOKENS
+  ADD INDEX `IX_REVOKED_TOKENS_REVOKED_TS` (REVOKED_TS);
@@ -0,0 +1,2 @@
+ALTER TABLE AUTH_TOKENS
+  ADD COLUMN HASH_SCHEME VARCHAR(32) NOT NULL DEFAULT 'PBKDF2';
@@ -0,0 +1,63 @@
+###
+#
+# Index of the direct children of every folder that contains secrets, so that listing the keys under a path only reads
+# its children rather than every secret below it. Each node counts the secrets at or below it, and is deleted when
+# the last of them is.
+#
+###
+
+CREATE TABLE SECURE_DATA_PATH_NODE(
+  PATH VARCHAR(255) CHARACTER SET utf8 COLLATE utf8_bin NOT NULL,
+  SDBOX_ID CHAR(36) NOT NULL,
+  PARENT_PATH VARCHAR(255) NOT NULL,
+  CHILD_KEY VARCHAR(255) CHARACTER SET utf8 COLLATE utf8_bin NOT NULL,
+  SECURE_DATA_COUNT INTEGER NOT NULL,
+  PRIMARY KEY (PATH)
+)
+  ENGINE = InnoDB DEFAULT CHARSET = utf8;
+
+ALTER TABLE SECURE_DATA_PATH_NODE
+  ADD FOREIGN KEY (SDBOX_ID) REFERENCES SAFE_DEPOSIT_BOX(ID);
+
+ALTER TABLE SECURE_DATA_PATH_NODE
+  ADD INDEX `IX_SECURE_DATA_PATH_NODE_PARENT_PATH` (PARENT_PATH);
+
+# Backfill a node for every folder and key of the existing secrets, i.e. for each of the path segments after the first
+INSERT INTO SECURE_DATA_PATH_NODE (PATH, SDBOX_ID, PARENT_PATH, CHILD_KEY, SECURE_DATA_COUNT)
+SELECT
+  CONCAT(PARENT_PATH, CHILD_KEY),
+  SDBOX_ID,
+  PARENT_PATH,
+  CHILD_KEY,
+  COUNT(*)
+FROM
+  (SELECT
+    SECURE_DATA.SDBOX_ID,
+    CONCAT(SUBSTRING_INDEX(SECURE_DATA.PATH, '/', DEPTH.N), '/') COLLATE utf8_bin AS PARENT_PATH,
+    CONCAT(
+      SUBSTRING_INDEX(SUBSTRING_INDEX(SECURE_DATA.PATH, '/', DEPTH.N + 1), '/', -1),
+      IF(DEPTH.N < LENGTH(SECURE_DATA.PATH) - LENGTH(REPLACE(SECURE_DATA.PATH, '/', '')), '/', '')
+    ) COLLATE utf8_bin AS CHILD_KEY
+  FROM
+    SECURE_DATA
+    INNER JOIN
+      (SELECT ONES.N + TENS.N * 10 + HUNDREDS.N * 100 AS N
+      FROM
+        (SELECT 0 AS N UNION ALL SELECT 1 UNION ALL SELECT 2 UNION ALL SELECT 3 UNION ALL SELECT 4 UNION ALL
+          SELECT 5 UNION ALL SELECT 6 UNION ALL SELECT 7 UNION ALL SELECT 8 UNION ALL SELECT 9) AS ONES
+        CROSS JOIN
+        (SELECT 0 AS N UNION ALL SELECT 1 UNION ALL SELECT 2 UNION ALL SELECT 3 UNION ALL SELECT 4 UNION ALL
+          SELECT 5 UNION ALL SELECT 6 UNION ALL SELECT 7 UNION ALL SELECT 8 UNION ALL SELECT 9) AS TENS
+        CROSS JOIN
+        (SELECT 0 AS N UNION ALL SELECT 1 UNION ALL SELECT 2) AS HUNDREDS
+      ) AS DEPTH
+      ON DEPTH.N BETWEEN 1 AND LENGTH(SECURE_DATA.PATH) - LENGTH(REPLACE(SECURE_DATA.PATH, '/', ''))
+  WHERE
+    SECURE_DATA.`TYPE` = 'OBJECT'
+  ) AS NODES
+WHERE
+  CHILD_KEY != ''
+GROUP BY
+  PARENT_PATH,
+  CHILD_KEY,
+  SDBOX_ID;
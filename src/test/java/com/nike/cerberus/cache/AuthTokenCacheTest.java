@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nike.cerberus.cache;
+
+import com.codahale.metrics.Counter;
+import com.nike.cerberus.domain.CerberusAuthToken;
+import com.nike.cerberus.service.MetricsService;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import java.time.OffsetDateTime;
+import java.util.Collections;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class AuthTokenCacheTest {
+
+    private static final String TOKEN = "abc-123-def-456";
+
+    private static final String TOKEN_HASH = "kjadlkfjasdlkf;jlkj1243asdfasdf";
+
+    @Mock
+    private MetricsService metricsService;
+
+    private AuthTokenCache authTokenCache;
+
+    @Before
+    public void before() {
+        initMocks(this);
+        when(metricsService.getOrCreateCounter(anyString(), anyMap())).thenReturn(new Counter());
+
+        authTokenCache = new AuthTokenCache(true, 10, 60, metricsService);
+    }
+
+    @Test
+    public void test_that_a_cached_token_is_returned() {
+        CerberusAuthToken authToken = authToken(OffsetDateTime.now().plusHours(1));
+        authTokenCache.put(TOKEN, TOKEN_HASH, authToken);
+
+        assertSame(authToken, authTokenCache.getIfPresent(TOKEN));
+        assertNull(authTokenCache.getIfPresent("some-other-token"));
+    }
+
+    @Test
+    public void test_that_an_expired_token_is_not_returned_before_the_ttl_elapses() {
+        authTokenCache.put(TOKEN, TOKEN_HASH, authToken(OffsetDateTime.now().minusSeconds(1)));
+
+        assertNull(authTokenCache.getIfPresent(TOKEN));
+    }
+
+    @Test
+    public void test_that_an_invalidated_token_is_not_returned() {
+        authTokenCache.put(TOKEN, TOKEN_HASH, authToken(OffsetDateTime.now().plusHours(1)));
+        authTokenCache.invalidate(TOKEN);
+
+        assertNull(authTokenCache.getIfPresent(TOKEN));
+    }
+
+    @Test
+    public void test_that_tokens_can_be_invalidated_by_hash() {
+        authTokenCache.put(TOKEN, TOKEN_HASH, authToken(OffsetDateTime.now().plusHours(1)));
+        authTokenCache.put("some-other-token", "some-other-hash", authToken(OffsetDateTime.now().plusHours(1)));
+        authTokenCache.invalidateAllByHash(Collections.singleton(TOKEN_HASH));
+
+        assertNull(authTokenCache.getIfPresent(TOKEN));
+        assertNotNull(authTokenCache.getIfPresent("some-other-token"));
+    }
+
+    @Test
+    public void test_that_nothing_is_cached_when_disabled() {
+        AuthTokenCache disabledCache = new AuthTokenCache(false, 10, 60, metricsService);
+        disabledCache.put(TOKEN, TOKEN_HASH, authToken(OffsetDateTime.now().plusHours(1)));
+
+        assertNull(disabledCache.getIfPresent(TOKEN));
+    }
+
+    private CerberusAuthToken authToken(OffsetDateTime expires) {
+        return CerberusAuthToken.Builder.create()
+                .withToken(TOKEN)
+                .withExpires(expires)
+                .build();
+    }
+}
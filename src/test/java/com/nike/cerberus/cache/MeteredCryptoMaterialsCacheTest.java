@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nike.cerberus.cache;
+
+import com.amazonaws.encryptionsdk.DataKey;
+import com.amazonaws.encryptionsdk.caching.CryptoMaterialsCache;
+import com.amazonaws.encryptionsdk.model.DecryptionMaterials;
+import com.amazonaws.encryptionsdk.model.EncryptionMaterials;
+import com.codahale.metrics.Counter;
+import com.google.common.collect.ImmutableMap;
+import com.nike.cerberus.service.MetricsService;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class MeteredCryptoMaterialsCacheTest {
+
+    private static final byte[] CACHE_ID = new byte[]{1, 2, 3};
+
+    @Mock
+    private MetricsService metricsService;
+
+    private Counter hits;
+    private Counter misses;
+    private Counter evictions;
+
+    private MeteredCryptoMaterialsCache cache;
+
+    @Before
+    public void before() {
+        initMocks(this);
+        hits = new Counter();
+        misses = new Counter();
+        evictions = new Counter();
+        when(metricsService.getOrCreateCounter(anyString(), anyMap())).thenReturn(new Counter());
+        when(metricsService.getOrCreateCounter("cms.encryption.materials-cache.hit",
+                ImmutableMap.of("cache", "test", "operation", "encrypt"))).thenReturn(hits);
+        when(metricsService.getOrCreateCounter("cms.encryption.materials-cache.miss",
+                ImmutableMap.of("cache", "test", "operation", "encrypt"))).thenReturn(misses);
+        when(metricsService.getOrCreateCounter("cms.encryption.materials-cache.eviction",
+                ImmutableMap.of("cache", "test", "operation", "encrypt"))).thenReturn(evictions);
+
+        cache = new MeteredCryptoMaterialsCache("test", 1, 1, TimeUnit.MINUTES, metricsService);
+    }
+
+    @Test
+    public void test_that_getEntryForEncrypt_returns_null_and_counts_a_miss_when_empty() {
+        assertNull(cache.getEntryForEncrypt(CACHE_ID, CryptoMaterialsCache.UsageStats.ZERO));
+        assertEquals(1, misses.getCount());
+        assertEquals(0, hits.getCount());
+    }
+
+    @Test
+    public void test_that_getEntryForEncrypt_adds_usage_to_the_cached_entry() {
+        EncryptionMaterials materials = EncryptionMaterials.newBuilder().build();
+        cache.putEntryForEncrypt(CACHE_ID, materials, null, new CryptoMaterialsCache.UsageStats(10, 1));
+
+        CryptoMaterialsCache.EncryptCacheEntry first =
+                cache.getEntryForEncrypt(CACHE_ID, new CryptoMaterialsCache.UsageStats(5, 1));
+        CryptoMaterialsCache.EncryptCacheEntry second =
+                cache.getEntryForEncrypt(CACHE_ID, new CryptoMaterialsCache.UsageStats(5, 1));
+
+        assertSame(materials, second.getResult());
+        assertEquals(new CryptoMaterialsCache.UsageStats(15, 2), first.getUsageStats());
+        assertEquals(new CryptoMaterialsCache.UsageStats(20, 3), second.getUsageStats());
+        assertEquals(2, hits.getCount());
+    }
+
+    @Test
+    public void test_that_invalidate_removes_the_entry() {
+        cache.putEntryForEncrypt(CACHE_ID, EncryptionMaterials.newBuilder().build(), null, CryptoMaterialsCache.UsageStats.ZERO)
+                .invalidate();
+
+        assertNull(cache.getEntryForEncrypt(CACHE_ID, CryptoMaterialsCache.UsageStats.ZERO));
+        assertEquals(0, evictions.getCount());
+    }
+
+    @Test
+    public void test_that_entries_over_the_max_size_are_evicted_and_counted() {
+        cache.putEntryForEncrypt(CACHE_ID, EncryptionMaterials.newBuilder().build(), null, CryptoMaterialsCache.UsageStats.ZERO);
+        cache.putEntryForEncrypt(new byte[]{4, 5, 6}, EncryptionMaterials.newBuilder().build(), null, CryptoMaterialsCache.UsageStats.ZERO);
+
+        assertNull(cache.getEntryForEncrypt(CACHE_ID, CryptoMaterialsCache.UsageStats.ZERO));
+        assertEquals(1, evictions.getCount());
+    }
+
+    @Test
+    public void test_that_decrypt_entries_are_bounded_by_the_memory_ceiling() {
+        MeteredCryptoMaterialsCache memoryBoundedCache =
+                new MeteredCryptoMaterialsCache("test", 0, 4096, 1, TimeUnit.MINUTES, metricsService);
+
+        for (byte i = 0; i < 10; i++) {
+            memoryBoundedCache.putEntryForDecrypt(new byte[]{i}, decryptionMaterials(), null);
+        }
+
+        assertNotNull(memoryBoundedCache.getEntryForDecrypt(new byte[]{9}));
+        assertTrue(memoryBoundedCache.size() < 10);
+    }
+
+    @Test
+    public void test_that_reportMetrics_reports_the_hit_rate_since_the_last_report() {
+        cache.putEntryForEncrypt(CACHE_ID, EncryptionMaterials.newBuilder().build(), null, CryptoMaterialsCache.UsageStats.ZERO);
+        cache.getEntryForEncrypt(CACHE_ID, CryptoMaterialsCache.UsageStats.ZERO);
+        cache.getEntryForEncrypt(new byte[]{4, 5, 6}, CryptoMaterialsCache.UsageStats.ZERO);
+
+        cache.reportMetrics();
+        verify(metricsService).setDoubleGaugeValue("cms.encryption.materials-cache.hit-rate", 0.5,
+                ImmutableMap.of("cache", "test", "operation", "encrypt"));
+
+        cache.reportMetrics();
+        verify(metricsService).setDoubleGaugeValue("cms.encryption.materials-cache.hit-rate", 0.0,
+                ImmutableMap.of("cache", "test", "operation", "encrypt"));
+    }
+
+    private DecryptionMaterials decryptionMaterials() {
+        return DecryptionMaterials.newBuilder()
+                .setDataKey(new DataKey<>(new SecretKeySpec(new byte[32], "AES"), new byte[184], new byte[75], null))
+                .build();
+    }
+}
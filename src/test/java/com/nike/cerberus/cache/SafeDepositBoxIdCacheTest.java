@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nike.cerberus.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SafeDepositBoxIdCacheTest {
+
+    private static final String PATH = "app/health-check-bucket/";
+
+    private SafeDepositBoxIdCache safeDepositBoxIdCache;
+
+    @Before
+    public void before() {
+        safeDepositBoxIdCache = new SafeDepositBoxIdCache(true, 10, 60, 5);
+    }
+
+    @Test
+    public void test_that_paths_are_matched_ignoring_case() {
+        safeDepositBoxIdCache.put(PATH, "sdb-id");
+        safeDepositBoxIdCache.putMissing("app/does-not-exist/");
+
+        assertEquals("sdb-id", safeDepositBoxIdCache.getIfPresent("App/Health-Check-Bucket/"));
+        assertTrue(safeDepositBoxIdCache.isKnownMissing("APP/DOES-NOT-EXIST/"));
+        assertFalse(safeDepositBoxIdCache.isKnownMissing(PATH));
+    }
+
+    @Test
+    public void test_that_invalidating_a_path_forgets_both_its_id_and_that_it_was_missing() {
+        safeDepositBoxIdCache.putMissing(PATH);
+        safeDepositBoxIdCache.invalidate("APP/health-check-bucket/");
+        assertFalse(safeDepositBoxIdCache.isKnownMissing(PATH));
+
+        safeDepositBoxIdCache.put(PATH, "sdb-id");
+        safeDepositBoxIdCache.invalidate(PATH);
+        assertNull(safeDepositBoxIdCache.getIfPresent(PATH));
+    }
+
+    @Test
+    public void test_that_nothing_is_cached_when_disabled() {
+        SafeDepositBoxIdCache disabledCache = new SafeDepositBoxIdCache(false, 10, 60, 5);
+        disabledCache.put(PATH, "sdb-id");
+        disabledCache.putMissing("app/does-not-exist/");
+
+        assertNull(disabledCache.getIfPresent(PATH));
+        assertFalse(disabledCache.isKnownMissing("app/does-not-exist/"));
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nike.cerberus.cache;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.nike.cerberus.SecureDataAction;
+import com.nike.cerberus.dao.PermissionsDao;
+import com.nike.cerberus.dao.RoleDao;
+import com.nike.cerberus.dao.UserGroupDao;
+import com.nike.cerberus.domain.CerberusAuthToken;
+import com.nike.cerberus.domain.Role;
+import com.nike.cerberus.domain.UserGroupPermission;
+import com.nike.cerberus.record.RoleRecord;
+import com.nike.cerberus.record.SdbPermissionRecord;
+import com.nike.cerberus.record.SdbPermissionRevocationRecord;
+import com.nike.cerberus.security.CerberusPrincipal;
+import com.nike.cerberus.service.IamPrincipalPermissionService;
+import com.nike.cerberus.service.PermissionsService;
+import com.nike.cerberus.service.RoleService;
+import com.nike.cerberus.service.UserGroupPermissionService;
+import com.nike.cerberus.util.AfterCommitExecutor;
+import com.nike.cerberus.util.AwsIamRoleArnParser;
+import com.nike.cerberus.util.UuidSupplier;
+import org.aopalliance.intercept.MethodInvocation;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import java.time.OffsetDateTime;
+import java.util.Collections;
+import java.util.Optional;
+
+import static com.nike.cerberus.PrincipalType.USER;
+import static com.nike.cerberus.record.RoleRecord.ROLE_OWNER;
+import static com.nike.cerberus.record.RoleRecord.ROLE_READ;
+import static com.nike.cerberus.record.RoleRecord.ROLE_WRITE;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class SdbPermissionIndexTest {
+
+    private static final String SDB_ID = "sdb-id";
+    private static final String OWNER_ID = "owner-id";
+    private static final String WRITE_ID = "write-id";
+    private static final String READ_ID = "read-id";
+    private static final String IAM_ROLE_ARN = "arn:aws:iam::111111111111:role/role-name";
+
+    private static final ImmutableSet<String> READ_ROLES = ImmutableSet.of(ROLE_OWNER, ROLE_WRITE, ROLE_READ);
+    private static final ImmutableSet<String> WRITE_ROLES = ImmutableSet.of(ROLE_OWNER, ROLE_WRITE);
+
+    @Mock
+    private PermissionsDao permissionsDao;
+
+    @Mock
+    private RoleDao roleDao;
+
+    @Mock
+    private RoleService roleService;
+
+    @Mock
+    private UserGroupDao userGroupDao;
+
+    @Mock
+    private IamPrincipalPermissionService iamPrincipalPermissionService;
+
+    @Mock
+    private AwsIamRoleArnParser awsIamRoleArnParser;
+
+    private SdbPermissionIndex sdbPermissionIndex;
+
+    @Before
+    public void before() {
+        initMocks(this);
+        when(roleDao.getAllRoles()).thenReturn(Lists.newArrayList(
+                role(OWNER_ID, ROLE_OWNER), role(WRITE_ID, ROLE_WRITE), role(READ_ID, ROLE_READ)));
+        when(permissionsDao.getAllUserGroupPermissions()).thenReturn(Lists.newArrayList(
+                new SdbPermissionRecord().setSdboxId(SDB_ID).setPrincipalName("Group-Owner").setRoleId(OWNER_ID),
+                new SdbPermissionRecord().setSdboxId(SDB_ID).setPrincipalName("group-reader").setRoleId(READ_ID)));
+        when(permissionsDao.getAllIamPrincipalPermissions()).thenReturn(Lists.newArrayList(
+                new SdbPermissionRecord().setSdboxId(SDB_ID).setPrincipalName(IAM_ROLE_ARN).setRoleId(WRITE_ID)));
+        when(permissionsDao.getLastSettledSdbPermissionRevocationSequence(5)).thenReturn(Optional.of(7L));
+
+        // Rebuild manually rather than on the schedule
+        sdbPermissionIndex = new SdbPermissionIndex(false, 60, 1000, 5, 24, permissionsDao, roleDao);
+        sdbPermissionIndex.rebuild();
+    }
+
+    @Test
+    public void test_that_user_groups_are_matched_by_role() {
+        assertTrue(sdbPermissionIndex.doesUserGroupHaveRole(SDB_ID, ImmutableSet.of("Group-Owner"), WRITE_ROLES, true));
+        assertTrue(sdbPermissionIndex.doesUserGroupHaveRole(SDB_ID, ImmutableSet.of("group-reader"), READ_ROLES, true));
+        assertFalse(sdbPermissionIndex.doesUserGroupHaveRole(SDB_ID, ImmutableSet.of("group-reader"), WRITE_ROLES, true));
+        assertFalse(sdbPermissionIndex.doesUserGroupHaveRole("other-sdb-id", ImmutableSet.of("Group-Owner"), READ_ROLES, true));
+    }
+
+    @Test
+    public void test_that_user_groups_are_matched_ignoring_case_only_when_case_insensitive() {
+        assertFalse(sdbPermissionIndex.doesUserGroupHaveRole(SDB_ID, ImmutableSet.of("group-owner"), WRITE_ROLES, true));
+        assertTrue(sdbPermissionIndex.doesUserGroupHaveRole(SDB_ID, ImmutableSet.of("group-owner"), WRITE_ROLES, false));
+    }
+
+    @Test
+    public void test_that_iam_principals_are_matched_by_any_of_their_arns() {
+        assertTrue(sdbPermissionIndex.doesIamPrincipalHaveRole(SDB_ID,
+                Lists.newArrayList("arn:aws:sts::111111111111:assumed-role/role-name/session", IAM_ROLE_ARN), WRITE_ROLES));
+        assertFalse(sdbPermissionIndex.doesIamPrincipalHaveRole(SDB_ID,
+                Lists.newArrayList(IAM_ROLE_ARN), ImmutableSet.of(ROLE_OWNER)));
+    }
+
+    @Test
+    public void test_that_the_index_is_updated_in_place() {
+        sdbPermissionIndex.putUserGroupRole(SDB_ID, "new-group", WRITE_ID);
+        assertTrue(sdbPermissionIndex.doesUserGroupHaveRole(SDB_ID, ImmutableSet.of("new-group"), WRITE_ROLES, true));
+
+        sdbPermissionIndex.removeUserGroup(SDB_ID, "GROUP-OWNER");
+        assertFalse(sdbPermissionIndex.doesUserGroupHaveRole(SDB_ID, ImmutableSet.of("Group-Owner"), READ_ROLES, false));
+
+        sdbPermissionIndex.removeAllIamPrincipals(SDB_ID);
+        assertFalse(sdbPermissionIndex.doesIamPrincipalHaveRole(SDB_ID, Lists.newArrayList(IAM_ROLE_ARN), READ_ROLES));
+    }
+
+    @Test
+    public void test_that_a_revocation_is_replayed_on_a_rebuild_that_may_have_read_it_before_it_committed() {
+        // The revoking transaction has not committed yet, so the next rebuild still reads the permission
+        sdbPermissionIndex.removeUserGroup(SDB_ID, "Group-Owner");
+        sdbPermissionIndex.rebuild();
+        assertFalse(sdbPermissionIndex.doesUserGroupHaveRole(SDB_ID, ImmutableSet.of("Group-Owner"), READ_ROLES, true));
+        assertTrue(sdbPermissionIndex.doesUserGroupHaveRole(SDB_ID, ImmutableSet.of("group-reader"), READ_ROLES, true));
+
+        // By the rebuild after that, it has
+        sdbPermissionIndex.rebuild();
+        assertTrue(sdbPermissionIndex.doesUserGroupHaveRole(SDB_ID, ImmutableSet.of("Group-Owner"), READ_ROLES, true));
+    }
+
+    @Test
+    public void test_that_an_sdb_with_permissions_revoked_by_any_instance_is_dropped_until_a_later_rebuild() {
+        when(permissionsDao.getSdbPermissionRevocationsAfter(7L, 5, 1000)).thenReturn(Lists.newArrayList(
+                new SdbPermissionRevocationRecord().setSequence(8L).setSdboxId(SDB_ID).setSettled(true),
+                new SdbPermissionRevocationRecord().setSequence(9L).setSdboxId("other-sdb-id").setSettled(false)));
+
+        sdbPermissionIndex.pollRevocations();
+        assertFalse(sdbPermissionIndex.doesUserGroupHaveRole(SDB_ID, ImmutableSet.of("Group-Owner"), READ_ROLES, true));
+        assertFalse(sdbPermissionIndex.doesIamPrincipalHaveRole(SDB_ID, Lists.newArrayList(IAM_ROLE_ARN), READ_ROLES));
+
+        // The cursor only moves past settled revocations
+        sdbPermissionIndex.pollRevocations();
+        verify(permissionsDao).getSdbPermissionRevocationsAfter(8L, 5, 1000);
+
+        // A rebuild that was already running may have read the tables before the revocation committed
+        sdbPermissionIndex.rebuild();
+        assertFalse(sdbPermissionIndex.doesUserGroupHaveRole(SDB_ID, ImmutableSet.of("Group-Owner"), READ_ROLES, true));
+
+        sdbPermissionIndex.rebuild();
+        assertTrue(sdbPermissionIndex.doesUserGroupHaveRole(SDB_ID, ImmutableSet.of("Group-Owner"), READ_ROLES, true));
+    }
+
+    @Test
+    public void test_that_revocations_are_only_logged_when_enabled() {
+        sdbPermissionIndex.logRevocation(SDB_ID);
+        verify(permissionsDao, never()).createSdbPermissionRevocation(SDB_ID);
+
+        new SdbPermissionIndex(true, 3600, 3600000, 5, 24, permissionsDao, roleDao).logRevocation(SDB_ID);
+        verify(permissionsDao).createSdbPermissionRevocation(SDB_ID);
+    }
+
+    @Test
+    public void test_that_nothing_is_allowed_before_the_first_rebuild() {
+        SdbPermissionIndex unbuiltIndex = new SdbPermissionIndex(false, 60, 1000, 5, 24, permissionsDao, roleDao);
+
+        assertFalse(unbuiltIndex.doesUserGroupHaveRole(SDB_ID, ImmutableSet.of("Group-Owner"), READ_ROLES, true));
+        assertFalse(unbuiltIndex.doesIamPrincipalHaveRole(SDB_ID, Collections.singletonList(IAM_ROLE_ARN), READ_ROLES));
+    }
+
+    @Test
+    public void test_that_a_grant_rolled_back_with_its_transaction_does_not_allow_access() throws Throwable {
+        AfterCommitExecutor afterCommitExecutor = new AfterCommitExecutor();
+        when(roleService.getRoleById(WRITE_ID)).thenReturn(Optional.of(new Role().setId(WRITE_ID).setName(ROLE_WRITE)));
+        when(userGroupDao.getUserGroupByName("new-group")).thenReturn(Optional.empty());
+        UserGroupPermissionService userGroupPermissionService = new UserGroupPermissionService(
+                new UuidSupplier(), roleService, userGroupDao, sdbPermissionIndex, afterCommitExecutor);
+        PermissionsService permissionsService = new PermissionsService(roleService, userGroupPermissionService,
+                iamPrincipalPermissionService, permissionsDao, true, awsIamRoleArnParser, sdbPermissionIndex);
+        CerberusPrincipal principal = new CerberusPrincipal(CerberusAuthToken.Builder.create()
+                .withPrincipalType(USER)
+                .withGroups("new-group")
+                .build());
+        when(permissionsDao.doesUserPrincipalHaveRoleForSdb(any(), any(), any())).thenReturn(false);
+        UserGroupPermission userGroupPermission = new UserGroupPermission().withName("new-group").withRoleId(WRITE_ID);
+
+        // The grant is made, then something else in the same transaction fails and it is all rolled back
+        MethodInvocation rolledBackTransaction = mock(MethodInvocation.class);
+        when(rolledBackTransaction.proceed()).thenAnswer(invocation -> {
+            userGroupPermissionService.grantUserGroupPermission(SDB_ID, userGroupPermission, "user",
+                    OffsetDateTime.now());
+            throw new IllegalStateException("rolled back");
+        });
+        try {
+            afterCommitExecutor.invoke(rolledBackTransaction);
+            fail("Expected the transaction to fail");
+        } catch (IllegalStateException expected) {
+            // the database does not have the grant
+        }
+        assertFalse(permissionsService.doesPrincipalHavePermission(principal, SDB_ID, SecureDataAction.WRITE));
+
+        // Once the same grant commits, the index allows it
+        MethodInvocation committedTransaction = mock(MethodInvocation.class);
+        when(committedTransaction.proceed()).thenAnswer(invocation -> {
+            userGroupPermissionService.grantUserGroupPermission(SDB_ID, userGroupPermission, "user",
+                    OffsetDateTime.now());
+            return null;
+        });
+        afterCommitExecutor.invoke(committedTransaction);
+        assertTrue(permissionsService.doesPrincipalHavePermission(principal, SDB_ID, SecureDataAction.WRITE));
+    }
+
+    private RoleRecord role(String id, String name) {
+        return new RoleRecord().setId(id).setName(name);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nike.cerberus.dao;
+
+import com.google.common.collect.Lists;
+import com.nike.cerberus.domain.Source;
+import com.nike.cerberus.mapper.SecureDataMapper;
+import com.nike.cerberus.record.DataKeyInfo;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class SecureDataDaoTest {
+
+    private final OffsetDateTime expiredTs = OffsetDateTime.of(2019, 3, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+    @Mock
+    private SecureDataMapper secureDataMapper;
+
+    private SecureDataDao subject;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+        subject = new SecureDataDao(secureDataMapper);
+    }
+
+    @Test
+    public void getOldestDataKeyInfo_merges_the_oldest_data_keys_of_both_tables() {
+        OffsetDateTime cursorTs = expiredTs.minusDays(30);
+        DataKeyInfo secureDataCursor = dataKeyInfo("1", Source.SECURE_DATA, cursorTs);
+        DataKeyInfo secureDataVersionCursor = dataKeyInfo("0a", Source.SECURE_DATA_VERSION, cursorTs);
+        when(secureDataMapper.getOldestSecureDataKeyInfo(expiredTs, cursorTs, "1", 3)).thenReturn(Lists.newArrayList(
+                dataKeyInfo("2", Source.SECURE_DATA, expiredTs.minusDays(20)),
+                dataKeyInfo("4", Source.SECURE_DATA, expiredTs.minusDays(10)),
+                dataKeyInfo("5", Source.SECURE_DATA, expiredTs.minusDays(10))
+        ));
+        when(secureDataMapper.getOldestSecureDataVersionKeyInfo(expiredTs, cursorTs, "0a", 3)).thenReturn(Lists.newArrayList(
+                dataKeyInfo("1a", Source.SECURE_DATA_VERSION, expiredTs.minusDays(25)),
+                dataKeyInfo("3a", Source.SECURE_DATA_VERSION, expiredTs.minusDays(10))
+        ));
+
+        List<DataKeyInfo> dataKeyInfos = subject.getOldestDataKeyInfo(expiredTs, secureDataCursor,
+                secureDataVersionCursor, 3);
+
+        assertThat(dataKeyInfos).extracting(DataKeyInfo::getId).containsExactly("1a", "2", "4");
+    }
+
+    @Test
+    public void getOldestDataKeyInfo_keeps_the_numeric_order_of_secure_data_ids_with_the_same_timestamp() {
+        OffsetDateTime keyMaterialTs = expiredTs.minusDays(10);
+        when(secureDataMapper.getOldestSecureDataKeyInfo(expiredTs, null, null, 2)).thenReturn(Lists.newArrayList(
+                dataKeyInfo("2", Source.SECURE_DATA, keyMaterialTs),
+                dataKeyInfo("10", Source.SECURE_DATA, keyMaterialTs)
+        ));
+        when(secureDataMapper.getOldestSecureDataVersionKeyInfo(expiredTs, null, null, 2)).thenReturn(Lists.newArrayList(
+                dataKeyInfo("0d8e2b6e-0000-0000-0000-000000000000", Source.SECURE_DATA_VERSION, keyMaterialTs),
+                dataKeyInfo("1f3c9a2d-0000-0000-0000-000000000000", Source.SECURE_DATA_VERSION, keyMaterialTs)
+        ));
+
+        List<DataKeyInfo> dataKeyInfos = subject.getOldestDataKeyInfo(expiredTs, null, null, 2);
+
+        // The page must be the start of each table's page, so that its last ID of each table is a safe cursor
+        assertThat(dataKeyInfos).extracting(DataKeyInfo::getId).containsExactly("2", "10");
+    }
+
+    private DataKeyInfo dataKeyInfo(String id, Source source, OffsetDateTime keyMaterialTs) {
+        return new DataKeyInfo().setId(id).setSource(source).setLastRotatedTs(keyMaterialTs);
+    }
+}
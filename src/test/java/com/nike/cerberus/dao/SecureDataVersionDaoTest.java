@@ -83,10 +83,10 @@ public class SecureDataVersionDaoTest {
     }
 
     @Test
-    public void listSecureDataVersionsByPath_returns_list_of_version_records() {
-        when(secureDataVersionMapper.listSecureDataVersionsByPath(path, 1, 0)).thenReturn(secureDataVersionRecords);
+    public void listVersionMetadataByPath_returns_list_of_version_records() {
+        when(secureDataVersionMapper.listVersionMetadataByPath(path, 1, 0)).thenReturn(secureDataVersionRecords);
 
-        List<SecureDataVersionRecord> actual = subject.listSecureDataVersionByPath(path, 1, 0);
+        List<SecureDataVersionRecord> actual = subject.listVersionMetadataByPath(path, 1, 0);
 
         assertThat(actual).isNotEmpty();
         assertThat(actual).hasSameElementsAs(secureDataVersionRecords);
@@ -130,6 +130,21 @@ public class SecureDataVersionDaoTest {
         verify(secureDataVersionMapper).deleteAllVersionsThatStartWithPartialPath(path);
     }
 
+    @Test
+    public void writeSecureDataVersions_assigns_ids_and_inserts_at_most_100_rows_at_a_time() {
+        when(uuidSupplier.get()).thenReturn(versionId);
+        List<SecureDataVersionRecord> records = Lists.newArrayList();
+        for (int i = 0; i < 150; i++) {
+            records.add(new SecureDataVersionRecord().setPath(path + i));
+        }
+
+        subject.writeSecureDataVersions(records);
+
+        assertThat(records).extracting(SecureDataVersionRecord::getId).containsOnly(versionId);
+        verify(secureDataVersionMapper).writeSecureDataVersions(records.subList(0, 100));
+        verify(secureDataVersionMapper).writeSecureDataVersions(records.subList(100, 150));
+    }
+
     @Test
     public void writeSecureDataVersion_calls_data_version_dao() {
         when(uuidSupplier.get()).thenReturn(versionId);
@@ -145,7 +160,8 @@ public class SecureDataVersionDaoTest {
                 versionCreatedBy,
                 versionCreatedTs,
                 actionPrincipal,
-                actionTs);
+                actionTs,
+                versionCreatedTs);
 
         verify(secureDataVersionMapper).writeSecureDataVersion(anyObject());
     }
@@ -17,8 +17,10 @@
 
 package com.nike.cerberus.endpoints.authentication;
 
+import com.nike.backstopper.exception.ApiException;
 import com.nike.cerberus.domain.IamPrincipalCredentials;
 import com.nike.cerberus.domain.IamRoleAuthResponse;
+import com.nike.cerberus.error.DefaultApiError;
 import com.nike.cerberus.service.AuthenticationService;
 import com.nike.cerberus.service.EventProcessorService;
 import com.nike.riposte.server.http.RequestInfo;
@@ -30,11 +32,15 @@ import org.mockito.Mock;
 
 import java.util.Collection;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
@@ -72,7 +78,8 @@ public class AuthenticateIamPrincipalTest {
         final IamPrincipalCredentials credentials = new IamPrincipalCredentials();
         final RequestInfo<IamPrincipalCredentials> requestInfo = mock(RequestInfo.class);
         when(requestInfo.getContent()).thenReturn(credentials);
-        when(authenticationService.authenticate(credentials)).thenReturn(iamRoleAuthResponse);
+        when(authenticationService.authenticateAsync(credentials, executor))
+                .thenReturn(CompletableFuture.completedFuture(iamRoleAuthResponse));
 
         final CompletableFuture<ResponseInfo<IamRoleAuthResponse>> completableFuture =
                 subject.execute(requestInfo, executor, null);
@@ -80,4 +87,28 @@ public class AuthenticateIamPrincipalTest {
 
         assertThat(responseInfo.getContentForFullResponse()).isEqualTo(iamRoleAuthResponse);
     }
+
+    @Test
+    public void execute_audits_and_rethrows_a_failed_authentication() {
+        final IamPrincipalCredentials credentials = new IamPrincipalCredentials();
+        final RequestInfo<IamPrincipalCredentials> requestInfo = mock(RequestInfo.class);
+        when(requestInfo.getContent()).thenReturn(credentials);
+        final ApiException apiException = ApiException.newBuilder()
+                .withApiErrors(DefaultApiError.AUTH_IAM_PRINCIPAL_INVALID)
+                .build();
+        final CompletableFuture<IamRoleAuthResponse> failed = new CompletableFuture<>();
+        failed.completeExceptionally(apiException);
+        when(authenticationService.authenticateAsync(credentials, executor)).thenReturn(failed);
+
+        final CompletableFuture<ResponseInfo<IamRoleAuthResponse>> completableFuture =
+                subject.execute(requestInfo, executor, null);
+
+        try {
+            completableFuture.join();
+            fail("Expected the authentication to fail");
+        } catch (CompletionException e) {
+            assertThat(e.getCause()).isSameAs(apiException);
+        }
+        verify(eventProcessorService).ingestEvent(any());
+    }
 }
\ No newline at end of file
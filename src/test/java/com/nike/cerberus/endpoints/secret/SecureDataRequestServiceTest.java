@@ -16,14 +16,21 @@
 
 package com.nike.cerberus.endpoints.secret;
 
+import com.google.common.collect.Lists;
+import com.nike.backstopper.exception.ApiException;
+import com.nike.cerberus.PrincipalType;
+import com.nike.cerberus.SecureDataAction;
 import com.nike.cerberus.SecureDataRequestService;
 import com.nike.cerberus.domain.CerberusAuthToken;
+import com.nike.cerberus.domain.SecureData;
 import com.nike.cerberus.domain.SecureDataRequestInfo;
+import com.nike.cerberus.error.DefaultApiError;
 import com.nike.cerberus.security.CerberusPrincipal;
 import com.nike.cerberus.security.CerberusSecurityContext;
 import com.nike.cerberus.service.EventProcessorService;
 import com.nike.cerberus.service.PermissionsService;
 import com.nike.cerberus.service.SafeDepositBoxService;
+import com.nike.cerberus.service.SecureDataService;
 import com.nike.riposte.server.http.RequestInfo;
 import io.netty.handler.codec.http.HttpMethod;
 import org.assertj.core.util.Maps;
@@ -35,8 +42,13 @@ import java.util.Map;
 import java.util.Optional;
 
 import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyObject;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
@@ -45,12 +57,14 @@ public class SecureDataRequestServiceTest {
     @Mock private PermissionsService permissionService;
     @Mock private SafeDepositBoxService safeDepositBoxService;
     @Mock private EventProcessorService eventProcessorService;
+    @Mock private SecureDataService secureDataService;
 
     private SecureDataRequestService secureDataRequestService;
 
     @Before public void before() {
         initMocks(this);
-        secureDataRequestService = new SecureDataRequestService(safeDepositBoxService, permissionService, eventProcessorService);
+        secureDataRequestService = new SecureDataRequestService(safeDepositBoxService, permissionService, eventProcessorService,
+                secureDataService);
     }
 
     @Test
@@ -93,4 +107,48 @@ public class SecureDataRequestServiceTest {
         assertEquals("shared", info.getCategory());
     }
 
+    @Test
+    public void test_that_a_secret_is_read_along_with_the_sdb_id_and_permission_in_one_call() {
+        RequestInfo requestInfo = authenticatedRequest("/v1/secret/shared/okta/api_key", PrincipalType.USER, "group-1");
+        when(permissionService.getPrincipalNamesForPermissionCheck(anyObject())).thenReturn(Lists.newArrayList("group-1"));
+        when(secureDataService.readSecretIfPermitted("shared/okta/", "okta/api_key", false,
+                Lists.newArrayList("group-1"), false, SecureDataAction.READ.getAllowedRoles()))
+                .thenReturn(Optional.of(new SecureData().setSdboxId("sdb id").setData("{}")));
+
+        SecureDataRequestInfo info = secureDataRequestService.parseAndAuthenticateRequest(requestInfo);
+        Optional<SecureData> secureData = secureDataRequestService.validateAndReadSecret(requestInfo, info);
+
+        assertTrue(secureData.isPresent());
+        assertEquals("sdb id", info.getSdbId());
+        verify(safeDepositBoxService, never()).getSafeDepositBoxIdByPath(anyObject());
+        verify(permissionService, never()).doesPrincipalHavePermission(anyObject(), anyObject(), anyObject());
+    }
+
+    @Test(expected = ApiException.class)
+    public void test_that_reading_a_secret_without_permission_throws() {
+        RequestInfo requestInfo = authenticatedRequest("/v1/secret/shared/okta/api_key", PrincipalType.IAM,
+                "arn:aws:iam::1111111111:role/some-role");
+        when(permissionService.getPrincipalNamesForPermissionCheck(anyObject())).thenReturn(Lists.newArrayList());
+        doThrow(ApiException.newBuilder().withApiErrors(DefaultApiError.ACCESS_DENIED).build())
+                .when(secureDataService).readSecretIfPermitted(anyObject(), anyObject(), anyBoolean(), anyObject(),
+                anyBoolean(), anyObject());
+
+        SecureDataRequestInfo info = secureDataRequestService.parseAndAuthenticateRequest(requestInfo);
+        secureDataRequestService.validateAndReadSecret(requestInfo, info);
+    }
+
+    private RequestInfo authenticatedRequest(String path, PrincipalType principalType, String principalName) {
+        RequestInfo requestInfo = mock(RequestInfo.class);
+        Map<String, Object> attributes = Maps.newHashMap();
+        CerberusAuthToken authToken = CerberusAuthToken.Builder.create()
+                .withPrincipal(principalName)
+                .withPrincipalType(principalType)
+                .build();
+
+        attributes.put("cerberusSecurityContext", new CerberusSecurityContext(new CerberusPrincipal(authToken), null));
+        when(requestInfo.getMethod()).thenReturn(HttpMethod.GET);
+        when(requestInfo.getRequestAttributes()).thenReturn(attributes);
+        when(requestInfo.getPath()).thenReturn(path);
+        return requestInfo;
+    }
 }
@@ -1,19 +1,29 @@
 package com.nike.cerberus.jobs;
 
 import com.amazonaws.regions.Regions;
+import com.amazonaws.services.kms.model.KeyListEntry;
+import com.amazonaws.services.kms.model.ListKeysResult;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.nike.cerberus.dao.JobCheckpointDao;
 import com.nike.cerberus.domain.AuthKmsKeyMetadata;
+import com.nike.cerberus.record.JobCheckpointRecord;
 import com.nike.cerberus.service.KmsService;
+import com.nike.cerberus.util.DateTimeSupplier;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 
+import java.time.OffsetDateTime;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static com.nike.cerberus.service.KmsService.SOONEST_A_KMS_KEY_CAN_BE_DELETED;
 import static junit.framework.TestCase.assertEquals;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyList;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.*;
@@ -24,22 +34,51 @@ public class OrphanedKmsKeyCleanUpJobTest {
     @Mock
     private KmsService kmsService;
 
+    @Mock
+    private JobCheckpointDao jobCheckpointDao;
+
+    @Mock
+    private DateTimeSupplier dateTimeSupplier;
+
     private final String ENVIRONMENT = "unit-test";
 
+    private final String LOCK_NAME = "OrphanedKmsKeyCleanUpJob";
+
+    private final long FENCING_TOKEN = 42L;
+
+    private final OffsetDateTime now = OffsetDateTime.now();
+
     private OrphanedKmsKeyCleanUpJob job;
 
     @Before
     public void before() {
         initMocks(this);
-        job = new OrphanedKmsKeyCleanUpJob(kmsService, false, ENVIRONMENT);
+        when(jobCheckpointDao.getCheckpoint(anyString())).thenReturn(Optional.empty());
+        when(jobCheckpointDao.saveCheckpoint(anyString(), any(), anyString(), eq(LOCK_NAME), eq(FENCING_TOKEN), any()))
+                .thenReturn(true);
+        when(dateTimeSupplier.get()).thenReturn(now);
+        job = createJob(false);
+    }
+
+    private OrphanedKmsKeyCleanUpJob createJob(boolean isDeleteOrphanKeysInDryMode) {
+        OrphanedKmsKeyCleanUpJob job = spy(new OrphanedKmsKeyCleanUpJob(kmsService, jobCheckpointDao, dateTimeSupplier,
+                isDeleteOrphanKeysInDryMode, ENVIRONMENT, 2, 2, 1000));
+        doReturn(LOCK_NAME).when(job).getLockName();
+        doReturn(FENCING_TOKEN).when(job).getFencingToken();
+        return job;
+    }
+
+    private ListKeysResult page(String nextMarker, String... kmsCmkIds) {
+        return new ListKeysResult()
+                .withKeys(Stream.of(kmsCmkIds).map(id -> new KeyListEntry().withKeyId(id)).collect(Collectors.toList()))
+                .withNextMarker(nextMarker);
     }
 
     @Test
     public void test_that_executeLockableCode_iterates_over_available_regions_and_calls_process_region_for_each() {
-        OrphanedKmsKeyCleanUpJob spyJob = spy(job);
-        doReturn(ImmutableSet.of("kms-cmk-id-2")).when(spyJob).processRegion(anyList(), anyString());
-        spyJob.executeLockableCode();
-        verify(spyJob, times(Regions.values().length - 2)).processRegion(anyList(), anyString());
+        doReturn(ImmutableSet.of("kms-cmk-id-2")).when(job).processRegion(anyList(), anyString());
+        job.executeLockableCode();
+        verify(job, times(Regions.values().length - 2)).processRegion(anyList(), anyString());
     }
 
     @Test
@@ -52,8 +91,8 @@ public class OrphanedKmsKeyCleanUpJobTest {
         );
         Set<String> kmsKeyIdsForRegion = ImmutableSet.of("kms-cmk-id-1", "kms-cmk-id-2", "kms-cmk-id-3", "kms-cmk-id-4");
         Set<String> keysCreatedByKmsService = ImmutableSet.of("kms-cmk-id-1", "kms-cmk-id-2");
-        when(kmsService.getKmsKeyIdsForRegion(region)).thenReturn(kmsKeyIdsForRegion);
-        when(kmsService.filterKeysCreatedByKmsService(kmsKeyIdsForRegion, region)).thenReturn(keysCreatedByKmsService);
+        when(kmsService.listKmsKeys(region, null)).thenReturn(page(null, "kms-cmk-id-1", "kms-cmk-id-2", "kms-cmk-id-3", "kms-cmk-id-4"));
+        when(kmsService.filterKeysCreatedByKmsService(eq(kmsKeyIdsForRegion), eq(region), any(), any())).thenReturn(keysCreatedByKmsService);
 
         Set<String> keys = job.processRegion(authKmsKeyMetadataList, region);
 
@@ -64,10 +103,10 @@ public class OrphanedKmsKeyCleanUpJobTest {
 
         reset(kmsService);
 
-        when(kmsService.getKmsKeyIdsForRegion(region)).thenReturn(kmsKeyIdsForRegion);
-        when(kmsService.filterKeysCreatedByKmsService(kmsKeyIdsForRegion, region)).thenReturn(keysCreatedByKmsService);
+        when(kmsService.listKmsKeys(region, null)).thenReturn(page(null, "kms-cmk-id-1", "kms-cmk-id-2", "kms-cmk-id-3", "kms-cmk-id-4"));
+        when(kmsService.filterKeysCreatedByKmsService(eq(kmsKeyIdsForRegion), eq(region), any(), any())).thenReturn(keysCreatedByKmsService);
 
-        job = new OrphanedKmsKeyCleanUpJob(kmsService, true, ENVIRONMENT);
+        job = createJob(true);
 
         Set<String> keys2 = job.processRegion(authKmsKeyMetadataList, region);
 
@@ -77,4 +116,41 @@ public class OrphanedKmsKeyCleanUpJobTest {
         assertEquals(1, keys2.size());
     }
 
+    @Test
+    public void test_that_processRegion_resumes_from_the_checkpoint_and_checkpoints_after_every_page() {
+        String region = "us-west-2";
+        String checkpointName = "OrphanedKmsKeyCleanUpJob-" + region;
+        when(jobCheckpointDao.getCheckpoint(checkpointName)).thenReturn(Optional.of(new JobCheckpointRecord()
+                .setName(checkpointName)
+                .setCheckpointId("marker-1")));
+        when(kmsService.listKmsKeys(region, "marker-1")).thenReturn(page("marker-2", "kms-cmk-id-1"));
+        when(kmsService.listKmsKeys(region, "marker-2")).thenReturn(page(null, "kms-cmk-id-2"));
+        when(kmsService.filterKeysCreatedByKmsService(anyObject(), eq(region), any(), any()))
+                .thenAnswer(invocation -> invocation.getArguments()[0]);
+
+        Set<String> keys = job.processRegion(ImmutableList.of(), region);
+
+        assertEquals(ImmutableSet.of("kms-cmk-id-1", "kms-cmk-id-2"), keys);
+        verify(kmsService, never()).listKmsKeys(region, null);
+        verify(jobCheckpointDao)
+                .saveCheckpoint(checkpointName, null, "marker-2", LOCK_NAME, FENCING_TOKEN, now);
+        verify(jobCheckpointDao).deleteCheckpoint(checkpointName, LOCK_NAME, FENCING_TOKEN);
+        verify(kmsService).scheduleKmsKeyDeletion("kms-cmk-id-1", region, SOONEST_A_KMS_KEY_CAN_BE_DELETED);
+        verify(kmsService).scheduleKmsKeyDeletion("kms-cmk-id-2", region, SOONEST_A_KMS_KEY_CAN_BE_DELETED);
+    }
+
+    @Test
+    public void test_that_processRegion_stops_when_the_lease_of_the_lock_was_lost() {
+        String region = "us-west-2";
+        when(kmsService.listKmsKeys(region, null)).thenReturn(page("marker-1", "kms-cmk-id-1"));
+        when(kmsService.filterKeysCreatedByKmsService(anyObject(), eq(region), any(), any()))
+                .thenAnswer(invocation -> invocation.getArguments()[0]);
+        when(jobCheckpointDao.saveCheckpoint(anyString(), any(), anyString(), anyString(), anyLong(), any()))
+                .thenReturn(false);
+
+        job.processRegion(ImmutableList.of(), region);
+
+        verify(kmsService, times(1)).listKmsKeys(anyString(), any());
+        verify(kmsService, never()).listKmsKeys(region, "marker-1");
+    }
 }
@@ -16,12 +16,14 @@
 
 package com.nike.cerberus.security;
 
+import com.codahale.metrics.Timer;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.nike.backstopper.exception.ApiException;
 import com.nike.cerberus.domain.CerberusAuthToken;
 import com.nike.cerberus.service.AuthTokenService;
 import com.nike.cerberus.service.EventProcessorService;
+import com.nike.cerberus.service.MetricsService;
 import com.nike.riposte.server.http.RequestInfo;
 import com.nike.riposte.server.http.Endpoint;
 import io.netty.handler.codec.http.DefaultHttpHeaders;
@@ -38,8 +40,11 @@ import java.util.Optional;
 import static com.nike.cerberus.security.CmsRequestSecurityValidator.SECURITY_CONTEXT_ATTR_KEY;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
@@ -55,13 +60,17 @@ public class CmsRequestSecurityValidatorTest {
     @Mock
     private AuthTokenService authTokenService;
 
+    @Mock
+    private MetricsService metricsService;
+
     private CmsRequestSecurityValidator subject;
 
     @Before
     public void setUp() throws Exception {
         initMocks(this);
+        when(metricsService.getOrCreateTimer(anyString(), anyMap())).thenReturn(new Timer());
 
-        subject = new CmsRequestSecurityValidator(securedEndpoints, authTokenService);
+        subject = new CmsRequestSecurityValidator(securedEndpoints, authTokenService, metricsService);
     }
 
     @Test
@@ -79,11 +88,34 @@ public class CmsRequestSecurityValidatorTest {
                 .withIsAdmin(true)
                 .build();
 
-        when(authTokenService.getCerberusAuthToken(token)).thenReturn(Optional.of(authToken));
+        when(authTokenService.verifyCerberusAuthToken(token)).thenReturn(Optional.of(authToken));
+
+        subject.validateSecureRequestForEndpoint(requestInfo, securedEndpoint);
+
+        verify(requestInfo).addRequestAttribute(eq(SECURITY_CONTEXT_ATTR_KEY), any(SecurityContext.class));
+    }
+
+    @Test
+    public void test_validateSecureRequestForEndpoint_does_not_verify_a_cached_token() {
+        RequestInfo<Void> requestInfo = mock(RequestInfo.class);
+        when(requestInfo.getUri()).thenReturn("https://localhost");
+        HttpHeaders httpHeaders = new DefaultHttpHeaders();
+        httpHeaders.add(CmsRequestSecurityValidator.HEADER_X_CERBERUS_TOKEN, token);
+        when(requestInfo.getHeaders()).thenReturn(httpHeaders);
+
+        CerberusAuthToken authToken = CerberusAuthToken.Builder.create()
+                .withToken(token)
+                .withPrincipal("username")
+                .withGroups("group1,group2")
+                .withIsAdmin(true)
+                .build();
+
+        when(authTokenService.getCachedCerberusAuthToken(token)).thenReturn(authToken);
 
         subject.validateSecureRequestForEndpoint(requestInfo, securedEndpoint);
 
         verify(requestInfo).addRequestAttribute(eq(SECURITY_CONTEXT_ATTR_KEY), any(SecurityContext.class));
+        verify(authTokenService, never()).verifyCerberusAuthToken(anyString());
     }
 
     @Test(expected = ApiException.class)
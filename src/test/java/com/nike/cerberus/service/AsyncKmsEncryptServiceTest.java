@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nike.cerberus.service;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.regions.Region;
+import com.amazonaws.regions.Regions;
+import com.amazonaws.services.kms.AWSKMSAsync;
+import com.amazonaws.services.kms.model.EncryptRequest;
+import com.amazonaws.services.kms.model.EncryptResult;
+import com.google.common.collect.Lists;
+import com.nike.backstopper.exception.ApiException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class AsyncKmsEncryptServiceTest {
+
+    private static final Region REGION = Region.getRegion(Regions.US_WEST_2);
+
+    @Mock
+    private AWSKMSAsync kmsClient;
+
+    private final List<AsyncHandler<EncryptRequest, EncryptResult>> handlers = Lists.newArrayList();
+
+    private AsyncKmsEncryptService asyncKmsEncryptService;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void before() {
+        initMocks(this);
+        doAnswer(invocation -> {
+            handlers.add((AsyncHandler<EncryptRequest, EncryptResult>) invocation.getArguments()[1]);
+            return null;
+        }).when(kmsClient).encryptAsync(any(EncryptRequest.class), any(AsyncHandler.class));
+
+        asyncKmsEncryptService = new AsyncKmsEncryptService(1, 1, 1, 3000) {
+            @Override
+            protected AWSKMSAsync createClient(Region region) {
+                return kmsClient;
+            }
+        };
+    }
+
+    @After
+    public void after() {
+        asyncKmsEncryptService.executeServerShutdownHook(null, null);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void test_that_calls_over_the_in_flight_limit_wait_and_calls_over_the_queue_limit_are_rejected() {
+        EncryptRequest firstRequest = new EncryptRequest().withKeyId("first");
+        EncryptRequest secondRequest = new EncryptRequest().withKeyId("second");
+        EncryptResult firstResult = new EncryptResult();
+
+        CompletableFuture<EncryptResult> first = asyncKmsEncryptService.encrypt(REGION, firstRequest);
+        CompletableFuture<EncryptResult> second = asyncKmsEncryptService.encrypt(REGION, secondRequest);
+        CompletableFuture<EncryptResult> third = asyncKmsEncryptService.encrypt(REGION, new EncryptRequest());
+
+        verify(kmsClient, times(1)).encryptAsync(any(EncryptRequest.class), any(AsyncHandler.class));
+        assertThat(second.isDone()).isFalse();
+        assertThat(third.isCompletedExceptionally()).isTrue();
+        try {
+            third.join();
+            fail("Expected the call over the queue limit to be rejected");
+        } catch (CompletionException e) {
+            assertThat(e.getCause()).isInstanceOf(ApiException.class);
+        }
+
+        handlers.get(0).onSuccess(firstRequest, firstResult);
+
+        assertThat(first.join()).isSameAs(firstResult);
+        verify(kmsClient, times(2)).encryptAsync(any(EncryptRequest.class), any(AsyncHandler.class));
+        assertThat(handlers).hasSize(2);
+    }
+
+    @Test
+    public void test_that_a_failed_call_completes_exceptionally_and_frees_its_slot() {
+        EncryptRequest request = new EncryptRequest().withKeyId("key");
+        RuntimeException error = new RuntimeException("KMS unavailable");
+
+        CompletableFuture<EncryptResult> failed = asyncKmsEncryptService.encrypt(REGION, request);
+        handlers.get(0).onError(error);
+        asyncKmsEncryptService.encrypt(REGION, request);
+
+        assertThat(failed.isCompletedExceptionally()).isTrue();
+        assertThat(handlers).hasSize(2);
+    }
+}
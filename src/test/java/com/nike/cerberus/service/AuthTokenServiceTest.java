@@ -17,14 +17,17 @@
 package com.nike.cerberus.service;
 
 import com.nike.cerberus.PrincipalType;
+import com.nike.cerberus.cache.AuthTokenCache;
 import com.nike.cerberus.dao.AuthTokenDao;
 import com.nike.cerberus.domain.CerberusAuthToken;
 import com.nike.cerberus.record.AuthTokenRecord;
+import com.nike.cerberus.util.AfterCommitExecutor;
 import com.nike.cerberus.util.AuthTokenGenerator;
 import com.nike.cerberus.util.DateTimeSupplier;
 import com.nike.cerberus.util.TokenHasher;
 import com.nike.cerberus.util.UuidSupplier;
 import junit.framework.AssertionFailedError;
+import org.aopalliance.intercept.MethodInvocation;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentMatcher;
@@ -35,8 +38,13 @@ import java.util.Optional;
 import java.util.UUID;
 
 import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
 import static junit.framework.TestCase.assertTrue;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
@@ -48,19 +56,26 @@ public class AuthTokenServiceTest {
     @Mock private AuthTokenGenerator authTokenGenerator;
     @Mock private AuthTokenDao authTokenDao;
     @Mock private DateTimeSupplier dateTimeSupplier;
+    @Mock private AuthTokenCache authTokenCache;
+
+    private AfterCommitExecutor afterCommitExecutor;
 
     AuthTokenService authTokenService;
 
     @Before
     public void before() {
         initMocks(this);
+        when(tokenHasher.getScheme()).thenReturn(TokenHasher.Scheme.PBKDF2);
 
+        afterCommitExecutor = new AfterCommitExecutor();
         authTokenService = new AuthTokenService(
                 uuidSupplier,
                 tokenHasher,
                 authTokenGenerator,
                 authTokenDao,
-                dateTimeSupplier
+                dateTimeSupplier,
+                authTokenCache,
+                afterCommitExecutor
         );
 
     }
@@ -162,6 +177,53 @@ public class AuthTokenServiceTest {
         assertEquals(false, token.isAdmin());
         assertEquals(groups, token.getGroups());
         assertEquals(0, token.getRefreshCount());
+        verify(authTokenCache).put(tokenId, fakeHash, token);
+    }
+
+    @Test
+    public void test_that_getCerberusAuthToken_falls_back_to_the_legacy_hash_scheme() {
+        String tokenId = "abc-123-def-456";
+        OffsetDateTime now = OffsetDateTime.now();
+        final String fakeHash = "kjadlkfjasdlkf;jlkj1243asdfasdf";
+        final String fakeLegacyHash = "lkjlkj1243asdfasdfkjadlkfjasdlkf";
+
+        when(tokenHasher.getScheme()).thenReturn(TokenHasher.Scheme.HMAC_SHA512);
+        when(authTokenDao.getLatestExpiryOfAuthTokensWithScheme(TokenHasher.Scheme.PBKDF2.name()))
+                .thenReturn(Optional.of(OffsetDateTime.now().plusHours(1)));
+        when(tokenHasher.hashToken(tokenId)).thenReturn(fakeHash);
+        when(tokenHasher.hashTokenWithLegacyScheme(tokenId)).thenReturn(fakeLegacyHash);
+        when(authTokenDao.getAuthTokenFromHash(fakeHash)).thenReturn(Optional.empty());
+        when(authTokenDao.getAuthTokenFromHash(fakeLegacyHash)).thenReturn(Optional.of(
+                new AuthTokenRecord()
+                        .setTokenHash(fakeLegacyHash)
+                        .setCreatedTs(now)
+                        .setExpiresTs(now.plusHours(1))
+                        .setPrincipal("test-user@domain.com")
+                        .setPrincipalType(PrincipalType.USER.getName())
+                        .setIsAdmin(false)
+                        .setRefreshCount(0)
+        ));
+
+        Optional<CerberusAuthToken> tokenOptional = authTokenService.getCerberusAuthToken(tokenId);
+
+        CerberusAuthToken token = tokenOptional.orElseThrow(() -> new AssertionFailedError("Token should be present"));
+        verify(authTokenCache).put(tokenId, fakeLegacyHash, token);
+    }
+
+    @Test
+    public void test_that_getCerberusAuthToken_does_not_hash_or_query_for_a_cached_token() {
+        String tokenId = "abc-123-def-456";
+        CerberusAuthToken cachedToken = CerberusAuthToken.Builder.create()
+                .withToken(tokenId)
+                .withExpires(OffsetDateTime.now().plusHours(1))
+                .build();
+        when(authTokenCache.getIfPresent(tokenId)).thenReturn(cachedToken);
+
+        Optional<CerberusAuthToken> tokenOptional = authTokenService.getCerberusAuthToken(tokenId);
+
+        assertEquals(cachedToken, tokenOptional.orElseThrow(() -> new AssertionFailedError("Token should be present")));
+        verify(tokenHasher, never()).hashToken(anyString());
+        verify(authTokenDao, never()).getAuthTokenFromHash(anyString());
     }
 
     @Test
@@ -172,6 +234,58 @@ public class AuthTokenServiceTest {
 
         authTokenService.revokeToken(tokenId);
         verify(authTokenDao).deleteAuthTokenFromHash(fakeHash);
+        verify(authTokenCache).invalidate(tokenId);
+    }
+
+    @Test
+    public void test_that_revokeToken_evicts_the_token_from_the_cache_only_after_the_transaction_commits() throws Throwable {
+        final String tokenId = "abc-123-def-456";
+        final String fakeHash = "kjadlkfjasdlkf;jlkj1243asdfasdf";
+        when(tokenHasher.hashToken(tokenId)).thenReturn(fakeHash);
+        when(authTokenDao.deleteAuthTokenFromHash(fakeHash)).thenReturn(1);
+
+        MethodInvocation transaction = mock(MethodInvocation.class);
+        when(transaction.proceed()).thenAnswer(invocation -> {
+            authTokenService.revokeToken(tokenId);
+            verify(authTokenCache, never()).invalidate(tokenId);
+            return null;
+        });
+        afterCommitExecutor.invoke(transaction);
+
+        verify(authTokenCache).invalidate(tokenId);
+    }
+
+    @Test
+    public void test_that_revokeToken_records_the_revocation_only_if_a_token_was_deleted() {
+        final String tokenId = "abc-123-def-456";
+        final String fakeHash = "kjadlkfjasdlkf;jlkj1243asdfasdf";
+        when(tokenHasher.hashToken(tokenId)).thenReturn(fakeHash);
+
+        when(authTokenDao.deleteAuthTokenFromHash(fakeHash)).thenReturn(0);
+        authTokenService.revokeToken(tokenId);
+        verify(authTokenDao, never()).createRevokedToken(fakeHash);
+
+        when(authTokenDao.deleteAuthTokenFromHash(fakeHash)).thenReturn(1);
+        authTokenService.revokeToken(tokenId);
+        verify(authTokenDao).createRevokedToken(fakeHash);
+    }
+
+    @Test
+    public void test_that_revokeToken_falls_back_to_the_legacy_hash_scheme() {
+        final String tokenId = "abc-123-def-456";
+        final String fakeHash = "kjadlkfjasdlkf;jlkj1243asdfasdf";
+        final String fakeLegacyHash = "lkjlkj1243asdfasdfkjadlkfjasdlkf";
+        when(tokenHasher.getScheme()).thenReturn(TokenHasher.Scheme.HMAC_SHA512);
+        when(authTokenDao.getLatestExpiryOfAuthTokensWithScheme(TokenHasher.Scheme.PBKDF2.name()))
+                .thenReturn(Optional.of(OffsetDateTime.now().plusHours(1)));
+        when(tokenHasher.hashToken(tokenId)).thenReturn(fakeHash);
+        when(tokenHasher.hashTokenWithLegacyScheme(tokenId)).thenReturn(fakeLegacyHash);
+        when(authTokenDao.deleteAuthTokenFromHash(fakeHash)).thenReturn(0);
+        when(authTokenDao.deleteAuthTokenFromHash(fakeLegacyHash)).thenReturn(1);
+
+        authTokenService.revokeToken(tokenId);
+        verify(authTokenDao, never()).createRevokedToken(fakeHash);
+        verify(authTokenDao).createRevokedToken(fakeLegacyHash);
     }
 
     @Test
@@ -183,4 +297,34 @@ public class AuthTokenServiceTest {
         authTokenService.deleteExpiredTokens(maxDelete, batchSize, batchPauseTimeInMillis);
         verify(authTokenDao).deleteExpiredTokens(maxDelete, batchSize, batchPauseTimeInMillis);
     }
+
+    @Test
+    public void test_that_getCerberusAuthToken_does_not_use_the_legacy_hash_scheme_once_the_legacy_tokens_expired() {
+        String tokenId = "abc-123-def-456";
+        final String fakeHash = "kjadlkfjasdlkf;jlkj1243asdfasdf";
+        when(tokenHasher.getScheme()).thenReturn(TokenHasher.Scheme.HMAC_SHA512);
+        when(tokenHasher.hashToken(tokenId)).thenReturn(fakeHash);
+        when(authTokenDao.getAuthTokenFromHash(fakeHash)).thenReturn(Optional.empty());
+        when(authTokenDao.getLatestExpiryOfAuthTokensWithScheme(TokenHasher.Scheme.PBKDF2.name()))
+                .thenReturn(Optional.of(OffsetDateTime.now().minusMinutes(1)));
+
+        assertFalse(authTokenService.getCerberusAuthToken(tokenId).isPresent());
+        authTokenService.revokeToken(tokenId);
+
+        verify(tokenHasher, never()).hashTokenWithLegacyScheme(tokenId);
+        verify(authTokenDao, times(1)).getLatestExpiryOfAuthTokensWithScheme(TokenHasher.Scheme.PBKDF2.name());
+    }
+
+    @Test
+    public void test_that_getCerberusAuthToken_does_not_look_for_legacy_tokens_while_the_scheme_is_pbkdf2() {
+        String tokenId = "abc-123-def-456";
+        final String fakeHash = "kjadlkfjasdlkf;jlkj1243asdfasdf";
+        when(tokenHasher.hashToken(tokenId)).thenReturn(fakeHash);
+        when(authTokenDao.getAuthTokenFromHash(fakeHash)).thenReturn(Optional.empty());
+
+        assertFalse(authTokenService.getCerberusAuthToken(tokenId).isPresent());
+
+        verify(tokenHasher, never()).hashTokenWithLegacyScheme(tokenId);
+        verify(authTokenDao, never()).getLatestExpiryOfAuthTokensWithScheme(anyString());
+    }
 }
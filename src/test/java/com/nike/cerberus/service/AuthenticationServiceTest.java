@@ -17,6 +17,12 @@
 
 package com.nike.cerberus.service;
 
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.regions.Region;
+import com.amazonaws.services.kms.AWSKMSClient;
+import com.amazonaws.services.kms.model.EncryptRequest;
+import com.amazonaws.services.kms.model.EncryptResult;
+import com.amazonaws.services.kms.model.NotFoundException;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.nike.backstopper.exception.ApiException;
@@ -25,11 +31,13 @@ import com.nike.cerberus.auth.connector.AuthConnector;
 import com.nike.cerberus.auth.connector.AuthData;
 import com.nike.cerberus.auth.connector.AuthResponse;
 import com.nike.cerberus.aws.KmsClientFactory;
+import com.nike.cerberus.cache.IamPrincipalAuthCache;
 import com.nike.cerberus.dao.AwsIamRoleDao;
 import com.nike.cerberus.dao.SafeDepositBoxDao;
 import com.nike.cerberus.domain.AuthTokenResponse;
 import com.nike.cerberus.domain.CerberusAuthToken;
 import com.nike.cerberus.domain.IamPrincipalCredentials;
+import com.nike.cerberus.domain.IamRoleAuthResponse;
 import com.nike.cerberus.domain.MfaCheckRequest;
 import com.nike.cerberus.error.DefaultApiError;
 import com.nike.cerberus.record.AwsIamRoleKmsKeyRecord;
@@ -40,13 +48,16 @@ import com.nike.cerberus.server.config.CmsConfig;
 import com.nike.cerberus.util.AwsIamRoleArnParser;
 import com.nike.cerberus.util.DateTimeSupplier;
 import com.nike.cerberus.util.Slugger;
+import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.assertj.core.util.Lists;
 import org.assertj.core.util.Sets;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 
+import java.nio.ByteBuffer;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.util.HashMap;
@@ -56,6 +67,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import static com.nike.cerberus.service.AuthenticationService.LOOKUP_SELF_POLICY;
 import static com.nike.cerberus.util.AwsIamRoleArnParser.AWS_IAM_ROLE_ARN_TEMPLATE;
@@ -107,6 +119,15 @@ public class AuthenticationServiceTest {
     @Mock
     private AwsIamRoleService awsIamRoleService;
 
+    @Mock
+    private IamPrincipalAuthCache iamPrincipalAuthCache;
+
+    @Mock
+    private AsyncKmsEncryptService asyncKmsEncryptService;
+
+    @Mock
+    private KmsKeyPolicyValidationService kmsKeyPolicyValidationService;
+
     private AuthenticationService authenticationService;
 
     private static int MAX_LIMIT = 2;
@@ -115,7 +136,11 @@ public class AuthenticationServiceTest {
     public void setup() {
         initMocks(this);
         objectMapper = CmsConfig.configureObjectMapper();
-        authenticationService = new AuthenticationService(
+        authenticationService = createAuthenticationService(iamPrincipalAuthCache);
+    }
+
+    private AuthenticationService createAuthenticationService(IamPrincipalAuthCache iamPrincipalAuthCache) {
+        return new AuthenticationService(
                 safeDepositBoxDao,
                 awsIamRoleDao,
                 authConnector,
@@ -130,7 +155,10 @@ public class AuthenticationServiceTest {
                 authTokenService,
                 "1h",
                 "1h",
-                awsIamRoleService
+                awsIamRoleService,
+                iamPrincipalAuthCache,
+                asyncKmsEncryptService,
+                kmsKeyPolicyValidationService
         );
     }
 
@@ -248,9 +276,141 @@ public class AuthenticationServiceTest {
 
         String result = authenticationService.getKmsKeyRecordForIamPrincipal(awsIamRoleRecord, region).getAwsKmsKeyId();
 
-        // verify validate is called once interval has passed
+        // verify validation is requested without waiting for KMS
         assertEquals(cmkId, result);
-        verify(kmsService, times(1)).validateKeyAndPolicy(awsIamRoleKmsKeyRecord, principalArn);
+        verify(kmsKeyPolicyValidationService, times(1)).requestValidation(awsIamRoleKmsKeyRecord, principalArn);
+        verify(kmsService, never()).validateKeyAndPolicy(any(), anyString());
+    }
+
+    @Test
+    public void test_that_authenticate_reuses_the_cached_records_and_policies_of_an_iam_principal() {
+        String principalArn = "arn:aws:iam::0000000000:role/cached";
+        String region = "us-west-2";
+        OffsetDateTime now = OffsetDateTime.now();
+        AuthenticationService cachingAuthenticationService =
+                createAuthenticationService(new IamPrincipalAuthCache(true, 10, 60));
+
+        IamPrincipalCredentials iamPrincipalCredentials = new IamPrincipalCredentials();
+        iamPrincipalCredentials.setIamPrincipalArn(principalArn);
+        iamPrincipalCredentials.setRegion(region);
+
+        AwsIamRoleRecord awsIamRoleRecord = new AwsIamRoleRecord().setAwsIamRoleArn(principalArn).setId("iam role id");
+        when(awsIamRoleDao.getIamRole(principalArn)).thenReturn(Optional.of(awsIamRoleRecord));
+        AwsIamRoleKmsKeyRecord awsIamRoleKmsKeyRecord = new AwsIamRoleKmsKeyRecord()
+                .setId("kms id")
+                .setAwsIamRoleId("iam role id")
+                .setAwsKmsKeyId("key id")
+                .setLastValidatedTs(now);
+        when(awsIamRoleDao.getKmsKey("iam role id", region)).thenReturn(Optional.of(awsIamRoleKmsKeyRecord));
+        when(dateTimeSupplier.get()).thenReturn(now);
+        when(authTokenService.generateToken(anyString(), any(PrincipalType.class), anyBoolean(), anyString(), anyInt(),
+                anyInt())).thenReturn(CerberusAuthToken.Builder.create()
+                        .withToken(UUID.randomUUID().toString())
+                        .withCreated(now)
+                        .withExpires(now.plusHours(1))
+                        .build());
+
+        AWSKMSClient kmsClient = mock(AWSKMSClient.class);
+        when(kmsClientFactory.getClient(any(Region.class))).thenReturn(kmsClient);
+        when(kmsClient.encrypt(any(EncryptRequest.class))).thenAnswer(invocation ->
+                new EncryptResult().withCiphertextBlob(ByteBuffer.wrap(new byte[]{1, 2, 3})));
+
+        cachingAuthenticationService.authenticate(iamPrincipalCredentials);
+        cachingAuthenticationService.authenticate(iamPrincipalCredentials);
+
+        verify(awsIamRoleDao, times(1)).getIamRole(principalArn);
+        verify(awsIamRoleDao, times(1)).getKmsKey("iam role id", region);
+        verify(safeDepositBoxDao, times(1)).getIamRoleAssociatedSafeDepositBoxRoles(eq(principalArn), any());
+        verify(kmsKeyPolicyValidationService, times(2)).requestValidation(awsIamRoleKmsKeyRecord, principalArn);
+        verify(kmsClient, times(2)).encrypt(any(EncryptRequest.class));
+    }
+
+    @Test
+    public void test_that_authenticateAsync_replaces_an_invalid_kms_key_and_encrypts_again() {
+        String principalArn = "arn:aws:iam::0000000000:role/async";
+        String region = "us-west-2";
+        OffsetDateTime now = OffsetDateTime.now();
+
+        IamPrincipalCredentials iamPrincipalCredentials = new IamPrincipalCredentials();
+        iamPrincipalCredentials.setIamPrincipalArn(principalArn);
+        iamPrincipalCredentials.setRegion(region);
+
+        AwsIamRoleRecord awsIamRoleRecord = new AwsIamRoleRecord().setAwsIamRoleArn(principalArn).setId("iam role id");
+        when(awsIamRoleDao.getIamRole(principalArn)).thenReturn(Optional.of(awsIamRoleRecord));
+        AwsIamRoleKmsKeyRecord awsIamRoleKmsKeyRecord = new AwsIamRoleKmsKeyRecord()
+                .setId("kms id")
+                .setAwsIamRoleId("iam role id")
+                .setAwsKmsKeyId("key id")
+                .setLastValidatedTs(now);
+        when(awsIamRoleDao.getKmsKey("iam role id", region)).thenReturn(Optional.of(awsIamRoleKmsKeyRecord));
+        when(kmsService.provisionKmsKey(eq("iam role id"), eq(principalArn), eq(region), anyString(), any()))
+                .thenReturn(new AwsIamRoleKmsKeyRecord().setId("new kms id").setAwsKmsKeyId("new key id"));
+        when(dateTimeSupplier.get()).thenReturn(now);
+        when(authTokenService.generateToken(anyString(), any(PrincipalType.class), anyBoolean(), anyString(), anyInt(),
+                anyInt())).thenReturn(CerberusAuthToken.Builder.create()
+                        .withToken(UUID.randomUUID().toString())
+                        .withCreated(now)
+                        .withExpires(now.plusHours(1))
+                        .build());
+
+        CompletableFuture<EncryptResult> keyNotFound = new CompletableFuture<>();
+        keyNotFound.completeExceptionally(new NotFoundException("key not found"));
+        when(asyncKmsEncryptService.encrypt(any(Region.class), any(EncryptRequest.class)))
+                .thenReturn(keyNotFound)
+                .thenReturn(CompletableFuture.completedFuture(
+                        new EncryptResult().withCiphertextBlob(ByteBuffer.wrap(new byte[]{1, 2, 3}))));
+
+        IamRoleAuthResponse authResponse =
+                authenticationService.authenticateAsync(iamPrincipalCredentials, Runnable::run).join();
+
+        assertEquals(Base64.encodeBase64String(new byte[]{1, 2, 3}), authResponse.getAuthData());
+        verify(kmsService).deleteKmsKeyById("kms id");
+        verify(iamPrincipalAuthCache).invalidate(principalArn, region);
+        ArgumentCaptor<EncryptRequest> encryptRequests = ArgumentCaptor.forClass(EncryptRequest.class);
+        verify(asyncKmsEncryptService, times(2)).encrypt(any(Region.class), encryptRequests.capture());
+        assertEquals("new key id", encryptRequests.getAllValues().get(1).getKeyId());
+    }
+
+    @Test
+    public void test_that_authenticate_validates_the_key_policy_and_encrypts_again_when_kms_denies_access() {
+        String principalArn = "arn:aws:iam::0000000000:role/denied";
+        String region = "us-west-2";
+        OffsetDateTime now = OffsetDateTime.now();
+
+        IamPrincipalCredentials iamPrincipalCredentials = new IamPrincipalCredentials();
+        iamPrincipalCredentials.setIamPrincipalArn(principalArn);
+        iamPrincipalCredentials.setRegion(region);
+
+        AwsIamRoleRecord awsIamRoleRecord = new AwsIamRoleRecord().setAwsIamRoleArn(principalArn).setId("iam role id");
+        when(awsIamRoleDao.getIamRole(principalArn)).thenReturn(Optional.of(awsIamRoleRecord));
+        AwsIamRoleKmsKeyRecord awsIamRoleKmsKeyRecord = new AwsIamRoleKmsKeyRecord()
+                .setId("kms id")
+                .setAwsIamRoleId("iam role id")
+                .setAwsKmsKeyId("key id")
+                .setLastValidatedTs(now);
+        when(awsIamRoleDao.getKmsKey("iam role id", region)).thenReturn(Optional.of(awsIamRoleKmsKeyRecord));
+        when(dateTimeSupplier.get()).thenReturn(now);
+        when(authTokenService.generateToken(anyString(), any(PrincipalType.class), anyBoolean(), anyString(), anyInt(),
+                anyInt())).thenReturn(CerberusAuthToken.Builder.create()
+                        .withToken(UUID.randomUUID().toString())
+                        .withCreated(now)
+                        .withExpires(now.plusHours(1))
+                        .build());
+
+        AmazonServiceException accessDenied = new AmazonServiceException("access denied");
+        accessDenied.setErrorCode("AccessDeniedException");
+        AWSKMSClient kmsClient = mock(AWSKMSClient.class);
+        when(kmsClientFactory.getClient(any(Region.class))).thenReturn(kmsClient);
+        when(kmsClient.encrypt(any(EncryptRequest.class)))
+                .thenThrow(accessDenied)
+                .thenReturn(new EncryptResult().withCiphertextBlob(ByteBuffer.wrap(new byte[]{1, 2, 3})));
+
+        IamRoleAuthResponse authResponse = authenticationService.authenticate(iamPrincipalCredentials);
+
+        assertEquals(Base64.encodeBase64String(new byte[]{1, 2, 3}), authResponse.getAuthData());
+        verify(kmsService).forceValidateKeyAndPolicy(awsIamRoleKmsKeyRecord, principalArn);
+        verify(kmsService, never()).deleteKmsKeyById(anyString());
+        verify(kmsClient, times(2)).encrypt(any(EncryptRequest.class));
     }
 
     @Test
@@ -1,8 +1,10 @@
 package com.nike.cerberus.service;
 
+import com.nike.cerberus.cache.IamPrincipalAuthCache;
 import com.nike.cerberus.dao.AwsIamRoleDao;
 import com.nike.cerberus.record.AwsIamRoleKmsKeyRecord;
 import com.nike.cerberus.record.AwsIamRoleRecord;
+import com.nike.cerberus.util.AfterCommitExecutor;
 import com.nike.cerberus.util.DateTimeSupplier;
 import org.assertj.core.util.Lists;
 import org.junit.Before;
@@ -36,6 +38,9 @@ public class CleanUpServiceTest {
     @Mock
     private DateTimeSupplier dateTimeSupplier;
 
+    @Mock
+    private IamPrincipalAuthCache iamPrincipalAuthCache;
+
     private OffsetDateTime now = OffsetDateTime.now(UTC);
 
     @Before
@@ -43,7 +48,8 @@ public class CleanUpServiceTest {
 
         initMocks(this);
 
-        cleanUpService = new CleanUpService(kmsService, awsIamRoleDao, dateTimeSupplier);
+        cleanUpService = new CleanUpService(kmsService, awsIamRoleDao, dateTimeSupplier, iamPrincipalAuthCache,
+                new AfterCommitExecutor());
     }
 
     @Test
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nike.cerberus.service;
+
+import com.google.common.collect.Lists;
+import com.nike.cerberus.dao.SecureDataDao;
+import com.nike.cerberus.domain.Source;
+import com.nike.cerberus.record.DataKeyInfo;
+import com.nike.cerberus.util.DateTimeSupplier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class DataKeyRotationServiceTest {
+
+    private static final int BATCH_SIZE = 2;
+
+    private final OffsetDateTime now = OffsetDateTime.of(2019, 6, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+    private final OffsetDateTime expiredTs = now.minusDays(90);
+
+    @Mock
+    private SecureDataService secureDataService;
+
+    @Mock
+    private SecureDataDao secureDataDao;
+
+    @Mock
+    private MetricsService metricsService;
+
+    @Mock
+    private DateTimeSupplier dateTimeSupplier;
+
+    private DataKeyRotationService dataKeyRotationService;
+
+    @Before
+    public void before() {
+        initMocks(this);
+        when(dateTimeSupplier.get()).thenReturn(now);
+        when(secureDataDao.getOldestDataKeyInfo(any(), any(), any(), anyInt())).thenReturn(Lists.newArrayList());
+
+        dataKeyRotationService = new DataKeyRotationService(secureDataService, secureDataDao, metricsService,
+                dateTimeSupplier, 2, BATCH_SIZE, 1000);
+    }
+
+    @After
+    public void after() {
+        dataKeyRotationService.executeServerShutdownHook(null, null);
+    }
+
+    @Test
+    public void test_that_rotateDataKeys_starts_from_the_oldest_data_keys_and_pages_through_each_table() {
+        OffsetDateTime lastRotatedTs = expiredTs.minusDays(5);
+        DataKeyInfo first = new DataKeyInfo().setId("2").setSource(Source.SECURE_DATA).setLastRotatedTs(lastRotatedTs);
+        DataKeyInfo second = new DataKeyInfo().setId("id-2").setSource(Source.SECURE_DATA_VERSION)
+                .setLastRotatedTs(lastRotatedTs);
+        when(secureDataDao.getOldestDataKeyInfo(expiredTs, null, null, BATCH_SIZE))
+                .thenReturn(Lists.newArrayList(first, second));
+
+        dataKeyRotationService.rotateDataKeys(3, 90);
+
+        verify(secureDataService).reencryptData("2");
+        verify(secureDataService).reencryptDataVersion("id-2");
+        verify(secureDataDao).getOldestDataKeyInfo(expiredTs, first, second, 1);
+    }
+
+    @Test
+    public void test_that_rotateDataKeys_moves_past_data_keys_that_fail_to_rotate() {
+        OffsetDateTime lastRotatedTs = expiredTs.minusDays(5);
+        DataKeyInfo rotated = new DataKeyInfo().setId("1").setSource(Source.SECURE_DATA)
+                .setLastRotatedTs(lastRotatedTs);
+        DataKeyInfo failed = new DataKeyInfo().setId("2").setSource(Source.SECURE_DATA)
+                .setLastRotatedTs(lastRotatedTs);
+        when(secureDataDao.getOldestDataKeyInfo(expiredTs, null, null, BATCH_SIZE))
+                .thenReturn(Lists.newArrayList(rotated, failed));
+        when(secureDataDao.getOldestDataKeyInfo(expiredTs, failed, null, 1)).thenReturn(Lists.newArrayList(
+                new DataKeyInfo().setId("10").setSource(Source.SECURE_DATA).setLastRotatedTs(lastRotatedTs)
+        ));
+        doThrow(new IllegalArgumentException("No secure data found for id: 2"))
+                .when(secureDataService).reencryptData("2");
+
+        dataKeyRotationService.rotateDataKeys(3, 90);
+
+        verify(secureDataService).reencryptData("1");
+        verify(secureDataService).reencryptData("10");
+    }
+
+    @Test
+    public void test_that_rotateDataKeys_stops_when_the_job_is_interrupted() {
+        OffsetDateTime lastRotatedTs = expiredTs.minusDays(5);
+        when(secureDataDao.getOldestDataKeyInfo(any(), any(), any(), anyInt())).thenAnswer(invocation -> {
+            // what the lock service does when the lease of the job's lock is lost
+            Thread.currentThread().interrupt();
+            return Lists.newArrayList(
+                    new DataKeyInfo().setId("1").setSource(Source.SECURE_DATA).setLastRotatedTs(lastRotatedTs));
+        });
+
+        dataKeyRotationService.rotateDataKeys(10, 90);
+
+        assertTrue(Thread.interrupted());
+        verify(secureDataService).reencryptData("1");
+        verify(secureDataDao).getOldestDataKeyInfo(any(), any(), any(), anyInt());
+    }
+}
@@ -1,13 +1,17 @@
 package com.nike.cerberus.service;
 
 import com.codahale.metrics.Counter;
-import com.nike.cerberus.mapper.LockMapper;
-import org.apache.ibatis.session.SqlSession;
-import org.apache.ibatis.session.SqlSessionFactory;
+import com.codahale.metrics.Timer;
+import com.nike.cerberus.dao.LockDao;
+import com.nike.cerberus.util.UuidSupplier;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 
+import java.util.Optional;
+import java.util.OptionalLong;
+
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.anyMap;
 import static org.mockito.Matchers.anyString;
@@ -20,14 +24,15 @@ public class DistributedLockServiceTest {
 
     private static final String JOB_NAME = "the-job-name";
 
-    @Mock
-    private SqlSessionFactory sqlSessionFactory;
+    private static final String HOLDER = "holder-uuid";
+
+    private static final int LEASE_DURATION_IN_SECONDS = 3600;
 
     @Mock
-    private SqlSession sqlSession;
+    private LockDao lockDao;
 
     @Mock
-    private LockMapper lockMapper;
+    private UuidSupplier uuidSupplier;
 
     @Mock
     private MetricsService metricsService;
@@ -37,44 +42,102 @@ public class DistributedLockServiceTest {
     @Before
     public void before() {
         initMocks(this);
-        when(sqlSessionFactory.openSession(false)).thenReturn(sqlSession);
-        when(sqlSession.getMapper(LockMapper.class)).thenReturn(lockMapper);
+        when(uuidSupplier.get()).thenReturn(HOLDER);
         when(metricsService.getOrCreateCounter(anyString(), anyMap())).thenReturn(new Counter());
-        jobCoordinatorService = new DistributedLockService(sqlSessionFactory, metricsService);
+        when(metricsService.getOrCreateTimer(anyString(), anyMap())).thenReturn(new Timer());
+        jobCoordinatorService = new DistributedLockService(lockDao, uuidSupplier, metricsService,
+                LEASE_DURATION_IN_SECONDS);
+    }
+
+    @After
+    public void after() {
+        jobCoordinatorService.executeServerShutdownHook(null, null);
     }
 
     @Test
     public void test_that_a_lock_can_be_acquired_and_released_happy_path() {
-        when(lockMapper.getLock(JOB_NAME)).thenReturn(1);
+        when(lockDao.acquireLease(JOB_NAME, HOLDER, LEASE_DURATION_IN_SECONDS)).thenReturn(Optional.of(7L));
         boolean acquired = jobCoordinatorService.acquireLock(JOB_NAME);
         assertTrue(acquired);
+        assertEquals(OptionalLong.of(7L), jobCoordinatorService.getFencingToken(JOB_NAME));
 
-        when(lockMapper.releaseLock(JOB_NAME)).thenReturn(1);
+        when(lockDao.releaseLease(JOB_NAME, HOLDER, 7L)).thenReturn(true);
         boolean wasReleased = jobCoordinatorService.releaseLock(JOB_NAME);
         assertTrue(wasReleased);
+        verify(lockDao).releaseLease(JOB_NAME, HOLDER, 7L);
+        assertFalse(jobCoordinatorService.getFencingToken(JOB_NAME).isPresent());
     }
 
     @Test
     public void test_that_acquireLockToRunJob_returns_false_cleanly_when_lock_cannot_be_acquired() {
-        when(lockMapper.getLock(JOB_NAME)).thenReturn(0);
+        when(lockDao.acquireLease(JOB_NAME, HOLDER, LEASE_DURATION_IN_SECONDS)).thenReturn(Optional.empty());
         boolean acquired = jobCoordinatorService.acquireLock(JOB_NAME);
         assertFalse(acquired);
 
-        when(lockMapper.getLock(JOB_NAME)).thenReturn(1);
+        when(lockDao.acquireLease(JOB_NAME, HOLDER, LEASE_DURATION_IN_SECONDS)).thenReturn(Optional.of(1L));
         acquired = jobCoordinatorService.acquireLock(JOB_NAME);
         assertTrue(acquired);
+
+        // the lock is not reentrant
+        acquired = jobCoordinatorService.acquireLock(JOB_NAME);
+        assertFalse(acquired);
+        verify(lockDao, times(2)).acquireLease(JOB_NAME, HOLDER, LEASE_DURATION_IN_SECONDS);
     }
 
     @Test
-    public void test_that_release_lock_retries() {
-        when(lockMapper.getLock(JOB_NAME)).thenReturn(1);
+    public void test_that_release_lock_does_not_retry_and_leaves_the_lease_to_expire() {
+        when(lockDao.acquireLease(JOB_NAME, HOLDER, LEASE_DURATION_IN_SECONDS)).thenReturn(Optional.of(1L));
         boolean acquired = jobCoordinatorService.acquireLock(JOB_NAME);
         assertTrue(acquired);
 
-        when(lockMapper.releaseLock(JOB_NAME)).thenReturn(0).thenReturn(1);
+        when(lockDao.releaseLease(JOB_NAME, HOLDER, 1L)).thenThrow(new RuntimeException("database unavailable"));
         boolean wasReleased = jobCoordinatorService.releaseLock(JOB_NAME);
-        assertTrue(wasReleased);
-        verify(lockMapper, times(2)).releaseLock(JOB_NAME);
+        assertFalse(wasReleased);
+        verify(lockDao, times(1)).releaseLease(JOB_NAME, HOLDER, 1L);
+
+        // the lease is no longer renewed, so this instance no longer holds the lock
+        assertTrue(jobCoordinatorService.releaseLock(JOB_NAME));
+    }
+
+    @Test
+    public void test_that_a_lease_that_cannot_be_renewed_is_lost() {
+        when(lockDao.acquireLease(JOB_NAME, HOLDER, LEASE_DURATION_IN_SECONDS)).thenReturn(Optional.of(3L));
+        assertTrue(jobCoordinatorService.acquireLock(JOB_NAME));
+
+        when(lockDao.renewLease(JOB_NAME, HOLDER, 3L, LEASE_DURATION_IN_SECONDS)).thenReturn(true);
+        jobCoordinatorService.renewLease(JOB_NAME);
+        assertEquals(OptionalLong.of(3L), jobCoordinatorService.getFencingToken(JOB_NAME));
+
+        when(lockDao.renewLease(JOB_NAME, HOLDER, 3L, LEASE_DURATION_IN_SECONDS)).thenReturn(false);
+        jobCoordinatorService.renewLease(JOB_NAME);
+        assertFalse(jobCoordinatorService.getFencingToken(JOB_NAME).isPresent());
+        assertTrue(Thread.interrupted());
+
+        // a lost lease is not renewed again
+        jobCoordinatorService.renewLease(JOB_NAME);
+        verify(lockDao, times(2)).renewLease(JOB_NAME, HOLDER, 3L, LEASE_DURATION_IN_SECONDS);
     }
 
+    @Test
+    public void test_that_losing_the_lease_interrupts_the_thread_that_acquired_the_lock() {
+        when(lockDao.acquireLease(JOB_NAME, HOLDER, LEASE_DURATION_IN_SECONDS)).thenReturn(Optional.of(3L));
+        assertTrue(jobCoordinatorService.acquireLock(JOB_NAME));
+
+        when(lockDao.renewLease(JOB_NAME, HOLDER, 3L, LEASE_DURATION_IN_SECONDS)).thenReturn(false);
+        jobCoordinatorService.renewLease(JOB_NAME);
+
+        assertTrue(Thread.interrupted());
+    }
+
+    @Test
+    public void test_that_a_released_lock_no_longer_interrupts_the_thread_that_acquired_it() {
+        when(lockDao.acquireLease(JOB_NAME, HOLDER, LEASE_DURATION_IN_SECONDS)).thenReturn(Optional.of(3L));
+        assertTrue(jobCoordinatorService.acquireLock(JOB_NAME));
+        when(lockDao.releaseLease(JOB_NAME, HOLDER, 3L)).thenReturn(true);
+        assertTrue(jobCoordinatorService.releaseLock(JOB_NAME));
+
+        jobCoordinatorService.renewLease(JOB_NAME);
+
+        assertFalse(Thread.interrupted());
+    }
 }
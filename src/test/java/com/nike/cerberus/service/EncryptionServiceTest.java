@@ -22,8 +22,12 @@ import com.google.common.collect.Lists;
 import org.apache.commons.lang3.StringUtils;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.util.List;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 public class EncryptionServiceTest {
@@ -38,4 +42,23 @@ public class EncryptionServiceTest {
         assertTrue(list.get(0).contains(Regions.US_WEST_2.getName()));
     }
 
+    @Test
+    public void test_that_decrypt_provider_cache_key_does_not_depend_on_arn_order() {
+        String east = "arn:aws:kms:us-east-1:11111111:key/1111111-1d89-43ce-957b-0f705990e9d0";
+        String west = "arn:aws:kms:us-west-2:11111111:key/11111111-aecd-4089-85e0-18536efa5c90";
+
+        assertEquals(EncryptionService.toDecryptProviderCacheKey(Lists.newArrayList(east, west)),
+                EncryptionService.toDecryptProviderCacheKey(Lists.newArrayList(west, east)));
+    }
+
+    @Test
+    public void test_that_readFully_returns_the_whole_stream_regardless_of_the_expected_size() throws IOException {
+        byte[] contents = new byte[]{1, 2, 3, 4, 5};
+
+        assertArrayEquals(contents, EncryptionService.readFully(new ByteArrayInputStream(contents), 5));
+        assertArrayEquals(contents, EncryptionService.readFully(new ByteArrayInputStream(contents), 3));
+        assertArrayEquals(contents, EncryptionService.readFully(new ByteArrayInputStream(contents), 8));
+        assertArrayEquals(new byte[0], EncryptionService.readFully(new ByteArrayInputStream(new byte[0]), 0));
+    }
+
 }
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nike.cerberus.service;
+
+import com.nike.cerberus.record.AwsIamRoleKmsKeyRecord;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class KmsKeyPolicyValidationServiceTest {
+
+    @Mock
+    private KmsService kmsService;
+
+    private KmsKeyPolicyValidationService kmsKeyPolicyValidationService;
+
+    @Before
+    public void before() {
+        initMocks(this);
+
+        // Sweep manually rather than on the schedule
+        kmsKeyPolicyValidationService = new KmsKeyPolicyValidationService(kmsService, 3600000, 10, 1);
+    }
+
+    @After
+    public void after() {
+        kmsKeyPolicyValidationService.executeServerShutdownHook(null, null);
+    }
+
+    @Test
+    public void test_that_only_keys_due_for_validation_are_queued_once_and_validated_in_the_background() {
+        AwsIamRoleKmsKeyRecord dueKey = new AwsIamRoleKmsKeyRecord().setId("due").setAwsRegion("us-west-2");
+        AwsIamRoleKmsKeyRecord validatedKey = new AwsIamRoleKmsKeyRecord().setId("validated").setAwsRegion("us-east-1");
+        when(kmsService.kmsPolicyNeedsValidation(dueKey, "due-arn")).thenReturn(true);
+        when(kmsService.kmsPolicyNeedsValidation(validatedKey, "validated-arn")).thenReturn(false);
+
+        kmsKeyPolicyValidationService.requestValidation(dueKey, "due-arn");
+        kmsKeyPolicyValidationService.requestValidation(dueKey, "due-arn");
+        kmsKeyPolicyValidationService.requestValidation(validatedKey, "validated-arn");
+        verify(kmsService, never()).validateKeyAndPolicy(any(), anyString());
+
+        assertEquals(1, kmsKeyPolicyValidationService.sweep());
+        assertEquals(0, kmsKeyPolicyValidationService.sweep());
+        verify(kmsService, times(1)).validateKeyAndPolicy(dueKey, "due-arn");
+    }
+
+    @Test
+    public void test_that_keys_over_the_region_rate_limit_stay_queued_without_holding_up_other_regions() {
+        AwsIamRoleKmsKeyRecord westKey1 = new AwsIamRoleKmsKeyRecord().setId("west-1").setAwsRegion("us-west-2");
+        AwsIamRoleKmsKeyRecord westKey2 = new AwsIamRoleKmsKeyRecord().setId("west-2").setAwsRegion("us-west-2");
+        AwsIamRoleKmsKeyRecord eastKey = new AwsIamRoleKmsKeyRecord().setId("east").setAwsRegion("us-east-1");
+        when(kmsService.kmsPolicyNeedsValidation(any(), anyString())).thenReturn(true);
+
+        kmsKeyPolicyValidationService.requestValidation(westKey1, "arn");
+        kmsKeyPolicyValidationService.requestValidation(westKey2, "arn");
+        kmsKeyPolicyValidationService.requestValidation(eastKey, "arn");
+
+        // one validation per second per region
+        assertEquals(2, kmsKeyPolicyValidationService.sweep());
+        verify(kmsService).validateKeyAndPolicy(eastKey, "arn");
+        verify(kmsService, times(2)).validateKeyAndPolicy(any(), anyString());
+    }
+}
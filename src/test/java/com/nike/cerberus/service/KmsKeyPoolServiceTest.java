@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nike.cerberus.service;
+
+import com.google.common.collect.Lists;
+import com.nike.cerberus.dao.KmsKeyPoolDao;
+import com.nike.cerberus.record.KmsKeyPoolRecord;
+import com.nike.cerberus.util.DateTimeSupplier;
+import com.nike.cerberus.util.UuidSupplier;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import java.time.OffsetDateTime;
+
+import static com.nike.cerberus.service.KmsKeyPoolService.ABANDONED_CLAIM_AGE_IN_MINUTES;
+import static com.nike.cerberus.service.KmsService.SOONEST_A_KMS_KEY_CAN_BE_DELETED;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class KmsKeyPoolServiceTest {
+
+    private final OffsetDateTime now = OffsetDateTime.now();
+
+    @Mock
+    private KmsService kmsService;
+
+    @Mock
+    private KmsKeyPoolDao kmsKeyPoolDao;
+
+    @Mock
+    private UuidSupplier uuidSupplier;
+
+    @Mock
+    private DateTimeSupplier dateTimeSupplier;
+
+    private KmsKeyPoolService kmsKeyPoolService;
+
+    @Before
+    public void before() {
+        initMocks(this);
+        when(dateTimeSupplier.get()).thenReturn(now);
+        when(uuidSupplier.get()).thenReturn("pool-id");
+        when(kmsService.createPooledKmsKey(anyString())).thenReturn("key-arn");
+
+        kmsKeyPoolService = new KmsKeyPoolService(kmsService, kmsKeyPoolDao, uuidSupplier, dateTimeSupplier,
+                "us-west-2, us-east-1", 2, 5);
+    }
+
+    @Test
+    public void test_that_a_pool_below_the_min_size_is_refilled_to_the_target_size() {
+        when(kmsKeyPoolDao.countUnclaimedKeys("us-west-2")).thenReturn(1);
+
+        assertEquals(4, kmsKeyPoolService.refillKeyPool("us-west-2"));
+
+        verify(kmsService, times(4)).createPooledKmsKey("us-west-2");
+        verify(kmsKeyPoolDao, times(4)).createKey(any(KmsKeyPoolRecord.class));
+    }
+
+    @Test
+    public void test_that_a_pool_at_the_min_size_is_not_refilled() {
+        when(kmsKeyPoolDao.countUnclaimedKeys("us-west-2")).thenReturn(2);
+
+        assertEquals(0, kmsKeyPoolService.refillKeyPool("us-west-2"));
+
+        verify(kmsService, never()).createPooledKmsKey(anyString());
+    }
+
+    @Test
+    public void test_that_refillKeyPools_deletes_abandoned_claims_and_refills_every_region_despite_failures() {
+        when(kmsKeyPoolDao.getKeysClaimedBefore(now.minusMinutes(ABANDONED_CLAIM_AGE_IN_MINUTES)))
+                .thenReturn(Lists.newArrayList(new KmsKeyPoolRecord()
+                        .setId("abandoned-id")
+                        .setAwsRegion("us-west-2")
+                        .setAwsKmsKeyId("abandoned-arn")));
+        when(kmsKeyPoolDao.countUnclaimedKeys("us-west-2")).thenThrow(new RuntimeException("database unavailable"));
+        when(kmsKeyPoolDao.countUnclaimedKeys("us-east-1")).thenReturn(5);
+
+        kmsKeyPoolService.refillKeyPools();
+
+        verify(kmsService).scheduleKmsKeyDeletion("abandoned-arn", "us-west-2", SOONEST_A_KMS_KEY_CAN_BE_DELETED);
+        verify(kmsKeyPoolDao).deleteKey("abandoned-id");
+        verify(kmsKeyPoolDao).countUnclaimedKeys("us-east-1");
+    }
+}
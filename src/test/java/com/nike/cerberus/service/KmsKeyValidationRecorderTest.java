@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nike.cerberus.service;
+
+import com.nike.cerberus.dao.AwsIamRoleDao;
+import com.nike.cerberus.record.AwsIamRoleKmsKeyRecord;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+import static com.nike.cerberus.service.AuthenticationService.SYSTEM_USER;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class KmsKeyValidationRecorderTest {
+
+    @Mock
+    private AwsIamRoleDao awsIamRoleDao;
+
+    private KmsKeyValidationRecorder kmsKeyValidationRecorder;
+
+    @Before
+    public void before() {
+        initMocks(this);
+
+        // Flush manually rather than on the schedule
+        kmsKeyValidationRecorder = new KmsKeyValidationRecorder(awsIamRoleDao, 3600);
+    }
+
+    @After
+    public void after() {
+        kmsKeyValidationRecorder.executeServerShutdownHook(null, null);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void test_that_flush_writes_the_latest_validation_of_each_key_in_one_update() {
+        OffsetDateTime now = OffsetDateTime.now();
+        kmsKeyValidationRecorder.recordValidation("key-1", now.minusMinutes(1));
+        kmsKeyValidationRecorder.recordValidation("key-1", now);
+        kmsKeyValidationRecorder.recordValidation("key-1", now.minusMinutes(2));
+        kmsKeyValidationRecorder.recordValidation("key-2", now);
+
+        kmsKeyValidationRecorder.flush();
+
+        ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+        verify(awsIamRoleDao, times(1)).updateIamRoleKmsKeysLastValidated(captor.capture(), eq(SYSTEM_USER));
+        List<AwsIamRoleKmsKeyRecord> written = captor.getValue();
+        assertThat(written).extracting("id", "lastValidatedTs").containsOnly(
+                tuple("key-1", now),
+                tuple("key-2", now));
+    }
+
+    @Test
+    public void test_that_flush_does_not_write_when_nothing_was_validated() {
+        kmsKeyValidationRecorder.flush();
+
+        verify(awsIamRoleDao, never()).updateIamRoleKmsKeysLastValidated(anyListOf(AwsIamRoleKmsKeyRecord.class),
+                anyString());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void test_that_validations_that_failed_to_be_written_are_written_on_the_next_flush() {
+        OffsetDateTime now = OffsetDateTime.now();
+        kmsKeyValidationRecorder.recordValidation("key-1", now);
+        doThrow(new RuntimeException("database unavailable")).doReturn(1)
+                .when(awsIamRoleDao).updateIamRoleKmsKeysLastValidated(anyListOf(AwsIamRoleKmsKeyRecord.class),
+                        anyString());
+
+        try {
+            kmsKeyValidationRecorder.flush();
+            fail("Expected the failure to write to be rethrown");
+        } catch (RuntimeException e) {
+            assertThat(e.getMessage()).isEqualTo("database unavailable");
+        }
+        kmsKeyValidationRecorder.flush();
+
+        ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+        verify(awsIamRoleDao, times(2)).updateIamRoleKmsKeysLastValidated(captor.capture(), eq(SYSTEM_USER));
+        List<AwsIamRoleKmsKeyRecord> written = captor.getAllValues().get(1);
+        assertThat(written).extracting("id", "lastValidatedTs").containsOnly(tuple("key-1", now));
+    }
+}
@@ -6,6 +6,7 @@ import com.amazonaws.auth.policy.Statement;
 import com.amazonaws.auth.policy.actions.KMSActions;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableSet;
 import com.nike.cerberus.util.AwsIamRoleArnParser;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -15,6 +16,7 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -57,6 +59,17 @@ public class KmsPolicyServiceTest {
         expectedPolicyStream.close();
     }
 
+    @Test
+    public void test_that_generatePooledKmsPolicy_is_the_standard_policy_without_the_consumer_statement() {
+        String pooledPolicyJson = kmsPolicyService.generatePooledKmsPolicy();
+        Policy pooledPolicy = kmsPolicyService.getPolicyFromPolicyString(pooledPolicyJson);
+
+        assertEquals(ImmutableSet.of("Root User Has All Actions", "Admin Role Has All Actions",
+                KmsPolicyService.CERBERUS_MANAGEMENT_SERVICE_SID),
+                pooledPolicy.getStatements().stream().map(Statement::getId).collect(Collectors.toSet()));
+        assertFalse(kmsPolicyService.isPolicyValid(pooledPolicyJson));
+    }
+
     @Test
     public void test_that_isPolicyValid_returns_true_with_a_valid_policy() throws IOException {
         InputStream policy = getClass().getClassLoader()
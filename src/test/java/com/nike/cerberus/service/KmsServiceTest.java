@@ -14,16 +14,20 @@ import com.amazonaws.services.kms.model.GetKeyPolicyResult;
 import com.amazonaws.services.kms.model.KeyMetadata;
 import com.amazonaws.services.kms.model.KeyState;
 import com.amazonaws.services.kms.model.KeyUsageType;
+import com.amazonaws.services.kms.model.PutKeyPolicyRequest;
 import com.amazonaws.services.kms.model.Tag;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.RateLimiter;
 import com.nike.backstopper.exception.ApiException;
 import com.nike.cerberus.aws.KmsClientFactory;
 import com.nike.cerberus.dao.AwsIamRoleDao;
+import com.nike.cerberus.dao.KmsKeyPoolDao;
 import com.nike.cerberus.domain.AuthKmsKeyMetadata;
 import com.nike.cerberus.record.AwsIamRoleKmsKeyRecord;
 import com.nike.cerberus.record.AwsIamRoleRecord;
+import com.nike.cerberus.record.KmsKeyPoolRecord;
 import com.nike.cerberus.util.AwsIamRoleArnParser;
 import com.nike.cerberus.util.DateTimeSupplier;
 import com.nike.cerberus.util.Slugger;
@@ -38,6 +42,8 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static com.nike.cerberus.service.KmsPolicyService.CERBERUS_MANAGEMENT_SERVICE_SID;
 import static org.junit.Assert.assertArrayEquals;
@@ -56,6 +62,8 @@ public class KmsServiceTest {
     private KmsPolicyService kmsPolicyService;
     private DateTimeSupplier dateTimeSupplier;
     private Slugger slugger;
+    private KmsKeyValidationRecorder kmsKeyValidationRecorder;
+    private KmsKeyPoolDao kmsKeyPoolDao;
 
     private KmsService kmsService;
 
@@ -67,8 +75,11 @@ public class KmsServiceTest {
         kmsPolicyService = mock(KmsPolicyService.class);
         dateTimeSupplier = mock(DateTimeSupplier.class);
         slugger = new Slugger();
+        kmsKeyValidationRecorder = mock(KmsKeyValidationRecorder.class);
+        kmsKeyPoolDao = mock(KmsKeyPoolDao.class);
+        when(kmsKeyPoolDao.claimKey(anyString(), anyString(), any())).thenReturn(Optional.empty());
 
-        kmsService = new KmsService(awsIamRoleDao, uuidSupplier, kmsClientFactory, kmsPolicyService, dateTimeSupplier, new AwsIamRoleArnParser(), VERSION, ENV, slugger);
+        kmsService = new KmsService(awsIamRoleDao, uuidSupplier, kmsClientFactory, kmsPolicyService, dateTimeSupplier, new AwsIamRoleArnParser(), VERSION, ENV, slugger, kmsKeyValidationRecorder, kmsKeyPoolDao);
     }
 
     @Test
@@ -133,6 +144,36 @@ public class KmsServiceTest {
         verify(awsIamRoleDao).createIamRoleKmsKey(awsIamRoleKmsKeyRecord);
     }
 
+    @Test
+    public void test_provisionKmsKey_assigns_a_pooled_key_when_the_region_has_one() {
+        String iamRoleId = "role-id";
+        String awsRegion = "aws-region";
+        String user = "user";
+        OffsetDateTime dateTime = OffsetDateTime.now();
+        String policy = "policy";
+        String principalArn = "arn:aws:iam::12345678901234:role/some-role";
+        String pooledKeyArn = "arn:aws:kms:aws-region:12345678901234:key/pooled-key";
+
+        when(uuidSupplier.get()).thenReturn("awsIamRoleKmsKeyId");
+        when(kmsPolicyService.generateStandardKmsPolicy(principalArn)).thenReturn(policy);
+        when(kmsKeyPoolDao.claimKey(awsRegion, "awsIamRoleKmsKeyId", dateTime)).thenReturn(Optional.of(
+                new KmsKeyPoolRecord().setId("pool-id").setAwsRegion(awsRegion).setAwsKmsKeyId(pooledKeyArn)));
+        AWSKMSClient client = mock(AWSKMSClient.class);
+        when(kmsClientFactory.getClient(awsRegion)).thenReturn(client);
+
+        AwsIamRoleKmsKeyRecord result = kmsService.provisionKmsKey(iamRoleId, principalArn, awsRegion, user, dateTime);
+
+        assertEquals(pooledKeyArn, result.getAwsKmsKeyId());
+        assertEquals("awsIamRoleKmsKeyId", result.getId());
+        verify(client).putKeyPolicy(new PutKeyPolicyRequest()
+                .withKeyId(pooledKeyArn)
+                .withPolicyName("default")
+                .withPolicy(policy));
+        verify(client, never()).createKey(any(CreateKeyRequest.class));
+        verify(kmsKeyPoolDao).deleteKey("pool-id");
+        verify(awsIamRoleDao).createIamRoleKmsKey(result);
+    }
+
     @Test
     public void test_getAliasName() {
         assertEquals("alias/cerberus/fakeEnv/12345678901234/some-role/uuid", kmsService.getAliasName("uuid", "arn:aws:iam::12345678901234:role/some-role"));
@@ -181,6 +222,7 @@ public class KmsServiceTest {
         when(kmsKey.getAwsKmsKeyId()).thenReturn(kmsKeyArn);
         when(kmsKey.getAwsRegion()).thenReturn(kmsCMKRegion);
         when(kmsKey.getLastValidatedTs()).thenReturn(lastValidated);
+        when(kmsKey.getId()).thenReturn("kms key record id");
         when(awsIamRoleDao.getKmsKey(awsIamRoleRecordId, kmsCMKRegion)).thenReturn(Optional.of(kmsKey));
 
         when(dateTimeSupplier.get()).thenReturn(now);
@@ -189,6 +231,9 @@ public class KmsServiceTest {
         verify(client, times(1)).getKeyPolicy(new GetKeyPolicyRequest().withKeyId(kmsKeyArn)
                 .withPolicyName("default"));
         verify(kmsPolicyService, times(1)).isPolicyValid(policy);
+        verify(kmsKey).setLastValidatedTs(now);
+        verify(kmsKeyValidationRecorder).recordValidation("kms key record id", now);
+        verify(awsIamRoleDao, never()).updateIamRoleKmsKey(anyObject());
     }
 
     @Test
@@ -400,9 +445,44 @@ public class KmsServiceTest {
         doReturn(Optional.of(policyThatShouldNotBeInSet)).when(kmsServiceSpy).downloadPolicy("key4", region, 0);
         doReturn(Optional.of(policyThatWasntCreatedByCms)).when(kmsServiceSpy).downloadPolicy("key5", region, 0);
 
-        Set<String> actual = kmsServiceSpy.filterKeysCreatedByKmsService(allKmsCmkIdsForRegion, region);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Set<String> actual = kmsServiceSpy.filterKeysCreatedByKmsService(allKmsCmkIdsForRegion, region, executor,
+                    RateLimiter.create(1000));
 
-        assertEquals(expectedKeys, actual);
+            assertEquals(expectedKeys, actual);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void test_that_filterKeysCreatedByKmsService_downloads_the_policies_concurrently_on_the_given_executor() {
+        String region = "us-west-2";
+        Policy createdByThisEnv = new Policy().withStatements(
+                new Statement(Statement.Effect.Allow)
+                        .withId(CERBERUS_MANAGEMENT_SERVICE_SID)
+                        .withPrincipals(new Principal("arn:aws:iam:123456:role/" + ENV + "-cms-role-alk234khsdf")),
+                new Statement(Statement.Effect.Allow),
+                new Statement(Statement.Effect.Allow),
+                new Statement(Statement.Effect.Allow)
+        );
+        Policy notCreatedByCms = new Policy().withStatements(new Statement(Statement.Effect.Allow).withId("foo-bar"));
+
+        KmsService kmsServiceSpy = spy(kmsService);
+        doReturn(Optional.of(createdByThisEnv)).when(kmsServiceSpy).downloadPolicy("key1", region, 0);
+        doReturn(Optional.of(notCreatedByCms)).when(kmsServiceSpy).downloadPolicy("key2", region, 0);
+        doReturn(Optional.empty()).when(kmsServiceSpy).downloadPolicy("key3", region, 0);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Set<String> actual = kmsServiceSpy.filterKeysCreatedByKmsService(ImmutableSet.of("key1", "key2", "key3"),
+                    region, executor, RateLimiter.create(1000));
+
+            assertEquals(ImmutableSet.of("key1"), actual);
+        } finally {
+            executor.shutdownNow();
+        }
     }
 
 }
\ No newline at end of file
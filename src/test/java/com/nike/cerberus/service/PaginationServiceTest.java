@@ -18,6 +18,7 @@
 package com.nike.cerberus.service;
 
 import com.nike.backstopper.exception.ApiException;
+import com.nike.cerberus.domain.PaginationCursor;
 import com.nike.riposte.server.http.RequestInfo;
 import org.junit.Assert;
 import org.junit.Before;
@@ -25,7 +26,14 @@ import org.junit.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
@@ -87,4 +95,55 @@ public class PaginationServiceTest {
     public void test_that_a_bad_request_is_thrown_if_offset_is_non_numeric() {
         paginationServiceSpy.validateOffsetQuery("abc");
     }
+
+    @Test
+    public void test_that_get_cursor_returns_null_when_no_cursor_is_supplied() {
+        assertNull(paginationServiceSpy.getCursor(request));
+    }
+
+    @Test
+    public void test_that_get_cursor_decodes_a_previously_encoded_cursor() {
+        OffsetDateTime timestamp = Instant.ofEpochMilli(1546300800123L).atOffset(ZoneOffset.UTC);
+        String encodedCursor = new PaginationCursor(timestamp, "version-id").encode();
+        when(request.getQueryParamSingle(PaginationService.CURSOR_QUERY_KEY)).thenReturn(encodedCursor);
+
+        PaginationCursor cursor = paginationServiceSpy.getCursor(request);
+
+        assertEquals(timestamp, cursor.getTimestamp());
+        assertEquals("version-id", cursor.getId());
+    }
+
+    @Test
+    public void test_that_get_cursor_decodes_a_cursor_from_the_start() {
+        String encodedCursor = PaginationCursor.fromStart().encode();
+        when(request.getQueryParamSingle(PaginationService.CURSOR_QUERY_KEY)).thenReturn(encodedCursor);
+
+        PaginationCursor cursor = paginationServiceSpy.getCursor(request);
+
+        assertNull(cursor.getTimestamp());
+        assertNull(cursor.getId());
+    }
+
+    @Test(expected = ApiException.class)
+    public void test_that_a_bad_request_is_thrown_if_cursor_is_invalid() {
+        when(request.getQueryParamSingle(PaginationService.CURSOR_QUERY_KEY)).thenReturn("not-a-cursor");
+        paginationServiceSpy.getCursor(request);
+    }
+
+    @Test
+    public void test_that_the_total_count_is_only_requested_by_default_when_paginating_by_offset() {
+        assertTrue(paginationServiceSpy.isTotalCountRequested(request));
+
+        when(request.getQueryParamSingle(PaginationService.CURSOR_QUERY_KEY)).thenReturn("cursor");
+        assertFalse(paginationServiceSpy.isTotalCountRequested(request));
+
+        when(request.getQueryParamSingle(PaginationService.COUNT_QUERY_KEY)).thenReturn("true");
+        assertTrue(paginationServiceSpy.isTotalCountRequested(request));
+    }
+
+    @Test(expected = ApiException.class)
+    public void test_that_a_bad_request_is_thrown_if_count_is_not_a_boolean() {
+        when(request.getQueryParamSingle(PaginationService.COUNT_QUERY_KEY)).thenReturn("yes");
+        paginationServiceSpy.isTotalCountRequested(request);
+    }
 }
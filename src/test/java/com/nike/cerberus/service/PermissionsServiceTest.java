@@ -19,6 +19,7 @@ package com.nike.cerberus.service;
 import com.google.common.collect.ImmutableSet;
 import com.nike.backstopper.exception.ApiException;
 import com.nike.cerberus.SecureDataAction;
+import com.nike.cerberus.cache.SdbPermissionIndex;
 import com.nike.cerberus.dao.PermissionsDao;
 import com.nike.cerberus.domain.CerberusAuthToken;
 import com.nike.cerberus.domain.IamPrincipalPermission;
@@ -32,6 +33,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 
+import java.util.Arrays;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -40,11 +42,14 @@ import static com.nike.cerberus.PrincipalType.USER;
 import static com.nike.cerberus.record.RoleRecord.ROLE_OWNER;
 import static com.nike.cerberus.record.RoleRecord.ROLE_READ;
 import static com.nike.cerberus.record.RoleRecord.ROLE_WRITE;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
@@ -65,6 +70,7 @@ public class PermissionsServiceTest {
     @Mock private Role writeRole;
     @Mock private Role readRole;
     @Mock private AwsIamRoleArnParser awsIamRoleArnParser;
+    @Mock private SdbPermissionIndex sdbPermissionIndex;
 
 
     PermissionsService permissionsService;
@@ -80,7 +86,8 @@ public class PermissionsServiceTest {
                 iamPrincipalPermissionService,
                 permissionsDao,
                 userGroupsCaseSensitive,
-                awsIamRoleArnParser
+                awsIamRoleArnParser,
+                sdbPermissionIndex
         );
 
         when(ownerRole.getId()).thenReturn(OWNER_ID);
@@ -355,6 +362,35 @@ public class PermissionsServiceTest {
         assertFalse(permissionsService.doesPrincipalHavePermission(principal, SDB_ID, SecureDataAction.READ));
     }
 
+    @Test
+    public void test_that_doesPrincipalHavePermission_does_not_query_the_db_when_the_index_allows_a_user() {
+        CerberusPrincipal principal = new CerberusPrincipal(CerberusAuthToken.Builder.create()
+                .withPrincipalType(USER)
+                .withGroups("group1,group2")
+                .build());
+        when(sdbPermissionIndex.doesUserGroupHaveRole(SDB_ID, principal.getUserGroups(),
+                SecureDataAction.READ.getAllowedRoles(), true)).thenReturn(true);
+
+        assertTrue(permissionsService.doesPrincipalHavePermission(principal, SDB_ID, SecureDataAction.READ));
+        verify(permissionsDao, never()).doesUserPrincipalHaveRoleForSdb(any(), any(), any());
+    }
+
+    @Test
+    public void test_that_doesPrincipalHavePermission_does_not_query_the_db_when_the_index_allows_an_iam_principal() {
+        String principalArn = "arn:aws:iam::111111111111:role/role-name";
+        String rootArn = "arn:aws:iam::111111111111:root";
+        when(awsIamRoleArnParser.convertPrincipalArnToRootArn(principalArn)).thenReturn(rootArn);
+        CerberusPrincipal principal = new CerberusPrincipal(CerberusAuthToken.Builder.create()
+                .withPrincipalType(IAM)
+                .withPrincipal(principalArn)
+                .build());
+        when(sdbPermissionIndex.doesIamPrincipalHaveRole(SDB_ID, Arrays.asList(principalArn, rootArn),
+                SecureDataAction.READ.getAllowedRoles())).thenReturn(true);
+
+        assertTrue(permissionsService.doesPrincipalHavePermission(principal, SDB_ID, SecureDataAction.READ));
+        verify(permissionsDao, never()).doesIamPrincipalHaveRoleForSdb(any(), any(), any(), any());
+    }
+
     @Test
     public void test_that_doesPrincipalHavePermission_calls_case_insensitive_method_when_case_sensitive_is_false() {
         PermissionsService permissionsService = new PermissionsService(
@@ -363,7 +399,8 @@ public class PermissionsServiceTest {
                 iamPrincipalPermissionService,
                 permissionsDao,
                 false,
-                awsIamRoleArnParser
+                awsIamRoleArnParser,
+                sdbPermissionIndex
         );
         CerberusPrincipal principal = new CerberusPrincipal(CerberusAuthToken.Builder.create().withPrincipalType(USER).build());
         when(permissionsDao.doesUserPrincipalHaveRoleForSdb(any(), any(), any())).thenReturn(false);
@@ -379,7 +416,8 @@ public class PermissionsServiceTest {
                 iamPrincipalPermissionService,
                 permissionsDao,
                 true,
-                awsIamRoleArnParser
+                awsIamRoleArnParser,
+                sdbPermissionIndex
         );
         CerberusPrincipal principal = new CerberusPrincipal(CerberusAuthToken.Builder.create().withPrincipalType(USER).build());
         when(permissionsDao.doesUserPrincipalHaveRoleForSdb(any(), any(), any())).thenReturn(false);
@@ -395,7 +433,8 @@ public class PermissionsServiceTest {
                 iamPrincipalPermissionService,
                 permissionsDao,
                 true,
-                awsIamRoleArnParser);
+                awsIamRoleArnParser,
+                sdbPermissionIndex);
 
         CerberusPrincipal principal = new CerberusPrincipal(CerberusAuthToken.Builder.create()
                 .withPrincipalType(USER)
@@ -418,7 +457,8 @@ public class PermissionsServiceTest {
                 iamPrincipalPermissionService,
                 permissionsDao,
                 false,
-                awsIamRoleArnParser);
+                awsIamRoleArnParser,
+                sdbPermissionIndex);
 
         CerberusPrincipal principal = new CerberusPrincipal(CerberusAuthToken.Builder.create()
                 .withPrincipalType(USER)
@@ -441,7 +481,8 @@ public class PermissionsServiceTest {
                 iamPrincipalPermissionService,
                 permissionsDao,
                 true,
-                awsIamRoleArnParser);
+                awsIamRoleArnParser,
+                sdbPermissionIndex);
 
         CerberusPrincipal principal = new CerberusPrincipal(CerberusAuthToken.Builder.create()
                 .withPrincipalType(USER)
@@ -472,7 +513,8 @@ public class PermissionsServiceTest {
                 iamPrincipalPermissionService,
                 permissionsDao,
                 false,
-                awsIamRoleArnParser);
+                awsIamRoleArnParser,
+                sdbPermissionIndex);
 
         CerberusPrincipal principal = new CerberusPrincipal(CerberusAuthToken.Builder.create()
                 .withPrincipalType(USER)
@@ -487,4 +529,19 @@ public class PermissionsServiceTest {
         Boolean actual = permissionsService.doesPrincipalHaveOwnerPermissions(principal, sdb);
         assertTrue("The principal should have owner permissions", actual);
     }
+
+    @Test
+    public void test_that_getPrincipalNamesForPermissionCheck_includes_the_role_and_root_arns_of_an_assumed_role() {
+        String principalArn = "assumed role arn";
+        when(awsIamRoleArnParser.isAssumedRoleArn(principalArn)).thenReturn(true);
+        when(awsIamRoleArnParser.convertPrincipalArnToRootArn(principalArn)).thenReturn("root arn");
+        when(awsIamRoleArnParser.convertPrincipalArnToRoleArn(principalArn)).thenReturn("role arn");
+        CerberusPrincipal principal = new CerberusPrincipal(CerberusAuthToken.Builder.create()
+                .withPrincipalType(IAM)
+                .withPrincipal(principalArn)
+                .build());
+
+        assertEquals(Arrays.asList(principalArn, "role arn", "root arn"),
+                permissionsService.getPrincipalNamesForPermissionCheck(principal));
+    }
 }
@@ -17,6 +17,7 @@
 package com.nike.cerberus.service;
 
 import com.nike.cerberus.PrincipalType;
+import com.nike.cerberus.cache.SafeDepositBoxIdCache;
 import com.nike.cerberus.dao.SafeDepositBoxDao;
 import com.nike.cerberus.dao.SecureDataVersionDao;
 import com.nike.cerberus.dao.UserGroupDao;
@@ -31,16 +32,19 @@ import com.nike.cerberus.domain.UserGroupPermission;
 import com.nike.cerberus.record.RoleRecord;
 import com.nike.cerberus.record.SafeDepositBoxRecord;
 import com.nike.cerberus.security.CerberusPrincipal;
+import com.nike.cerberus.util.AfterCommitExecutor;
 import com.nike.cerberus.util.AwsIamRoleArnParser;
 import com.nike.cerberus.util.DateTimeSupplier;
 import com.nike.cerberus.util.Slugger;
 import com.nike.cerberus.util.UuidSupplier;
+import org.aopalliance.intercept.MethodInvocation;
 import org.assertj.core.util.Lists;
 import org.assertj.core.util.Sets;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 
 import java.time.OffsetDateTime;
 import java.util.HashSet;
@@ -51,9 +55,11 @@ import java.util.Set;
 import static java.time.ZoneOffset.UTC;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -102,6 +108,12 @@ public class SafeDepositBoxServiceTest {
     @Mock
     private PermissionsService permissionsService;
 
+    @Mock
+    private SafeDepositBoxIdCache safeDepositBoxIdCache;
+
+    @Spy
+    private AfterCommitExecutor afterCommitExecutor = new AfterCommitExecutor();
+
     @InjectMocks
     private SafeDepositBoxService safeDepositBoxService;
 
@@ -370,6 +382,39 @@ public class SafeDepositBoxServiceTest {
         verify(secureDataService).deleteAllSecretsThatStartWithGivenPartialPath(sdbId, sdbPathNoCategory);
     }
 
+    @Test
+    public void test_that_deleteSafeDepositBox_invalidates_the_cached_id_only_once_the_delete_commits() throws Throwable {
+        String sdbPath = "category/safedepositbox-zzz-fake";
+        CerberusPrincipal principal = new CerberusPrincipal(new CerberusAuthToken());
+        String sdbId = "sdb id";
+        when(safeDepositBoxDao.getSafeDepositBox(sdbId))
+                .thenReturn(Optional.of(new SafeDepositBoxRecord().setId(sdbId).setPath(sdbPath)));
+        when(roleService.getRoleByName(RoleRecord.ROLE_OWNER)).thenReturn(Optional.of(new Role()));
+        when(permissionsService.doesPrincipalHaveReadPermission(principal, sdbId)).thenReturn(true);
+
+        MethodInvocation rolledBackTransaction = mock(MethodInvocation.class);
+        when(rolledBackTransaction.proceed()).thenAnswer(invocation -> {
+            safeDepositBoxService.deleteSafeDepositBox(principal, sdbId);
+            throw new IllegalStateException("rolled back");
+        });
+        try {
+            afterCommitExecutor.invoke(rolledBackTransaction);
+            fail("Expected the transaction to fail");
+        } catch (IllegalStateException expected) {
+            // the SDB still exists
+        }
+        verify(safeDepositBoxIdCache, never()).invalidate(sdbPath);
+
+        MethodInvocation committedTransaction = mock(MethodInvocation.class);
+        when(committedTransaction.proceed()).thenAnswer(invocation -> {
+            safeDepositBoxService.deleteSafeDepositBox(principal, sdbId);
+            verify(safeDepositBoxIdCache, never()).invalidate(sdbPath);
+            return null;
+        });
+        afterCommitExecutor.invoke(committedTransaction);
+        verify(safeDepositBoxIdCache).invalidate(sdbPath);
+    }
+
     @Test
     public void test_that_overrideSdbOwner_calls_update_owner() {
         String id = "111";
@@ -427,4 +472,32 @@ public class SafeDepositBoxServiceTest {
         List<SafeDepositBoxSummary> roleArnSdbSummaries = safeDepositBoxServiceSpy.getAssociatedSafeDepositBoxes(roleArnPrincipal);
         assertEquals(roleArnRecords.size(), roleArnSdbSummaries.size());
     }
+
+    @Test
+    public void test_that_getSafeDepositBoxIdByPath_does_not_query_the_db_for_a_cached_path() {
+        String path = "app/health-check-bucket/";
+        when(safeDepositBoxIdCache.getIfPresent(path)).thenReturn("111");
+
+        assertEquals(Optional.of("111"), safeDepositBoxService.getSafeDepositBoxIdByPath(path));
+        verify(safeDepositBoxDao, never()).getSafeDepositBoxIdByPath(path);
+    }
+
+    @Test
+    public void test_that_getSafeDepositBoxIdByPath_does_not_query_the_db_for_a_path_known_to_be_missing() {
+        String path = "app/does-not-exist/";
+        when(safeDepositBoxIdCache.isKnownMissing(path)).thenReturn(true);
+
+        assertEquals(Optional.empty(), safeDepositBoxService.getSafeDepositBoxIdByPath(path));
+        verify(safeDepositBoxDao, never()).getSafeDepositBoxIdByPath(path);
+    }
+
+    @Test
+    public void test_that_getSafeDepositBoxIdByPath_caches_the_result_of_the_db_query() {
+        when(safeDepositBoxDao.getSafeDepositBoxIdByPath("app/health-check-bucket/")).thenReturn("111");
+
+        assertEquals(Optional.of("111"), safeDepositBoxService.getSafeDepositBoxIdByPath("app/health-check-bucket/"));
+        assertEquals(Optional.empty(), safeDepositBoxService.getSafeDepositBoxIdByPath("app/does-not-exist/"));
+        verify(safeDepositBoxIdCache).put("app/health-check-bucket/", "111");
+        verify(safeDepositBoxIdCache).putMissing("app/does-not-exist/");
+    }
 }
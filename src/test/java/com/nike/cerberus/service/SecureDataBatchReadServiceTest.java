@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nike.cerberus.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.nike.cerberus.SecureDataAction;
+import com.nike.cerberus.domain.SecureData;
+import com.nike.cerberus.domain.SecureDataBatchReadResult;
+import com.nike.cerberus.security.CerberusPrincipal;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class SecureDataBatchReadServiceTest {
+
+    private static final String SDB_ID = "sdb-id";
+    private static final String OTHER_SDB_ID = "other-sdb-id";
+
+    @Mock
+    private SafeDepositBoxService safeDepositBoxService;
+
+    @Mock
+    private PermissionsService permissionsService;
+
+    @Mock
+    private SecureDataService secureDataService;
+
+    @Mock
+    private CerberusPrincipal principal;
+
+    private SecureDataBatchReadService secureDataBatchReadService;
+
+    @Before
+    public void before() {
+        initMocks(this);
+
+        when(safeDepositBoxService.getSafeDepositBoxIdByPath("app/my-sdb/")).thenReturn(Optional.of(SDB_ID));
+        when(safeDepositBoxService.getSafeDepositBoxIdByPath("app/other-sdb/")).thenReturn(Optional.of(OTHER_SDB_ID));
+        when(safeDepositBoxService.getSafeDepositBoxIdByPath("app/missing-sdb/")).thenReturn(Optional.empty());
+        when(permissionsService.doesPrincipalHavePermission(principal, SDB_ID, SecureDataAction.READ)).thenReturn(true);
+        when(permissionsService.doesPrincipalHavePermission(principal, OTHER_SDB_ID, SecureDataAction.READ)).thenReturn(false);
+
+        secureDataBatchReadService = new SecureDataBatchReadService(safeDepositBoxService, permissionsService,
+                secureDataService, new ObjectMapper(), 2, 10);
+    }
+
+    @After
+    public void after() {
+        secureDataBatchReadService.executeServerShutdownHook(null, null);
+    }
+
+    @Test
+    public void test_that_each_path_is_reported_with_its_own_status_in_the_order_given() {
+        when(secureDataService.readSecrets(eq(ImmutableSet.of(SDB_ID)), eq(ImmutableSet.of("my-sdb/found", "my-sdb/missing")), any()))
+                .thenReturn(ImmutableMap.of("my-sdb/found", CompletableFuture.completedFuture(new SecureData()
+                        .setPath("my-sdb/found")
+                        .setData("{\"key\":\"value\"}"))));
+
+        List<SecureDataBatchReadResult> results = secureDataBatchReadService.readSecrets(principal, Lists.newArrayList(
+                "app/my-sdb/found",
+                "app/other-sdb/denied",
+                "app/my-sdb/missing",
+                "app/missing-sdb/secret",
+                "app/my-sdb",
+                "app/my-sdb/found"));
+
+        assertEquals(5, results.size());
+        assertResult(results.get(0), "app/my-sdb/found", 200);
+        assertEquals("value", ((JsonNode) results.get(0).getData()).get("key").asText());
+        assertNull(results.get(0).getError());
+        assertResult(results.get(1), "app/other-sdb/denied", 403);
+        assertResult(results.get(2), "app/my-sdb/missing", 404);
+        assertResult(results.get(3), "app/missing-sdb/secret", 403);
+        assertResult(results.get(4), "app/my-sdb", 400);
+
+        // permissions are only checked once for the SDB of several paths
+        verify(permissionsService, times(1)).doesPrincipalHavePermission(principal, SDB_ID, SecureDataAction.READ);
+    }
+
+    @Test
+    public void test_that_a_secret_that_cannot_be_decrypted_does_not_fail_the_others() {
+        CompletableFuture<SecureData> failedDecrypt = new CompletableFuture<>();
+        failedDecrypt.completeExceptionally(new IllegalStateException("KMS is down"));
+        when(secureDataService.readSecrets(eq(ImmutableSet.of(SDB_ID)), eq(ImmutableSet.of("my-sdb/a", "my-sdb/b")), any()))
+                .thenReturn(ImmutableMap.of(
+                        "my-sdb/a", failedDecrypt,
+                        "my-sdb/b", CompletableFuture.completedFuture(new SecureData().setData("{}"))));
+
+        List<SecureDataBatchReadResult> results = secureDataBatchReadService.readSecrets(principal,
+                Lists.newArrayList("app/my-sdb/a", "app/my-sdb/b"));
+
+        assertResult(results.get(0), "app/my-sdb/a", 500);
+        assertResult(results.get(1), "app/my-sdb/b", 200);
+    }
+
+    private void assertResult(SecureDataBatchReadResult result, String path, int status) {
+        assertEquals(path, result.getPath());
+        assertEquals(status, result.getStatus());
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nike.cerberus.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.nike.backstopper.exception.ApiException;
+import com.nike.cerberus.SecureDataAction;
+import com.nike.cerberus.domain.SecureDataBatchWriteEntry;
+import com.nike.cerberus.error.DefaultApiError;
+import com.nike.cerberus.record.SecureDataRecord;
+import com.nike.cerberus.security.CerberusPrincipal;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class SecureDataBatchWriteServiceTest {
+
+    private static final String SDB_ID = "sdb-id";
+    private static final String OTHER_SDB_ID = "other-sdb-id";
+
+    @Mock
+    private SafeDepositBoxService safeDepositBoxService;
+
+    @Mock
+    private PermissionsService permissionsService;
+
+    @Mock
+    private SecureDataService secureDataService;
+
+    @Mock
+    private CerberusPrincipal principal;
+
+    private SecureDataBatchWriteService secureDataBatchWriteService;
+
+    @Before
+    public void before() {
+        initMocks(this);
+
+        when(principal.getName()).thenReturn("writer");
+        when(safeDepositBoxService.getSafeDepositBoxIdByPath("app/my-sdb/")).thenReturn(Optional.of(SDB_ID));
+        when(safeDepositBoxService.getSafeDepositBoxIdByPath("app/other-sdb/")).thenReturn(Optional.of(OTHER_SDB_ID));
+        when(permissionsService.doesPrincipalHavePermission(principal, SDB_ID, SecureDataAction.WRITE)).thenReturn(true);
+        when(permissionsService.doesPrincipalHavePermission(principal, OTHER_SDB_ID, SecureDataAction.WRITE)).thenReturn(false);
+
+        secureDataBatchWriteService = new SecureDataBatchWriteService(safeDepositBoxService, permissionsService,
+                secureDataService, new ObjectMapper(), 2, 10);
+    }
+
+    @After
+    public void after() {
+        secureDataBatchWriteService.executeServerShutdownHook(null, null);
+    }
+
+    @Test
+    public void test_that_all_secrets_are_encrypted_and_then_written_in_one_call() {
+        SecureDataRecord a = new SecureDataRecord().setPath("my-sdb/a");
+        SecureDataRecord b = new SecureDataRecord().setPath("my-sdb/folder/b");
+        when(secureDataService.encryptSecret(eq(SDB_ID), eq("my-sdb/a"), eq("{\"key\":\"value\"}"), eq(1), any()))
+                .thenReturn(CompletableFuture.completedFuture(a));
+        when(secureDataService.encryptSecret(eq(SDB_ID), eq("my-sdb/folder/b"), eq("{}"), eq(0), any()))
+                .thenReturn(CompletableFuture.completedFuture(b));
+
+        secureDataBatchWriteService.writeSecrets(principal, Lists.newArrayList(
+                secret("app/my-sdb/a", ImmutableMap.of("key", "value")),
+                secret("app/my-sdb/folder/b", ImmutableMap.of())));
+
+        verify(secureDataService).writeSecrets(Lists.newArrayList(a, b), "writer");
+        // permissions are only checked once for the SDB of several secrets
+        verify(permissionsService, times(1)).doesPrincipalHavePermission(principal, SDB_ID, SecureDataAction.WRITE);
+    }
+
+    @Test
+    public void test_that_nothing_is_written_when_the_principal_cannot_write_to_one_of_the_sdbs() {
+        assertApiError(DefaultApiError.ACCESS_DENIED, Lists.newArrayList(
+                secret("app/my-sdb/a", ImmutableMap.of()),
+                secret("app/other-sdb/b", ImmutableMap.of())));
+    }
+
+    @Test
+    public void test_that_nothing_is_written_when_a_path_is_given_twice() {
+        assertApiError(DefaultApiError.SECRET_BATCH_WRITE_DUPLICATE_PATHS, Lists.newArrayList(
+                secret("app/my-sdb/a", ImmutableMap.of()),
+                secret("app/my-sdb/A", ImmutableMap.of())));
+    }
+
+    @Test
+    public void test_that_nothing_is_written_when_a_secret_is_invalid() {
+        assertApiError(DefaultApiError.SECRET_BATCH_WRITE_INVALID_SECRET, Lists.newArrayList(
+                secret("app/my-sdb", ImmutableMap.of())));
+        assertApiError(DefaultApiError.SECRET_BATCH_WRITE_INVALID_SECRET, Lists.newArrayList(
+                secret("app/my-sdb/a", null)));
+    }
+
+    private void assertApiError(DefaultApiError apiError, List<SecureDataBatchWriteEntry> secrets) {
+        try {
+            secureDataBatchWriteService.writeSecrets(principal, secrets);
+            fail("Expected an ApiException");
+        } catch (ApiException e) {
+            assertTrue(e.getApiErrors().contains(apiError));
+        }
+        verify(secureDataService, never()).encryptSecret(anyString(), anyString(), anyString(), anyInt(), any());
+        verify(secureDataService, never()).writeSecrets(anyList(), anyString());
+    }
+
+    private SecureDataBatchWriteEntry secret(String path, Map<String, Object> data) {
+        return new SecureDataBatchWriteEntry().setPath(path).setData(data);
+    }
+}
@@ -16,14 +16,22 @@
 
 package com.nike.cerberus.service;
 
+import com.codahale.metrics.Timer;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import com.nike.backstopper.exception.ApiException;
+import com.nike.cerberus.SecureDataAction;
 import com.nike.cerberus.dao.SecureDataDao;
 import com.nike.cerberus.dao.SecureDataVersionDao;
+import com.nike.cerberus.domain.PaginationCursor;
 import com.nike.cerberus.domain.SecureData;
 import com.nike.cerberus.domain.SecureDataType;
+import com.nike.cerberus.domain.SecureFileSummaryResult;
+import com.nike.cerberus.error.DefaultApiError;
+import com.nike.cerberus.record.ResolvedSecureDataRecord;
+import com.nike.cerberus.record.SecureDataPathNodeRecord;
 import com.nike.cerberus.record.SecureDataRecord;
 import com.nike.cerberus.record.SecureDataVersionRecord;
 import com.nike.cerberus.util.DateTimeSupplier;
@@ -33,21 +41,34 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 
 import java.nio.charset.StandardCharsets;
 import java.time.OffsetDateTime;
 import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import static com.nike.cerberus.service.AuthenticationService.SYSTEM_USER;
 import static junit.framework.TestCase.assertEquals;
 import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertNull;
 import static junit.framework.TestCase.assertTrue;
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -63,9 +84,9 @@ public class SecureDataServiceTest {
     private String sdbId = UUID.randomUUID().toString();
     private String path = "super/important/secrets";
     private String partialPathWithoutTrailingSlash = "apps/checkout-service/api-keys";
-    private String[] keysRes = new String[]{
-        "apps/checkout-service/api-keys/signal-fx-api-key",
-        "apps/checkout-service/api-keys/splunk-api-key"
+    private String[] childKeys = new String[]{
+        "signal-fx-api-key",
+        "splunk-api-key"
     };
     @Mock private SecureDataRecord secureDataRecord;
 
@@ -73,6 +94,7 @@ public class SecureDataServiceTest {
     @Mock private EncryptionService encryptionService;
     @Mock private DateTimeSupplier dateTimeSupplier;
     @Mock private SecureDataVersionDao secureDataVersionDao;
+    @Mock private MetricsService metricsService;
     private ObjectMapper objectMapper;
 
     private SecureDataService secureDataService;
@@ -81,7 +103,9 @@ public class SecureDataServiceTest {
     public void before() {
         initMocks(this);
         objectMapper = new ObjectMapper();
-        secureDataService = new SecureDataService(secureDataDao, encryptionService, objectMapper, dateTimeSupplier, secureDataVersionDao);
+        when(metricsService.getOrCreateTimer(anyString(), anyMap())).thenAnswer(invocation -> new Timer());
+        secureDataService = new SecureDataService(secureDataDao, encryptionService, objectMapper, dateTimeSupplier,
+                secureDataVersionDao, metricsService);
     }
 
     @After
@@ -138,93 +162,305 @@ public class SecureDataServiceTest {
         assertTrue(result.get().getData().equals(secret));
     }
 
+    @Test
+    public void test_that_readSecrets_reads_all_secrets_with_one_query_and_decrypts_the_ones_found() {
+        String otherPath = "super/other-secret";
+        when(secureDataDao.readSecureDataByPathsAndType(ImmutableSet.of(sdbId), ImmutableSet.of(path, otherPath), SecureDataType.OBJECT))
+                .thenReturn(Lists.newArrayList(new SecureDataRecord().setPath(path).setEncryptedBlob(ciphertext.getBytes())));
+        when(encryptionService.decrypt(ciphertext, path)).thenReturn(secret);
+
+        Map<String, CompletableFuture<SecureData>> result = secureDataService.readSecrets(ImmutableSet.of(sdbId),
+                ImmutableSet.of(path, otherPath), Runnable::run);
+
+        assertEquals(1, result.size());
+        assertEquals(secret, result.get(path).join().getData());
+    }
+
+    @Test
+    public void test_that_writeSecret_encrypts_before_locking_the_secret_and_times_each_phase() {
+        Map<String, Timer> timers = new HashMap<>();
+        when(metricsService.getOrCreateTimer(anyString(), anyMap()))
+                .thenAnswer(invocation -> timers.computeIfAbsent((String) invocation.getArguments()[0], name -> new Timer()));
+        when(encryptionService.encrypt(secret, path)).thenReturn(ciphertext);
+        when(secureDataRecord.getType()).thenReturn(SecureDataType.OBJECT);
+        when(secureDataDao.readSecureDataByPath(sdbId, path)).thenReturn(Optional.of(secureDataRecord));
+
+        secureDataService.writeSecret(sdbId, path, secret, principal);
+
+        InOrder inOrder = inOrder(encryptionService, secureDataDao);
+        inOrder.verify(encryptionService).encrypt(secret, path);
+        inOrder.verify(secureDataDao).readSecureDataByPath(sdbId, path);
+        for (String phase : new String[]{"encrypt", "transaction", "lock", "archive", "update"}) {
+            assertEquals(phase, 1, timers.get("cms.secret.write." + phase).getCount());
+        }
+    }
+
+    @Test
+    public void test_that_writeSecrets_archives_the_versions_of_existing_secrets_and_inserts_the_new_ones() {
+        OffsetDateTime now = OffsetDateTime.now(ZoneId.of("UTC"));
+        OffsetDateTime createdTs = now.minusDays(2);
+        OffsetDateTime lastUpdatedTs = now.minusDays(1);
+        String newPath = "super/new/secret";
+        when(dateTimeSupplier.get()).thenReturn(now);
+        when(secureDataDao.readSecureDataByPathsLocking(ImmutableSet.of(sdbId), Lists.newArrayList(path, newPath)))
+                .thenReturn(Lists.newArrayList(new SecureDataRecord()
+                        .setSdboxId(sdbId)
+                        .setPath(path)
+                        .setType(SecureDataType.OBJECT)
+                        .setEncryptedBlob(ciphertextBytes)
+                        .setSizeInBytes(10)
+                        .setCreatedBy("creator")
+                        .setCreatedTs(createdTs)
+                        .setLastUpdatedBy("updater")
+                        .setLastUpdatedTs(lastUpdatedTs)
+                        .setLastRotatedTs(createdTs)));
+
+        byte[] newCiphertextBytes = "new ciphertext".getBytes(StandardCharsets.UTF_8);
+        secureDataService.writeSecrets(Lists.newArrayList(
+                new SecureDataRecord().setSdboxId(sdbId).setPath(path).setEncryptedBlob(newCiphertextBytes)
+                        .setTopLevelKVCount(2).setSizeInBytes(plaintextBytes.length),
+                new SecureDataRecord().setSdboxId(sdbId).setPath(newPath).setEncryptedBlob(newCiphertextBytes)
+                        .setTopLevelKVCount(2).setSizeInBytes(plaintextBytes.length)
+        ), principal);
+
+        ArgumentCaptor<List> versionsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(secureDataVersionDao).writeSecureDataVersions(versionsCaptor.capture());
+        assertEquals(1, versionsCaptor.getValue().size());
+        SecureDataVersionRecord version = (SecureDataVersionRecord) versionsCaptor.getValue().get(0);
+        assertEquals(path, version.getPath());
+        assertArrayEquals(ciphertextBytes, version.getEncryptedBlob());
+        assertEquals(10, version.getSizeInBytes());
+        assertEquals("updater", version.getVersionCreatedBy());
+        assertEquals(lastUpdatedTs, version.getVersionCreatedTs());
+        assertEquals(principal, version.getActionPrincipal());
+
+        verify(secureDataDao).updateSecureData(sdbId, path, newCiphertextBytes, 2, SecureDataType.OBJECT,
+                plaintextBytes.length, "creator", createdTs, principal, now, createdTs);
+        verify(secureDataDao).writeSecureData(sdbId, newPath, newCiphertextBytes, 2, SecureDataType.OBJECT,
+                plaintextBytes.length, principal, now, principal, now);
+
+        ArgumentCaptor<List> nodesCaptor = ArgumentCaptor.forClass(List.class);
+        verify(secureDataDao).incrementPathNodes(eq(sdbId), nodesCaptor.capture());
+        assertEquals(2, nodesCaptor.getValue().size());
+    }
+
+    @Test
+    public void test_that_writeSecrets_rejects_a_path_that_differs_from_the_stored_one_only_in_case() {
+        String mixedCasePath = "Super/Important/Secrets";
+        when(secureDataDao.readSecureDataByPathsLocking(ImmutableSet.of(sdbId), Lists.newArrayList(mixedCasePath)))
+                .thenReturn(Lists.newArrayList(new SecureDataRecord()
+                        .setSdboxId(sdbId)
+                        .setPath(path)
+                        .setType(SecureDataType.OBJECT)
+                        .setEncryptedBlob(ciphertextBytes)));
+
+        try {
+            // the blob was encrypted with the mixed case path as its encryption context
+            secureDataService.writeSecrets(Lists.newArrayList(new SecureDataRecord().setSdboxId(sdbId)
+                    .setPath(mixedCasePath).setEncryptedBlob(ciphertextBytes)), principal);
+            fail("Expected the batch to be rejected");
+        } catch (ApiException e) {
+            assertEquals(DefaultApiError.SECRET_BATCH_WRITE_PATH_CASE_MISMATCH, e.getApiErrors().get(0));
+        }
+
+        verify(secureDataVersionDao, never()).writeSecureDataVersions(any());
+        verify(secureDataDao, never()).updateSecureData(any(), any(), any(byte[].class), anyInt(), any(), anyInt(),
+                any(), any(), any(), any(), any());
+    }
+
+    @Test(expected = ApiException.class)
+    public void test_that_writeSecrets_fails_when_a_secret_would_replace_a_file() {
+        when(secureDataDao.readSecureDataByPathsLocking(ImmutableSet.of(sdbId), Lists.newArrayList(path)))
+                .thenReturn(Lists.newArrayList(new SecureDataRecord().setPath(path).setType(SecureDataType.FILE)));
+
+        secureDataService.writeSecrets(Lists.newArrayList(
+                new SecureDataRecord().setSdboxId(sdbId).setPath(path).setEncryptedBlob(ciphertextBytes)), principal);
+    }
+
+    @Test
+    public void test_that_readSecretIfPermitted_decrypts_the_payload_of_the_resolved_secret() {
+        Set<String> principalNames = ImmutableSet.of("group-1");
+        when(secureDataDao.resolveSecureDataByPathAndType("app/super/", path, SecureDataType.OBJECT, false,
+                principalNames, false, SecureDataAction.READ.getAllowedRoles()))
+                .thenReturn(Optional.of(new ResolvedSecureDataRecord()
+                        .setSdboxId(sdbId)
+                        .setPermitted(true)
+                        .setSecureDataId(path.hashCode())
+                        .setEncryptedBlob(ciphertextBytes)));
+        when(encryptionService.decrypt(ciphertext, path)).thenReturn(secret);
+
+        Optional<SecureData> result = secureDataService.readSecretIfPermitted("app/super/", path, false,
+                principalNames, false, SecureDataAction.READ.getAllowedRoles());
+
+        assertTrue(result.isPresent());
+        assertEquals(secret, result.get().getData());
+        assertEquals(sdbId, result.get().getSdboxId());
+    }
+
+    @Test
+    public void test_that_readSecretIfPermitted_returns_empty_optional_if_there_is_no_secret_at_the_path() {
+        when(secureDataDao.resolveSecureDataByPathAndType("app/super/", path, SecureDataType.OBJECT, false,
+                ImmutableSet.of("group-1"), false, SecureDataAction.READ.getAllowedRoles()))
+                .thenReturn(Optional.of(new ResolvedSecureDataRecord().setSdboxId(sdbId).setPermitted(true)));
+
+        Optional<SecureData> result = secureDataService.readSecretIfPermitted("app/super/", path, false,
+                ImmutableSet.of("group-1"), false, SecureDataAction.READ.getAllowedRoles());
+
+        assertFalse(result.isPresent());
+    }
+
+    @Test(expected = ApiException.class)
+    public void test_that_readSecretIfPermitted_throws_if_the_principal_lacks_permission() {
+        when(secureDataDao.resolveSecureDataByPathAndType("app/super/", path, SecureDataType.OBJECT, false,
+                ImmutableSet.of("group-1"), false, SecureDataAction.READ.getAllowedRoles()))
+                .thenReturn(Optional.of(new ResolvedSecureDataRecord().setSdboxId(sdbId).setPermitted(false)));
+
+        secureDataService.readSecretIfPermitted("app/super/", path, false, ImmutableSet.of("group-1"), false,
+                SecureDataAction.READ.getAllowedRoles());
+    }
+
+    @Test(expected = ApiException.class)
+    public void test_that_readSecretIfPermitted_throws_if_the_sdb_does_not_exist() {
+        when(secureDataDao.resolveSecureDataByPathAndType("app/super/", path, SecureDataType.OBJECT, false,
+                ImmutableSet.of("group-1"), false, SecureDataAction.READ.getAllowedRoles()))
+                .thenReturn(Optional.empty());
+
+        secureDataService.readSecretIfPermitted("app/super/", path, false, ImmutableSet.of("group-1"), false,
+                SecureDataAction.READ.getAllowedRoles());
+    }
+
     @Test
     public void test_that_listKeys_appends_a_slash_to_the_partial_path_if_not_present() {
-        when(secureDataDao.getPathsByPartialPathAndType(
-                sdbId,
-            partialPathWithoutTrailingSlash + "/",
-                SecureDataType.OBJECT)).thenReturn(keysRes);
+        when(secureDataDao.getChildKeysByParentPath(sdbId, partialPathWithoutTrailingSlash + "/"))
+                .thenReturn(Lists.newArrayList(childKeys));
         secureDataService.listKeys(sdbId, partialPathWithoutTrailingSlash);
-        verify(secureDataDao).getPathsByPartialPathAndType(sdbId, partialPathWithoutTrailingSlash + "/", SecureDataType.OBJECT);
+        verify(secureDataDao).getChildKeysByParentPath(sdbId, partialPathWithoutTrailingSlash + "/");
     }
 
     @Test
     public void test_that_listKeys_does_not_append_a_slash_to_the_partial_path_if_already_present() {
-        when(secureDataDao.getPathsByPartialPathAndType(
-                sdbId,
-                partialPathWithoutTrailingSlash + "/",
-                SecureDataType.OBJECT)).thenReturn(keysRes);
+        when(secureDataDao.getChildKeysByParentPath(sdbId, partialPathWithoutTrailingSlash + "/"))
+                .thenReturn(Lists.newArrayList(childKeys));
         secureDataService.listKeys(sdbId, partialPathWithoutTrailingSlash  + "/");
-        verify(secureDataDao).getPathsByPartialPathAndType(sdbId, partialPathWithoutTrailingSlash + "/", SecureDataType.OBJECT);
+        verify(secureDataDao).getChildKeysByParentPath(sdbId, partialPathWithoutTrailingSlash + "/");
     }
 
     @Test
     public void test_that_listKeys_returns_empty_set_if_dao_returns_null() {
-        when(secureDataDao.getPathsByPartialPathAndType(
-                sdbId,
-            partialPathWithoutTrailingSlash + "/",
-                SecureDataType.OBJECT)).thenReturn(null);
+        when(secureDataDao.getChildKeysByParentPath(sdbId, partialPathWithoutTrailingSlash + "/")).thenReturn(null);
         Set<String> res = secureDataService.listKeys(sdbId, partialPathWithoutTrailingSlash );
-        verify(secureDataDao).getPathsByPartialPathAndType(sdbId, partialPathWithoutTrailingSlash + "/", SecureDataType.OBJECT);
+        verify(secureDataDao).getChildKeysByParentPath(sdbId, partialPathWithoutTrailingSlash + "/");
 
         assertTrue(res != null && res.isEmpty());
     }
 
     @Test
     public void test_that_listKeys_returns_empty_set_if_dao_returns_empty() {
-        when(secureDataDao.getPathsByPartialPathAndType(
-                sdbId,
-                partialPathWithoutTrailingSlash + "/",
-                SecureDataType.OBJECT)).thenReturn(new String[] {});
+        when(secureDataDao.getChildKeysByParentPath(sdbId, partialPathWithoutTrailingSlash + "/"))
+                .thenReturn(Lists.newArrayList());
         Set<String> res = secureDataService.listKeys(sdbId, partialPathWithoutTrailingSlash );
-        verify(secureDataDao).getPathsByPartialPathAndType(sdbId, partialPathWithoutTrailingSlash + "/", SecureDataType.OBJECT);
+        verify(secureDataDao).getChildKeysByParentPath(sdbId, partialPathWithoutTrailingSlash + "/");
 
         assertTrue(res != null && res.isEmpty());
     }
 
     @Test
     public void test_that_listKeys_returns_expected_set_of_keys() {
-        when(secureDataDao.getPathsByPartialPathAndType(
-                sdbId,
-            partialPathWithoutTrailingSlash + "/",
-                SecureDataType.OBJECT)).thenReturn(keysRes);
+        when(secureDataDao.getChildKeysByParentPath(sdbId, partialPathWithoutTrailingSlash + "/"))
+                .thenReturn(Lists.newArrayList(childKeys));
         Set<String> res = secureDataService.listKeys(sdbId, partialPathWithoutTrailingSlash);
-        verify(secureDataDao).getPathsByPartialPathAndType(sdbId, partialPathWithoutTrailingSlash + "/", SecureDataType.OBJECT);
+        verify(secureDataDao).getChildKeysByParentPath(sdbId, partialPathWithoutTrailingSlash + "/");
 
         assertEquals("There should be 2 keys", 2, res.size());
         assertTrue("the list of keys should contain the 2 api keys", res.containsAll(ImmutableSet.of("signal-fx-api-key", "splunk-api-key")));
     }
 
     @Test
-    public void test_that_listKeys_returns_expected_set_of_keys_with_sub_folder_paths_stripped_to_nearest_folder() {
-        when(secureDataDao.getPathsByPartialPathAndType(
-                sdbId,
-                partialPathWithoutTrailingSlash + "/",
-                SecureDataType.OBJECT)).thenReturn(new String[]{
-                "apps/checkout-service/api-keys/sub-folder/some-different-key"
-        });
-        Set<String> res = secureDataService.listKeys(sdbId, partialPathWithoutTrailingSlash);
-        verify(secureDataDao).getPathsByPartialPathAndType(sdbId, partialPathWithoutTrailingSlash + "/", SecureDataType.OBJECT);
+    public void test_that_getPathNodes_returns_a_node_for_each_folder_and_the_key_of_a_path() {
+        List<SecureDataPathNodeRecord> nodes = SecureDataService.getPathNodes("apps/checkout-service/api-keys/sub-folder/some-different-key");
+
+        assertEquals(4, nodes.size());
+        assertPathNode(nodes.get(0), "apps/", "checkout-service/");
+        assertPathNode(nodes.get(1), "apps/checkout-service/", "api-keys/");
+        assertPathNode(nodes.get(2), "apps/checkout-service/api-keys/", "sub-folder/");
+        assertPathNode(nodes.get(3), "apps/checkout-service/api-keys/sub-folder/", "some-different-key");
+    }
 
-        assertEquals("There should be 1 key", 1, res.size());
-        assertTrue(res.contains("sub-folder/"));
+    @Test
+    public void test_that_getPathNodes_distinguishes_a_key_from_a_folder_with_the_same_name() {
+        List<SecureDataPathNodeRecord> folderNodes = SecureDataService.getPathNodes("apps/checkout-service/sub-folder/");
+        List<SecureDataPathNodeRecord> keyNodes = SecureDataService.getPathNodes("apps/checkout-service/sub-folder");
+
+        assertEquals(2, folderNodes.size());
+        assertPathNode(folderNodes.get(1), "apps/checkout-service/", "sub-folder/");
+        assertEquals(2, keyNodes.size());
+        assertPathNode(keyNodes.get(1), "apps/checkout-service/", "sub-folder");
+        assertTrue(SecureDataService.getPathNodes("apps/").isEmpty());
     }
 
     @Test
-    public void test_that_listKeys_returns_expected_set_of_keys_with_sub_folder_paths_stripped_to_nearest_folder_and_contains_key_without_slash_if_present() {
-        when(secureDataDao.getPathsByPartialPathAndType(
-            sdbId,
-            partialPathWithoutTrailingSlash + "/",
-                SecureDataType.OBJECT)).thenReturn(new String[]{
-                "apps/checkout-service/api-keys/sub-folder/some-different-key",
-                "apps/checkout-service/api-keys/sub-folder"
-        });
-        Set<String> res = secureDataService.listKeys(sdbId, partialPathWithoutTrailingSlash);
-        verify(secureDataDao).getPathsByPartialPathAndType(sdbId, partialPathWithoutTrailingSlash + "/", SecureDataType.OBJECT);
+    public void test_that_writeSecret_adds_the_path_nodes_of_a_new_secret() {
+        when(encryptionService.encrypt(secret, path)).thenReturn(ciphertext);
+        when(dateTimeSupplier.get()).thenReturn(OffsetDateTime.now(ZoneId.of("UTC")));
+        when(secureDataDao.readSecureDataByPath(sdbId, path)).thenReturn(Optional.empty());
 
-        assertEquals("There should be 2 key", 2, res.size());
-        assertTrue(res.contains("sub-folder/"));
-        assertTrue(res.contains("sub-folder"));
+        secureDataService.writeSecret(sdbId, path, secret, principal);
+
+        ArgumentCaptor<List> nodesCaptor = ArgumentCaptor.forClass(List.class);
+        verify(secureDataDao).incrementPathNodes(eq(sdbId), nodesCaptor.capture());
+        assertEquals(2, nodesCaptor.getValue().size());
+    }
+
+    @Test
+    public void test_that_deleteAllSecretsThatStartWithGivenPartialPath_removes_the_secrets_from_the_parent_path_nodes() {
+        String subPath = "apps/checkout-service/";
+        when(secureDataDao.countByPartialPathAndType(sdbId, subPath, SecureDataType.OBJECT)).thenReturn(3);
+
+        secureDataService.deleteAllSecretsThatStartWithGivenPartialPath(sdbId, subPath);
+
+        ArgumentCaptor<List> nodesCaptor = ArgumentCaptor.forClass(List.class);
+        verify(secureDataDao).decrementPathNodes(nodesCaptor.capture(), eq(3));
+        assertEquals(1, nodesCaptor.getValue().size());
+        verify(secureDataDao).deleteAllPathNodesThatStartWithGivenPartialPath(sdbId, subPath);
+    }
+
+    @Test
+    public void test_that_listSecureFilesSummaries_returns_a_cursor_to_the_next_page() {
+        String partialPath = "apps/";
+        OffsetDateTime createdTs = OffsetDateTime.now(ZoneId.of("UTC"));
+        List<SecureDataRecord> records = Lists.newArrayList(
+                new SecureDataRecord().setId(3).setPath("apps/c.pem").setCreatedTs(createdTs),
+                new SecureDataRecord().setId(2).setPath("apps/b.pem").setCreatedTs(createdTs),
+                new SecureDataRecord().setId(1).setPath("apps/a.pem").setCreatedTs(createdTs));
+        when(secureDataDao.countByPartialPathAndType(sdbId, partialPath, SecureDataType.FILE)).thenReturn(3);
+        when(secureDataDao.listMetadataByPartialPathAndType(sdbId, partialPath, SecureDataType.FILE, 3, 0)).thenReturn(records);
+
+        SecureFileSummaryResult result = secureDataService.listSecureFilesSummaries(sdbId, partialPath, 2, 0);
+
+        assertTrue(result.isHasNext());
+        assertEquals(2, result.getFileCountInResult());
+        assertEquals(Integer.valueOf(3), result.getTotalFileCount());
+        assertEquals(Integer.valueOf(2), result.getNextOffset());
+        PaginationCursor nextCursor = PaginationCursor.decode(result.getNextCursor());
+        assertEquals(createdTs.toInstant().toEpochMilli(), nextCursor.getTimestamp().toInstant().toEpochMilli());
+        assertEquals("2", nextCursor.getId());
+    }
+
+    @Test
+    public void test_that_listSecureFilesSummaries_continues_from_the_cursor_without_counting() {
+        String partialPath = "apps/";
+        PaginationCursor cursor = new PaginationCursor(OffsetDateTime.now(ZoneId.of("UTC")), "2");
+        when(secureDataDao.listMetadataByPartialPathAndTypeAfterCursor(sdbId, partialPath, SecureDataType.FILE,
+                cursor.getTimestamp(), cursor.getId(), 3))
+                .thenReturn(Lists.newArrayList(new SecureDataRecord().setId(1).setPath("apps/a.pem")));
+
+        SecureFileSummaryResult result = secureDataService.listSecureFilesSummaries(sdbId, partialPath, 2, 0, cursor, false);
+
+        assertFalse(result.isHasNext());
+        assertEquals(1, result.getFileCountInResult());
+        assertNull(result.getTotalFileCount());
+        assertNull(result.getNextCursor());
+        verify(secureDataDao, never()).countByPartialPathAndType(sdbId, partialPath, SecureDataType.FILE);
     }
 
     @Test
@@ -237,6 +473,7 @@ public class SecureDataServiceTest {
     public void test_that_deleteSecret_proxies_to_dao() {
         OffsetDateTime now = OffsetDateTime.now(ZoneId.of("UTC"));
         when(dateTimeSupplier.get()).thenReturn(now);
+        when(secureDataRecord.getPath()).thenReturn(partialPathWithoutTrailingSlash);
         when(secureDataDao.readSecureDataByPathAndType(sdbId, partialPathWithoutTrailingSlash, SecureDataType.OBJECT))
                 .thenReturn(Optional.of(secureDataRecord));
 
@@ -244,6 +481,27 @@ public class SecureDataServiceTest {
         verify(secureDataDao).deleteSecret(sdbId, partialPathWithoutTrailingSlash);
     }
 
+    @Test
+    public void test_that_deleteSecret_decrements_the_path_nodes_of_the_stored_path_when_the_case_differs() {
+        String requestedPath = "APPS/Checkout-Service/API-Keys";
+        SecureDataRecord record = new SecureDataRecord()
+                .setType(SecureDataType.OBJECT)
+                .setPath(partialPathWithoutTrailingSlash);
+        when(dateTimeSupplier.get()).thenReturn(OffsetDateTime.now(ZoneId.of("UTC")));
+        when(secureDataDao.readSecureDataByPathAndType(sdbId, requestedPath, SecureDataType.OBJECT))
+                .thenReturn(Optional.of(record));
+
+        secureDataService.deleteSecret(sdbId, requestedPath, SecureDataType.OBJECT, principal);
+
+        ArgumentCaptor<List> nodesCaptor = ArgumentCaptor.forClass(List.class);
+        verify(secureDataDao).decrementPathNodes(nodesCaptor.capture(), eq(1));
+        List<SecureDataPathNodeRecord> nodes = nodesCaptor.getValue();
+        assertEquals(2, nodes.size());
+        assertPathNode(nodes.get(0), "apps/", "checkout-service/");
+        assertPathNode(nodes.get(1), "apps/checkout-service/", "api-keys");
+        verify(secureDataDao).deleteEmptyPathNodes(nodes);
+    }
+
     @Test
     public void test_that_restoreSdbSecrets_proxies_to_dao() throws JsonProcessingException {
         String sdbId = "sdb-id";
@@ -373,7 +631,7 @@ public class SecureDataServiceTest {
                 .setPath(pathToFile)
                 .setEncryptedBlob(ciphertextBytes)
                 .setSizeInBytes(ciphertextBytes.length);
-        when(encryptionService.decrypt(ciphertextBytes, pathToFile)).thenReturn(plaintextBytes);
+        when(encryptionService.decrypt(ciphertextBytes, pathToFile, ciphertextBytes.length)).thenReturn(plaintextBytes);
         when(secureDataDao.readSecureDataByPathAndType(sdbId, pathToFile, SecureDataType.FILE)).thenReturn(Optional.of(record));
 
         secureDataService.readFile(sdbId, pathToFile);
@@ -403,6 +661,7 @@ public class SecureDataServiceTest {
         ArgumentCaptor<SecureDataRecord> argument = ArgumentCaptor.forClass(SecureDataRecord.class);
         verify(secureDataDao).updateSecureData(argument.capture());
         assertEquals(now, argument.getValue().getLastRotatedTs());
+        assertEquals(now, argument.getValue().getKeyMaterialTs());
         assertArrayEquals(newCiphertextBytes, argument.getValue().getEncryptedBlob());
     }
 
@@ -428,6 +687,7 @@ public class SecureDataServiceTest {
         ArgumentCaptor<SecureDataRecord> argument = ArgumentCaptor.forClass(SecureDataRecord.class);
         verify(secureDataDao).updateSecureData(argument.capture());
         assertEquals(now, argument.getValue().getLastRotatedTs());
+        assertEquals(now, argument.getValue().getKeyMaterialTs());
         assertArrayEquals(newCiphertextBytes, argument.getValue().getEncryptedBlob());
     }
 
@@ -453,6 +713,7 @@ public class SecureDataServiceTest {
         ArgumentCaptor<SecureDataVersionRecord> argument = ArgumentCaptor.forClass(SecureDataVersionRecord.class);
         verify(secureDataVersionDao).updateSecureDataVersion(argument.capture());
         assertEquals(now, argument.getValue().getLastRotatedTs());
+        assertEquals(now, argument.getValue().getKeyMaterialTs());
         assertArrayEquals(newCiphertextBytes, argument.getValue().getEncryptedBlob());
     }
 
@@ -478,6 +739,7 @@ public class SecureDataServiceTest {
         ArgumentCaptor<SecureDataVersionRecord> argument = ArgumentCaptor.forClass(SecureDataVersionRecord.class);
         verify(secureDataVersionDao).updateSecureDataVersion(argument.capture());
         assertEquals(now, argument.getValue().getLastRotatedTs());
+        assertEquals(now, argument.getValue().getKeyMaterialTs());
         assertArrayEquals(newCiphertextBytes, argument.getValue().getEncryptedBlob());
     }
 
@@ -486,11 +748,13 @@ public class SecureDataServiceTest {
         String pathToFile = "app/sdb/file.pem";
         SecureDataType type = SecureDataType.FILE;
         String principal = "principal";
+        OffsetDateTime keyMaterialTs = OffsetDateTime.now().minusDays(30);
         SecureDataRecord record = new SecureDataRecord()
                 .setType(type)
                 .setPath(pathToFile)
                 .setEncryptedBlob(ciphertextBytes)
-                .setSizeInBytes(ciphertextBytes.length);
+                .setSizeInBytes(ciphertextBytes.length)
+                .setKeyMaterialTs(keyMaterialTs);
         when(secureDataDao.readSecureDataByPathAndType(sdbId, pathToFile, type)).thenReturn(Optional.of(record));
 
         secureDataService.deleteSecret(sdbId, pathToFile, SecureDataType.FILE, principal);
@@ -503,6 +767,13 @@ public class SecureDataServiceTest {
                 null,
                 null,
                 principal,
-                null);
+                null,
+                keyMaterialTs);
+    }
+
+    private void assertPathNode(SecureDataPathNodeRecord node, String parentPath, String childKey) {
+        assertEquals(parentPath, node.getParentPath());
+        assertEquals(childKey, node.getChildKey());
+        assertEquals(parentPath + childKey, node.getPath());
     }
 }
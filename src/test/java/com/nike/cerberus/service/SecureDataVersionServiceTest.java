@@ -19,8 +19,10 @@ package com.nike.cerberus.service;
 
 import com.google.common.collect.Lists;
 import com.nike.cerberus.dao.SecureDataVersionDao;
+import com.nike.cerberus.domain.PaginationCursor;
 import com.nike.cerberus.domain.SecureDataVersionSummary;
 import com.nike.cerberus.domain.SecureDataVersionsResult;
+import com.nike.cerberus.record.SecureDataRecord;
 import com.nike.cerberus.record.SecureDataVersionRecord;
 import org.junit.Before;
 import org.junit.Test;
@@ -31,6 +33,10 @@ import java.util.List;
 import java.util.Optional;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
@@ -75,8 +81,8 @@ public class SecureDataVersionServiceTest {
 
         List<SecureDataVersionRecord> versions = Lists.newArrayList(record);
 
-        when(secureDataService.getSecureDataRecordForPath(sdbId, pathToSecureData)).thenReturn(Optional.empty());
-        when(secureDataVersionDao.listSecureDataVersionByPath(pathToSecureData, 1, 0)).thenReturn(versions);
+        when(secureDataService.getSecureDataMetadataForPath(sdbId, pathToSecureData)).thenReturn(Optional.empty());
+        when(secureDataVersionDao.listVersionMetadataByPath(pathToSecureData, 2, 0)).thenReturn(versions);
         SecureDataVersionsResult summaries = secureDataVersionService.getSecureDataVersionSummariesByPath(sdbId, pathToSecureData, sdbCategory, 1, 0);
         SecureDataVersionSummary result = summaries.getSecureDataVersionSummaries().get(0);
 
@@ -89,4 +95,54 @@ public class SecureDataVersionServiceTest {
         assertEquals(record.getVersionCreatedBy(), result.getVersionCreatedBy());
         assertEquals(record.getVersionCreatedTs(), result.getVersionCreatedTs());
     }
+
+    @Test
+    public void test_that_a_first_page_holding_only_the_current_version_continues_from_the_start_of_the_versions() {
+        String sdbId = "sdb id";
+        String pathToSecureData = "path to secure data";
+        SecureDataRecord currentRecord = new SecureDataRecord()
+                .setSdboxId(sdbId)
+                .setPath(pathToSecureData)
+                .setLastUpdatedTs(OffsetDateTime.now());
+        SecureDataVersionRecord previousVersion = new SecureDataVersionRecord()
+                .setId("version id")
+                .setPath(pathToSecureData)
+                .setActionTs(OffsetDateTime.now());
+
+        when(secureDataService.getSecureDataMetadataForPath(sdbId, pathToSecureData)).thenReturn(Optional.of(currentRecord));
+        when(secureDataVersionDao.getTotalNumVersionsForPath(pathToSecureData)).thenReturn(1);
+        when(secureDataVersionDao.listVersionMetadataByPath(pathToSecureData, 1, 0)).thenReturn(Lists.newArrayList(previousVersion));
+        SecureDataVersionsResult result = secureDataVersionService.getSecureDataVersionSummariesByPath(sdbId, pathToSecureData, "category", 1, 0);
+
+        assertEquals(1, result.getVersionCountInResult());
+        assertEquals(SecureDataVersionService.DEFAULT_ID_FOR_CURRENT_VERSIONS, result.getSecureDataVersionSummaries().get(0).getId());
+        assertEquals(Integer.valueOf(2), result.getTotalVersionCount());
+        assertTrue(result.isHasNext());
+        assertNull(PaginationCursor.decode(result.getNextCursor()).getTimestamp());
+        verify(secureDataService, never()).getSecureDataRecordForPath(sdbId, pathToSecureData);
+    }
+
+    @Test
+    public void test_that_versions_are_listed_after_the_cursor_without_the_current_version_or_counting() {
+        String sdbId = "sdb id";
+        String pathToSecureData = "path to secure data";
+        PaginationCursor cursor = new PaginationCursor(OffsetDateTime.now(), "newer version id");
+        OffsetDateTime actionTs = OffsetDateTime.now().minusDays(1);
+        List<SecureDataVersionRecord> versions = Lists.newArrayList(
+                new SecureDataVersionRecord().setId("version id 1").setPath(pathToSecureData).setActionTs(actionTs),
+                new SecureDataVersionRecord().setId("version id 2").setPath(pathToSecureData).setActionTs(actionTs));
+
+        when(secureDataVersionDao.listVersionMetadataByPathAfterCursor(pathToSecureData, cursor.getTimestamp(), cursor.getId(), 2))
+                .thenReturn(versions);
+        SecureDataVersionsResult result = secureDataVersionService.getSecureDataVersionSummariesByPath(
+                sdbId, pathToSecureData, "category", 1, 0, cursor, false);
+
+        assertEquals(1, result.getVersionCountInResult());
+        assertEquals("version id 1", result.getSecureDataVersionSummaries().get(0).getId());
+        assertNull(result.getTotalVersionCount());
+        assertNull(result.getNextOffset());
+        assertEquals("version id 1", PaginationCursor.decode(result.getNextCursor()).getId());
+        verify(secureDataService, never()).getSecureDataMetadataForPath(sdbId, pathToSecureData);
+        verify(secureDataVersionDao, never()).getTotalNumVersionsForPath(pathToSecureData);
+    }
 }
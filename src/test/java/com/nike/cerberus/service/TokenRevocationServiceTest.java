@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nike.cerberus.service;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.nike.cerberus.cache.AuthTokenCache;
+import com.nike.cerberus.dao.AuthTokenDao;
+import com.nike.cerberus.record.RevokedTokenRecord;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import java.util.Optional;
+
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class TokenRevocationServiceTest {
+
+    private static final int COMMIT_GRACE_IN_SECONDS = 5;
+
+    @Mock
+    private AuthTokenDao authTokenDao;
+
+    @Mock
+    private AuthTokenCache authTokenCache;
+
+    private TokenRevocationService tokenRevocationService;
+
+    @Before
+    public void before() {
+        initMocks(this);
+        when(authTokenCache.isEnabled()).thenReturn(true);
+        when(authTokenDao.getRevokedTokensAfter(anyLong(), anyInt(), anyInt())).thenReturn(Lists.newArrayList());
+
+        // Poll manually rather than on the schedule
+        tokenRevocationService = new TokenRevocationService(authTokenDao, authTokenCache, 3600000, COMMIT_GRACE_IN_SECONDS);
+    }
+
+    @After
+    public void after() {
+        tokenRevocationService.executeServerShutdownHook(null, null);
+    }
+
+    @Test
+    public void test_that_the_first_poll_starts_after_the_last_settled_revocation() {
+        when(authTokenDao.getLastSettledRevokedTokenSequence(COMMIT_GRACE_IN_SECONDS)).thenReturn(Optional.of(41L));
+
+        tokenRevocationService.pollRevokedTokens();
+
+        verify(authTokenDao).getRevokedTokensAfter(41L, COMMIT_GRACE_IN_SECONDS, 1000);
+    }
+
+    @Test
+    public void test_that_revoked_tokens_are_evicted_and_the_cursor_stops_at_the_first_unsettled_revocation() {
+        when(authTokenDao.getLastSettledRevokedTokenSequence(COMMIT_GRACE_IN_SECONDS)).thenReturn(Optional.empty());
+        when(authTokenDao.getRevokedTokensAfter(0L, COMMIT_GRACE_IN_SECONDS, 1000)).thenReturn(Lists.newArrayList(
+                new RevokedTokenRecord().setSequence(1L).setTokenHash("hash-1").setSettled(true),
+                new RevokedTokenRecord().setSequence(2L).setTokenHash("hash-2").setSettled(false),
+                new RevokedTokenRecord().setSequence(3L).setTokenHash("hash-3").setSettled(true)
+        ));
+
+        tokenRevocationService.pollRevokedTokens();
+        verify(authTokenCache).invalidateAllByHash(ImmutableSet.of("hash-1", "hash-2", "hash-3"));
+
+        tokenRevocationService.pollRevokedTokens();
+        verify(authTokenDao).getRevokedTokensAfter(1L, COMMIT_GRACE_IN_SECONDS, 1000);
+    }
+}
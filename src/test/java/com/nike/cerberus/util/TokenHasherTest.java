@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2019 Nike, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nike.cerberus.util;
+
+import org.junit.Test;
+
+import java.util.Base64;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+public class TokenHasherTest {
+
+    private static final String SALT = Base64.getEncoder().encodeToString(new byte[64]);
+
+    private static final String TOKEN = "abc-123-def-456";
+
+    @Test
+    public void test_that_hashing_is_deterministic_for_each_scheme() {
+        for (TokenHasher.Scheme scheme : TokenHasher.Scheme.values()) {
+            TokenHasher tokenHasher = tokenHasher(scheme);
+
+            assertEquals(tokenHasher.hashToken(TOKEN), tokenHasher.hashToken(TOKEN));
+            assertEquals(tokenHasher.hashToken(TOKEN), tokenHasher(scheme).hashToken(TOKEN));
+            assertNotEquals(tokenHasher.hashToken(TOKEN), tokenHasher.hashToken("some-other-token"));
+        }
+    }
+
+    @Test
+    public void test_that_the_schemes_produce_different_hashes() {
+        assertNotEquals(tokenHasher(TokenHasher.Scheme.PBKDF2).hashToken(TOKEN),
+                tokenHasher(TokenHasher.Scheme.HMAC_SHA512).hashToken(TOKEN));
+    }
+
+    @Test
+    public void test_that_the_legacy_hash_is_the_pbkdf2_hash_only_when_another_scheme_is_configured() {
+        String pbkdf2Hash = tokenHasher(TokenHasher.Scheme.PBKDF2).hashToken(TOKEN);
+
+        assertEquals(pbkdf2Hash, tokenHasher(TokenHasher.Scheme.HMAC_SHA512).hashTokenWithLegacyScheme(TOKEN));
+        assertNull(tokenHasher(TokenHasher.Scheme.PBKDF2).hashTokenWithLegacyScheme(TOKEN));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_that_an_unknown_scheme_is_rejected() {
+        new TokenHasher(SALT, "PBKDF2WithHmacSHA512", 256, 100, "MD5");
+    }
+
+    private TokenHasher tokenHasher(TokenHasher.Scheme scheme) {
+        return new TokenHasher(SALT, "PBKDF2WithHmacSHA512", 256, 100, scheme.name());
+    }
+}